@@ -17,6 +17,9 @@
 
 grammar UserAgent;
 
+// All nodes cache what the walk steps of the matchers need (see IndexedRuleContext).
+options { contextSuperClass=nl.basjes.parse.useragent.parse.IndexedRuleContext; }
+
 //For browsers based on Mozilla, the user-agent string shall follow the format:
 //   MozillaProductToken (MozillaComment) GeckoProductToken *(VendorProductToken|VendorComment)
 //Applications that embed the Gecko layout engine shall have user-agent strings that follow the format:
@@ -21,22 +21,47 @@ import com.esotericsoftware.kryo.DefaultSerializer;
 import com.esotericsoftware.kryo.Kryo;
 import com.esotericsoftware.kryo.io.Input;
 import com.esotericsoftware.kryo.io.Output;
-import org.apache.commons.collections4.map.LRUMap;
+import nl.basjes.parse.useragent.cache.ConcurrentClockParseCache;
+import nl.basjes.parse.useragent.cache.ParseCache;
+import nl.basjes.parse.useragent.cache.ParseCacheInstantiator;
 
+import java.io.IOException;
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @DefaultSerializer(AbstractUserAgentAnalyzer.KryoSerializer.class)
 public class AbstractUserAgentAnalyzer extends AbstractUserAgentAnalyzerDirect implements Serializable {
     public static final int DEFAULT_PARSE_CACHE_SIZE = 10000;
 
     protected int cacheSize = DEFAULT_PARSE_CACHE_SIZE;
-    private transient LRUMap<String, UserAgent> parseCache = null;
+    protected long cacheMaxBytes = 0;
+    private ParseCacheInstantiator<ParsedUserAgent> cacheInstantiator = new ConcurrentClockParseCache.Instantiator<>();
+    private transient volatile ParseCache<ParsedUserAgent> parseCache = null;
+
+    // Used by parseAll to analyze the unique useragents of a batch (null = the common ForkJoinPool).
+    private transient Executor batchExecutor = null;
 
     protected AbstractUserAgentAnalyzer() {
         super();
         initializeCache();
     }
 
+    private void readObject(java.io.ObjectInputStream stream)
+        throws IOException, ClassNotFoundException {
+        stream.defaultReadObject();
+        initializeCache();
+    }
+
     public static class KryoSerializer extends AbstractUserAgentAnalyzerDirect.KryoSerializer {
         public KryoSerializer(Kryo kryo, Class<?> type) {
             super(kryo, type);
@@ -71,9 +96,35 @@ public class AbstractUserAgentAnalyzer extends AbstractUserAgentAnalyzerDirect i
         initializeCache();
     }
 
+    /**
+     * Sets the maximum (estimated) memory usage of the parsing cache.
+     * Note that this will also wipe the existing cache.
+     *
+     * @param newCacheMaxBytes The maximum number of bytes. A value of 0 means only the number of entries is limited.
+     */
+    public void setCacheMaxBytes(long newCacheMaxBytes) {
+        cacheMaxBytes = Math.max(newCacheMaxBytes, 0);
+        initializeCache();
+    }
+
+    /**
+     * Use a different cache implementation.
+     * Note that this will also wipe the existing cache.
+     * The instantiator is part of the analyzer so it must be serializable if the analyzer is serialized.
+     *
+     * @param newCacheInstantiator Creates the cache with the configured limits.
+     */
+    public void setCacheInstantiator(ParseCacheInstantiator<ParsedUserAgent> newCacheInstantiator) {
+        if (newCacheInstantiator == null) {
+            throw new IllegalArgumentException("The cache instantiator cannot be null.");
+        }
+        cacheInstantiator = newCacheInstantiator;
+        initializeCache();
+    }
+
     private void initializeCache() {
         if (cacheSize >= 1) {
-            parseCache = new LRUMap<>(cacheSize);
+            parseCache = cacheInstantiator.instantiateCache(cacheSize, cacheMaxBytes);
         } else {
             parseCache = null;
         }
@@ -83,29 +134,240 @@ public class AbstractUserAgentAnalyzer extends AbstractUserAgentAnalyzerDirect i
         return cacheSize;
     }
 
+    public long getCacheMaxBytes() {
+        return cacheMaxBytes;
+    }
+
+    public long getCacheHits() {
+        ParseCache<ParsedUserAgent> cache = parseCache;
+        return cache == null ? 0 : cache.getHits();
+    }
+
+    public long getCacheMisses() {
+        ParseCache<ParsedUserAgent> cache = parseCache;
+        return cache == null ? 0 : cache.getMisses();
+    }
+
+    public long getCacheEvictions() {
+        ParseCache<ParsedUserAgent> cache = parseCache;
+        return cache == null ? 0 : cache.getEvictions();
+    }
+
+    // A rough estimate of the memory retained by a cached result.
+    private static long estimateMemoryUsage(String userAgentString, ParsedUserAgent parsedUserAgent) {
+        long bytes = 96 + 2L * userAgentString.length();
+        for (String fieldName : parsedUserAgent.getAvailableFieldNames()) {
+            String value = parsedUserAgent.getValue(fieldName);
+            bytes += 64 + (value == null ? 0 : 2L * value.length());
+        }
+        return bytes;
+    }
+
+    @Override
+    public UserAgent parse(String userAgentString) {
+        ParseCache<ParsedUserAgent> cache = parseCache;
+        if (cache == null || userAgentString == null) {
+            return super.parse(userAgentString);
+        }
+
+        ParsedUserAgent cachedValue = cache.get(userAgentString);
+        if (cachedValue != null) {
+            // Nothing is copied: the returned instance is a view over the cached result.
+            return new UserAgent(cachedValue);
+        }
+        UserAgent userAgent = new UserAgent(userAgentString, wantedFieldNames);
+        cacheResult(cache, userAgentString, super.parse(userAgent));
+        return userAgent;
+    }
+
     @Override
-    public synchronized UserAgent parse(UserAgent userAgent) {
+    public UserAgent parse(UserAgent userAgent) {
         if (userAgent == null) {
             return null;
         }
-        userAgent.reset();
 
-        if (parseCache == null) {
+        ParseCache<ParsedUserAgent> cache = parseCache;
+        String userAgentString = userAgent.getUserAgentString();
+        if (cache == null || userAgentString == null) {
+            userAgent.reset();
             return super.parse(userAgent);
         }
 
-        String userAgentString = userAgent.getUserAgentString();
-        UserAgent cachedValue = parseCache.get(userAgentString);
+        // The cached values are immutable so they can be read without any locking.
+        ParsedUserAgent cachedValue = cache.get(userAgentString);
         if (cachedValue != null) {
+            // Nothing is copied: the userAgent becomes a view over the cached result.
             userAgent.clone(cachedValue);
         } else {
-            cachedValue = new UserAgent(super.parse(userAgent));
-            parseCache.put(userAgentString, cachedValue);
+            userAgent.reset();
+            cacheResult(cache, userAgentString, super.parse(userAgent));
         }
         // We have our answer.
         return userAgent;
     }
 
+    /**
+     * Parse the useragent into an immutable result.
+     * If the result was cached the cached instance is returned (no copying at all).
+     * @param userAgentString The useragent
+     * @return The result which may be shared with other callers.
+     */
+    @Override
+    public ParsedUserAgent parseImmutable(String userAgentString) {
+        ParseCache<ParsedUserAgent> cache = parseCache;
+        if (cache == null || userAgentString == null) {
+            return super.parseImmutable(userAgentString);
+        }
+
+        ParsedUserAgent cachedValue = cache.get(userAgentString);
+        if (cachedValue != null) {
+            return cachedValue;
+        }
+        return analyzeAndCache(userAgentString);
+    }
+
+    // Analyze without looking in the cache first (the caller already did that).
+    private ParsedUserAgent analyzeAndCache(String userAgentString) {
+        ParseCache<ParsedUserAgent> cache = parseCache;
+        if (cache == null || userAgentString == null) {
+            return super.parseImmutable(userAgentString);
+        }
+        return cacheResult(cache, userAgentString, super.parse(new UserAgent(userAgentString, wantedFieldNames)));
+    }
+
+    /**
+     * Set the executor that is used to analyze the useragents of a batch in parallel.
+     * The executor is not serialized with the analyzer.
+     * @param newBatchExecutor The executor, null means the common ForkJoinPool is used.
+     */
+    public void setBatchExecutor(Executor newBatchExecutor) {
+        batchExecutor = newBatchExecutor;
+    }
+
+    public Executor getBatchExecutor() {
+        return batchExecutor == null ? ForkJoinPool.commonPool() : batchExecutor;
+    }
+
+    /**
+     * Parse a batch of useragents using the configured batch executor.
+     * @param userAgentStrings The useragents
+     * @return The results in the same order as the input.
+     * @see #parseAll(String[], Executor)
+     */
+    public List<ParsedUserAgent> parseAll(Collection<String> userAgentStrings) {
+        return parseAll(userAgentStrings, getBatchExecutor());
+    }
+
+    /**
+     * Parse a batch of useragents.
+     * @param userAgentStrings The useragents
+     * @param executor The executor used to analyze the unique useragents in parallel.
+     * @return The results in the same order as the input.
+     * @see #parseAll(String[], Executor)
+     */
+    public List<ParsedUserAgent> parseAll(Collection<String> userAgentStrings, Executor executor) {
+        return Arrays.asList(parseAll(userAgentStrings.toArray(new String[0]), executor));
+    }
+
+    /**
+     * Parse a batch of useragents using the configured batch executor.
+     * @param userAgentStrings The useragents
+     * @return The results in the same order as the input.
+     * @see #parseAll(String[], Executor)
+     */
+    public ParsedUserAgent[] parseAll(String[] userAgentStrings) {
+        return parseAll(userAgentStrings, getBatchExecutor());
+    }
+
+    /**
+     * Parse a batch of useragents.
+     * Every distinct useragent in the batch is analyzed only once (duplicates get the same result instance).
+     * The ones that are in the cache are taken from there, the remaining ones are analyzed in parallel.
+     * @param userAgentStrings The useragents
+     * @param executor The executor used to analyze the unique useragents in parallel (null = in the calling thread).
+     * @return The results in the same order as the input.
+     */
+    public ParsedUserAgent[] parseAll(String[] userAgentStrings, Executor executor) {
+        ParsedUserAgent[] results = new ParsedUserAgent[userAgentStrings.length];
+
+        // For each input: the position of the first occurrence of the same useragent.
+        int[] firstOccurrence = new int[userAgentStrings.length];
+        Map<String, Integer> seen = new HashMap<>(userAgentStrings.length * 2);
+        List<Integer> toAnalyze = new ArrayList<>();
+
+        ParseCache<ParsedUserAgent> cache = parseCache;
+        for (int i = 0; i < userAgentStrings.length; i++) {
+            String userAgentString = userAgentStrings[i];
+            Integer first = seen.putIfAbsent(userAgentString, i);
+            if (first != null) {
+                firstOccurrence[i] = first;
+                continue;
+            }
+            firstOccurrence[i] = i;
+            if (cache != null && userAgentString != null) {
+                results[i] = cache.get(userAgentString);
+            }
+            if (results[i] == null) {
+                toAnalyze.add(i);
+            }
+        }
+
+        analyzeAll(userAgentStrings, results, toAnalyze, executor);
+
+        for (int i = 0; i < userAgentStrings.length; i++) {
+            results[i] = results[firstOccurrence[i]];
+        }
+        return results;
+    }
+
+    private void analyzeAll(String[] userAgentStrings, ParsedUserAgent[] results, List<Integer> toAnalyze, Executor executor) {
+        int tasks = 1;
+        if (executor != null) {
+            int parallelism = executor instanceof ForkJoinPool ?
+                ((ForkJoinPool) executor).getParallelism() :
+                Runtime.getRuntime().availableProcessors();
+            tasks = Math.min(parallelism, toAnalyze.size());
+        }
+
+        if (tasks <= 1) {
+            for (int index : toAnalyze) {
+                results[index] = analyzeAndCache(userAgentStrings[index]);
+            }
+            return;
+        }
+
+        // Each task takes the next useragent that has not been taken yet (so slow ones do not block a whole chunk).
+        AtomicInteger next = new AtomicInteger(0);
+        Runnable worker = () -> {
+            int position;
+            while ((position = next.getAndIncrement()) < toAnalyze.size()) {
+                int index = toAnalyze.get(position);
+                results[index] = analyzeAndCache(userAgentStrings[index]);
+            }
+        };
+
+        CompletableFuture<?>[] futures = new CompletableFuture<?>[tasks];
+        for (int task = 0; task < tasks; task++) {
+            futures[task] = CompletableFuture.runAsync(worker, executor);
+        }
+        try {
+            // Completion of the futures guarantees the visibility of all results written by the workers.
+            CompletableFuture.allOf(futures).join();
+        } catch (CompletionException ce) {
+            if (ce.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ce.getCause();
+            }
+            throw ce;
+        }
+    }
+
+    private ParsedUserAgent cacheResult(ParseCache<ParsedUserAgent> cache, String userAgentString, UserAgent userAgent) {
+        ParsedUserAgent parsedUserAgent = new ParsedUserAgent(getFieldSchema(), userAgent);
+        long estimatedBytes = cache.getMaxBytes() > 0 ? estimateMemoryUsage(userAgentString, parsedUserAgent) : 0;
+        cache.put(userAgentString, parsedUserAgent, estimatedBytes);
+        return parsedUserAgent;
+    }
+
     @SuppressWarnings("unchecked")
     public abstract  static class AbstractUserAgentAnalyzerBuilder<UAA extends AbstractUserAgentAnalyzer, B extends AbstractUserAgentAnalyzerBuilder<UAA, B>>
             extends AbstractUserAgentAnalyzerDirectBuilder<UAA, B> {
@@ -127,6 +389,39 @@ public class AbstractUserAgentAnalyzer extends AbstractUserAgentAnalyzerDirect i
             return (B)this;
         }
 
+        /**
+         * Limit the cache on the (estimated) memory usage in addition to the number of entries.
+         * @param newCacheMaxBytes The maximum number of bytes (0 = no limit on the number of bytes).
+         * @return the current Builder instance.
+         */
+        public B withCacheMaxBytes(long newCacheMaxBytes) {
+            failIfAlreadyBuilt();
+            uaa.setCacheMaxBytes(newCacheMaxBytes);
+            return (B)this;
+        }
+
+        /**
+         * Use a different cache implementation.
+         * @param newCacheInstantiator The instantiator of the cache.
+         * @return the current Builder instance.
+         */
+        public B withCacheInstantiator(ParseCacheInstantiator<ParsedUserAgent> newCacheInstantiator) {
+            failIfAlreadyBuilt();
+            uaa.setCacheInstantiator(newCacheInstantiator);
+            return (B)this;
+        }
+
+        /**
+         * Use a specific executor to analyze the useragents of a batch ({@link AbstractUserAgentAnalyzer#parseAll(String[])}) in parallel.
+         * @param newBatchExecutor The executor (null = the common ForkJoinPool).
+         * @return the current Builder instance.
+         */
+        public B withBatchExecutor(Executor newBatchExecutor) {
+            failIfAlreadyBuilt();
+            uaa.setBatchExecutor(newBatchExecutor);
+            return (B)this;
+        }
+
         /**
          * Disable caching.
          * @return the current Builder instance.
@@ -148,6 +443,7 @@ public class AbstractUserAgentAnalyzer extends AbstractUserAgentAnalyzerDirect i
     public String toString() {
         return "UserAgentAnalyzer{" +
             "cacheSize=" + cacheSize +
+            ", cacheMaxBytes=" + cacheMaxBytes +
             ", "+ super.toString()+"} ";
     }
 
@@ -21,10 +21,15 @@ import com.esotericsoftware.kryo.DefaultSerializer;
 import com.esotericsoftware.kryo.Kryo;
 import com.esotericsoftware.kryo.io.Input;
 import com.esotericsoftware.kryo.serializers.FieldSerializer;
+import nl.basjes.parse.useragent.UserAgent.AgentField;
+import nl.basjes.parse.useragent.analyze.AnalyzeContext;
 import nl.basjes.parse.useragent.analyze.Analyzer;
+import nl.basjes.parse.useragent.analyze.InformSink;
 import nl.basjes.parse.useragent.analyze.InvalidParserConfigurationException;
 import nl.basjes.parse.useragent.analyze.Matcher;
 import nl.basjes.parse.useragent.analyze.MatcherAction;
+import nl.basjes.parse.useragent.analyze.MatcherActionIndex;
+import nl.basjes.parse.useragent.analyze.MatcherExtractAction;
 import nl.basjes.parse.useragent.analyze.MatcherList;
 import nl.basjes.parse.useragent.analyze.UselessMatcherException;
 import nl.basjes.parse.useragent.analyze.WordRangeVisitor.Range;
@@ -35,6 +40,7 @@ import nl.basjes.parse.useragent.calculate.CalculateNetworkType;
 import nl.basjes.parse.useragent.calculate.ConcatNONDuplicatedCalculator;
 import nl.basjes.parse.useragent.calculate.FieldCalculator;
 import nl.basjes.parse.useragent.calculate.MajorVersionCalculator;
+import nl.basjes.parse.useragent.parse.IndexedRuleContext;
 import nl.basjes.parse.useragent.parse.UserAgentTreeFlattener;
 import org.antlr.v4.runtime.tree.ParseTree;
 import org.slf4j.Logger;
@@ -51,20 +57,28 @@ import org.yaml.snakeyaml.reader.UnicodeReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.Serializable;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Formatter;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Queue;
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.IntConsumer;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import static nl.basjes.parse.useragent.UserAgent.AGENT_CLASS;
 import static nl.basjes.parse.useragent.UserAgent.AGENT_INFORMATION_EMAIL;
@@ -124,11 +138,20 @@ public abstract class AbstractUserAgentAnalyzerDirect implements Analyzer, Seria
     private final List<Matcher> allMatchers = new ArrayList<>(5000);
     private final List<Matcher> zeroInputMatchers = new ArrayList<>(100);
 
+    // The zero input matchers that only have fixed values are folded into the baseline: a precomputed result
+    // that is the starting point of every parse. Only the other zero input matchers are evaluated during a parse.
+    private final List<Matcher> dynamicZeroInputMatchers = new ArrayList<>(100);
+    private ParsedUserAgent baseline = null;
+
     protected List<Matcher> getAllMatchers() {
         return allMatchers;
     }
 
-    private final Map<String, Set<MatcherAction>> informMatcherActions = new LinkedHashMap<>(INFORM_ACTIONS_HASHMAP_CAPACITY);
+    // Only used while the matchers are initialized, it is frozen into the informMatcherActionIndex afterwards.
+    private Map<String, Set<MatcherAction>> informMatcherActions = new LinkedHashMap<>(INFORM_ACTIONS_HASHMAP_CAPACITY);
+    private MatcherActionIndex informMatcherActionIndex = new MatcherActionIndex(Collections.emptyMap());
+    // All paths for which there is an inform request on the node itself or on something below it.
+    private Set<String> relevantInformPaths = Collections.emptySet();
     private transient Map<String, List<MappingNode>> matcherConfigs = new HashMap<>();
 
     private boolean showMatcherStats = false;
@@ -156,7 +179,11 @@ public abstract class AbstractUserAgentAnalyzerDirect implements Analyzer, Seria
         return lookupSets;
     }
 
-    protected UserAgentTreeFlattener flattener;
+    // The per parse state is kept in an AnalyzeContext, these are reused between parses.
+    private transient Queue<AnalyzeContext> analyzeContexts = new ConcurrentLinkedQueue<>();
+
+    // Used to load and initialize everything in parallel (null = in the calling thread).
+    private transient ForkJoinPool initializationPool = null;
 
     public static final int DEFAULT_USER_AGENT_MAX_LENGTH = 2048;
     private int userAgentMaxLength = DEFAULT_USER_AGENT_MAX_LENGTH;
@@ -169,14 +196,19 @@ public abstract class AbstractUserAgentAnalyzerDirect implements Analyzer, Seria
      */
     private void initTransientFields() {
         matcherConfigs = new HashMap<>(64);
-        touchedMatchers = new MatcherList(32);
+        analyzeContexts = new ConcurrentLinkedQueue<>();
     }
 
+    // Loading a snapshot logs a single line instead of the full deserialization stats.
+    static final ThreadLocal<Boolean> SHOW_DESERIALIZATION_STATS = ThreadLocal.withInitial(() -> Boolean.TRUE);
+
     private void readObject(java.io.ObjectInputStream stream)
         throws IOException, ClassNotFoundException {
         initTransientFields();
         stream.defaultReadObject();
-        showDeserializationStats();
+        if (SHOW_DESERIALIZATION_STATS.get()) {
+            showDeserializationStats();
+        }
     }
 
     public static class KryoSerializer extends FieldSerializer<AbstractUserAgentAnalyzerDirect> {
@@ -200,7 +232,7 @@ public abstract class AbstractUserAgentAnalyzerDirect implements Analyzer, Seria
         lines.add("Lookups      : " + ((lookups == null) ? 0 : lookups.size()));
         lines.add("LookupSets   : " + lookupSets.size());
         lines.add("Matchers     : " + allMatchers.size());
-        lines.add("Hashmap size : " + informMatcherActions.size());
+        lines.add("Hashmap size : " + informMatcherActionIndex.size());
         lines.add("Ranges map   : " + informMatcherActionRanges.size());
         lines.add("Testcases    : " + testCases.size());
 
@@ -317,9 +349,6 @@ public abstract class AbstractUserAgentAnalyzerDirect implements Analyzer, Seria
 
         long startFiles = System.nanoTime();
 
-        flattener = new UserAgentTreeFlattener(this);
-        Yaml yaml = new Yaml();
-
         Map<String, Resource> resources = new TreeMap<>();
         PathMatchingResourcePatternResolver resolver = new PathMatchingResourcePatternResolver();
         try {
@@ -367,16 +396,30 @@ public abstract class AbstractUserAgentAnalyzerDirect implements Analyzer, Seria
                 " resources for the second time");
         }
 
-        for (Map.Entry<String, Resource> resourceEntry : resources.entrySet()) {
-            try {
-                Resource resource = resourceEntry.getValue();
-                String filename = resource.getFilename();
-                if (filename != null) {
-                    maxFilenameLength = Math.max(maxFilenameLength, filename.length());
-                    loadResource(yaml, resource.getInputStream(), filename);
+        // The Yaml parsing (the expensive part) of all files can be done in parallel,
+        // the results are then processed in the same order as before.
+        List<Resource> resourceList = new ArrayList<>(resources.values());
+        Node[] loadedYamls = new Node[resourceList.size()];
+        RuntimeException[] yamlFailures = runForAllIndexes(resourceList.size(), index -> {
+            Resource resource = resourceList.get(index);
+            String filename = resource.getFilename();
+            if (filename != null) {
+                try (InputStream yamlStream = resource.getInputStream()) {
+                    loadedYamls[index] = composeYaml(yamlStream, filename);
+                } catch (IOException e) {
+                    throw new InvalidParserConfigurationException("Error reading resources: " + e.getMessage(), e);
                 }
-            } catch (IOException e) {
-                throw new InvalidParserConfigurationException("Error reading resources: " + e.getMessage(), e);
+            }
+        });
+
+        for (int index = 0; index < loadedYamls.length; index++) {
+            if (yamlFailures[index] != null) {
+                throw yamlFailures[index];
+            }
+            String filename = resourceList.get(index).getFilename();
+            if (filename != null) {
+                maxFilenameLength = Math.max(maxFilenameLength, filename.length());
+                loadResource(loadedYamls[index], filename);
             }
         }
 
@@ -406,37 +449,50 @@ public abstract class AbstractUserAgentAnalyzerDirect implements Analyzer, Seria
             lookups = cleanedLookups;
         }
 
-        int skippedMatchers = 0;
         if (matcherConfigs != null) {
-            for (Map.Entry<String, Resource> resourceEntry : resources.entrySet()) {
-                Resource resource = resourceEntry.getValue();
-                String configFilename = resource.getFilename();
-                List<MappingNode> matcherConfig = matcherConfigs.get(configFilename);
+            // The matchers of all files are created in parallel and then added in the same order as before.
+            @SuppressWarnings("unchecked")
+            List<Matcher>[] fileMatchers = (List<Matcher>[]) new List<?>[resourceList.size()];
+            long[] fileNanos = new long[resourceList.size()];
+            RuntimeException[] matcherFailures = runForAllIndexes(resourceList.size(), index -> {
+                List<MappingNode> matcherConfig = matcherConfigs.get(resourceList.get(index).getFilename());
                 if (matcherConfig == null) {
-                    continue; // No matchers in this file (probably only lookups and/or tests)
+                    return; // No matchers in this file (probably only lookups and/or tests)
                 }
-
                 long start = System.nanoTime();
-                int startSkipped = skippedMatchers;
+                List<Matcher> matchers = new ArrayList<>(matcherConfig.size());
                 for (MappingNode map : matcherConfig) {
                     try {
-                        allMatchers.add(new Matcher(this, wantedFieldNames, map, configFilename));
+                        matchers.add(new Matcher(this, wantedFieldNames, map, resourceList.get(index).getFilename()));
                     } catch (UselessMatcherException ume) {
-                        skippedMatchers++;
+                        // Skipped
                     }
                 }
-                long stop = System.nanoTime();
-                int stopSkipped = skippedMatchers;
+                fileMatchers[index] = matchers;
+                fileNanos[index] = System.nanoTime() - start;
+            });
+
+            for (int index = 0; index < fileMatchers.length; index++) {
+                if (matcherFailures[index] != null) {
+                    throw matcherFailures[index];
+                }
+                List<Matcher> matchers = fileMatchers[index];
+                if (matchers == null) {
+                    continue;
+                }
+                allMatchers.addAll(matchers);
 
                 if (showMatcherStats) {
+                    String configFilename = resourceList.get(index).getFilename();
+                    int skipped = matcherConfigs.get(configFilename).size() - matchers.size();
                     try(Formatter msg = new Formatter(Locale.ENGLISH)) {
                         msg.format("Loading %4d (dropped %4d) matchers from " +
                                 "%-" + maxFilenameLength + "s " + // NOSONAR: I'm creating the format using concatenation
                                 "took %5d msec",
-                            matcherConfig.size() - (stopSkipped - startSkipped),
-                            stopSkipped - startSkipped,
+                            matchers.size(),
+                            skipped,
                             configFilename,
-                            (stop - start) / 1000000);
+                            fileNanos[index] / 1000000);
                         LOG.info(msg.toString());
                     }
                 }
@@ -444,6 +500,80 @@ public abstract class AbstractUserAgentAnalyzerDirect implements Analyzer, Seria
         }
     }
 
+    /*
+     * Runs the task for all indexes from 0 (inclusive) to count (exclusive).
+     * If an initialization pool was set this is done in parallel in that pool.
+     * A failing task does not stop the others, the exception is returned at the index of the task
+     * so the caller can handle it at the same point as where a serial run would have failed.
+     */
+    private RuntimeException[] runForAllIndexes(int count, IntConsumer task) {
+        RuntimeException[] failures = new RuntimeException[count];
+        IntConsumer safeTask = index -> {
+            try {
+                task.accept(index);
+            } catch (RuntimeException e) {
+                failures[index] = e;
+            }
+        };
+        if (initializationPool == null || count < 2) {
+            for (int index = 0; index < count; index++) {
+                safeTask.accept(index);
+            }
+        } else {
+            // A parallel stream started from within a ForkJoinPool runs in that pool.
+            initializationPool.submit(() -> IntStream.range(0, count).parallel().forEach(safeTask)).join();
+        }
+        return failures;
+    }
+
+    /**
+     * Parse the Yaml files, create and initialize the matchers in parallel using the provided pool.
+     * The end result is exactly the same as when this is all done in a single thread.
+     * The pool is not serialized with the analyzer.
+     * @param newInitializationPool The pool to use, null means everything is done in the calling thread.
+     */
+    public void setInitializationPool(ForkJoinPool newInitializationPool) {
+        initializationPool = newInitializationPool;
+    }
+
+    public ForkJoinPool getInitializationPool() {
+        return initializationPool;
+    }
+
+    private boolean compileWalkLists = true;
+
+    /**
+     * Run the linear parts of the walk lists of the matchers in a single loop (instead of a chain of virtual calls).
+     * This does not change the results. Must be set before the matchers are initialized.
+     * @param newCompileWalkLists True (the default) to compile, false to keep the plain walk lists.
+     */
+    public void setCompileWalkLists(boolean newCompileWalkLists) {
+        compileWalkLists = newCompileWalkLists;
+    }
+
+    @Override
+    public boolean compileWalkLists() {
+        return compileWalkLists;
+    }
+
+    private boolean sllFirstParsing = false;
+
+    /**
+     * Parse the useragents with the faster SLL prediction first and only retry with the full LL prediction
+     * if that fails. This does not change the extracted fields but ANTLR only reports ambiguities during
+     * the full LL prediction, so hasAmbiguity() and getAmbiguityCount() of the results become unreliable.
+     * @param newSllFirstParsing True to enable, false (the default) to always use the full LL prediction.
+     */
+    public void setSllFirstParsing(boolean newSllFirstParsing) {
+        sllFirstParsing = newSllFirstParsing;
+        // The cached contexts have a flattener that must follow the new setting.
+        reset();
+    }
+
+    public boolean isSllFirstParsing() {
+        return sllFirstParsing;
+    }
+
 //    private static final long MEGABYTE = 1024L * 1024L;
 //
 //    private static long bytesToMegabytes(long bytes) {
@@ -458,11 +588,38 @@ public abstract class AbstractUserAgentAnalyzerDirect implements Analyzer, Seria
 //        return runtime.totalMemory() - runtime.freeMemory();
 //    }
 
-    private boolean matchersHaveBeenInitialized = false;
+    private volatile boolean matchersHaveBeenInitialized = false;
+    private int numberOfMatcherActions = 0;
+
+    // All fields that can be set by a matcher and the highest confidence any matcher can give them.
+    private String[] resultFieldNames = new String[0];
+    private long[] maxResultConfidences = new long[0];
+    private FieldSchema fieldSchema = null;
+
+    /**
+     * Write a snapshot of this fully initialized analyzer which can be loaded very quickly
+     * (see {@link UserAgentAnalyzer#fromSnapshot(Path)}).
+     * The snapshot can only be loaded by the exact same version of Yauaa.
+     * @param snapshot The file to write.
+     * @throws IOException If the file could not be written.
+     */
+    public void saveSnapshot(Path snapshot) throws IOException {
+        AnalyzerSnapshot.save(this, snapshot);
+    }
+
     public void initializeMatchers() {
         if (matchersHaveBeenInitialized) {
             return;
         }
+        synchronized (this) {
+            if (matchersHaveBeenInitialized) {
+                return;
+            }
+            doInitializeMatchers();
+        }
+    }
+
+    private void doInitializeMatchers() {
         LOG.info("Initializing Analyzer data structures");
 
         if (allMatchers.isEmpty()) {
@@ -471,10 +628,22 @@ public abstract class AbstractUserAgentAnalyzerDirect implements Analyzer, Seria
 
 //        long memoryBeforeInit = getMemoryUsage();
         long start = System.nanoTime();
-        allMatchers.forEach(Matcher::initialize);
+        if (initializationPool == null) {
+            allMatchers.forEach(Matcher::initialize);
+        } else {
+            // The expensive part is done in parallel, the registrations in the hashmaps are done
+            // afterwards in the original order so the end result is the same as a serial initialization.
+            RuntimeException[] failures = runForAllIndexes(allMatchers.size(),
+                index -> allMatchers.get(index).initializeWithoutRegistering());
+            for (int index = 0; index < failures.length; index++) {
+                if (failures[index] != null) {
+                    throw failures[index];
+                }
+                allMatchers.get(index).registerInAnalyzer();
+            }
+        }
         long stop = System.nanoTime();
 //        long memoryAfterInit = getMemoryUsage();
-        matchersHaveBeenInitialized = true;
         LOG.info("Built in {} msec : Hashmap {}, Ranges map:{}",
             (stop - start) / 1000000,
             informMatcherActions.size(),
@@ -488,12 +657,176 @@ public abstract class AbstractUserAgentAnalyzerDirect implements Analyzer, Seria
             }
         }
 
-        // Reset all Matchers
+        Map<String, Long> maxConfidences = new TreeMap<>();
+        for (Matcher matcher: allMatchers) {
+            matcher.collectMaxConfidences(maxConfidences);
+        }
+        resultFieldNames = maxConfidences.keySet().toArray(new String[0]);
+        maxResultConfidences = new long[resultFieldNames.length];
+        for (int i = 0; i < resultFieldNames.length; i++) {
+            maxResultConfidences[i] = maxConfidences.get(resultFieldNames[i]);
+        }
+
+        relevantInformPaths = calculateRelevantInformPaths(informMatcherActions.keySet());
+        LOG.info("Inform requests: {} on {} relevant paths", informMatcherActions.size(), relevantInformPaths.size());
+
+        // The index is only read during parsing, so it is frozen into a much more efficient form.
+        informMatcherActionIndex = new MatcherActionIndex(informMatcherActions);
+        informMatcherActions = new LinkedHashMap<>();
+
+        // All per parse state is stored in the AnalyzeContext under these indexes.
+        int matcherIndex = 0;
+        int actionIndex = 0;
         for (Matcher matcher : allMatchers) {
-            matcher.reset();
+            actionIndex = matcher.assignIndexes(matcherIndex++, actionIndex);
+        }
+        numberOfMatcherActions = actionIndex;
+
+        fieldSchema = new FieldSchema(getAllPossibleFieldNamesSorted());
+
+        buildBaseline();
+
+        analyzeContexts.clear();
+        matchersHaveBeenInitialized = true;
+    }
+
+    /**
+     * The zero input matchers that only have fixed values give the same result for every useragent.
+     * These are evaluated once and stored as the baseline which is the starting point of every parse.
+     * A value only replaces a value with a lower confidence so if two matchers set the same field with the same
+     * confidence the first one wins. Because the baseline is applied before all other matchers a constant matcher
+     * is only folded if none of the matchers that are still evaluated during the parse sets any of its fields with
+     * the same confidence. That way the order in which they are applied can never change the outcome.
+     */
+    private void buildBaseline() {
+        Set<Matcher> constantMatchers = new HashSet<>();
+        for (Matcher matcher : zeroInputMatchers) {
+            if (matcher.isConstant() && !matcher.getVerbose()) {
+                constantMatchers.add(matcher);
+            }
+        }
+
+        // The results (field + confidence) that can be set by the matchers that are evaluated during the parse.
+        Set<String> dynamicResults = new HashSet<>();
+        for (Matcher matcher : allMatchers) {
+            if (!constantMatchers.contains(matcher)) {
+                dynamicResults.addAll(resultKeys(matcher));
+            }
+        }
+
+        // Not folding a constant matcher can make it necessary to not fold another one.
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            Iterator<Matcher> iterator = constantMatchers.iterator();
+            while (iterator.hasNext()) {
+                Set<String> resultKeys = resultKeys(iterator.next());
+                if (!Collections.disjoint(dynamicResults, resultKeys)) {
+                    iterator.remove();
+                    dynamicResults.addAll(resultKeys);
+                    changed = true;
+                }
+            }
+        }
+
+        // The template is filled exactly like these matchers would have done in the original order.
+        UserAgent template = new UserAgent();
+        template.clearAllFields();
+        dynamicZeroInputMatchers.clear();
+        for (Matcher matcher : zeroInputMatchers) {
+            if (!constantMatchers.contains(matcher)) {
+                dynamicZeroInputMatchers.add(matcher);
+                continue;
+            }
+            for (MatcherExtractAction action : matcher.getResultActions()) {
+                template.set(action.getAttribute(), action.getResultValue(null), action.getConfidence());
+            }
+        }
+        baseline = new ParsedUserAgent(fieldSchema, template);
+
+        LOG.info("Zero input matchers: {} of which {} were folded into a baseline of {} fields",
+            zeroInputMatchers.size(), constantMatchers.size(), template.getAvailableFieldNames().size());
+    }
+
+    private static Set<String> resultKeys(Matcher matcher) {
+        Set<String> keys = new HashSet<>();
+        for (MatcherExtractAction action : matcher.getResultActions()) {
+            keys.add(action.getAttribute() + ':' + action.getConfidence());
+        }
+        return keys;
+    }
+
+    /**
+     * A node in the parse tree can only start a match if there is an inform request for its path (possibly with
+     * a value, prefix or word range). The walks of the matchers operate on the parse tree itself, so nodes that are
+     * only reached via a walk (like the neighbours of a node) do not need to be informed at all.
+     * @param informKeys The keys of all inform requests.
+     * @return The paths of these keys and all of their parents.
+     */
+    static Set<String> calculateRelevantInformPaths(Set<String> informKeys) {
+        Set<String> relevantPaths = new HashSet<>(informKeys.size());
+        for (String key : informKeys) {
+            int pathEnd = key.length();
+            for (int i = 0; i < key.length(); i++) {
+                char c = key.charAt(i);
+                if (c == '=' || c == '{' || c == '[') {
+                    pathEnd = i;
+                    break;
+                }
+            }
+            String path = key.substring(0, pathEnd);
+            // If a path was already present then so are all of its parents.
+            while (relevantPaths.add(path)) {
+                int parentEnd = path.lastIndexOf(".(");
+                if (parentEnd < 0) {
+                    break;
+                }
+                path = path.substring(0, parentEnd);
+            }
         }
+        return relevantPaths;
+    }
 
-        touchedMatchers = new MatcherList(16);
+    /**
+     * Obtain a context that can be used for a single parse.
+     * Must be returned via {@link #releaseContext(AnalyzeContext)} when the parse has been completed.
+     * @return An AnalyzeContext that is not used by any other thread.
+     */
+    protected AnalyzeContext acquireContext() {
+        AnalyzeContext context = analyzeContexts.poll();
+        if (context == null) {
+            context = createContext();
+        }
+        return context;
+    }
+
+    protected AnalyzeContext createContext() {
+        // The folded (constant) matchers never have any state that needs to be reset.
+        AnalyzeContext context =
+            new AnalyzeContext(this, dynamicZeroInputMatchers, allMatchers.size(), numberOfMatcherActions, verbose);
+        context.getFlattener().setSllFirstParsing(sllFirstParsing);
+        return context;
+    }
+
+    protected void releaseContext(AnalyzeContext context) {
+        analyzeContexts.offer(context);
+    }
+
+    /**
+     * @return The (fixed) list of fields in the results of this analyzer.
+     */
+    public FieldSchema getFieldSchema() {
+        initializeMatchers();
+        return fieldSchema;
+    }
+
+    /**
+     * Resolve the name of a field once so the value can be retrieved from a {@link ParsedUserAgent} without any lookups.
+     * @param fieldName The name of the field (i.e. "DeviceClass")
+     * @return The key of this field.
+     */
+    public FieldKey fieldKey(String fieldName) {
+        return getFieldSchema().fieldKey(fieldName);
     }
 
     public Set<String> getAllPossibleFieldNames() {
@@ -548,14 +881,16 @@ config:
 ----------------------------
 */
 
-    private void loadResource(Yaml yaml, InputStream yamlStream, String filename) {
-        Node loadedYaml;
+    // A Yaml instance is not threadsafe so every file gets its own.
+    private Node composeYaml(InputStream yamlStream, String filename) {
         try {
-            loadedYaml = yaml.compose(new UnicodeReader(yamlStream));
+            return new Yaml().compose(new UnicodeReader(yamlStream));
         } catch (Exception e) {
             throw new InvalidParserConfigurationException("Parse error in the file " + filename + ": " + e.getMessage(), e);
         }
+    }
 
+    private void loadResource(Node loadedYaml, String filename) {
         if (loadedYaml == null) {
             LOG.warn("The file {} is empty", filename);
             return;
@@ -793,7 +1128,8 @@ config:
 
     public void setVerbose(boolean newVerbose) {
         this.verbose = newVerbose;
-        flattener.setVerbose(newVerbose);
+        // The cached contexts have a flattener that must follow the new setting.
+        reset();
     }
 
     public void setUserAgentMaxLength(int newUserAgentMaxLength) {
@@ -813,6 +1149,15 @@ config:
         return parse(userAgent);
     }
 
+    /**
+     * Parse the useragent into an immutable result.
+     * @param userAgentString The useragent
+     * @return The result which may be shared with other callers.
+     */
+    public ParsedUserAgent parseImmutable(String userAgentString) {
+        return new ParsedUserAgent(getFieldSchema(), parse(userAgentString));
+    }
+
     private void setAsHacker(UserAgent userAgent, int confidence) {
         userAgent.set(DEVICE_CLASS,                 "Hacker",  confidence);
         userAgent.set(DEVICE_BRAND,                 "Hacker",  confidence);
@@ -833,32 +1178,15 @@ config:
         userAgent.set(HACKER_ATTACK_VECTOR,         "Unknown", confidence);
     }
 
-    private transient MatcherList touchedMatchers = null;
-
-    @Override
-    public void receivedInput(Matcher matcher) {
-        if (zeroInputMatchers.contains(matcher)) {
-            return;
-        }
-        touchedMatchers.add(matcher);
-    }
-
     /**
      * Resets the state of the Analyzer to the default state.
+     * All the per parse state is kept in AnalyzeContexts so this only drops the cached ones.
      */
     public void reset() {
-        // Reset all Matchers
-        for (Matcher matcher : touchedMatchers) {
-            matcher.reset();
-        }
-        touchedMatchers.clear();
-
-        for (Matcher matcher : zeroInputMatchers) {
-            matcher.reset();
-        }
+        analyzeContexts.clear();
     }
 
-    public synchronized UserAgent parse(UserAgent userAgent) {
+    public UserAgent parse(UserAgent userAgent) {
         initializeMatchers();
         String useragentString = userAgent.getUserAgentString();
         if (useragentString != null && useragentString.length() > userAgentMaxLength) {
@@ -867,32 +1195,47 @@ config:
             return hardCodedPostProcessing(userAgent);
         }
 
-        // Reset all Matchers
-        reset();
-
-        if (userAgent.isDebug()) {
-            for (Matcher matcher : allMatchers) {
-                matcher.setVerboseTemporarily(true);
-            }
+        AnalyzeContext context = acquireContext();
+        try {
+            return parse(userAgent, context);
+        } finally {
+            releaseContext(context);
         }
+    }
+
+    private UserAgent parse(UserAgent userAgent, AnalyzeContext context) {
+        // Reset all Matchers
+        context.reset();
+        context.setVerboseTemporarily(userAgent.isDebug());
 
         try {
-            userAgent = flattener.parse(userAgent);
+            userAgent = context.getFlattener().parse(userAgent);
+
+            // When debugging we want to see all matchers.
+            boolean skipUselessMatchers = !verbose && !userAgent.isDebug();
 
+            // Start from the result of all constant matchers.
+            if (skipUselessMatchers) {
+                baseline.applyTo(userAgent);
+            }
+
+            MatcherList touchedMatchers = context.getTouchedMatchers();
             if (verbose) {
                 LOG.info("=========== Checking all Touched Matchers: {}", touchedMatchers.size());
             }
             // Fire all Analyzers with any input
-            for (Matcher matcher : touchedMatchers) {
-                matcher.analyze(userAgent);
-            }
+            boolean complete = analyzeMatchers(touchedMatchers, userAgent, context, skipUselessMatchers);
 
             if (verbose) {
                 LOG.info("=========== Checking all Zero Input Matchers: {}", zeroInputMatchers.size());
             }
             // Fire all Analyzers that should not get input
-            for (Matcher matcher : zeroInputMatchers) {
-                matcher.analyze(userAgent);
+            if (!complete) {
+                if (skipUselessMatchers) {
+                    analyzeMatchers(dynamicZeroInputMatchers, userAgent, context, true);
+                } else {
+                    analyzeMatchers(zeroInputMatchers, userAgent, context, false);
+                }
             }
 
             userAgent.processSetAll();
@@ -907,6 +1250,51 @@ config:
         }
     }
 
+    /**
+     * Run the provided matchers (in order) against the parse.
+     * A matcher that cannot give any field a higher confidence than it already has is skipped
+     * (it cannot change the outcome) and once all fields have the highest confidence
+     * any matcher can give them we stop entirely.
+     * @return True if all fields have reached their highest possible confidence.
+     */
+    private boolean analyzeMatchers(Iterable<Matcher> matchers, UserAgent userAgent, AnalyzeContext context, boolean skipUselessMatchers) {
+        if (!skipUselessMatchers) {
+            for (Matcher matcher : matchers) {
+                matcher.analyze(userAgent, context);
+            }
+            return false;
+        }
+
+        // A confidence never goes down during the parse so all fields before this one remain complete.
+        int firstIncompleteField = skipCompleteFields(userAgent, 0);
+        if (firstIncompleteField == resultFieldNames.length) {
+            return true;
+        }
+        for (Matcher matcher : matchers) {
+            if (!matcher.canImproveResult(userAgent)) {
+                continue;
+            }
+            matcher.analyze(userAgent, context);
+            firstIncompleteField = skipCompleteFields(userAgent, firstIncompleteField);
+            if (firstIncompleteField == resultFieldNames.length) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private int skipCompleteFields(UserAgent userAgent, int firstField) {
+        int field = firstField;
+        while (field < resultFieldNames.length) {
+            AgentField agentField = userAgent.get(resultFieldNames[field]);
+            if (agentField == null || agentField.getConfidence() < maxResultConfidences[field]) {
+                break;
+            }
+            field++;
+        }
+        return field;
+    }
+
     private static final List<String> HARD_CODED_GENERATED_FIELDS = new ArrayList<>();
 
     static {
@@ -951,32 +1339,86 @@ config:
         return userAgent;
     }
 
+    @Override
+    public boolean isRelevantPath(String path) {
+        // When verbose all nodes are informed so they all show up in the logging.
+        return verbose || relevantInformPaths.contains(path);
+    }
+
     public Set<Range> getRequiredInformRanges(String treeName) {
         return informMatcherActionRanges.computeIfAbsent(treeName, k -> Collections.emptySet());
     }
 
-    public void inform(String key, String value, ParseTree ctx) {
-        inform(key, key, value, ctx);
-        inform(key + "=\"" + value + '"', key, value, ctx);
+    @Override
+    public void inform(AnalyzeContext context, String key, String value, ParseTree ctx) {
+        if (verbose || !MatcherActionIndex.isAscii(key) || !MatcherActionIndex.isAscii(value)) {
+            informUsingKeys(context, key, value, ctx);
+            return;
+        }
+
+        // The lookups are done without creating (and lowercasing) the actual keys.
+        int keyHash = MatcherActionIndex.hashPath(key);
+        informActions(context, informMatcherActionIndex.getPath(key, keyHash), key, value, ctx);
+        informActions(context, informMatcherActionIndex.getPathValue(key, keyHash, value), key, value, ctx);
 
         Set<Integer> lengths = getRequiredPrefixLengths(key);
         if (lengths != null) {
             int valueLength = value.length();
             for (Integer prefixLength : lengths) {
                 if (valueLength >= prefixLength) {
-                    inform(key + "{\"" + firstCharactersForPrefixHash(value, prefixLength) + '"', key, value, ctx);
+                    informActions(context, informMatcherActionIndex.getPathPrefix(key, keyHash, value, prefixLength), key, value, ctx);
                 }
             }
         }
     }
 
-    private void inform(String match, String key, String value, ParseTree ctx) {
-        Set<MatcherAction> relevantActions = informMatcherActions.get(match.toLowerCase(Locale.ENGLISH));
+    private void informActions(AnalyzeContext context, MatcherAction[] relevantActions, String key, String value, ParseTree ctx) {
+        if (relevantActions != null) {
+            String lowerCaseValue = null;
+            for (MatcherAction matcherAction : relevantActions) {
+                if (value != null && matcherAction.hasKnownValuesFilter()) {
+                    // Values that are not in the set or lookup this action starts with are never stored as a match.
+                    if (lowerCaseValue == null) {
+                        lowerCaseValue = toLowerCaseValue(value, ctx);
+                    }
+                    if (!matcherAction.acceptsValue(lowerCaseValue)) {
+                        continue;
+                    }
+                }
+                matcherAction.inform(context, key, value, ctx);
+            }
+        }
+    }
+
+    private static String toLowerCaseValue(String value, ParseTree ctx) {
+        if (ctx instanceof IndexedRuleContext) {
+            return ((IndexedRuleContext) ctx).toLowerCase(value);
+        }
+        return value.toLowerCase();
+    }
+
+    private void informUsingKeys(AnalyzeContext context, String key, String value, ParseTree ctx) {
+        inform(context, key, key, value, ctx);
+        inform(context, key + "=\"" + value + '"', key, value, ctx);
+
+        Set<Integer> lengths = getRequiredPrefixLengths(key);
+        if (lengths != null) {
+            int valueLength = value.length();
+            for (Integer prefixLength : lengths) {
+                if (valueLength >= prefixLength) {
+                    inform(context, key + "{\"" + firstCharactersForPrefixHash(value, prefixLength) + '"', key, value, ctx);
+                }
+            }
+        }
+    }
+
+    private void inform(AnalyzeContext context, String match, String key, String value, ParseTree ctx) {
+        MatcherAction[] relevantActions = informMatcherActionIndex.get(match.toLowerCase(Locale.ENGLISH));
         if (verbose) {
             if (relevantActions == null) {
                 LOG.info("--- Have (0): {}", match);
             } else {
-                LOG.info("+++ Have ({}): {}", relevantActions.size(), match);
+                LOG.info("+++ Have ({}): {}", relevantActions.length, match);
 
                 int count = 1;
                 for (MatcherAction action : relevantActions) {
@@ -986,11 +1428,7 @@ config:
             }
         }
 
-        if (relevantActions != null) {
-            for (MatcherAction matcherAction : relevantActions) {
-                matcherAction.inform(key, value, ctx);
-            }
-        }
+        informActions(context, relevantActions, key, value, ctx);
     }
 
 
@@ -1058,7 +1496,7 @@ config:
 
     // ===============================================================================================================
 
-    public static class GetAllPathsAnalyzer implements Analyzer {
+    public static class GetAllPathsAnalyzer implements InformSink {
         private final List<String> values = new ArrayList<>(128);
 
         private final UserAgent result;
@@ -1076,47 +1514,12 @@ config:
             return result;
         }
 
+        @Override
         public void inform(String path, String value, ParseTree ctx) {
             values.add(path);
             values.add(path + "=\"" + value + "\"");
             values.add(path + "{\"" + firstCharactersForPrefixHash(value, MAX_PREFIX_HASH_MATCH) + "\"");
         }
-
-        public void informMeAbout(MatcherAction matcherAction, String keyPattern) {
-            // Not needed to only get all paths
-        }
-
-        public void lookingForRange(String treeName, Range range) {
-            // Not needed to only get all paths
-        }
-
-        public Set<Range> getRequiredInformRanges(String treeName) {
-            // Not needed to only get all paths
-            return Collections.emptySet();
-        }
-
-        @Override
-        public void informMeAboutPrefix(MatcherAction matcherAction, String treeName, String prefix) {
-            // Not needed to only get all paths
-        }
-
-        @Override
-        public Set<Integer> getRequiredPrefixLengths(String treeName) {
-            // Not needed to only get all paths
-            return Collections.emptySet();
-        }
-
-        @Override
-        public Map<String, Map<String, String>> getLookups() {
-            // Not needed to only get all paths
-            return Collections.emptyMap();
-        }
-
-        @Override
-        public Map<String, Set<String>> getLookupSets() {
-            // Not needed to only get all paths
-            return Collections.emptyMap();
-        }
     }
 
     public static List<String> getAllPaths(String agent) {
@@ -1312,6 +1715,70 @@ config:
             return (B)this;
         }
 
+        /**
+         * Parse the rule files, create and initialize the matchers in parallel using the common ForkJoinPool.
+         * The resulting analyzer is exactly the same as when all of this is done in a single thread.
+         * @return the current Builder instance.
+         */
+        public B withParallelInitialization() {
+            return withParallelInitialization(ForkJoinPool.commonPool());
+        }
+
+        /**
+         * Parse the rule files, create and initialize the matchers in parallel using the provided pool.
+         * The resulting analyzer is exactly the same as when all of this is done in a single thread.
+         * @param pool The pool to use (null = do everything in the calling thread).
+         * @return the current Builder instance.
+         */
+        public B withParallelInitialization(ForkJoinPool pool) {
+            failIfAlreadyBuilt();
+            uaa.setInitializationPool(pool);
+            return (B)this;
+        }
+
+        /**
+         * Run the linear parts of the walk lists of the matchers in a single loop
+         * (instead of a chain of virtual calls). This is the default.
+         * @return the current Builder instance.
+         */
+        public B withCompiledWalkLists() {
+            failIfAlreadyBuilt();
+            uaa.setCompileWalkLists(true);
+            return (B)this;
+        }
+
+        /**
+         * Run every step of the walk lists of the matchers separately (mainly useful for debugging).
+         * @return the current Builder instance.
+         */
+        public B withoutCompiledWalkLists() {
+            failIfAlreadyBuilt();
+            uaa.setCompileWalkLists(false);
+            return (B)this;
+        }
+
+        /**
+         * Parse each useragent with the faster SLL prediction first and only retry with the full LL prediction if that fails.
+         * This does not change the extracted fields but it DROPS the ambiguity reporting:
+         * hasAmbiguity() and getAmbiguityCount() of the results can no longer be relied upon.
+         * @return the current Builder instance.
+         */
+        public B withSllFirstParsing() {
+            failIfAlreadyBuilt();
+            uaa.setSllFirstParsing(true);
+            return (B)this;
+        }
+
+        /**
+         * Always parse with the full LL prediction so ambiguities are reported. This is the default.
+         * @return the current Builder instance.
+         */
+        public B withoutSllFirstParsing() {
+            failIfAlreadyBuilt();
+            uaa.setSllFirstParsing(false);
+            return (B)this;
+        }
+
         private void addSpecialDependencies(String result, String... dependencies) {
             if (uaa.isWantedField(result)) {
                 if (uaa.wantedFieldNames != null) {
@@ -1415,17 +1882,18 @@ config:
         return "UserAgentAnalyzerDirect{" +
             "\nallMatchers=" + allMatchers +
             "\n, zeroInputMatchers=" + zeroInputMatchers +
-            "\n, informMatcherActions=" + informMatcherActions +
+            "\n, informMatcherActions=" + informMatcherActionIndex.size() +
             "\n, showMatcherStats=" + showMatcherStats +
             "\n, doingOnlyASingleTest=" + doingOnlyASingleTest +
             "\n, wantedFieldNames=" + wantedFieldNames +
             "\n, testCases=" + testCases +
             "\n, lookups=" + lookups +
             "\n, lookupSets=" + lookupSets +
-            "\n, flattener=" + flattener +
             "\n, userAgentMaxLength=" + userAgentMaxLength +
             "\n, loadTests=" + loadTests +
             "\n, delayInitialization=" + delayInitialization +
+            "\n, compileWalkLists=" + compileWalkLists +
+            "\n, sllFirstParsing=" + sllFirstParsing +
             "\n, matchersHaveBeenInitialized=" + matchersHaveBeenInitialized +
 //            "\n, informMatcherActionRanges=" + ToString.toString(informMatcherActionRanges) +
 //            "\n, informMatcherActionPrefixesLengths=" + ToString.toString(informMatcherActionPrefixesLengths) +
@@ -0,0 +1,367 @@
+/*
+ * Yet Another UserAgent Analyzer
+ * Copyright (C) 2013-2019 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.basjes.parse.useragent;
+
+import nl.basjes.parse.useragent.utils.YauaaVersion;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidClassException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.io.OutputStream;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+/**
+ * A snapshot is a file with a fully initialized analyzer (rules, matchers, inform index, ranges and lookups).
+ * Loading a snapshot does not need any Yaml parsing or matcher initialization so it is much faster
+ * than building a new analyzer.
+ * <p>
+ * The file starts with a header (magic, format version, the exact version of Yauaa and a checksum)
+ * followed by the serialized analyzer. A snapshot can only be loaded by the exact same version of Yauaa
+ * that created it.
+ * <p>
+ * The checksum only detects corruption, it does not authenticate the file. So only the classes that are
+ * part of an analyzer can be deserialized from a snapshot and the depth, number of references and array
+ * sizes are capped.
+ */
+public final class AnalyzerSnapshot {
+
+    private static final Logger LOG = LoggerFactory.getLogger(AnalyzerSnapshot.class);
+
+    private static final byte[] MAGIC = "YAUAASNP".getBytes(StandardCharsets.US_ASCII);
+    static final int FORMAT_VERSION = 1;
+
+    // The limits for the deserialization (a full analyzer needs a depth of about 50, about 2 million references
+    // and arrays of at most about 500K elements).
+    static final long MAX_DEPTH            = 500;
+    static final long MAX_REFERENCES       = 20_000_000;
+    static final long MAX_ARRAY_LENGTH     = 16 * 1024 * 1024;
+
+    // The only classes that can be part of a serialized analyzer.
+    private static final String[] ALLOWED_PACKAGES = {
+        "nl.basjes.parse.useragent.",
+        "nl.basjes.collections.",
+    };
+
+    private static final Set<String> ALLOWED_CLASSES = new HashSet<>(Arrays.asList(
+        "java.lang.Object",
+        "java.lang.Enum",
+        "java.lang.Number",
+        "java.lang.String",
+        "java.lang.Boolean",
+        "java.lang.Character",
+        "java.lang.Integer",
+        "java.lang.Long",
+        "java.util.Map$Entry", // Only checked as the array HashMap and HashSet allocate while reading
+        "java.util.ArrayList",
+        "java.util.LinkedList",
+        "java.util.HashMap",
+        "java.util.LinkedHashMap",
+        "java.util.TreeMap",
+        "java.util.HashSet",
+        "java.util.LinkedHashSet",
+        "java.util.TreeSet",
+        "java.util.Collections$EmptyList",
+        "java.util.Collections$EmptyMap",
+        "java.util.Collections$EmptySet",
+        "java.util.Collections$UnmodifiableCollection",
+        "java.util.Collections$UnmodifiableList",
+        "java.util.Collections$UnmodifiableRandomAccessList",
+        "java.util.Collections$UnmodifiableMap",
+        "java.util.Collections$UnmodifiableSet"
+    ));
+
+    private AnalyzerSnapshot() {
+    }
+
+    /**
+     * Write a snapshot of the provided analyzer (the matchers are initialized first if needed).
+     * The file is written next to the target and then moved into place so a partially written
+     * snapshot is never seen by a reader.
+     * @param analyzer The analyzer to store.
+     * @param snapshot The file to write.
+     * @throws IOException If the file could not be written.
+     */
+    public static void save(AbstractUserAgentAnalyzerDirect analyzer, Path snapshot) throws IOException {
+        analyzer.initializeMatchers();
+
+        long start = System.nanoTime();
+        ByteArrayOutputStream body = new ByteArrayOutputStream(16 * 1024 * 1024);
+        try (ObjectOutputStream out = new ObjectOutputStream(body)) {
+            out.writeObject(analyzer);
+        }
+        byte[] bodyBytes = body.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(bodyBytes);
+
+        Path absolute = snapshot.toAbsolutePath();
+        Path temporary = Files.createTempFile(absolute.getParent(), absolute.getFileName().toString(), ".tmp");
+        try {
+            try (OutputStream file = Files.newOutputStream(temporary);
+                 DataOutputStream out = new DataOutputStream(file)) {
+                out.write(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                out.writeUTF(YauaaVersion.getVersion());
+                out.writeUTF(analyzer.getClass().getName());
+                out.writeLong(crc.getValue());
+                out.writeLong(bodyBytes.length);
+                out.write(bodyBytes);
+            }
+            Files.move(temporary, absolute, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+        long stop = System.nanoTime();
+        LOG.info("Wrote analyzer snapshot {} ({} bytes) in {} msec", absolute, bodyBytes.length, (stop - start) / 1000000);
+    }
+
+    /**
+     * Load an analyzer from a snapshot. The file is memory mapped and read directly from the mapping.
+     * @param snapshot The file to read.
+     * @param type The expected class of the analyzer.
+     * @param <T> The expected class of the analyzer.
+     * @return The fully initialized analyzer.
+     * @throws IOException If the file could not be read or is not a valid snapshot for this version of Yauaa.
+     */
+    public static <T extends AbstractUserAgentAnalyzerDirect> T load(Path snapshot, Class<T> type) throws IOException {
+        long start = System.nanoTime();
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(snapshot, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+
+        try {
+            byte[] magic = new byte[MAGIC.length];
+            buffer.get(magic);
+            if (!Arrays.equals(MAGIC, magic)) {
+                throw new IOException("The file " + snapshot + " is not an analyzer snapshot.");
+            }
+            int formatVersion = buffer.getInt();
+            if (formatVersion != FORMAT_VERSION) {
+                throw new IOException("The analyzer snapshot " + snapshot + " has format version " + formatVersion +
+                    " (expected " + FORMAT_VERSION + ").");
+            }
+            String version = readUTF(buffer);
+            if (!YauaaVersion.getVersion().equals(version)) {
+                throw new IOException("The analyzer snapshot " + snapshot + " was created by " + version +
+                    " and cannot be used by " + YauaaVersion.getVersion() + ".");
+            }
+            String className = readUTF(buffer);
+            if (!type.getName().equals(className)) {
+                throw new IOException("The analyzer snapshot " + snapshot + " contains a " + className +
+                    " instead of a " + type.getName() + ".");
+            }
+            long expectedCrc = buffer.getLong();
+            long length = buffer.getLong();
+            if (length != buffer.remaining()) {
+                throw new IOException("The analyzer snapshot " + snapshot + " is truncated.");
+            }
+
+            ByteBuffer body = buffer.slice();
+            CRC32 crc = new CRC32();
+            crc.update(body.duplicate());
+            if (crc.getValue() != expectedCrc) {
+                throw new IOException("The analyzer snapshot " + snapshot + " is corrupt (checksum mismatch).");
+            }
+
+            Object analyzer;
+            AbstractUserAgentAnalyzerDirect.SHOW_DESERIALIZATION_STATS.set(Boolean.FALSE);
+            try (ObjectInputStream in = new SnapshotInputStream(new ByteBufferInputStream(body))) {
+                analyzer = in.readObject();
+            } catch (ClassNotFoundException e) {
+                throw new IOException("Unable to load the analyzer snapshot " + snapshot, e);
+            } finally {
+                AbstractUserAgentAnalyzerDirect.SHOW_DESERIALIZATION_STATS.remove();
+            }
+
+            long stop = System.nanoTime();
+            LOG.info("Loaded analyzer snapshot {} ({} bytes) in {} msec", snapshot, length, (stop - start) / 1000000);
+            return type.cast(analyzer);
+        } catch (BufferUnderflowException e) {
+            throw new IOException("The analyzer snapshot " + snapshot + " is truncated.", e);
+        }
+    }
+
+    /**
+     * @param className The name of a class (as found in the serialized form).
+     * @return True if instances of this class may be deserialized from a snapshot.
+     */
+    static boolean isAllowedClass(String className) {
+        String name = className;
+        // Arrays of primitives and arrays of allowed classes
+        while (name.startsWith("[")) {
+            name = name.substring(1);
+        }
+        if (name.length() == 1) {
+            return !name.equals(className);
+        }
+        if (name.startsWith("L") && name.endsWith(";")) {
+            name = name.substring(1, name.length() - 1);
+        } else if (!name.equals(className)) {
+            return false;
+        }
+        if (ALLOWED_CLASSES.contains(name)) {
+            return true;
+        }
+        for (String allowedPackage : ALLOWED_PACKAGES) {
+            if (name.startsWith(allowedPackage)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static final class SnapshotInputStream extends ObjectInputStream {
+        SnapshotInputStream(InputStream in) throws IOException {
+            super(in);
+            installLimits(this);
+        }
+
+        @Override
+        protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+            if (!isAllowedClass(desc.getName())) {
+                throw new InvalidClassException(desc.getName(), "This class is not allowed in an analyzer snapshot");
+            }
+            return super.resolveClass(desc);
+        }
+
+        @Override
+        protected Class<?> resolveProxyClass(String[] interfaces) throws IOException {
+            throw new InvalidClassException(Arrays.toString(interfaces), "Proxy classes are not allowed in an analyzer snapshot");
+        }
+    }
+
+    /**
+     * The depth, references and array length limits can only be enforced with an ObjectInputFilter
+     * which is java.io.ObjectInputFilter since Java 9 and sun.misc.ObjectInputFilter in Java 8 (update 121 and newer).
+     * Because we build for Java 8 we install whichever of these is available via reflection.
+     */
+    private static void installLimits(ObjectInputStream in) throws IOException {
+        try {
+            Class<?> filterClass;
+            try {
+                filterClass = Class.forName("java.io.ObjectInputFilter");
+                ObjectInputStream.class
+                    .getMethod("setObjectInputFilter", filterClass)
+                    .invoke(in, createLimitsFilter(filterClass));
+            } catch (ClassNotFoundException e) {
+                filterClass = Class.forName("sun.misc.ObjectInputFilter");
+                Class.forName("sun.misc.ObjectInputFilter$Config")
+                    .getMethod("setObjectInputFilter", ObjectInputStream.class, filterClass)
+                    .invoke(null, in, createLimitsFilter(filterClass));
+            }
+        } catch (ReflectiveOperationException e) {
+            throw new IOException("Unable to limit the deserialization of the analyzer snapshot", e);
+        }
+    }
+
+    private static Object createLimitsFilter(Class<?> filterClass) throws ReflectiveOperationException {
+        String filterClassName  = filterClass.getName();
+        Class<?> filterInfo     = Class.forName(filterClassName + "$FilterInfo");
+        Method   serialClass    = filterInfo.getMethod("serialClass");
+        Method   arrayLength    = filterInfo.getMethod("arrayLength");
+        Method   depth          = filterInfo.getMethod("depth");
+        Method   references     = filterInfo.getMethod("references");
+        Class<?> status         = Class.forName(filterClassName + "$Status");
+        Object   undecided      = status.getField("UNDECIDED").get(null);
+        Object   rejected       = status.getField("REJECTED").get(null);
+
+        return Proxy.newProxyInstance(filterClass.getClassLoader(), new Class<?>[]{filterClass}, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "checkInput":
+                    break;
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "equals":
+                    return proxy == args[0];
+                default:
+                    return "AnalyzerSnapshotLimits";
+            }
+            Object info = args[0];
+            Class<?> clazz = (Class<?>) serialClass.invoke(info);
+            if ((clazz != null && !isAllowedClass(clazz.getName())) ||
+                (Long) arrayLength.invoke(info) > MAX_ARRAY_LENGTH ||
+                (Long) depth.invoke(info)       > MAX_DEPTH        ||
+                (Long) references.invoke(info)  > MAX_REFERENCES) {
+                LOG.error("Rejected {} (array length {}, depth {}, references {}) in the analyzer snapshot.",
+                    clazz, arrayLength.invoke(info), depth.invoke(info), references.invoke(info));
+                return rejected;
+            }
+            return undecided;
+        });
+    }
+
+    // Same format as DataOutput.writeUTF for the strings we write (which are plain ASCII).
+    private static String readUTF(ByteBuffer buffer) {
+        int length = buffer.getShort() & 0xFFFF;
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static final class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) {
+            if (length == 0) {
+                return 0;
+            }
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int count = Math.min(length, buffer.remaining());
+            buffer.get(bytes, offset, count);
+            return count;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+}
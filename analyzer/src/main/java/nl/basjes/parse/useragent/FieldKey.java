@@ -0,0 +1,84 @@
+/*
+ * Yet Another UserAgent Analyzer
+ * Copyright (C) 2013-2019 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.basjes.parse.useragent;
+
+import java.io.Serializable;
+import java.util.Objects;
+
+/**
+ * A field name that has been resolved once to the position of that field in a {@link ParsedUserAgent}.
+ * Obtain one via the analyzer (i.e. {@code analyzer.fieldKey("DeviceClass")}) and reuse it for all results.
+ */
+public final class FieldKey implements Serializable {
+    private final String name;
+    private final int ordinal;
+    private final FieldSchema schema;
+
+    @SuppressWarnings("unused") // Private constructor for serialization systems ONLY (like Kryo)
+    private FieldKey() {
+        name = null;
+        ordinal = -1;
+        schema = null;
+    }
+
+    FieldKey(String name, int ordinal, FieldSchema schema) {
+        this.name = name;
+        this.ordinal = ordinal;
+        this.schema = schema;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return The position of this field in the schema or -1 if the schema does not contain this field.
+     */
+    int getOrdinal() {
+        return ordinal;
+    }
+
+    FieldSchema getSchema() {
+        return schema;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof FieldKey)) {
+            return false;
+        }
+        FieldKey fieldKey = (FieldKey) o;
+        // The ordinal only has a meaning within the schema it was resolved against.
+        return ordinal == fieldKey.ordinal &&
+            Objects.equals(name, fieldKey.name) &&
+            Objects.equals(schema, fieldKey.schema);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(name, ordinal);
+    }
+
+    @Override
+    public String toString() {
+        return "FieldKey{" + name + '(' + ordinal + ")}";
+    }
+}
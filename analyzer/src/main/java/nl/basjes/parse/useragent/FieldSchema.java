@@ -0,0 +1,90 @@
+/*
+ * Yet Another UserAgent Analyzer
+ * Copyright (C) 2013-2019 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.basjes.parse.useragent;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The fixed list of fields an analyzer can produce. The position of a field in this list is the
+ * position of the value of that field in the arrays of a {@link ParsedUserAgent}.
+ */
+public final class FieldSchema implements Serializable {
+    private final String[] fieldNames;
+    private final Map<String, Integer> ordinals;
+
+    @SuppressWarnings("unused") // Private constructor for serialization systems ONLY (like Kryo)
+    private FieldSchema() {
+        fieldNames = new String[0];
+        ordinals = Collections.emptyMap();
+    }
+
+    FieldSchema(Collection<String> names) {
+        fieldNames = names.toArray(new String[0]);
+        ordinals = new HashMap<>(fieldNames.length * 2);
+        for (int i = 0; i < fieldNames.length; i++) {
+            ordinals.put(fieldNames[i], i);
+        }
+    }
+
+    public int size() {
+        return fieldNames.length;
+    }
+
+    public List<String> getFieldNames() {
+        return Collections.unmodifiableList(Arrays.asList(fieldNames));
+    }
+
+    String getFieldName(int ordinal) {
+        return fieldNames[ordinal];
+    }
+
+    /**
+     * @param fieldName The name of the field
+     * @return The position of the field or -1 if this schema does not contain it.
+     */
+    int ordinal(String fieldName) {
+        Integer ordinal = ordinals.get(fieldName);
+        return ordinal == null ? -1 : ordinal;
+    }
+
+    public FieldKey fieldKey(String fieldName) {
+        return new FieldKey(fieldName, ordinal(fieldName), this);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof FieldSchema)) {
+            return false;
+        }
+        return Arrays.equals(fieldNames, ((FieldSchema) o).fieldNames);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(fieldNames);
+    }
+}
@@ -0,0 +1,303 @@
+/*
+ * Yet Another UserAgent Analyzer
+ * Copyright (C) 2013-2019 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.basjes.parse.useragent;
+
+import nl.basjes.parse.useragent.UserAgent.AgentField;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import static nl.basjes.parse.useragent.UserAgent.PRE_SORTED_FIELDS_LIST;
+import static nl.basjes.parse.useragent.UserAgent.SET_ALL_FIELDS;
+import static nl.basjes.parse.useragent.UserAgent.UNKNOWN_VALUE;
+import static nl.basjes.parse.useragent.UserAgent.USERAGENT_FIELDNAME;
+
+/**
+ * The immutable result of analyzing a useragent.
+ * All values are stored in arrays in the order of the {@link FieldSchema} of the analyzer
+ * so retrieving a field via a {@link FieldKey} is a plain array access.
+ * Because it cannot be changed a single instance can be shared by many threads (i.e. via the parse cache).
+ */
+public final class ParsedUserAgent implements Serializable {
+
+    private final FieldSchema schema;
+    private final String userAgentString;
+    private final boolean hasSyntaxError;
+    private final boolean hasAmbiguity;
+    private final int ambiguityCount;
+    private final String[] wantedFieldNames; // null means all fields
+
+    // The first schema.size() slots are the fields of the schema, followed by any fields that are not in the schema.
+    private final String[] extraFieldNames;
+    private final boolean[] present;
+    private final String[] defaultValues;
+    private final String[] values;
+    private final long[] confidences;
+
+    @SuppressWarnings("unused") // Private constructor for serialization systems ONLY (like Kryo)
+    private ParsedUserAgent() {
+        schema = null;
+        userAgentString = null;
+        hasSyntaxError = false;
+        hasAmbiguity = false;
+        ambiguityCount = 0;
+        wantedFieldNames = null;
+        extraFieldNames = null;
+        present = null;
+        defaultValues = null;
+        values = null;
+        confidences = null;
+    }
+
+    public ParsedUserAgent(FieldSchema schema, UserAgent userAgent) {
+        this.schema = schema;
+        this.userAgentString = userAgent.getUserAgentString();
+        this.hasSyntaxError = userAgent.hasSyntaxError();
+        this.hasAmbiguity = userAgent.hasAmbiguity();
+        this.ambiguityCount = userAgent.getAmbiguityCount();
+        this.wantedFieldNames = userAgent.getWantedFieldNames() == null ?
+            null : userAgent.getWantedFieldNames().toArray(new String[0]);
+
+        Map<String, AgentField> allFields = userAgent.getAllFields();
+        int schemaSize = schema.size();
+
+        List<String> extras = new ArrayList<>();
+        for (String fieldName : allFields.keySet()) {
+            if (schema.ordinal(fieldName) < 0) {
+                extras.add(fieldName);
+            }
+        }
+        Collections.sort(extras); // Make the layout independent of the HashMap ordering
+        extraFieldNames = extras.toArray(new String[0]);
+
+        int slots = schemaSize + extraFieldNames.length;
+        present = new boolean[slots];
+        defaultValues = new String[slots];
+        values = new String[slots];
+        confidences = new long[slots];
+
+        for (Map.Entry<String, AgentField> entry : allFields.entrySet()) {
+            int slot = slotOf(entry.getKey());
+            AgentField field = entry.getValue();
+            present[slot] = true;
+            defaultValues[slot] = field.getDefaultValue();
+            values[slot] = field.getRawValue();
+            confidences[slot] = field.getRawConfidence();
+        }
+    }
+
+    private int slotOf(String fieldName) {
+        int ordinal = schema.ordinal(fieldName);
+        if (ordinal >= 0) {
+            return ordinal;
+        }
+        for (int i = 0; i < extraFieldNames.length; i++) {
+            if (extraFieldNames[i].equals(fieldName)) {
+                return schema.size() + i;
+            }
+        }
+        return -1;
+    }
+
+    private String fieldName(int slot) {
+        int schemaSize = schema.size();
+        return slot < schemaSize ? schema.getFieldName(slot) : extraFieldNames[slot - schemaSize];
+    }
+
+    private String valueOfSlot(int slot) {
+        if (slot < 0 || !present[slot]) {
+            return UNKNOWN_VALUE;
+        }
+        return values[slot] == null ? defaultValues[slot] : values[slot];
+    }
+
+    private long confidenceOfSlot(int slot) {
+        if (slot < 0 || !present[slot]) {
+            return -1L;
+        }
+        return values[slot] == null ? -1L : confidences[slot];
+    }
+
+    public FieldSchema getSchema() {
+        return schema;
+    }
+
+    public String getUserAgentString() {
+        return userAgentString;
+    }
+
+    public boolean hasSyntaxError() {
+        return hasSyntaxError;
+    }
+
+    public boolean hasAmbiguity() {
+        return hasAmbiguity;
+    }
+
+    public int getAmbiguityCount() {
+        return ambiguityCount;
+    }
+
+    public String getValue(FieldKey fieldKey) {
+        if (fieldKey.getSchema() == schema && fieldKey.getOrdinal() >= 0) {
+            return valueOfSlot(fieldKey.getOrdinal());
+        }
+        return getValue(fieldKey.getName());
+    }
+
+    public String getValue(String fieldName) {
+        if (USERAGENT_FIELDNAME.equals(fieldName)) {
+            return userAgentString;
+        }
+        return valueOfSlot(slotOf(fieldName));
+    }
+
+    public long getConfidence(FieldKey fieldKey) {
+        if (fieldKey.getSchema() == schema && fieldKey.getOrdinal() >= 0) {
+            return confidenceOfSlot(fieldKey.getOrdinal());
+        }
+        return getConfidence(fieldKey.getName());
+    }
+
+    public long getConfidence(String fieldName) {
+        if (USERAGENT_FIELDNAME.equals(fieldName)) {
+            return 0L;
+        }
+        return confidenceOfSlot(slotOf(fieldName));
+    }
+
+    /**
+     * @return The names of all fields that have a value in this result (same as {@link UserAgent#getAvailableFieldNames()}).
+     */
+    public List<String> getAvailableFieldNames() {
+        List<String> wanted = wantedFieldNames == null ? null : Arrays.asList(wantedFieldNames);
+        List<String> result = new ArrayList<>(present.length);
+        for (int slot = 0; slot < present.length; slot++) {
+            if (!present[slot] || (values[slot] == null && defaultValues[slot] == null)) {
+                continue;
+            }
+            String fieldName = fieldName(slot);
+            if (SET_ALL_FIELDS.equals(fieldName)) {
+                continue;
+            }
+            if (wanted == null || wanted.contains(fieldName) || confidences[slot] >= 0) {
+                result.add(fieldName);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Fills the provided (mutable) UserAgent with exactly the content of this result.
+     * @param userAgent The instance that must be overwritten.
+     */
+    void copyInto(UserAgent userAgent) {
+        userAgent.clearAllFields();
+        userAgent.setUserAgentString(userAgentString);
+        for (int slot = 0; slot < present.length; slot++) {
+            if (present[slot]) {
+                userAgent.setImmediate(fieldName(slot), new AgentField(defaultValues[slot], values[slot], confidences[slot]));
+            }
+        }
+        userAgent.setFlags(hasSyntaxError, hasAmbiguity, ambiguityCount);
+    }
+
+    /**
+     * Sets all values of this result in the provided UserAgent in the same way a matcher does
+     * (i.e. a value only replaces a value with a lower confidence).
+     * @param userAgent The instance that receives the values.
+     */
+    void applyTo(UserAgent userAgent) {
+        for (int slot = 0; slot < present.length; slot++) {
+            if (present[slot] && values[slot] != null) {
+                userAgent.set(fieldName(slot), values[slot], confidences[slot]);
+            }
+        }
+    }
+
+    List<String> getWantedFieldNames() {
+        return wantedFieldNames == null ? null : Arrays.asList(wantedFieldNames);
+    }
+
+    /**
+     * @return A new mutable copy of this result.
+     */
+    public UserAgent toUserAgent() {
+        return new UserAgent(this);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof ParsedUserAgent)) {
+            return false;
+        }
+        ParsedUserAgent that = (ParsedUserAgent) o;
+        // The slot layout is fully determined by the schema and the (sorted) extra field names.
+        return Objects.equals(userAgentString, that.userAgentString) &&
+            Objects.equals(schema, that.schema) &&
+            Arrays.equals(extraFieldNames, that.extraFieldNames) &&
+            Arrays.equals(present, that.present) &&
+            Arrays.equals(values, that.values) &&
+            Arrays.equals(confidences, that.confidences) &&
+            Arrays.equals(defaultValues, that.defaultValues);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = Objects.hashCode(userAgentString);
+        result = 31 * result + Arrays.hashCode(values);
+        result = 31 * result + Arrays.hashCode(confidences);
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        List<String> fieldNames = getAvailableFieldNames();
+        List<String> sortedFieldNames = new ArrayList<>(fieldNames.size());
+        for (String fieldName : PRE_SORTED_FIELDS_LIST) {
+            if (fieldNames.remove(fieldName)) {
+                sortedFieldNames.add(fieldName);
+            }
+        }
+        Collections.sort(fieldNames);
+        sortedFieldNames.addAll(fieldNames);
+
+        StringBuilder sb = new StringBuilder("  - user_agent_string: '\"" + userAgentString + "\"'\n");
+        int maxLength = 0;
+        for (String fieldName : sortedFieldNames) {
+            maxLength = Math.max(maxLength, fieldName.length());
+        }
+        for (String fieldName : sortedFieldNames) {
+            sb.append("    ").append(fieldName);
+            for (int l = fieldName.length(); l < maxLength + 2; l++) {
+                sb.append(' ');
+            }
+            sb.append(": '").append(valueOfSlot(slotOf(fieldName))).append('\'');
+            sb.append('\n');
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ * Yet Another UserAgent Analyzer
+ * Copyright (C) 2013-2019 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.basjes.parse.useragent;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A handle to an analyzer that is shared via the {@link UserAgentAnalyzerRegistry}.
+ * Closing it (only the first close counts) tells the registry that this user no longer needs the analyzer.
+ */
+public final class SharedUserAgentAnalyzer implements AutoCloseable {
+    private final UserAgentAnalyzer analyzer;
+    private final Runnable release;
+    private final AtomicBoolean closed = new AtomicBoolean(false);
+
+    SharedUserAgentAnalyzer(UserAgentAnalyzer analyzer, Runnable release) {
+        this.analyzer = analyzer;
+        this.release = release;
+    }
+
+    /**
+     * @return The shared analyzer (do NOT change its settings).
+     */
+    public UserAgentAnalyzer getAnalyzer() {
+        if (closed.get()) {
+            throw new IllegalStateException("This shared analyzer has already been closed.");
+        }
+        return analyzer;
+    }
+
+    public boolean isClosed() {
+        return closed.get();
+    }
+
+    @Override
+    public void close() {
+        if (closed.compareAndSet(false, true)) {
+            release.run();
+        }
+    }
+}
@@ -212,7 +212,7 @@ public class UserAgent extends UserAgentBaseListener implements Serializable, De
         hasSyntaxError = true;
         AgentField syntaxError = new AgentField("false");
         syntaxError.setValue("true", 1);
-        allFields.put(SYNTAX_ERROR, syntaxError);
+        fields().put(SYNTAX_ERROR, syntaxError);
     }
 
     @Override
@@ -251,12 +251,12 @@ public class UserAgent extends UserAgentBaseListener implements Serializable, De
         }
         UserAgent agent = (UserAgent) o;
         return Objects.equals(userAgentString, agent.userAgentString) &&
-               Objects.equals(allFields, agent.allFields);
+               Objects.equals(fields(), agent.fields());
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(userAgentString, allFields);
+        return Objects.hash(userAgentString, fields());
     }
 
     public static class AgentField implements Serializable {
@@ -275,6 +275,24 @@ public class UserAgent extends UserAgentBaseListener implements Serializable, De
             reset();
         }
 
+        AgentField(String defaultValue, String value, long confidence) {
+            this.defaultValue = defaultValue;
+            this.value = value;
+            this.confidence = confidence;
+        }
+
+        String getDefaultValue() {
+            return defaultValue;
+        }
+
+        String getRawValue() {
+            return value;
+        }
+
+        long getRawConfidence() {
+            return confidence;
+        }
+
         public void reset() {
             value = null;
             confidence = -1;
@@ -356,6 +374,24 @@ public class UserAgent extends UserAgentBaseListener implements Serializable, De
 
     private final Map<String, AgentField> allFields = new HashMap<>();
 
+    // If not null this instance is a read only view over this immutable (usually cached) result and allFields is stale.
+    // The result is only copied into allFields (copy-on-write) when this instance is changed or its fields are needed.
+    private ParsedUserAgent view = null;
+
+    /**
+     * @return The (mutable) fields of this instance, if this was a view they are copied from the viewed result first.
+     */
+    private Map<String, AgentField> fields() {
+        if (view != null) {
+            ParsedUserAgent source = view;
+            view = null;
+            wantedFieldNames = null;
+            setWantedFieldNames(source.getWantedFieldNames());
+            source.copyInto(this);
+        }
+        return allFields;
+    }
+
     private void setWantedFieldNames(Collection<String> newWantedFieldNames) {
         if (newWantedFieldNames != null) {
             if (!newWantedFieldNames.isEmpty()) {
@@ -389,13 +425,19 @@ public class UserAgent extends UserAgentBaseListener implements Serializable, De
         clone(userAgent);
     }
 
+    public UserAgent(ParsedUserAgent parsedUserAgent) {
+        clone(parsedUserAgent);
+    }
+
     public void clone(UserAgent userAgent) {
+        Map<String, AgentField> sourceFields = userAgent.fields();
+        view = null;
         wantedFieldNames = userAgent.wantedFieldNames;
         init();
         debug=userAgent.debug;
 
         setUserAgentString(userAgent.userAgentString);
-        for (Map.Entry<String, AgentField> entry : userAgent.allFields.entrySet()) {
+        for (Map.Entry<String, AgentField> entry : sourceFields.entrySet()) {
             set(entry.getKey(), entry.getValue().getValue(), entry.getValue().confidence);
         }
         hasSyntaxError  = userAgent.hasSyntaxError;
@@ -403,6 +445,41 @@ public class UserAgent extends UserAgentBaseListener implements Serializable, De
         ambiguityCount  = userAgent.ambiguityCount;
     }
 
+    /**
+     * Overwrite this instance with exactly the content of the immutable result.
+     * Nothing is copied: this instance becomes a view over the result until it is changed.
+     * @param parsedUserAgent The result to present.
+     */
+    public void clone(ParsedUserAgent parsedUserAgent) {
+        wantedFieldNames = null;
+        userAgentString = parsedUserAgent.getUserAgentString();
+        setFlags(parsedUserAgent.hasSyntaxError(), parsedUserAgent.hasAmbiguity(), parsedUserAgent.getAmbiguityCount());
+        view = parsedUserAgent;
+    }
+
+    Set<String> getWantedFieldNames() {
+        fields();
+        return wantedFieldNames;
+    }
+
+    Map<String, AgentField> getAllFields() {
+        return fields();
+    }
+
+    void clearAllFields() {
+        allFields.clear();
+    }
+
+    void setImmediate(String fieldName, AgentField agentField) {
+        allFields.put(fieldName, agentField);
+    }
+
+    void setFlags(boolean newHasSyntaxError, boolean newHasAmbiguity, int newAmbiguityCount) {
+        hasSyntaxError = newHasSyntaxError;
+        hasAmbiguity   = newHasAmbiguity;
+        ambiguityCount = newAmbiguityCount;
+    }
+
     private void init() {
         if (wantedFieldNames == null) {
             DEFAULTS_FOR_KNOWN_FIELDS.forEach((k, v) -> allFields.put(k, new UserAgent.AgentField(v.defaultValue)));
@@ -417,6 +494,7 @@ public class UserAgent extends UserAgentBaseListener implements Serializable, De
     }
 
     public void setUserAgentString(String newUserAgentString) {
+        fields(); // A view must be copied before it gets a different useragent.
         this.userAgentString = newUserAgentString;
         reset();
     }
@@ -430,7 +508,7 @@ public class UserAgent extends UserAgentBaseListener implements Serializable, De
         hasAmbiguity = false;
         ambiguityCount = 0;
 
-        for (AgentField field : allFields.values()) {
+        for (AgentField field : fields().values()) {
             field.reset();
         }
     }
@@ -442,13 +520,14 @@ public class UserAgent extends UserAgentBaseListener implements Serializable, De
     }
 
     public void processSetAll() {
-        AgentField setAllField = allFields.get(SET_ALL_FIELDS);
+        Map<String, AgentField> agentFields = fields();
+        AgentField setAllField = agentFields.get(SET_ALL_FIELDS);
         if (setAllField == null) {
             return;
         }
         String value = setAllField.getValue();
         long confidence = setAllField.confidence;
-        for (Map.Entry<String, AgentField> fieldEntry : allFields.entrySet()) {
+        for (Map.Entry<String, AgentField> fieldEntry : agentFields.entrySet()) {
             if (!isSystemField(fieldEntry.getKey())) {
                 fieldEntry.getValue().setValue(value, confidence);
             }
@@ -456,7 +535,8 @@ public class UserAgent extends UserAgentBaseListener implements Serializable, De
     }
 
     public void set(String attribute, String value, long confidence) {
-        AgentField field = allFields.get(attribute);
+        Map<String, AgentField> agentFields = fields();
+        AgentField field = agentFields.get(attribute);
         if (field == null) {
             field = new AgentField(null); // The fields we do not know get a 'null' default
         }
@@ -470,11 +550,12 @@ public class UserAgent extends UserAgentBaseListener implements Serializable, De
                 LOG.info("SKIP {} ({}) = {}", attribute, confidence, value);
             }
         }
-        allFields.put(attribute, field);
+        agentFields.put(attribute, field);
     }
 
     public void setForced(String attribute, String value, long confidence) {
-        AgentField field = allFields.get(attribute);
+        Map<String, AgentField> agentFields = fields();
+        AgentField field = agentFields.get(attribute);
         if (field == null) {
             field = new AgentField(null); // The fields we do not know get a 'null' default
         }
@@ -484,19 +565,25 @@ public class UserAgent extends UserAgentBaseListener implements Serializable, De
         if (debug && !wasEmpty) {
             LOG.info("USE  {} ({}) = {}", attribute, confidence, value);
         }
-        allFields.put(attribute, field);
+        agentFields.put(attribute, field);
     }
 
     // The appliedMatcher parameter is needed for development and debugging.
     public void set(UserAgent newValuesUserAgent, Matcher appliedMatcher) { // NOSONAR: Unused parameter
-        for (String fieldName : newValuesUserAgent.allFields.keySet()) {
-            AgentField field = newValuesUserAgent.allFields.get(fieldName);
+        Map<String, AgentField> newValues = newValuesUserAgent.fields();
+        for (String fieldName : newValues.keySet()) {
+            AgentField field = newValues.get(fieldName);
             set(fieldName, field.value, field.confidence);
         }
     }
 
+    // The appliedMatcher parameter is needed for development and debugging.
+    public void set(String attribute, String value, long confidence, Matcher appliedMatcher) { // NOSONAR: Unused parameter
+        set(attribute, value, confidence);
+    }
+
     void setImmediateForTesting(String fieldName, AgentField agentField) {
-        allFields.put(fieldName, agentField);
+        fields().put(fieldName, agentField);
     }
 
     public AgentField get(String fieldName) {
@@ -505,7 +592,7 @@ public class UserAgent extends UserAgentBaseListener implements Serializable, De
             agentField.setValue(userAgentString, 0L);
             return agentField;
         } else {
-            return allFields.get(fieldName);
+            return fields().get(fieldName);
         }
     }
 
@@ -513,6 +600,9 @@ public class UserAgent extends UserAgentBaseListener implements Serializable, De
         if (USERAGENT_FIELDNAME.equals(fieldName)) {
             return userAgentString;
         }
+        if (view != null) {
+            return view.getValue(fieldName);
+        }
         AgentField field = allFields.get(fieldName);
         if (field == null) {
             return UNKNOWN_VALUE;
@@ -524,6 +614,9 @@ public class UserAgent extends UserAgentBaseListener implements Serializable, De
         if (USERAGENT_FIELDNAME.equals(fieldName)) {
             return 0L;
         }
+        if (view != null) {
+            return view.getConfidence(fieldName);
+        }
         AgentField field = allFields.get(fieldName);
         if (field == null) {
             return -1L;
@@ -553,7 +646,7 @@ public class UserAgent extends UserAgentBaseListener implements Serializable, De
 
         int maxNameLength = 30;
         int maxValueLength = 0;
-        for (String fieldName : allFields.keySet()) {
+        for (String fieldName : fields().keySet()) {
             maxNameLength = Math.max(maxNameLength, fieldName.length());
         }
         for (String fieldName : fieldNames) {
@@ -673,7 +766,7 @@ public class UserAgent extends UserAgentBaseListener implements Serializable, De
         }
         for (String fieldName : fieldNames) {
             if (!USERAGENT_FIELDNAME.equals(fieldName)) {
-                AgentField field = allFields.get(fieldName);
+                AgentField field = fields().get(fieldName);
                 if (field != null && field.getValue() != null) {
                     sb.append("    ").append(fieldName);
                     for (int l = fieldName.length(); l < maxLength + 2; l++) {
@@ -688,6 +781,9 @@ public class UserAgent extends UserAgentBaseListener implements Serializable, De
     }
 
     public List<String> getAvailableFieldNames() {
+        if (view != null) {
+            return view.getAvailableFieldNames();
+        }
         List<String> resultSet = new ArrayList<>(allFields.size()+10);
         allFields.forEach((fieldName, value) -> {
             if (!resultSet.contains(fieldName)) {
@@ -19,7 +19,9 @@ package nl.basjes.parse.useragent;
 
 import com.esotericsoftware.kryo.DefaultSerializer;
 
+import java.io.IOException;
 import java.io.Serializable;
+import java.nio.file.Path;
 
 @DefaultSerializer(UserAgentAnalyzer.KryoSerializer.class)
 public final class UserAgentAnalyzer extends AbstractUserAgentAnalyzer implements Serializable {
@@ -28,6 +30,17 @@ public final class UserAgentAnalyzer extends AbstractUserAgentAnalyzer implement
         return new UserAgentAnalyzerBuilder(new UserAgentAnalyzer());
     }
 
+    /**
+     * Load a fully initialized analyzer from a snapshot that was written using {@link #saveSnapshot(Path)}.
+     * No Yaml files are parsed and no matchers are initialized so this is much faster than building a new one.
+     * @param snapshot The snapshot file.
+     * @return The analyzer.
+     * @throws IOException If the file could not be read or was created by a different version of Yauaa.
+     */
+    public static UserAgentAnalyzer fromSnapshot(Path snapshot) throws IOException {
+        return AnalyzerSnapshot.load(snapshot, UserAgentAnalyzer.class);
+    }
+
     public static final class UserAgentAnalyzerBuilder extends AbstractUserAgentAnalyzerBuilder<UserAgentAnalyzer, UserAgentAnalyzerBuilder>{
 
         private UserAgentAnalyzerBuilder(UserAgentAnalyzer newUaa) {
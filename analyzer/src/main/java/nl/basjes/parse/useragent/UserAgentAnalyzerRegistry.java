@@ -0,0 +1,297 @@
+/*
+ * Yet Another UserAgent Analyzer
+ * Copyright (C) 2013-2019 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.basjes.parse.useragent;
+
+import nl.basjes.parse.useragent.UserAgentAnalyzer.UserAgentAnalyzerBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+import static nl.basjes.parse.useragent.UserAgentAnalyzer.DEFAULT_PARSE_CACHE_SIZE;
+import static nl.basjes.parse.useragent.UserAgentAnalyzer.DEFAULT_USER_AGENT_MAX_LENGTH;
+
+/**
+ * A JVM wide registry of shared analyzers.
+ * Building an analyzer takes seconds and a lot of memory so all users within a single JVM
+ * (like the UDFs in a TaskManager or a HiveServer2) that need the same configuration get the same instance.
+ * Every {@link #acquire(Key)} must be matched by closing the returned {@link SharedUserAgentAnalyzer}.
+ * When the last one has been closed the analyzer is dropped from the registry.
+ * The shared analyzers must be treated as read only (i.e. do NOT change the cache size).
+ * <p>
+ * NOTE: Some hosts have no end of life callback and thus acquire a handle they can never release.
+ * These pin their entry (and thus the analyzer) for the life of the JVM:
+ * <ul>
+ *   <li>the Logstash filter (Yauaa),</li>
+ *   <li>the logparser UserAgentDissector and</li>
+ *   <li>the Drill UserAgentAnalyzerPreLoader (which holds its handle in a static field).</li>
+ * </ul>
+ * Callers that only need the field names (like the Hive UDF at query compile time and the Pig UDF on the front end)
+ * must NOT acquire an analyzer for that; they should use {@link #getAllPossibleFieldNamesSorted(Key)} instead.
+ */
+public final class UserAgentAnalyzerRegistry {
+    private static final Logger LOG = LoggerFactory.getLogger(UserAgentAnalyzerRegistry.class);
+
+    private static final Map<Key, Entry> ENTRIES = new HashMap<>();
+
+    // Per set of resources the names of all possible fields.
+    private static final Map<SortedSet<String>, List<String>> FIELD_NAMES = new HashMap<>();
+
+    private UserAgentAnalyzerRegistry() {
+    }
+
+    /**
+     * @return The key for an analyzer with all fields, the default resources, the default cache size and the default max length.
+     */
+    public static Key newKey() {
+        return new Key(Collections.emptySortedSet(), Collections.emptySortedSet(), DEFAULT_PARSE_CACHE_SIZE, DEFAULT_USER_AGENT_MAX_LENGTH);
+    }
+
+    /**
+     * Get the shared analyzer for the provided configuration.
+     * If it does not exist yet it is built; concurrent requests for the same configuration wait for that single build.
+     * @param key The configuration of the needed analyzer.
+     * @return The handle to the shared analyzer which MUST be closed when it is no longer needed.
+     */
+    public static SharedUserAgentAnalyzer acquire(Key key) {
+        Entry entry;
+        synchronized (ENTRIES) {
+            entry = ENTRIES.computeIfAbsent(key, Entry::new);
+            entry.references++;
+        }
+        try {
+            return new SharedUserAgentAnalyzer(entry.getAnalyzer(), () -> release(entry));
+        } catch (RuntimeException e) {
+            release(entry);
+            throw e;
+        }
+    }
+
+    /**
+     * Get the names of all fields an analyzer with the resources of this key can produce WITHOUT acquiring
+     * (and thus without pinning) an analyzer. This is intended for the hosts that only need the schema
+     * (like Hive at query compile time and the Pig front end).
+     * The first call for a set of resources loads the rules (without initializing the matchers) and only the
+     * names are retained.
+     * @param key The configuration (only the resources are relevant).
+     * @return The sorted list of the names of all possible fields.
+     */
+    public static List<String> getAllPossibleFieldNamesSorted(Key key) {
+        synchronized (FIELD_NAMES) {
+            return FIELD_NAMES.computeIfAbsent(key.getResources(), resources -> key.loadAllPossibleFieldNamesSorted());
+        }
+    }
+
+    private static void release(Entry entry) {
+        synchronized (ENTRIES) {
+            entry.references--;
+            if (entry.references == 0) {
+                ENTRIES.remove(entry.key);
+                LOG.info("Dropped the shared analyzer for {}", entry.key);
+            }
+        }
+    }
+
+    /**
+     * @return The number of different analyzers that are currently in use.
+     */
+    public static int getNumberOfAnalyzers() {
+        synchronized (ENTRIES) {
+            return ENTRIES.size();
+        }
+    }
+
+    /**
+     * @param key The configuration of the analyzer.
+     * @return The number of users that currently have the analyzer of this configuration.
+     */
+    public static int getReferences(Key key) {
+        synchronized (ENTRIES) {
+            Entry entry = ENTRIES.get(key);
+            if (entry == null) {
+                return 0;
+            }
+            return entry.references;
+        }
+    }
+
+    private static final class Entry {
+        private final Key key;
+        private int references = 0; // Only accessed while holding the lock on ENTRIES.
+        private UserAgentAnalyzer analyzer = null;
+
+        Entry(Key key) {
+            this.key = key;
+        }
+
+        // Building happens outside of the registry lock so different configurations can be built at the same time.
+        synchronized UserAgentAnalyzer getAnalyzer() {
+            if (analyzer == null) {
+                LOG.info("Building the shared analyzer for {}", key);
+                analyzer = key.build();
+            }
+            return analyzer;
+        }
+    }
+
+    /**
+     * The normalized configuration of a shared analyzer.
+     * Instances are immutable; all the "with" methods return a new Key.
+     */
+    public static final class Key {
+        private final SortedSet<String> fields; // Empty means all fields
+        private final SortedSet<String> resources;
+        private final int cacheSize;
+        private final int userAgentMaxLength;
+
+        private Key(SortedSet<String> fields, SortedSet<String> resources, int cacheSize, int userAgentMaxLength) {
+            this.fields = Collections.unmodifiableSortedSet(fields);
+            this.resources = Collections.unmodifiableSortedSet(resources);
+            this.cacheSize = Math.max(cacheSize, 0);
+            if (userAgentMaxLength <= 0) {
+                this.userAgentMaxLength = DEFAULT_USER_AGENT_MAX_LENGTH;
+            } else {
+                this.userAgentMaxLength = userAgentMaxLength;
+            }
+        }
+
+        public Key withField(String fieldName) {
+            return withFields(Collections.singletonList(fieldName));
+        }
+
+        /**
+         * @param fieldNames The additionally needed fields (if none are specified all fields are available).
+         * @return The new Key.
+         */
+        public Key withFields(Collection<String> fieldNames) {
+            SortedSet<String> newFields = new TreeSet<>(fields);
+            newFields.addAll(fieldNames);
+            return new Key(newFields, resources, cacheSize, userAgentMaxLength);
+        }
+
+        /**
+         * @param resourceString The resource list that needs to be loaded in addition to the default resources.
+         * @return The new Key.
+         */
+        public Key addResources(String resourceString) {
+            SortedSet<String> newResources = new TreeSet<>(resources);
+            newResources.add(resourceString);
+            return new Key(fields, newResources, cacheSize, userAgentMaxLength);
+        }
+
+        /**
+         * @param newCacheSize The new cache size value (0 = disable caching).
+         * @return The new Key.
+         */
+        public Key withCache(int newCacheSize) {
+            return new Key(fields, resources, newCacheSize, userAgentMaxLength);
+        }
+
+        public Key withoutCache() {
+            return withCache(0);
+        }
+
+        /**
+         * @param newUserAgentMaxLength The new max length of a useragent (0 or less = the default).
+         * @return The new Key.
+         */
+        public Key withUserAgentMaxLength(int newUserAgentMaxLength) {
+            return new Key(fields, resources, cacheSize, newUserAgentMaxLength);
+        }
+
+        public SortedSet<String> getFields() {
+            return fields;
+        }
+
+        public SortedSet<String> getResources() {
+            return resources;
+        }
+
+        public int getCacheSize() {
+            return cacheSize;
+        }
+
+        public int getUserAgentMaxLength() {
+            return userAgentMaxLength;
+        }
+
+        UserAgentAnalyzer build() {
+            UserAgentAnalyzerBuilder builder = UserAgentAnalyzer
+                .newBuilder()
+                .hideMatcherLoadStats()
+                .dropTests()
+                .immediateInitialization()
+                .withCache(cacheSize)
+                .withUserAgentMaxLength(userAgentMaxLength);
+            resources.forEach(builder::addResources);
+            if (!fields.isEmpty()) {
+                builder.withFields(fields);
+            }
+            return builder.build();
+        }
+
+        List<String> loadAllPossibleFieldNamesSorted() {
+            UserAgentAnalyzerBuilder builder = UserAgentAnalyzer
+                .newBuilder()
+                .hideMatcherLoadStats()
+                .dropTests()
+                .delayInitialization()
+                .withoutCache();
+            resources.forEach(builder::addResources);
+            return Collections.unmodifiableList(new ArrayList<>(builder.build().getAllPossibleFieldNamesSorted()));
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return cacheSize == key.cacheSize &&
+                userAgentMaxLength == key.userAgentMaxLength &&
+                fields.equals(key.fields) &&
+                resources.equals(key.resources);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(fields, resources, cacheSize, userAgentMaxLength);
+        }
+
+        @Override
+        public String toString() {
+            return "Key{" +
+                "fields=" + fields +
+                ", resources=" + resources +
+                ", cacheSize=" + cacheSize +
+                ", userAgentMaxLength=" + userAgentMaxLength +
+                '}';
+        }
+    }
+}
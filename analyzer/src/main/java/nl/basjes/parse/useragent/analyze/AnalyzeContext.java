@@ -0,0 +1,186 @@
+/*
+ * Yet Another UserAgent Analyzer
+ * Copyright (C) 2013-2019 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.basjes.parse.useragent.analyze;
+
+import nl.basjes.parse.useragent.analyze.WordRangeVisitor.Range;
+import nl.basjes.parse.useragent.parse.UserAgentTreeFlattener;
+import org.antlr.v4.runtime.tree.ParseTree;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * All the mutable state that is needed while analyzing a single useragent.
+ * After initialization the Matchers, MatcherActions and WalkLists are never modified anymore,
+ * everything that changes during a parse is stored in an instance of this class.
+ * So a single analyzer can be used by many threads at the same time as long as
+ * each of those threads uses a different AnalyzeContext.
+ * An instance is reused for many parses (it is reset at the start of every parse).
+ */
+public final class AnalyzeContext implements InformSink {
+
+    private final transient Analyzer analyzer;
+    private final transient List<Matcher> zeroInputMatchers;
+
+    // The state of the Matchers (indexed by the Matcher index)
+    private final long[]         actionsThatRequireInputAndReceivedInput;
+    private final boolean[]      alreadyNotifiedAnalyzerWeReceivedInput;
+
+    // The state of the MatcherActions (indexed by the MatcherAction index)
+    private final MatchesList[]  actionMatches;
+    private final Object[]       actionFoundValues;
+
+    private final MatcherList touchedMatchers = new MatcherList(32);
+
+    // When debugging a single parse all actions log what they do (only for the parse that uses this context).
+    private boolean verboseTemporarily = false;
+
+    private final transient UserAgentTreeFlattener flattener;
+
+    public AnalyzeContext(Analyzer analyzer,
+                          List<Matcher> zeroInputMatchers,
+                          int numberOfMatchers,
+                          int numberOfActions,
+                          boolean verbose) {
+        this.analyzer = analyzer;
+        this.zeroInputMatchers = zeroInputMatchers;
+        this.actionsThatRequireInputAndReceivedInput = new long[numberOfMatchers];
+        this.alreadyNotifiedAnalyzerWeReceivedInput = new boolean[numberOfMatchers];
+        this.actionMatches = new MatchesList[numberOfActions];
+        this.actionFoundValues = new Object[numberOfActions];
+        this.flattener = new UserAgentTreeFlattener(this);
+        this.flattener.setVerbose(verbose);
+    }
+
+    public UserAgentTreeFlattener getFlattener() {
+        return flattener;
+    }
+
+    public MatcherList getTouchedMatchers() {
+        return touchedMatchers;
+    }
+
+    /**
+     * @param newVerboseTemporarily If all actions must log what they do during the current parse.
+     */
+    public void setVerboseTemporarily(boolean newVerboseTemporarily) {
+        verboseTemporarily = newVerboseTemporarily;
+    }
+
+    boolean isVerboseTemporarily() {
+        return verboseTemporarily;
+    }
+
+    /**
+     * Resets the state of all matchers that were used during the previous parse.
+     */
+    public void reset() {
+        for (Matcher matcher : touchedMatchers) {
+            reset(matcher);
+        }
+        touchedMatchers.clear();
+
+        for (Matcher matcher : zeroInputMatchers) {
+            reset(matcher);
+        }
+    }
+
+    void reset(Matcher matcher) {
+        int matcherIndex = matcher.getMatcherIndex();
+        actionsThatRequireInputAndReceivedInput[matcherIndex] = 0;
+        alreadyNotifiedAnalyzerWeReceivedInput[matcherIndex] = false;
+        for (MatcherAction action : matcher.getDynamicActions()) {
+            int actionIndex = action.getActionIndex();
+            MatchesList matches = actionMatches[actionIndex];
+            if (matches != null) {
+                matches.clear();
+            }
+            actionFoundValues[actionIndex] = null;
+        }
+    }
+
+    // ------------------------------------------
+
+    MatchesList getMatches(MatcherAction action) {
+        int actionIndex = action.getActionIndex();
+        MatchesList matches = actionMatches[actionIndex];
+        if (matches == null) {
+            matches = new MatchesList(action.getInitialMatchesListSize());
+            actionMatches[actionIndex] = matches;
+        }
+        return matches;
+    }
+
+    boolean hasNoMatches(MatcherAction action) {
+        MatchesList matches = actionMatches[action.getActionIndex()];
+        return matches == null || matches.isEmpty();
+    }
+
+    Object getFoundValue(MatcherAction action) {
+        return actionFoundValues[action.getActionIndex()];
+    }
+
+    void setFoundValue(MatcherAction action, Object foundValue) {
+        actionFoundValues[action.getActionIndex()] = foundValue;
+    }
+
+    boolean allActionsThatRequireInputReceivedInput(Matcher matcher) {
+        return matcher.getActionsThatRequireInput() == actionsThatRequireInputAndReceivedInput[matcher.getMatcherIndex()];
+    }
+
+    void gotMyFirstStartingPoint(Matcher matcher) {
+        actionsThatRequireInputAndReceivedInput[matcher.getMatcherIndex()]++;
+    }
+
+    void receivedInput(Matcher matcher) {
+        int matcherIndex = matcher.getMatcherIndex();
+        if (alreadyNotifiedAnalyzerWeReceivedInput[matcherIndex]) {
+            return;
+        }
+        alreadyNotifiedAnalyzerWeReceivedInput[matcherIndex] = true;
+        if (matcher.getActionsThatRequireInput() == 0) {
+            return; // The zero input matchers are always evaluated
+        }
+        touchedMatchers.add(matcher);
+    }
+
+    // ------------------------------------------
+    // Everything the flattener needs is passed on to the analyzer (with this context).
+
+    @Override
+    public void inform(String path, String value, ParseTree ctx) {
+        analyzer.inform(this, path, value, ctx);
+    }
+
+    @Override
+    public boolean isRelevantPath(String path) {
+        return analyzer.isRelevantPath(path);
+    }
+
+    @Override
+    public Set<Range> getRequiredInformRanges(String treeName) {
+        return analyzer.getRequiredInformRanges(treeName);
+    }
+
+    @Override
+    public String toString() {
+        return "AnalyzeContext{" +
+            "touchedMatchers=" + touchedMatchers.size() +
+            '}';
+    }
+}
@@ -25,7 +25,22 @@ import java.util.Map;
 import java.util.Set;
 
 public interface Analyzer extends Serializable {
-    void inform(String path, String value, ParseTree ctx);
+    /**
+     * Inform the analyzer about a node in the parse tree where all per-parse state must be stored in the context.
+     * @param context The context of the parse that is running.
+     * @param path    The path of the node
+     * @param value   The value of the node
+     * @param ctx     The node in the parse tree
+     */
+    void inform(AnalyzeContext context, String path, String value, ParseTree ctx);
+
+    /**
+     * @param path The path of a node in the parse tree.
+     * @return False if there is no need to inform about this node or about anything below it.
+     */
+    default boolean isRelevantPath(String path) {
+        return true;
+    }
 
     void informMeAbout(MatcherAction matcherAction, String keyPattern);
 
@@ -41,6 +56,13 @@ public interface Analyzer extends Serializable {
         // Nothing to do
     }
 
+    /**
+     * @return If the matchers must compile their walk lists (i.e. run the linear parts of a walk in a single loop).
+     */
+    default boolean compileWalkLists() {
+        return true;
+    }
+
     Map<String, Map<String, String>> getLookups();
 
     Map<String, Set<String>> getLookupSets();
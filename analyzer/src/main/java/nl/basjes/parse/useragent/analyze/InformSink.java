@@ -0,0 +1,52 @@
+/*
+ * Yet Another UserAgent Analyzer
+ * Copyright (C) 2013-2019 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.basjes.parse.useragent.analyze;
+
+import nl.basjes.parse.useragent.analyze.WordRangeVisitor.Range;
+import org.antlr.v4.runtime.tree.ParseTree;
+
+import java.util.Collections;
+import java.util.Set;
+
+/**
+ * Receives the nodes of a flattened useragent (see {@link nl.basjes.parse.useragent.parse.UserAgentTreeFlattener}).
+ */
+public interface InformSink {
+    /**
+     * @param path  The path of the node
+     * @param value The value of the node
+     * @param ctx   The node in the parse tree
+     */
+    void inform(String path, String value, ParseTree ctx);
+
+    /**
+     * @param path The path of a node in the parse tree.
+     * @return False if there is no need to inform about this node or about anything below it.
+     */
+    default boolean isRelevantPath(String path) {
+        return true;
+    }
+
+    /**
+     * @param treeName The path of a node in the parse tree.
+     * @return The ranges of words of this node that must be informed separately.
+     */
+    default Set<Range> getRequiredInformRanges(String treeName) {
+        return Collections.emptySet();
+    }
+}
@@ -18,6 +18,7 @@
 package nl.basjes.parse.useragent.analyze;
 
 import nl.basjes.parse.useragent.UserAgent;
+import nl.basjes.parse.useragent.UserAgent.AgentField;
 import nl.basjes.parse.useragent.utils.YamlUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -29,6 +30,7 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
@@ -49,11 +51,18 @@ public class Matcher implements Serializable {
     private final List<MatcherAction> dynamicActions;
     private final List<MatcherAction> fixedStringActions;
 
-    private UserAgent newValuesUserAgent = null;
+    // The extract actions that actually determine the outcome (per attribute the last one wins).
+    private final List<MatcherExtractAction> resultActions;
+
+    // The attributes and confidences of the resultActions (i.e. the best this matcher can ever do for each field).
+    private String[] resultAttributes = new String[0];
+    private long[] resultConfidences = new long[0];
+
+    // The per parse state of this matcher is stored in the AnalyzeContext under this index.
+    private int matcherIndex = -1;
 
     private long actionsThatRequireInput;
     private boolean verbose;
-    private boolean permanentVerbose;
 
     public String getMatcherSourceLocation() {
         return matcherSourceLocation;
@@ -68,6 +77,7 @@ public class Matcher implements Serializable {
         this.fixedStringActions = new ArrayList<>();
         this.variableActions = new ArrayList<>();
         this.dynamicActions = new ArrayList<>();
+        this.resultActions = new ArrayList<>();
     }
 
     // Package private constructor for testing purposes only
@@ -76,6 +86,7 @@ public class Matcher implements Serializable {
         this.fixedStringActions = new ArrayList<>();
         this.variableActions = new ArrayList<>();
         this.dynamicActions = new ArrayList<>();
+        this.resultActions = new ArrayList<>();
     }
 
     public Map<String, Map<String, String>> getLookups() {
@@ -113,7 +124,7 @@ public class Matcher implements Serializable {
         this.fixedStringActions = new ArrayList<>();
         this.variableActions = new ArrayList<>();
         this.dynamicActions = new ArrayList<>();
-        this.newValuesUserAgent = new UserAgent(wantedFieldNames);
+        this.resultActions = new ArrayList<>();
 
         matcherSourceLocation = filename + ':' + matcherConfig.getStartMark().getLine();
 
@@ -175,8 +186,6 @@ public class Matcher implements Serializable {
             }
         }
 
-        permanentVerbose = verbose;
-
         if (verbose) {
             LOG.info("---------------------------");
             LOG.info("- MATCHER -");
@@ -202,13 +211,8 @@ public class Matcher implements Serializable {
                     dynamicActions.add(new MatcherRequireAction(configLine.expression, this));
                     break;
                 case EXTRACT:
-                    MatcherExtractAction action =
-                        new MatcherExtractAction(configLine.attribute, configLine.confidence, configLine.expression, this);
-                    dynamicActions.add(action);
-
-                    // Make sure the field actually exists
-                    newValuesUserAgent.set(configLine.attribute, "Dummy", -9999);
-                    action.setResultAgentField(newValuesUserAgent.get(configLine.attribute));
+                    dynamicActions.add(
+                        new MatcherExtractAction(configLine.attribute, configLine.confidence, configLine.expression, this));
                     break;
                 default:
                     break;
@@ -217,6 +221,31 @@ public class Matcher implements Serializable {
 
     }
 
+    // While initializing in parallel the registrations in the analyzer are recorded here (null = direct).
+    private transient List<Runnable> pendingRegistrations = null;
+
+    /**
+     * Does the same as {@link #initialize()} but only records the registrations (informMeAbout, lookingForRange, ...)
+     * that must be done in the analyzer. Because nothing shared is modified this can be done for many matchers in parallel.
+     * The recorded registrations must be done afterwards using {@link #registerInAnalyzer()}.
+     */
+    public void initializeWithoutRegistering() {
+        pendingRegistrations = new ArrayList<>();
+        initialize();
+    }
+
+    /**
+     * Do the registrations in the analyzer that were recorded by {@link #initializeWithoutRegistering()}
+     * in the same order as {@link #initialize()} would have done them.
+     */
+    public void registerInAnalyzer() {
+        List<Runnable> registrations = pendingRegistrations;
+        pendingRegistrations = null;
+        if (registrations != null) {
+            registrations.forEach(Runnable::run);
+        }
+    }
+
     public void initialize() {
         long newEntries = 0;
         long initStart = System.nanoTime();
@@ -244,7 +273,6 @@ public class Matcher implements Serializable {
             if (action instanceof MatcherExtractAction) {
                 if (((MatcherExtractAction)action).isFixedValue()) {
                     fixedStringActions.add(action);
-                    action.obtainResult();
                 }
             }
         }
@@ -252,6 +280,29 @@ public class Matcher implements Serializable {
         fixedStringActions.forEach(dynamicActions::remove);
         uselessRequireActions.forEach(dynamicActions::remove);
 
+        // The fixed values are applied first, the dynamic values after that.
+        // If the same attribute is extracted multiple times the last one wins.
+        Map<String, MatcherExtractAction> resultActionsMap = new LinkedHashMap<>();
+        for (MatcherAction action : fixedStringActions) {
+            MatcherExtractAction extractAction = (MatcherExtractAction) action;
+            resultActionsMap.put(extractAction.getAttribute(), extractAction);
+        }
+        for (MatcherAction action : dynamicActions) {
+            if (action instanceof MatcherExtractAction) {
+                MatcherExtractAction extractAction = (MatcherExtractAction) action;
+                resultActionsMap.put(extractAction.getAttribute(), extractAction);
+            }
+        }
+        resultActions.clear();
+        resultActions.addAll(resultActionsMap.values());
+
+        resultAttributes = new String[resultActions.size()];
+        resultConfidences = new long[resultActions.size()];
+        for (int i = 0; i < resultActions.size(); i++) {
+            resultAttributes[i] = resultActions.get(i).getAttribute();
+            resultConfidences[i] = resultActions.get(i).getConfidence();
+        }
+
         // Verify that a variable only contains the variables that have been defined BEFORE it (also not referencing itself).
         // If all is ok we link them
         Set<MatcherAction> seenVariables = new HashSet<>(variableActions.size());
@@ -287,6 +338,12 @@ public class Matcher implements Serializable {
         // Make sure the variable actions are BEFORE the rest in the list
         dynamicActions.addAll(0, variableActions);
 
+        if (analyzer.compileWalkLists()) {
+            for (MatcherAction action : dynamicActions) {
+                action.compileWalkList();
+            }
+        }
+
         actionsThatRequireInput = countActionsThatMustHaveMatches(dynamicActions);
 
         long initFinish = System.nanoTime();
@@ -304,7 +361,6 @@ public class Matcher implements Serializable {
         long actionsThatMustHaveMatches = 0;
         for (MatcherAction action : actions) {
             // If an action exists which without any data can be valid, then we must force the evaluation
-            action.reset();
             if (action.mustHaveMatches()) {
                 actionsThatMustHaveMatches++;
             }
@@ -333,14 +389,26 @@ public class Matcher implements Serializable {
     }
 
     public void lookingForRange(String treeName, WordRangeVisitor.Range range) {
+        if (pendingRegistrations != null) {
+            pendingRegistrations.add(() -> analyzer.lookingForRange(treeName, range));
+            return;
+        }
         analyzer.lookingForRange(treeName, range);
     }
 
     public void informMeAbout(MatcherAction matcherAction, String keyPattern) {
+        if (pendingRegistrations != null) {
+            pendingRegistrations.add(() -> analyzer.informMeAbout(matcherAction, keyPattern));
+            return;
+        }
         analyzer.informMeAbout(matcherAction, keyPattern);
     }
 
     public void informMeAboutPrefix(MatcherAction matcherAction, String keyPattern, String prefix) {
+        if (pendingRegistrations != null) {
+            pendingRegistrations.add(() -> analyzer.informMeAboutPrefix(matcherAction, keyPattern, prefix));
+            return;
+        }
         analyzer.informMeAboutPrefix(matcherAction, keyPattern, prefix);
     }
 
@@ -352,13 +420,52 @@ public class Matcher implements Serializable {
         analyzerSet.add(matcherAction);
     }
 
+    /**
+     * Assign the indexes under which the per parse state of this matcher and its actions
+     * is stored in an {@link AnalyzeContext}.
+     * @param newMatcherIndex The index of this matcher
+     * @param firstActionIndex The first index available for the actions of this matcher
+     * @return The first action index that is available for the next matcher
+     */
+    public int assignIndexes(int newMatcherIndex, int firstActionIndex) {
+        this.matcherIndex = newMatcherIndex;
+        int actionIndex = firstActionIndex;
+        for (MatcherAction action : dynamicActions) {
+            action.setActionIndex(actionIndex++);
+        }
+        return actionIndex;
+    }
+
+    public int getMatcherIndex() {
+        return matcherIndex;
+    }
+
+    List<MatcherAction> getDynamicActions() {
+        return dynamicActions;
+    }
+
+    /**
+     * @return True if the outcome of this matcher does not depend on the input at all (it only has fixed values).
+     */
+    public boolean isConstant() {
+        return dynamicActions.isEmpty();
+    }
+
+    /**
+     * @return The extract actions that determine the outcome of this matcher (in the order they are applied).
+     */
+    public List<MatcherExtractAction> getResultActions() {
+        return resultActions;
+    }
+
     /**
      * Fires all matcher actions.
      * IFF all success then we tell the userAgent
      *
      * @param userAgent The useragent that needs to analyzed
+     * @param context The context of the current parse
      */
-    public void analyze(UserAgent userAgent) {
+    public void analyze(UserAgent userAgent, AnalyzeContext context) {
 
         if (verbose) {
             LOG.info("");
@@ -366,13 +473,13 @@ public class Matcher implements Serializable {
             LOG.info("ANALYSE ----------------------------");
             boolean good = true;
             for (MatcherAction action : dynamicActions) {
-                if (action.cannotBeValid()) {
+                if (action.cannotBeValid(context)) {
                     LOG.error("CANNOT BE VALID : {}", action.getMatchExpression());
                     good = false;
                 }
             }
             for (MatcherAction action : dynamicActions) {
-                if (!action.obtainResult()) {
+                if (!action.obtainResult(context)) {
                     LOG.error("FAILED : {}", action.getMatchExpression());
                     good = false;
                 }
@@ -384,78 +491,77 @@ public class Matcher implements Serializable {
                 return;
             }
         } else {
-            if (actionsThatRequireInput != actionsThatRequireInputAndReceivedInput) {
+            if (!context.allActionsThatRequireInputReceivedInput(this)) {
                 return;
             }
             for (MatcherAction action : dynamicActions) {
-                if (action.obtainResult()) {
+                if (action.obtainResult(context)) {
                     continue;
                 }
                 return; // If one of them is bad we skip the rest
             }
         }
-        userAgent.set(newValuesUserAgent, this);
-    }
-
-    public boolean getVerbose() {
-        return verbose;
+        for (MatcherExtractAction action : resultActions) {
+            userAgent.set(action.getAttribute(), action.getResultValue(context), action.getConfidence(), this);
+        }
     }
 
-    private boolean alreadyNotifiedAnalyzerWeReceivedInput = false;
-    void receivedInput() {
-        if (alreadyNotifiedAnalyzerWeReceivedInput) {
-            return;
+    /**
+     * A value is only replaced by a value with a higher confidence. So if all the fields this matcher
+     * sets already have a value with at least the confidence this matcher would give them then
+     * running this matcher cannot change the outcome.
+     * @param userAgent The (partial) result of the current parse.
+     * @return True if this matcher can change at least one field of the result.
+     */
+    public boolean canImproveResult(UserAgent userAgent) {
+        for (int i = 0; i < resultAttributes.length; i++) {
+            AgentField field = userAgent.get(resultAttributes[i]);
+            if (field == null || field.getConfidence() < resultConfidences[i]) {
+                return true;
+            }
         }
-        analyzer.receivedInput(this);
-        alreadyNotifiedAnalyzerWeReceivedInput = true;
+        return false;
     }
 
-    public long getActionsThatRequireInput() {
-        return actionsThatRequireInput;
+    /**
+     * Record the highest confidence this matcher can give each field.
+     * @param maxConfidences The highest confidence per field so far which is updated with the values of this matcher.
+     */
+    public void collectMaxConfidences(Map<String, Long> maxConfidences) {
+        for (int i = 0; i < resultAttributes.length; i++) {
+            maxConfidences.merge(resultAttributes[i], resultConfidences[i], Math::max);
+        }
     }
 
-    private long actionsThatRequireInputAndReceivedInput = 0;
-    void gotMyFirstStartingPoint() {
-        actionsThatRequireInputAndReceivedInput++;
+    public boolean getVerbose() {
+        return verbose;
     }
 
-
-    public void setVerboseTemporarily(boolean newVerbose) {
-        for (MatcherAction action : dynamicActions) {
-            action.setVerbose(newVerbose, true);
-        }
+    public long getActionsThatRequireInput() {
+        return actionsThatRequireInput;
     }
 
-    public void reset() {
-        // If there are no dynamic actions we have fixed strings only
-        alreadyNotifiedAnalyzerWeReceivedInput = false;
-        actionsThatRequireInputAndReceivedInput = 0;
-        verbose = permanentVerbose;
-        for (MatcherAction action : dynamicActions) {
-            action.reset();
-        }
-    }
 
-    public List<MatchesList.Match> getMatches() {
+    public List<MatchesList.Match> getMatches(AnalyzeContext context) {
         List<MatchesList.Match> allMatches = new ArrayList<>(128);
         for (MatcherAction action : dynamicActions) {
-            allMatches.addAll(action.getMatches());
+            allMatches.addAll(action.getMatches(context));
         }
         return allMatches;
     }
 
-    public List<MatchesList.Match> getUsedMatches() {
+    public List<MatchesList.Match> getUsedMatches(AnalyzeContext context) {
         List<MatchesList.Match> allMatches = new ArrayList<>(128);
         for (MatcherAction action : dynamicActions) {
-            if (action.cannotBeValid()) {
+            if (action.cannotBeValid(context)) {
                 return new ArrayList<>(); // There is NO way one of them is valid
             }
         }
         for (MatcherAction action : dynamicActions) {
-            if (!action.obtainResult()) {
+            if (!action.obtainResult(context)) {
                 return new ArrayList<>(); // There is NO way one of them is valid
             } else {
-                allMatches.addAll(action.getMatches());
+                allMatches.addAll(action.getMatches(context));
             }
         }
         return allMatches;
@@ -470,25 +576,18 @@ public class Matcher implements Serializable {
             if (action instanceof MatcherVariableAction) {
                 sb.append("        @").append(((MatcherVariableAction) action).getVariableName())
                     .append(":    ").append(action.getMatchExpression()).append('\n');
-                sb.append("        -->").append(action.getMatches().toStrings()).append('\n');
             }
         }
         sb.append("    REQUIRE:\n");
         for (MatcherAction action : dynamicActions) {
             if (action instanceof MatcherRequireAction) {
                 sb.append("        ").append(action.getMatchExpression()).append('\n');
-                if (action.getMatches() != null) {
-                    sb.append("        -->").append(action.getMatches().toStrings()).append('\n');
-                }
             }
         }
         sb.append("    EXTRACT:\n");
         for (MatcherAction action : dynamicActions) {
             if (action instanceof MatcherExtractAction) {
                 sb.append("        ").append(action.toString()).append('\n');
-                if (action.getMatches() != null) {
-                    sb.append("        -->").append(action.getMatches()).append('\n');
-                }
             }
         }
         for (MatcherAction action : fixedStringActions) {
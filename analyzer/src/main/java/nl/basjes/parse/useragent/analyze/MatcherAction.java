@@ -19,6 +19,7 @@ package nl.basjes.parse.useragent.analyze;
 
 import nl.basjes.parse.useragent.analyze.WordRangeVisitor.Range;
 import nl.basjes.parse.useragent.analyze.treewalker.TreeExpressionEvaluator;
+import nl.basjes.parse.useragent.analyze.treewalker.steps.Step;
 import nl.basjes.parse.useragent.analyze.treewalker.steps.WalkList.WalkResult;
 import nl.basjes.parse.useragent.parser.UserAgentTreeWalkerBaseVisitor;
 import nl.basjes.parse.useragent.parser.UserAgentTreeWalkerLexer;
@@ -77,30 +78,73 @@ public abstract class MatcherAction implements Serializable {
         return evaluator;
     }
 
+    /**
+     * Compile the walk list of this action (see WalkList.compile()).
+     * Must be done after the initialization.
+     * @return The number of steps that were replaced.
+     */
+    long compileWalkList() {
+        if (evaluator == null) {
+            return 0;
+        }
+        return evaluator.compileWalkList();
+    }
+
     private static final Logger LOG = LoggerFactory.getLogger(MatcherAction.class);
 
     protected Matcher matcher;
-    private MatchesList matches;
     private boolean mustHaveMatches = false;
 
+    // If the first step can only succeed for the known values of a set or lookup then only those values are accepted.
+    private Step knownValuesFilter = null;
+
+    // The per parse state of this action is stored in the AnalyzeContext under this index.
+    private int actionIndex = -1;
+    private int initialMatchesListSize = 0;
+
+    int getActionIndex() {
+        return actionIndex;
+    }
+
+    void setActionIndex(int newActionIndex) {
+        this.actionIndex = newActionIndex;
+    }
+
+    int getInitialMatchesListSize() {
+        return initialMatchesListSize;
+    }
+
     boolean mustHaveMatches() {
         return mustHaveMatches;
     }
 
+    /**
+     * @return If this action only wants to be informed about the values accepted by {@link #acceptsValue(String)}.
+     */
+    public boolean hasKnownValuesFilter() {
+        return knownValuesFilter != null;
+    }
+
+    /**
+     * @param lowerCaseValue The lowercase value of the node the analyzer wants to inform this action about.
+     * @return False if this value can never lead to a result for this action.
+     */
+    public boolean acceptsValue(String lowerCaseValue) {
+        return knownValuesFilter == null || knownValuesFilter.acceptsKnownValue(lowerCaseValue);
+    }
+
     boolean verbose = false;
-    private boolean verbosePermanent = false;
-    private boolean verboseTemporary = false;
 
     private void setVerbose(boolean newVerbose) {
-        setVerbose(newVerbose, false);
+        this.verbose = newVerbose;
     }
 
-    public void setVerbose(boolean newVerbose, boolean temporary) {
-        this.verbose = newVerbose;
-        if (!temporary) {
-            this.verbosePermanent = newVerbose;
-        }
-        this.verboseTemporary = temporary;
+    /**
+     * @param context The context of the current parse
+     * @return If this action must log what it does in the current parse (i.e. it is verbose or the parse is debugged).
+     */
+    boolean isVerbose(AnalyzeContext context) {
+        return verbose || context.isVerboseTemporarily();
     }
 
     public String getMatchExpression() {
@@ -158,7 +202,7 @@ public abstract class MatcherAction implements Serializable {
         if (fixedValue != null) {
             setFixedValue(fixedValue);
             mustHaveMatches = false;
-            matches = new MatchesList(0);
+            initialMatchesListSize = 0;
             return 0; // Not interested in any patterns
         }
 
@@ -171,11 +215,17 @@ public abstract class MatcherAction implements Serializable {
             mustHaveMatches = false;
         }
 
-        int listSize = 0;
+        // A value that is not in the set or lookup used by the first step can never lead to a result.
+        // This is only valid if having no matches at all is the same as having only failing matches (i.e. no IsNull).
+        Step firstStep = evaluator.getFirstStep();
+        if (mustHaveMatches && firstStep != null && firstStep.onlyAcceptsKnownValues()) {
+            knownValuesFilter = firstStep;
+        }
+
+        initialMatchesListSize = 0;
         if (informs > 0) {
-            listSize = 1;
+            initialMatchesListSize = 1;
         }
-        this.matches = new MatchesList(listSize);
         return informs;
     }
 
@@ -270,51 +320,59 @@ public abstract class MatcherAction implements Serializable {
      * For each key that this action wants to be notified for this method is called.
      * Note that on a single parse event the same name CAN be called multiple times!!
      *
-     * @param key    The key of the node
-     * @param value  The value that was found
-     * @param result The node in the parser tree where the match occurred
+     * @param context The context of the current parse
+     * @param key     The key of the node
+     * @param value   The value that was found
+     * @param result  The node in the parser tree where the match occurred
      */
-    public void inform(String key, String value, ParseTree result) {
-        matcher.receivedInput();
+    public void inform(AnalyzeContext context, String key, String value, ParseTree result) {
+        context.receivedInput(matcher);
 
+        MatchesList matches = context.getMatches(this);
         // Only if this needs input we tell the matcher on the first one.
         if (mustHaveMatches && matches.isEmpty()) {
-            matcher.gotMyFirstStartingPoint();
+            context.gotMyFirstStartingPoint(matcher);
         }
         matches.add(key, value, result);
     }
 
-    protected abstract void inform(String key, WalkResult foundValue);
+    protected abstract void inform(AnalyzeContext context, String key, WalkResult foundValue);
 
     /**
+     * @param context The context of the current parse
      * @return If it is impossible that this can be valid it returns true, else false.
      */
-    boolean cannotBeValid() {
+    boolean cannotBeValid(AnalyzeContext context) {
         if (mustHaveMatches) {
-            return matches.isEmpty();
+            return context.hasNoMatches(this);
         }
         return false;
     }
 
     /**
      * Called after all nodes have been notified.
+     * @param context The context of the current parse
      * @return true if the obtainResult result was valid. False will fail the entire matcher this belongs to.
      */
-    public abstract boolean obtainResult();
+    public abstract boolean obtainResult(AnalyzeContext context);
 
-    boolean isValidIsNull() {
-        return matches.isEmpty() && evaluator.usesIsNull();
+    boolean isValidIsNull(AnalyzeContext context) {
+        return context.hasNoMatches(this) && evaluator.usesIsNull();
     }
 
     /**
      * Optimization: Only if there is a possibility that all actions for this matcher CAN be valid do we
      * actually perform the analysis and do the (expensive) tree walking and matching.
+     * @param context The context of the current parse
      */
-    void processInformedMatches() {
-        for (MatchesList.Match match : matches) {
+    void processInformedMatches(AnalyzeContext context) {
+        if (context.hasNoMatches(this)) {
+            return;
+        }
+        for (MatchesList.Match match : context.getMatches(this)) {
             WalkResult matchedValue = evaluator.evaluate(match.getResult(), match.getKey(), match.getValue());
             if (matchedValue != null) {
-                inform(match.getKey(), matchedValue);
+                inform(context, match.getKey(), matchedValue);
                 break; // We always stick to the first match
             }
         }
@@ -433,15 +491,8 @@ public abstract class MatcherAction implements Serializable {
 
     // ============================================================================================================
 
-    public void reset() {
-        matches.clear();
-        if (verboseTemporary) {
-            verbose = verbosePermanent;
-        }
-    }
-
-    public MatchesList getMatches() {
-        return matches;
+    public MatchesList getMatches(AnalyzeContext context) {
+        return context.getMatches(this);
     }
 
     @Override
@@ -450,11 +501,8 @@ public abstract class MatcherAction implements Serializable {
             "matchExpression='" + matchExpression + '\'' +
             ", evaluator=" + evaluator +
 //            ", matcher=" + matcher +
-            ", matches=" + matches +
             ", mustHaveMatches=" + mustHaveMatches +
             ", verbose=" + verbose +
-            ", verbosePermanent=" + verbosePermanent +
-            ", verboseTemporary=" + verboseTemporary +
             '}';
     }
 }
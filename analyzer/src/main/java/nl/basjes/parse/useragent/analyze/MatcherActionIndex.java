@@ -0,0 +1,210 @@
+/*
+ * Yet Another UserAgent Analyzer
+ * Copyright (C) 2013-2019 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.basjes.parse.useragent.analyze;
+
+import java.io.Serializable;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A read only open addressing hash table from the (lowercase) inform keys to the interested MatcherActions.
+ * <p>
+ * The keys have the forms {@code path}, {@code path="value"} and {@code path{"prefix"}.
+ * The lookups for these forms are done directly from the path and value: the hash is calculated
+ * incrementally over the characters (lowercasing them on the fly) and the probe compares the
+ * characters in place. So no Strings are created or lowercased during a lookup.
+ * <p>
+ * The on the fly lowercasing is only done for ASCII; if the path or value contains any other character
+ * the caller must use {@link #get(String)} with the key lowercased by {@link String#toLowerCase}.
+ */
+public final class MatcherActionIndex implements Serializable {
+
+    private static final MatcherAction[] NO_ACTIONS = new MatcherAction[0];
+
+    private final String[] keys;
+    private final int[] hashes;
+    private final MatcherAction[][] actions;
+    private final int mask;
+    private final int size;
+
+    @SuppressWarnings("unused") // Private constructor for serialization systems ONLY (like Kryo)
+    private MatcherActionIndex() {
+        keys = new String[1];
+        hashes = new int[1];
+        actions = new MatcherAction[1][];
+        mask = 0;
+        size = 0;
+    }
+
+    public MatcherActionIndex(Map<String, Set<MatcherAction>> informMatcherActions) {
+        size = informMatcherActions.size();
+        // Load factor below 0.5 keeps the probe sequences short.
+        int capacity = Integer.highestOneBit(Math.max(size, 1) * 2) * 2;
+        keys = new String[capacity];
+        hashes = new int[capacity];
+        actions = new MatcherAction[capacity][];
+        mask = capacity - 1;
+
+        for (Map.Entry<String, Set<MatcherAction>> entry : informMatcherActions.entrySet()) {
+            String key = entry.getKey();
+            int hash = key.hashCode();
+            int slot = spread(hash) & mask;
+            while (keys[slot] != null) {
+                slot = (slot + 1) & mask;
+            }
+            keys[slot] = key;
+            hashes[slot] = hash;
+            actions[slot] = entry.getValue().toArray(NO_ACTIONS);
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * @param input The text to check
+     * @return true if all characters are ASCII so the lookups without String creation can be used.
+     */
+    public static boolean isAscii(String input) {
+        for (int i = 0; i < input.length(); i++) {
+            if (input.charAt(i) >= 0x80) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static char toLower(char c) {
+        return (c >= 'A' && c <= 'Z') ? (char) (c + ('a' - 'A')) : c;
+    }
+
+    private static int hash(int hash, String input, int length) {
+        int h = hash;
+        for (int i = 0; i < length; i++) {
+            h = 31 * h + toLower(input.charAt(i));
+        }
+        return h;
+    }
+
+    /**
+     * The hash of a path that can be used for all lookups for that path.
+     * @param path The path (ASCII only)
+     * @return The hash of the path
+     */
+    public static int hashPath(String path) {
+        return hash(0, path, path.length());
+    }
+
+    /**
+     * @param lowerCaseKey The complete key (must already be lowercase)
+     * @return The actions or null if none.
+     */
+    public MatcherAction[] get(String lowerCaseKey) {
+        int hash = lowerCaseKey.hashCode();
+        int slot = spread(hash) & mask;
+        String key;
+        while ((key = keys[slot]) != null) {
+            if (hashes[slot] == hash && key.equals(lowerCaseKey)) {
+                return actions[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        return null;
+    }
+
+    /**
+     * Lookup {@code path}
+     * @param path The path (ASCII only)
+     * @param pathHash The result of {@link #hashPath(String)} for this path
+     * @return The actions or null if none.
+     */
+    public MatcherAction[] getPath(String path, int pathHash) {
+        return find(pathHash, path, null, null, 0, (char) 0);
+    }
+
+    /**
+     * Lookup {@code path="value"}
+     * @param path The path (ASCII only)
+     * @param pathHash The result of {@link #hashPath(String)} for this path
+     * @param value The value (ASCII only)
+     * @return The actions or null if none.
+     */
+    public MatcherAction[] getPathValue(String path, int pathHash, String value) {
+        int hash = 31 * (31 * pathHash + '=') + '"';
+        hash = 31 * hash(hash, value, value.length()) + '"';
+        return find(hash, path, "=\"", value, value.length(), '"');
+    }
+
+    /**
+     * Lookup {@code path{"prefix"}
+     * @param path The path (ASCII only)
+     * @param pathHash The result of {@link #hashPath(String)} for this path
+     * @param value The value (ASCII only)
+     * @param prefixLength The number of characters of the value to use as the prefix.
+     * @return The actions or null if none.
+     */
+    public MatcherAction[] getPathPrefix(String path, int pathHash, String value, int prefixLength) {
+        int hash = 31 * (31 * pathHash + '{') + '"';
+        hash = 31 * hash(hash, value, prefixLength) + '"';
+        return find(hash, path, "{\"", value, prefixLength, '"');
+    }
+
+    private MatcherAction[] find(int hash, String path, String separator, String value, int valueLength, char close) {
+        int length = path.length();
+        if (separator != null) {
+            length += separator.length() + valueLength + 1;
+        }
+        int slot = spread(hash) & mask;
+        String key;
+        while ((key = keys[slot]) != null) {
+            if (hashes[slot] == hash && key.length() == length &&
+                matches(key, path, separator, value, valueLength, close)) {
+                return actions[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        return null;
+    }
+
+    private static boolean matches(String key, String path, String separator, String value, int valueLength, char close) {
+        int pos = 0;
+        for (int i = 0; i < path.length(); i++) {
+            if (key.charAt(pos++) != toLower(path.charAt(i))) {
+                return false;
+            }
+        }
+        if (separator == null) {
+            return true;
+        }
+        if (!key.startsWith(separator, pos)) {
+            return false;
+        }
+        pos += separator.length();
+        for (int i = 0; i < valueLength; i++) {
+            if (key.charAt(pos++) != toLower(value.charAt(i))) {
+                return false;
+            }
+        }
+        return key.charAt(pos) == close;
+    }
+}
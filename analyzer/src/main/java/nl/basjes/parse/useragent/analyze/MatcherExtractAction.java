@@ -17,7 +17,6 @@
 
 package nl.basjes.parse.useragent.analyze;
 
-import nl.basjes.parse.useragent.UserAgent;
 import nl.basjes.parse.useragent.analyze.treewalker.steps.WalkList.WalkResult;
 import nl.basjes.parse.useragent.parser.UserAgentTreeWalkerParser;
 import org.antlr.v4.runtime.ParserRuleContext;
@@ -29,10 +28,8 @@ public class MatcherExtractAction extends MatcherAction {
 
     private final String attribute;
     private final long confidence;
-    private String foundValue = null;
     private String fixedValue = null;
     private final String expression;
-    private UserAgent.AgentField resultAgentField;
 
     @SuppressWarnings("unused") // Private constructor for serialization systems ONLY (like Kryo)
     private MatcherExtractAction() {
@@ -48,10 +45,6 @@ public class MatcherExtractAction extends MatcherAction {
         init(config, matcher);
     }
 
-    public void setResultAgentField(UserAgent.AgentField newResultAgentField){
-        resultAgentField = newResultAgentField;
-    }
-
     protected ParserRuleContext parseWalkerExpression(UserAgentTreeWalkerParser parser) {
         return parser.matcherExtract();
     }
@@ -71,8 +64,13 @@ public class MatcherExtractAction extends MatcherAction {
         return attribute;
     }
 
-    public void inform(String key, WalkResult newlyFoundValue) {
-        if (verbose) {
+    public long getConfidence() {
+        return confidence;
+    }
+
+    @Override
+    public void inform(AnalyzeContext context, String key, WalkResult newlyFoundValue) {
+        if (isVerbose(context)) {
             LOG.info("INFO  : EXTRACT ({}): {}", attribute, key);
             LOG.info("NEED  : EXTRACT ({}): {}", attribute, getMatchExpression());
         }
@@ -81,40 +79,45 @@ public class MatcherExtractAction extends MatcherAction {
          * This is also the priority in the fields.
          * So we always use the first value we find.
          */
-        if (this.foundValue == null) {
-            this.foundValue = newlyFoundValue.getValue();
-            if (verbose) {
+        if (context.getFoundValue(this) == null) {
+            context.setFoundValue(this, newlyFoundValue.getValue());
+            if (isVerbose(context)) {
                 LOG.info("KEPT  : EXTRACT ({}): {}", attribute, key);
             }
         }
     }
 
-    public boolean obtainResult() {
-        processInformedMatches();
+    @Override
+    public boolean obtainResult(AnalyzeContext context) {
+        processInformedMatches(context);
         if (fixedValue != null) {
-            if (verbose) {
+            if (isVerbose(context)) {
                 LOG.info("Set fixedvalue ({})[{}]: {}", attribute, confidence, fixedValue);
             }
-            resultAgentField.setValueForced(fixedValue, confidence);
             return true;
         }
+        Object foundValue = context.getFoundValue(this);
         if (foundValue != null) {
-            if (verbose) {
+            if (isVerbose(context)) {
                 LOG.info("Set parsevalue ({})[{}]: {}", attribute, confidence, foundValue);
             }
-            resultAgentField.setValueForced(foundValue, confidence);
             return true;
         }
-        if (verbose) {
+        if (isVerbose(context)) {
             LOG.info("Nothing found for {}", attribute);
         }
         return false;
     }
 
-    @Override
-    public void reset() {
-        super.reset();
-        this.foundValue = null;
+    /**
+     * @param context The context of the current parse
+     * @return The value this action produced in the current parse (only valid after obtainResult returned true).
+     */
+    public String getResultValue(AnalyzeContext context) {
+        if (fixedValue != null) {
+            return fixedValue;
+        }
+        return (String) context.getFoundValue(this);
     }
 
     @Override
@@ -50,12 +50,10 @@ public class MatcherRequireAction extends MatcherAction {
                 "It is useless to put a fixed value \"" + fixedValue + "\" in the require section.");
     }
 
-    private boolean foundRequiredValue = false;
-
     @Override
-    public void inform(String key, WalkResult foundValue) {
-        foundRequiredValue = true;
-        if (verbose) {
+    public void inform(AnalyzeContext context, String key, WalkResult foundValue) {
+        context.setFoundValue(this, Boolean.TRUE);
+        if (isVerbose(context)) {
             LOG.info("Info REQUIRE: {}", key);
             LOG.info("NEED REQUIRE: {}", getMatchExpression());
             LOG.info("KEPT REQUIRE: {}", key);
@@ -63,19 +61,12 @@ public class MatcherRequireAction extends MatcherAction {
     }
 
     @Override
-    public boolean obtainResult() {
-        if (isValidIsNull()) {
-            foundRequiredValue = true;
-        } else {
-            processInformedMatches();
+    public boolean obtainResult(AnalyzeContext context) {
+        if (isValidIsNull(context)) {
+            return true;
         }
-        return foundRequiredValue;
-    }
-
-    @Override
-    public void reset() {
-        super.reset();
-        foundRequiredValue = false;
+        processInformedMatches(context);
+        return context.getFoundValue(this) != null;
     }
 
     @Override
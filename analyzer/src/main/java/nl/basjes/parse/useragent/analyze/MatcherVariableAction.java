@@ -29,7 +29,6 @@ public class MatcherVariableAction extends MatcherAction {
     private static final Logger LOG = LoggerFactory.getLogger(MatcherVariableAction.class);
 
     private final String variableName;
-    private transient WalkResult foundValue = null;
     private Set<MatcherAction> interestedActions;
 
     @SuppressWarnings("unused") // Private constructor for serialization systems ONLY (like Kryo)
@@ -55,8 +54,9 @@ public class MatcherVariableAction extends MatcherAction {
         return variableName;
     }
 
-    public void inform(String key, WalkResult newlyFoundValue) {
-        if (verbose) {
+    @Override
+    public void inform(AnalyzeContext context, String key, WalkResult newlyFoundValue) {
+        if (isVerbose(context)) {
             LOG.info("INFO  : VARIABLE ({}): {}", variableName, key);
             LOG.info("NEED  : VARIABLE ({}): {}", variableName, getMatchExpression());
         }
@@ -65,29 +65,24 @@ public class MatcherVariableAction extends MatcherAction {
          * This is also the priority in the fields.
          * So we always use the first value we find.
          */
-        if (this.foundValue == null) {
-            this.foundValue = newlyFoundValue;
-            if (verbose) {
+        if (context.getFoundValue(this) == null) {
+            context.setFoundValue(this, newlyFoundValue);
+            if (isVerbose(context)) {
                 LOG.info("KEPT  : VARIABLE ({}): {}", variableName, key);
             }
 
             if (interestedActions != null && !interestedActions.isEmpty()) {
                 for (MatcherAction action : interestedActions) {
-                    action.inform(variableName, newlyFoundValue.getValue(), newlyFoundValue.getTree());
+                    action.inform(context, variableName, newlyFoundValue.getValue(), newlyFoundValue.getTree());
                 }
             }
         }
     }
 
-    public boolean obtainResult() {
-        processInformedMatches();
-        return this.foundValue != null;
-    }
-
     @Override
-    public void reset() {
-        super.reset();
-        this.foundValue = null;
+    public boolean obtainResult(AnalyzeContext context) {
+        processInformedMatches(context);
+        return context.getFoundValue(this) != null;
     }
 
     @Override
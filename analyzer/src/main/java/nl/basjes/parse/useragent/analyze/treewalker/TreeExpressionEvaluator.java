@@ -19,6 +19,7 @@ package nl.basjes.parse.useragent.analyze.treewalker;
 
 import nl.basjes.parse.useragent.analyze.InvalidParserConfigurationException;
 import nl.basjes.parse.useragent.analyze.Matcher;
+import nl.basjes.parse.useragent.analyze.treewalker.steps.Step;
 import nl.basjes.parse.useragent.analyze.treewalker.steps.WalkList;
 import nl.basjes.parse.useragent.analyze.treewalker.steps.WalkList.WalkResult;
 import nl.basjes.parse.useragent.parser.UserAgentTreeWalkerBaseVisitor;
@@ -147,6 +148,10 @@ public class TreeExpressionEvaluator implements Serializable {
         return walkList.usesIsNull();
     }
 
+    public Step getFirstStep() {
+        return walkList.getFirstStep();
+    }
+
     public WalkList getWalkListForUnitTesting() {
         return walkList;
     }
@@ -154,4 +159,8 @@ public class TreeExpressionEvaluator implements Serializable {
     public long pruneTrailingStepsThatCannotFail() {
         return walkList.pruneTrailingStepsThatCannotFail();
     }
+
+    public long compileWalkList() {
+        return walkList.compile();
+    }
 }
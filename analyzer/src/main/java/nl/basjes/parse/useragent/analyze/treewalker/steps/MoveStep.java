@@ -0,0 +1,43 @@
+/*
+ * Yet Another UserAgent Analyzer
+ * Copyright (C) 2013-2019 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.basjes.parse.useragent.analyze.treewalker.steps;
+
+import nl.basjes.parse.useragent.analyze.treewalker.steps.WalkList.WalkResult;
+import org.antlr.v4.runtime.tree.ParseTree;
+
+/**
+ * A step that goes to at most one other node and continues with the full value of that node.
+ * Because it never needs the rest of the walk it can be part of a {@link StepChain}.
+ */
+public abstract class MoveStep extends Step {
+
+    /**
+     * @param tree The current node.
+     * @return The node to continue with or null if this step fails.
+     */
+    public abstract ParseTree moveFrom(ParseTree tree);
+
+    @Override
+    public final WalkResult walk(ParseTree tree, String value) {
+        ParseTree target = moveFrom(tree);
+        if (target == null) {
+            return null;
+        }
+        return walkNextStep(target, null);
+    }
+}
@@ -18,6 +18,7 @@
 package nl.basjes.parse.useragent.analyze.treewalker.steps;
 
 import nl.basjes.parse.useragent.analyze.treewalker.steps.WalkList.WalkResult;
+import nl.basjes.parse.useragent.parse.IndexedRuleContext;
 import nl.basjes.parse.useragent.parser.UserAgentParser;
 import nl.basjes.parse.useragent.parser.UserAgentParser.CommentSeparatorContext;
 import org.antlr.v4.runtime.ParserRuleContext;
@@ -77,6 +78,10 @@ public abstract class Step implements Serializable {
     }
 
     protected final ParseTree up(ParseTree tree) {
+        if (tree instanceof IndexedRuleContext) {
+            return ((IndexedRuleContext) tree).getWalkParent();
+        }
+
         ParseTree parent = tree.getParent();
 
         // Needed because of the way the ANTLR rules have been defined.
@@ -101,6 +106,13 @@ public abstract class Step implements Serializable {
         return value;
     }
 
+    protected String getActualLowerCaseValue(ParseTree tree, String value) {
+        if (tree instanceof IndexedRuleContext) {
+            return ((IndexedRuleContext) tree).toLowerCase(value);
+        }
+        return getActualValue(tree, value).toLowerCase();
+    }
+
     /**
      * This will walk into the tree and recurse through all the remaining steps.
      * This must iterate of all possibilities and return the first matching result.
@@ -122,6 +134,23 @@ public abstract class Step implements Serializable {
         return true; // Default is to assume the step is always needed.
     }
 
+    /**
+     * Some steps (like IsInSet or a Lookup without a default value) can only succeed if the value
+     * is one of the (lowercase) keys of the set or lookup they use.
+     * @return If this step can only succeed for a known set of values.
+     */
+    public boolean onlyAcceptsKnownValues() {
+        return false;
+    }
+
+    /**
+     * @param lowerCaseValue The lowercase value this step will get.
+     * @return False if this step can never succeed with this value.
+     */
+    public boolean acceptsKnownValue(String lowerCaseValue) {
+        return true;
+    }
+
     public Step getNextStep() {
         return nextStep;
     }
@@ -0,0 +1,229 @@
+/*
+ * Yet Another UserAgent Analyzer
+ * Copyright (C) 2013-2019 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.basjes.parse.useragent.analyze.treewalker.steps;
+
+import nl.basjes.parse.useragent.analyze.treewalker.steps.WalkList.WalkResult;
+import nl.basjes.parse.useragent.analyze.treewalker.steps.compare.StepContains;
+import nl.basjes.parse.useragent.analyze.treewalker.steps.compare.StepEndsWith;
+import nl.basjes.parse.useragent.analyze.treewalker.steps.compare.StepEquals;
+import nl.basjes.parse.useragent.analyze.treewalker.steps.compare.StepIsInSet;
+import nl.basjes.parse.useragent.analyze.treewalker.steps.compare.StepNotEquals;
+import nl.basjes.parse.useragent.analyze.treewalker.steps.compare.StepStartsWith;
+import nl.basjes.parse.useragent.analyze.treewalker.steps.lookup.StepIsInLookupContains;
+import nl.basjes.parse.useragent.analyze.treewalker.steps.lookup.StepIsInLookupPrefix;
+import nl.basjes.parse.useragent.analyze.treewalker.steps.lookup.StepLookup;
+import nl.basjes.parse.useragent.analyze.treewalker.steps.lookup.StepLookupContains;
+import nl.basjes.parse.useragent.analyze.treewalker.steps.lookup.StepLookupPrefix;
+import nl.basjes.parse.useragent.analyze.treewalker.steps.value.StepBackToFull;
+import nl.basjes.parse.useragent.analyze.treewalker.steps.value.StepCleanVersion;
+import nl.basjes.parse.useragent.analyze.treewalker.steps.value.StepConcat;
+import nl.basjes.parse.useragent.analyze.treewalker.steps.value.StepConcatPostfix;
+import nl.basjes.parse.useragent.analyze.treewalker.steps.value.StepConcatPrefix;
+import nl.basjes.parse.useragent.analyze.treewalker.steps.value.StepNormalizeBrand;
+import nl.basjes.parse.useragent.analyze.treewalker.steps.value.StepWordRange;
+import nl.basjes.parse.useragent.analyze.treewalker.steps.walk.StepNext;
+import nl.basjes.parse.useragent.analyze.treewalker.steps.walk.StepNextN;
+import nl.basjes.parse.useragent.analyze.treewalker.steps.walk.StepPrev;
+import nl.basjes.parse.useragent.analyze.treewalker.steps.walk.StepPrevN;
+import nl.basjes.parse.useragent.analyze.treewalker.steps.walk.StepUp;
+import org.antlr.v4.runtime.tree.ParseTree;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A sequence of {@link ValueStep}s and {@link MoveStep}s that is executed as a single step.
+ * <p>
+ * In a normal WalkList every step calls the next step through the abstract {@link Step#walk} method.
+ * That call site sees all kinds of steps so the JIT cannot inline it and the stack grows with every step.
+ * Here the steps are executed in a plain loop where each step is called via its concrete class
+ * (selected with a switch on a precalculated kind) so those calls are monomorphic and can be inlined.
+ */
+public final class StepChain extends Step {
+
+    // The kinds of value steps
+    private static final int OTHER_VALUE           = 0;
+    private static final int EQUALS                = 1;
+    private static final int NOT_EQUALS            = 2;
+    private static final int STARTS_WITH           = 3;
+    private static final int ENDS_WITH             = 4;
+    private static final int CONTAINS              = 5;
+    private static final int IS_IN_SET             = 6;
+    private static final int LOOKUP                = 7;
+    private static final int LOOKUP_PREFIX         = 8;
+    private static final int LOOKUP_CONTAINS       = 9;
+    private static final int IS_IN_LOOKUP_PREFIX   = 10;
+    private static final int IS_IN_LOOKUP_CONTAINS = 11;
+    private static final int CLEAN_VERSION         = 12;
+    private static final int CONCAT                = 13;
+    private static final int CONCAT_PREFIX         = 14;
+    private static final int CONCAT_POSTFIX        = 15;
+    private static final int NORMALIZE_BRAND       = 16;
+    private static final int WORD_RANGE            = 17;
+
+    // The kinds of move steps (all larger than the value steps)
+    private static final int OTHER_MOVE            = 100;
+    private static final int BACK_TO_FULL          = 101;
+    private static final int UP                    = 102;
+    private static final int NEXT                  = 103;
+    private static final int NEXT_N                = 104;
+    private static final int PREV                  = 105;
+    private static final int PREV_N                = 106;
+
+    private static final Map<Class<? extends Step>, Integer> KINDS = new HashMap<>();
+
+    static {
+        KINDS.put(StepEquals.class,             EQUALS);
+        KINDS.put(StepNotEquals.class,          NOT_EQUALS);
+        KINDS.put(StepStartsWith.class,         STARTS_WITH);
+        KINDS.put(StepEndsWith.class,           ENDS_WITH);
+        KINDS.put(StepContains.class,           CONTAINS);
+        KINDS.put(StepIsInSet.class,            IS_IN_SET);
+        KINDS.put(StepLookup.class,             LOOKUP);
+        KINDS.put(StepLookupPrefix.class,       LOOKUP_PREFIX);
+        KINDS.put(StepLookupContains.class,     LOOKUP_CONTAINS);
+        KINDS.put(StepIsInLookupPrefix.class,   IS_IN_LOOKUP_PREFIX);
+        KINDS.put(StepIsInLookupContains.class, IS_IN_LOOKUP_CONTAINS);
+        KINDS.put(StepCleanVersion.class,       CLEAN_VERSION);
+        KINDS.put(StepConcat.class,             CONCAT);
+        KINDS.put(StepConcatPrefix.class,       CONCAT_PREFIX);
+        KINDS.put(StepConcatPostfix.class,      CONCAT_POSTFIX);
+        KINDS.put(StepNormalizeBrand.class,     NORMALIZE_BRAND);
+        KINDS.put(StepWordRange.class,          WORD_RANGE);
+        KINDS.put(StepBackToFull.class,         BACK_TO_FULL);
+        KINDS.put(StepUp.class,                 UP);
+        KINDS.put(StepNext.class,               NEXT);
+        KINDS.put(StepNextN.class,              NEXT_N);
+        KINDS.put(StepPrev.class,               PREV);
+        KINDS.put(StepPrevN.class,              PREV_N);
+    }
+
+    private final Step[] steps;
+    private final int[] kinds;
+
+    @SuppressWarnings("unused") // Private constructor for serialization systems ONLY (like Kryo)
+    private StepChain() {
+        steps = null;
+        kinds = null;
+    }
+
+    /**
+     * @param chainedSteps The steps (all must be either a {@link ValueStep} or a {@link MoveStep}).
+     */
+    public StepChain(List<Step> chainedSteps) {
+        steps = chainedSteps.toArray(new Step[0]);
+        kinds = new int[steps.length];
+        for (int i = 0; i < steps.length; i++) {
+            Step step = steps[i];
+            if (!canBeChained(step)) {
+                throw new IllegalArgumentException("The step " + step + " cannot be part of a StepChain");
+            }
+            // Unknown (sub)classes are called via the base class.
+            kinds[i] = KINDS.getOrDefault(step.getClass(), step instanceof MoveStep ? OTHER_MOVE : OTHER_VALUE);
+            step.setNextStep(i, null); // The chain calls the steps itself.
+        }
+    }
+
+    /**
+     * @param step The step to check
+     * @return If the step can be part of a StepChain.
+     */
+    public static boolean canBeChained(Step step) {
+        return step instanceof ValueStep || step instanceof MoveStep;
+    }
+
+    @Override
+    public WalkResult walk(ParseTree tree, String value) {
+        ParseTree currentTree = tree;
+        String currentValue = value;
+        for (int i = 0; i < steps.length; i++) {
+            int kind = kinds[i];
+            if (kind >= OTHER_MOVE) {
+                currentTree = moveFrom(kind, steps[i], currentTree);
+                if (currentTree == null) {
+                    return null;
+                }
+                currentValue = null; // We continue with the full value of the new node.
+            } else {
+                currentValue = applyTo(kind, steps[i], currentTree, currentValue);
+                if (currentValue == null) {
+                    return null;
+                }
+            }
+        }
+        return walkNextStep(currentTree, currentValue);
+    }
+
+    private static String applyTo(int kind, Step step, ParseTree tree, String value) {
+        switch (kind) {
+            case EQUALS:                return ((StepEquals)             step).applyTo(tree, value);
+            case NOT_EQUALS:            return ((StepNotEquals)          step).applyTo(tree, value);
+            case STARTS_WITH:           return ((StepStartsWith)         step).applyTo(tree, value);
+            case ENDS_WITH:             return ((StepEndsWith)           step).applyTo(tree, value);
+            case CONTAINS:              return ((StepContains)           step).applyTo(tree, value);
+            case IS_IN_SET:             return ((StepIsInSet)            step).applyTo(tree, value);
+            case LOOKUP:                return ((StepLookup)             step).applyTo(tree, value);
+            case LOOKUP_PREFIX:         return ((StepLookupPrefix)       step).applyTo(tree, value);
+            case LOOKUP_CONTAINS:       return ((StepLookupContains)     step).applyTo(tree, value);
+            case IS_IN_LOOKUP_PREFIX:   return ((StepIsInLookupPrefix)   step).applyTo(tree, value);
+            case IS_IN_LOOKUP_CONTAINS: return ((StepIsInLookupContains) step).applyTo(tree, value);
+            case CLEAN_VERSION:         return ((StepCleanVersion)       step).applyTo(tree, value);
+            case CONCAT:                return ((StepConcat)             step).applyTo(tree, value);
+            case CONCAT_PREFIX:         return ((StepConcatPrefix)       step).applyTo(tree, value);
+            case CONCAT_POSTFIX:        return ((StepConcatPostfix)      step).applyTo(tree, value);
+            case NORMALIZE_BRAND:       return ((StepNormalizeBrand)     step).applyTo(tree, value);
+            case WORD_RANGE:            return ((StepWordRange)          step).applyTo(tree, value);
+            default:                    return ((ValueStep)              step).applyTo(tree, value);
+        }
+    }
+
+    private static ParseTree moveFrom(int kind, Step step, ParseTree tree) {
+        switch (kind) {
+            case BACK_TO_FULL:          return tree;
+            case UP:                    return ((StepUp)                 step).moveFrom(tree);
+            case NEXT:                  return ((StepNext)               step).moveFrom(tree);
+            case NEXT_N:                return ((StepNextN)              step).moveFrom(tree);
+            case PREV:                  return ((StepPrev)               step).moveFrom(tree);
+            case PREV_N:                return ((StepPrevN)              step).moveFrom(tree);
+            default:                    return ((MoveStep)               step).moveFrom(tree);
+        }
+    }
+
+    @Override
+    public boolean canFail() {
+        for (Step step : steps) {
+            if (step.canFail()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(128);
+        for (int i = 0; i < steps.length; i++) {
+            if (i > 0) {
+                sb.append(" --> ");
+            }
+            sb.append(steps[i]);
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,44 @@
+/*
+ * Yet Another UserAgent Analyzer
+ * Copyright (C) 2013-2019 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.basjes.parse.useragent.analyze.treewalker.steps;
+
+import nl.basjes.parse.useragent.analyze.treewalker.steps.WalkList.WalkResult;
+import org.antlr.v4.runtime.tree.ParseTree;
+
+/**
+ * A step that stays on the same node and only determines a new value (or fails).
+ * Because it never needs the rest of the walk it can be part of a {@link StepChain}.
+ */
+public abstract class ValueStep extends Step {
+
+    /**
+     * @param tree  The current node.
+     * @param value The current value (null means the full value of the node).
+     * @return The new value or null if this step fails.
+     */
+    public abstract String applyTo(ParseTree tree, String value);
+
+    @Override
+    public final WalkResult walk(ParseTree tree, String value) {
+        String result = applyTo(tree, value);
+        if (result == null) {
+            return null;
+        }
+        return walkNextStep(tree, result);
+    }
+}
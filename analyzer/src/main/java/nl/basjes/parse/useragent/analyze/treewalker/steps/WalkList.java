@@ -195,6 +195,51 @@ public class WalkList implements Serializable {
         return steps.size() - (lastRelevantStepIndex + 1);
     }
 
+    /**
+     * Replace each sequence of (at least 2) steps that only modify the value or go to a single other node
+     * with a single {@link StepChain} that runs them in a loop instead of recursively.
+     * This does not change the outcome of the walk (nor the toString()).
+     * Must be done after {@link #pruneTrailingStepsThatCannotFail()}.
+     * In verbose mode nothing is changed to retain the logging of the individual steps.
+     * @return The number of steps that were replaced.
+     */
+    public long compile() {
+        if (verbose) {
+            return 0;
+        }
+        List<Step> compiledSteps = new ArrayList<>(steps.size());
+        List<Step> chain = new ArrayList<>();
+        long replacedSteps = 0;
+        for (Step step : steps) {
+            if (StepChain.canBeChained(step)) {
+                chain.add(step);
+                continue;
+            }
+            replacedSteps += addChain(compiledSteps, chain);
+            compiledSteps.add(step);
+        }
+        replacedSteps += addChain(compiledSteps, chain);
+
+        if (replacedSteps > 0) {
+            steps.clear();
+            steps.addAll(compiledSteps);
+            linkSteps();
+        }
+        return replacedSteps;
+    }
+
+    private long addChain(List<Step> compiledSteps, List<Step> chain) {
+        long replacedSteps = 0;
+        if (chain.size() == 1) {
+            compiledSteps.add(chain.get(0));
+        } else if (chain.size() > 1) {
+            compiledSteps.add(new StepChain(chain));
+            replacedSteps = chain.size();
+        }
+        chain.clear();
+        return replacedSteps;
+    }
+
     public WalkResult walk(ParseTree tree, String value) {
         if (steps.isEmpty()) {
             return new WalkResult(tree, value);
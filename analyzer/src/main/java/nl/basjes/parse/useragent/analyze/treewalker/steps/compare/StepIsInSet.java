@@ -17,13 +17,12 @@
 
 package nl.basjes.parse.useragent.analyze.treewalker.steps.compare;
 
-import nl.basjes.parse.useragent.analyze.treewalker.steps.Step;
-import nl.basjes.parse.useragent.analyze.treewalker.steps.WalkList.WalkResult;
+import nl.basjes.parse.useragent.analyze.treewalker.steps.ValueStep;
 import org.antlr.v4.runtime.tree.ParseTree;
 
 import java.util.Set;
 
-public class StepIsInSet extends Step {
+public class StepIsInSet extends ValueStep {
 
     private final String listName;
     private final Set<String> list;
@@ -41,15 +40,25 @@ public class StepIsInSet extends Step {
     }
 
     @Override
-    public WalkResult walk(ParseTree tree, String value) {
+    public String applyTo(ParseTree tree, String value) {
         String actualValue = getActualValue(tree, value);
 
-        if (list.contains(actualValue.toLowerCase())) {
-            return walkNextStep(tree, actualValue);
+        if (list.contains(getActualLowerCaseValue(tree, actualValue))) {
+            return actualValue;
         }
         return null;
     }
 
+    @Override
+    public boolean onlyAcceptsKnownValues() {
+        return true;
+    }
+
+    @Override
+    public boolean acceptsKnownValue(String lowerCaseValue) {
+        return list.contains(lowerCaseValue);
+    }
+
     @Override
     public String toString() {
         return "IsInSet(@" + listName + ")";
@@ -17,11 +17,10 @@
 
 package nl.basjes.parse.useragent.analyze.treewalker.steps.compare;
 
-import nl.basjes.parse.useragent.analyze.treewalker.steps.Step;
-import nl.basjes.parse.useragent.analyze.treewalker.steps.WalkList.WalkResult;
+import nl.basjes.parse.useragent.analyze.treewalker.steps.ValueStep;
 import org.antlr.v4.runtime.tree.ParseTree;
 
-public class StepNotEquals extends Step {
+public class StepNotEquals extends ValueStep {
 
     private final String desiredValue;
 
@@ -35,11 +34,11 @@ public class StepNotEquals extends Step {
     }
 
     @Override
-    public WalkResult walk(ParseTree tree, String value) {
+    public String applyTo(ParseTree tree, String value) {
         String actualValue = getActualValue(tree, value);
 
         if (!actualValue.equalsIgnoreCase(desiredValue)) {
-            return walkNextStep(tree, actualValue);
+            return actualValue;
         }
         return null;
     }
@@ -0,0 +1,145 @@
+/*
+ * Yet Another UserAgent Analyzer
+ * Copyright (C) 2013-2019 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.basjes.parse.useragent.analyze.treewalker.steps.lookup;
+
+import java.io.Serializable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * An Aho-Corasick automaton over all keys of a lookup.
+ * In a single pass over the input it determines which of the keys occur in it and
+ * returns the one that comes first in the iteration order of the provided keys
+ * (which is the same key a loop over the keys with String.contains would find first).
+ */
+class ContainsAutomaton implements Serializable {
+    private static final int NO_MATCH = Integer.MAX_VALUE;
+
+    // Per state the sorted characters of the outgoing transitions and the states they lead to.
+    private final char[][] transitionChars;
+    private final int[][] transitionStates;
+    private final int[] failure;
+    // Per state the lowest index of the keys that end in this state (directly or via the failure links).
+    private final int[] firstMatch;
+
+    @SuppressWarnings("unused") // Private constructor for serialization systems ONLY (like Kryo)
+    private ContainsAutomaton() {
+        transitionChars = null;
+        transitionStates = null;
+        failure = null;
+        firstMatch = null;
+    }
+
+    /**
+     * @param keys The (lowercase) keys in the order of precedence.
+     */
+    ContainsAutomaton(Collection<String> keys) {
+        List<TreeMap<Character, Integer>> trie = new ArrayList<>();
+        List<Integer> ends = new ArrayList<>();
+        trie.add(new TreeMap<>());
+        ends.add(NO_MATCH);
+
+        int keyIndex = 0;
+        for (String key : keys) {
+            int state = 0;
+            for (int i = 0; i < key.length(); i++) {
+                Integer next = trie.get(state).get(key.charAt(i));
+                if (next == null) {
+                    next = trie.size();
+                    trie.add(new TreeMap<>());
+                    ends.add(NO_MATCH);
+                    trie.get(state).put(key.charAt(i), next);
+                }
+                state = next;
+            }
+            ends.set(state, Math.min(ends.get(state), keyIndex));
+            keyIndex++;
+        }
+
+        int states = trie.size();
+        transitionChars = new char[states][];
+        transitionStates = new int[states][];
+        failure = new int[states];
+        firstMatch = new int[states];
+
+        for (int state = 0; state < states; state++) {
+            TreeMap<Character, Integer> transitions = trie.get(state);
+            transitionChars[state] = new char[transitions.size()];
+            transitionStates[state] = new int[transitions.size()];
+            int i = 0;
+            for (Map.Entry<Character, Integer> transition : transitions.entrySet()) {
+                transitionChars[state][i] = transition.getKey();
+                transitionStates[state][i] = transition.getValue();
+                i++;
+            }
+            firstMatch[state] = ends.get(state);
+        }
+
+        // Breadth first so the failure state of the parent is always known.
+        Deque<Integer> queue = new ArrayDeque<>();
+        for (int child : transitionStates[0]) {
+            failure[child] = 0;
+            queue.add(child);
+        }
+        while (!queue.isEmpty()) {
+            int state = queue.poll();
+            firstMatch[state] = Math.min(firstMatch[state], firstMatch[failure[state]]);
+            for (int i = 0; i < transitionChars[state].length; i++) {
+                char c = transitionChars[state][i];
+                int child = transitionStates[state][i];
+                int fallback = failure[state];
+                int target;
+                while ((target = next(fallback, c)) < 0 && fallback != 0) {
+                    fallback = failure[fallback];
+                }
+                failure[child] = target < 0 ? 0 : target;
+                queue.add(child);
+            }
+        }
+    }
+
+    private int next(int state, char c) {
+        int index = Arrays.binarySearch(transitionChars[state], c);
+        return index < 0 ? -1 : transitionStates[state][index];
+    }
+
+    /**
+     * @param input The (lowercase) input
+     * @return The index of the first key (in the order of the provided keys) that occurs in the input, -1 if none.
+     */
+    int firstMatchingKey(String input) {
+        int best = firstMatch[0]; // An empty key is always contained.
+        int state = 0;
+        for (int i = 0; i < input.length() && best != 0; i++) {
+            char c = input.charAt(i);
+            int target;
+            while ((target = next(state, c)) < 0 && state != 0) {
+                state = failure[state];
+            }
+            state = target < 0 ? 0 : target;
+            best = Math.min(best, firstMatch[state]);
+        }
+        return best == NO_MATCH ? -1 : best;
+    }
+}
@@ -17,17 +17,15 @@
 
 package nl.basjes.parse.useragent.analyze.treewalker.steps.lookup;
 
-import nl.basjes.parse.useragent.analyze.treewalker.steps.Step;
-import nl.basjes.parse.useragent.analyze.treewalker.steps.WalkList.WalkResult;
+import nl.basjes.parse.useragent.analyze.treewalker.steps.ValueStep;
 import org.antlr.v4.runtime.tree.ParseTree;
 
-import java.util.HashSet;
 import java.util.Map;
 
-public class StepIsInLookupContains extends Step {
+public class StepIsInLookupContains extends ValueStep {
 
-    private final String          lookupName;
-    private final HashSet<String> lookupKeys;
+    private final String            lookupName;
+    private final ContainsAutomaton lookupKeys;
 
     @SuppressWarnings("unused") // Private constructor for serialization systems ONLY (like Kryo)
     private StepIsInLookupContains() {
@@ -37,18 +35,15 @@ public class StepIsInLookupContains extends Step {
 
     public StepIsInLookupContains(String lookupName, Map<String, String> lookup) {
         this.lookupName = lookupName;
-        this.lookupKeys = new HashSet<>(lookup.keySet());
+        this.lookupKeys = new ContainsAutomaton(lookup.keySet());
     }
 
     @Override
-    public WalkResult walk(ParseTree tree, String value) {
+    public String applyTo(ParseTree tree, String value) {
         String input = getActualValue(tree, value);
 
-        String compareInput = input.toLowerCase();
-        for (String key: lookupKeys) {
-            if (compareInput.contains(key)) {
-                return walkNextStep(tree, input);
-            }
+        if (lookupKeys.firstMatchingKey(getActualLowerCaseValue(tree, input)) >= 0) {
+            return input;
         }
         // Not found:
         return null;
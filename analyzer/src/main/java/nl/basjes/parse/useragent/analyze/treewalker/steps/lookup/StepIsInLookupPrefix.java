@@ -19,13 +19,12 @@ package nl.basjes.parse.useragent.analyze.treewalker.steps.lookup;
 
 import nl.basjes.collections.PrefixMap;
 import nl.basjes.collections.prefixmap.StringPrefixMap;
-import nl.basjes.parse.useragent.analyze.treewalker.steps.Step;
-import nl.basjes.parse.useragent.analyze.treewalker.steps.WalkList.WalkResult;
+import nl.basjes.parse.useragent.analyze.treewalker.steps.ValueStep;
 import org.antlr.v4.runtime.tree.ParseTree;
 
 import java.util.Map;
 
-public class StepIsInLookupPrefix extends Step {
+public class StepIsInLookupPrefix extends ValueStep {
 
     private final String            lookupName;
     private final PrefixMap<String> prefixMap;
@@ -43,7 +42,7 @@ public class StepIsInLookupPrefix extends Step {
     }
 
     @Override
-    public WalkResult walk(ParseTree tree, String value) {
+    public String applyTo(ParseTree tree, String value) {
         String input = getActualValue(tree, value);
 
         String result = prefixMap.getLongestMatch(input);
@@ -51,7 +50,7 @@ public class StepIsInLookupPrefix extends Step {
         if (result == null) {
             return null;
         }
-        return walkNextStep(tree, input);
+        return input;
     }
 
     @Override
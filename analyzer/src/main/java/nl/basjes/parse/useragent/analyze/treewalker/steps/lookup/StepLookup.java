@@ -17,13 +17,12 @@
 
 package nl.basjes.parse.useragent.analyze.treewalker.steps.lookup;
 
-import nl.basjes.parse.useragent.analyze.treewalker.steps.Step;
-import nl.basjes.parse.useragent.analyze.treewalker.steps.WalkList.WalkResult;
+import nl.basjes.parse.useragent.analyze.treewalker.steps.ValueStep;
 import org.antlr.v4.runtime.tree.ParseTree;
 
 import java.util.Map;
 
-public class StepLookup extends Step {
+public class StepLookup extends ValueStep {
 
     private final String lookupName;
     private final Map<String, String> lookup;
@@ -43,19 +42,23 @@ public class StepLookup extends Step {
     }
 
     @Override
-    public WalkResult walk(ParseTree tree, String value) {
-        String input = getActualValue(tree, value);
-
-        String result = lookup.get(input.toLowerCase());
+    public String applyTo(ParseTree tree, String value) {
+        String result = lookup.get(getActualLowerCaseValue(tree, value));
 
         if (result == null) {
-            if (defaultValue == null) {
-                return null;
-            } else {
-                return walkNextStep(tree, defaultValue);
-            }
+            return defaultValue;
         }
-        return walkNextStep(tree, result);
+        return result;
+    }
+
+    @Override
+    public boolean onlyAcceptsKnownValues() {
+        return defaultValue == null;
+    }
+
+    @Override
+    public boolean acceptsKnownValue(String lowerCaseValue) {
+        return defaultValue != null || lookup.containsKey(lowerCaseValue);
     }
 
     @Override
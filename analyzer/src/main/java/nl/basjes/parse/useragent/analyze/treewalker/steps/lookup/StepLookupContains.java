@@ -17,45 +17,43 @@
 
 package nl.basjes.parse.useragent.analyze.treewalker.steps.lookup;
 
-import nl.basjes.parse.useragent.analyze.treewalker.steps.Step;
-import nl.basjes.parse.useragent.analyze.treewalker.steps.WalkList.WalkResult;
+import nl.basjes.parse.useragent.analyze.treewalker.steps.ValueStep;
 import org.antlr.v4.runtime.tree.ParseTree;
 
 import java.util.Map;
 
-public class StepLookupContains extends Step {
+public class StepLookupContains extends ValueStep {
 
     private final String lookupName;
-    private final Map<String, String> lookup;
+    private final ContainsAutomaton lookupKeys;
+    private final String[] lookupValues; // In the same order as the keys in the automaton.
     private final String defaultValue;
 
     @SuppressWarnings("unused") // Private constructor for serialization systems ONLY (like Kryo)
     private StepLookupContains() {
         lookupName = null;
-        lookup = null;
+        lookupKeys = null;
+        lookupValues = null;
         defaultValue = null;
     }
 
     public StepLookupContains(String lookupName, Map<String, String> lookup, String defaultValue) {
         this.lookupName = lookupName;
-        this.lookup = lookup;
+        this.lookupKeys = new ContainsAutomaton(lookup.keySet());
+        this.lookupValues = lookup.values().toArray(new String[0]);
         this.defaultValue = defaultValue;
     }
 
     @Override
-    public WalkResult walk(ParseTree tree, String value) {
-        String input = getActualValue(tree, value).toLowerCase();
+    public String applyTo(ParseTree tree, String value) {
+        String input = getActualLowerCaseValue(tree, value);
 
-        for (Map.Entry<String, String> entry: lookup.entrySet()) {
-            if (input.contains(entry.getKey())) {
-                return walkNextStep(tree, entry.getValue());
-            }
+        int keyIndex = lookupKeys.firstMatchingKey(input);
+        if (keyIndex >= 0) {
+            return lookupValues[keyIndex];
         }
         // Not found:
-        if (defaultValue == null) {
-            return null;
-        }
-        return walkNextStep(tree, defaultValue);
+        return defaultValue;
     }
 
     @Override
@@ -19,13 +19,12 @@ package nl.basjes.parse.useragent.analyze.treewalker.steps.lookup;
 
 import nl.basjes.collections.PrefixMap;
 import nl.basjes.collections.prefixmap.StringPrefixMap;
-import nl.basjes.parse.useragent.analyze.treewalker.steps.Step;
-import nl.basjes.parse.useragent.analyze.treewalker.steps.WalkList.WalkResult;
+import nl.basjes.parse.useragent.analyze.treewalker.steps.ValueStep;
 import org.antlr.v4.runtime.tree.ParseTree;
 
 import java.util.Map;
 
-public class StepLookupPrefix extends Step {
+public class StepLookupPrefix extends ValueStep {
 
     private final String            lookupName;
     private final String            defaultValue;
@@ -46,19 +45,15 @@ public class StepLookupPrefix extends Step {
     }
 
     @Override
-    public WalkResult walk(ParseTree tree, String value) {
+    public String applyTo(ParseTree tree, String value) {
         String input = getActualValue(tree, value);
 
         String result = prefixMap.getLongestMatch(input);
 
         if (result == null) {
-            if (defaultValue == null) {
-                return null;
-            } else {
-                return walkNextStep(tree, defaultValue);
-            }
+            return defaultValue;
         }
-        return walkNextStep(tree, result);
+        return result;
     }
 
 
@@ -17,15 +17,14 @@
 
 package nl.basjes.parse.useragent.analyze.treewalker.steps.value;
 
-import nl.basjes.parse.useragent.analyze.treewalker.steps.Step;
-import nl.basjes.parse.useragent.analyze.treewalker.steps.WalkList.WalkResult;
+import nl.basjes.parse.useragent.analyze.treewalker.steps.MoveStep;
 import org.antlr.v4.runtime.tree.ParseTree;
 
-public class StepBackToFull extends Step {
+public class StepBackToFull extends MoveStep {
 
     @Override
-    public WalkResult walk(ParseTree tree, String value) {
-        return walkNextStep(tree, null);
+    public ParseTree moveFrom(ParseTree tree) {
+        return tree;
     }
 
     @Override
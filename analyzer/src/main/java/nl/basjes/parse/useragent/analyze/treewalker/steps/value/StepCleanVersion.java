@@ -17,23 +17,22 @@
 
 package nl.basjes.parse.useragent.analyze.treewalker.steps.value;
 
-import nl.basjes.parse.useragent.analyze.treewalker.steps.Step;
-import nl.basjes.parse.useragent.analyze.treewalker.steps.WalkList.WalkResult;
+import nl.basjes.parse.useragent.analyze.treewalker.steps.ValueStep;
 import org.antlr.v4.runtime.tree.ParseTree;
 
 import static nl.basjes.parse.useragent.utils.Normalize.replaceString;
 
-public class StepCleanVersion extends Step {
+public class StepCleanVersion extends ValueStep {
 
     @Override
-    public WalkResult walk(ParseTree tree, String value) {
+    public String applyTo(ParseTree tree, String value) {
         String actualValue = getActualValue(tree, value);
 
         // Sanitize the provided value
         actualValue = replaceString(actualValue, "_", ".");
         actualValue = replaceString(actualValue, "/", " ");
 
-        return walkNextStep(tree, actualValue);
+        return actualValue;
     }
 
     @Override
@@ -17,11 +17,10 @@
 
 package nl.basjes.parse.useragent.analyze.treewalker.steps.value;
 
-import nl.basjes.parse.useragent.analyze.treewalker.steps.Step;
-import nl.basjes.parse.useragent.analyze.treewalker.steps.WalkList.WalkResult;
+import nl.basjes.parse.useragent.analyze.treewalker.steps.ValueStep;
 import org.antlr.v4.runtime.tree.ParseTree;
 
-public class StepConcat extends Step {
+public class StepConcat extends ValueStep {
 
     private final String prefix;
     private final String postfix;
@@ -39,10 +38,10 @@ public class StepConcat extends Step {
     }
 
     @Override
-    public WalkResult walk(ParseTree tree, String value) {
+    public String applyTo(ParseTree tree, String value) {
         String actualValue = getActualValue(tree, value);
         String filteredValue = prefix + actualValue + postfix;
-        return walkNextStep(tree, filteredValue);
+        return filteredValue;
     }
 
     @Override
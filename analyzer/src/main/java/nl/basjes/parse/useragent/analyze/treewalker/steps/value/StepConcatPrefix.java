@@ -17,11 +17,10 @@
 
 package nl.basjes.parse.useragent.analyze.treewalker.steps.value;
 
-import nl.basjes.parse.useragent.analyze.treewalker.steps.Step;
-import nl.basjes.parse.useragent.analyze.treewalker.steps.WalkList.WalkResult;
+import nl.basjes.parse.useragent.analyze.treewalker.steps.ValueStep;
 import org.antlr.v4.runtime.tree.ParseTree;
 
-public class StepConcatPrefix extends Step {
+public class StepConcatPrefix extends ValueStep {
 
     private final String prefix;
 
@@ -35,10 +34,10 @@ public class StepConcatPrefix extends Step {
     }
 
     @Override
-    public WalkResult walk(ParseTree tree, String value) {
+    public String applyTo(ParseTree tree, String value) {
         String actualValue = getActualValue(tree, value);
         String filteredValue = prefix + actualValue;
-        return walkNextStep(tree, filteredValue);
+        return filteredValue;
     }
 
     @Override
@@ -17,18 +17,17 @@
 
 package nl.basjes.parse.useragent.analyze.treewalker.steps.value;
 
-import nl.basjes.parse.useragent.analyze.treewalker.steps.Step;
-import nl.basjes.parse.useragent.analyze.treewalker.steps.WalkList.WalkResult;
+import nl.basjes.parse.useragent.analyze.treewalker.steps.ValueStep;
 import nl.basjes.parse.useragent.utils.Normalize;
 import org.antlr.v4.runtime.tree.ParseTree;
 
-public class StepNormalizeBrand extends Step {
+public class StepNormalizeBrand extends ValueStep {
 
     @Override
-    public WalkResult walk(ParseTree tree, String value) {
+    public String applyTo(ParseTree tree, String value) {
         String actualValue = getActualValue(tree, value);
         String filteredValue = Normalize.brand(actualValue);
-        return walkNextStep(tree, filteredValue);
+        return filteredValue;
     }
 
     @Override
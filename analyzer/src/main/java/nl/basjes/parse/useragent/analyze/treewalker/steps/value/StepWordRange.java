@@ -18,15 +18,16 @@
 package nl.basjes.parse.useragent.analyze.treewalker.steps.value;
 
 import nl.basjes.parse.useragent.analyze.WordRangeVisitor;
-import nl.basjes.parse.useragent.analyze.treewalker.steps.Step;
-import nl.basjes.parse.useragent.analyze.treewalker.steps.WalkList.WalkResult;
+import nl.basjes.parse.useragent.analyze.treewalker.steps.ValueStep;
+import nl.basjes.parse.useragent.parse.IndexedRuleContext;
 import nl.basjes.parse.useragent.parser.UserAgentParser.SingleVersionContext;
 import nl.basjes.parse.useragent.parser.UserAgentParser.SingleVersionWithCommasContext;
+import nl.basjes.parse.useragent.utils.Splitter;
 import nl.basjes.parse.useragent.utils.VersionSplitter;
 import nl.basjes.parse.useragent.utils.WordSplitter;
 import org.antlr.v4.runtime.tree.ParseTree;
 
-public class StepWordRange extends Step {
+public class StepWordRange extends ValueStep {
 
     private final int firstWord;
     private final int lastWord;
@@ -43,20 +44,25 @@ public class StepWordRange extends Step {
     }
 
     @Override
-    public WalkResult walk(ParseTree tree, String value) {
+    public String applyTo(ParseTree tree, String value) {
         String actualValue = getActualValue(tree, value);
-        String filteredValue;
+        Splitter splitter;
         if (tree.getChildCount() == 1 && (
               tree.getChild(0) instanceof SingleVersionContext ||
               tree.getChild(0) instanceof SingleVersionWithCommasContext)) {
-            filteredValue = VersionSplitter.getInstance().getSplitRange(actualValue, firstWord, lastWord);
+            splitter = VersionSplitter.getInstance();
         } else {
-            filteredValue = WordSplitter.getInstance().getSplitRange(actualValue, firstWord, lastWord);
+            splitter = WordSplitter.getInstance();
         }
-        if (filteredValue == null) {
-            return null;
+
+        // If this is the full value of the node then the split index is shared with the other ranges of this node.
+        if (tree instanceof IndexedRuleContext) {
+            int[] splitIndex = ((IndexedRuleContext) tree).getSplitIndex(splitter, actualValue);
+            if (splitIndex != null) {
+                return splitter.getSplitRange(actualValue, splitIndex, firstWord, lastWord);
+            }
         }
-        return walkNextStep(tree, filteredValue);
+        return splitter.getSplitRange(actualValue, firstWord, lastWord);
     }
 
     @Override
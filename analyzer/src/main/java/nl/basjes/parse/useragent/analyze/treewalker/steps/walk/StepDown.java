@@ -25,7 +25,9 @@ import nl.basjes.parse.useragent.analyze.NumberRangeList;
 import nl.basjes.parse.useragent.analyze.NumberRangeVisitor;
 import nl.basjes.parse.useragent.analyze.treewalker.steps.Step;
 import nl.basjes.parse.useragent.analyze.treewalker.steps.WalkList.WalkResult;
+import nl.basjes.parse.useragent.analyze.treewalker.steps.walk.stepdown.ChildIterable;
 import nl.basjes.parse.useragent.analyze.treewalker.steps.walk.stepdown.UserAgentGetChildrenVisitor;
+import nl.basjes.parse.useragent.parse.IndexedRuleContext;
 import nl.basjes.parse.useragent.parser.UserAgentTreeWalkerParser.NumberRangeContext;
 import org.antlr.v4.runtime.tree.ParseTree;
 
@@ -85,6 +87,13 @@ public class StepDown extends Step {
 
     @Override
     public WalkResult walk(ParseTree tree, String value) {
+        if (tree instanceof IndexedRuleContext) {
+            IndexedRuleContext node = (IndexedRuleContext) tree;
+            if (userAgentGetChildrenVisitor.findsChildrenByName(node)) {
+                return walkWantedChildren(node);
+            }
+        }
+
         Iterator<? extends ParseTree> children = userAgentGetChildrenVisitor.visit(tree);
         while (children.hasNext()) {
             ParseTree child = children.next();
@@ -96,6 +105,34 @@ public class StepDown extends Step {
         return null;
     }
 
+    // Does the same as the ChildIterable but directly on the children (that are not a separator) of the node.
+    private WalkResult walkWantedChildren(IndexedRuleContext node) {
+        ChildIterable childIterable = userAgentGetChildrenVisitor.getChildIterable();
+        boolean privateNumberRange = childIterable.isPrivateNumberRange();
+        int index = 0;
+        for (IndexedRuleContext child : node.getWalkChildren()) {
+            if (!privateNumberRange) {
+                index++;
+            }
+            if (!childIterable.isWantedRule(child.getRuleIndex())) {
+                continue;
+            }
+            if (privateNumberRange) {
+                index++;
+            }
+            if (index > end) {
+                return null;
+            }
+            if (start <= index) {
+                WalkResult childResult = walkNextStep(child, null);
+                if (childResult != null) {
+                    return childResult;
+                }
+            }
+        }
+        return null;
+    }
+
     @Override
     public String toString() {
         return "Down([" + start + ":" + end + "]" + name + ")";
@@ -17,11 +17,11 @@
 
 package nl.basjes.parse.useragent.analyze.treewalker.steps.walk;
 
-import nl.basjes.parse.useragent.analyze.treewalker.steps.Step;
-import nl.basjes.parse.useragent.analyze.treewalker.steps.WalkList.WalkResult;
+import nl.basjes.parse.useragent.analyze.treewalker.steps.MoveStep;
+import nl.basjes.parse.useragent.parse.IndexedRuleContext;
 import org.antlr.v4.runtime.tree.ParseTree;
 
-public class StepNext extends Step {
+public class StepNext extends MoveStep {
 
     private ParseTree next(ParseTree tree) {
         ParseTree parent = up(tree);
@@ -44,13 +44,14 @@ public class StepNext extends Step {
     }
 
     @Override
-    public WalkResult walk(ParseTree tree, String value) {
-        ParseTree nextTree = next(tree);
-        if (nextTree == null) {
-            return null;
+    public ParseTree moveFrom(ParseTree tree) {
+        if (tree instanceof IndexedRuleContext) {
+            IndexedRuleContext node = (IndexedRuleContext) tree;
+            if (node.hasWalkSiblings()) {
+                return node.getWalkSibling(1);
+            }
         }
-
-        return walkNextStep(nextTree, null);
+        return next(tree);
     }
 
     @Override
@@ -17,11 +17,11 @@
 
 package nl.basjes.parse.useragent.analyze.treewalker.steps.walk;
 
-import nl.basjes.parse.useragent.analyze.treewalker.steps.Step;
-import nl.basjes.parse.useragent.analyze.treewalker.steps.WalkList.WalkResult;
+import nl.basjes.parse.useragent.analyze.treewalker.steps.MoveStep;
+import nl.basjes.parse.useragent.parse.IndexedRuleContext;
 import org.antlr.v4.runtime.tree.ParseTree;
 
-public class StepNextN extends Step {
+public class StepNextN extends MoveStep {
 
     private final int steps;
 
@@ -59,13 +59,14 @@ public class StepNextN extends Step {
     }
 
     @Override
-    public WalkResult walk(ParseTree tree, String value) {
-        ParseTree nextTree = next(tree);
-        if (nextTree == null) {
-            return null;
+    public ParseTree moveFrom(ParseTree tree) {
+        if (tree instanceof IndexedRuleContext) {
+            IndexedRuleContext node = (IndexedRuleContext) tree;
+            if (node.hasWalkSiblings()) {
+                return node.getWalkSibling(steps);
+            }
         }
-
-        return walkNextStep(nextTree, null);
+        return next(tree);
     }
 
     @Override
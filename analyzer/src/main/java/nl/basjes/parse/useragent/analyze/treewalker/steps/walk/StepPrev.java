@@ -17,11 +17,11 @@
 
 package nl.basjes.parse.useragent.analyze.treewalker.steps.walk;
 
-import nl.basjes.parse.useragent.analyze.treewalker.steps.Step;
-import nl.basjes.parse.useragent.analyze.treewalker.steps.WalkList.WalkResult;
+import nl.basjes.parse.useragent.analyze.treewalker.steps.MoveStep;
+import nl.basjes.parse.useragent.parse.IndexedRuleContext;
 import org.antlr.v4.runtime.tree.ParseTree;
 
-public class StepPrev extends Step {
+public class StepPrev extends MoveStep {
 
     private ParseTree prev(ParseTree tree) {
         ParseTree parent = up(tree);
@@ -42,13 +42,14 @@ public class StepPrev extends Step {
     }
 
     @Override
-    public WalkResult walk(ParseTree tree, String value) {
-        ParseTree prevTree = prev(tree);
-        if (prevTree == null) {
-            return null;
+    public ParseTree moveFrom(ParseTree tree) {
+        if (tree instanceof IndexedRuleContext) {
+            IndexedRuleContext node = (IndexedRuleContext) tree;
+            if (node.hasWalkSiblings()) {
+                return node.getWalkSibling(-1);
+            }
         }
-
-        return walkNextStep(prevTree, null);
+        return prev(tree);
     }
 
     @Override
@@ -17,14 +17,11 @@
 
 package nl.basjes.parse.useragent.analyze.treewalker.steps.walk;
 
-import nl.basjes.parse.useragent.analyze.treewalker.steps.Step;
-import nl.basjes.parse.useragent.analyze.treewalker.steps.WalkList.WalkResult;
+import nl.basjes.parse.useragent.analyze.treewalker.steps.MoveStep;
+import nl.basjes.parse.useragent.parse.IndexedRuleContext;
 import org.antlr.v4.runtime.tree.ParseTree;
 
-public class StepPrevN extends Step {
-
-    private static final int SIZE = 20;
-    private transient ParseTree[] children = null;
+public class StepPrevN extends MoveStep {
 
     private final int steps;
 
@@ -40,37 +37,39 @@ public class StepPrevN extends Step {
     private ParseTree prev(ParseTree tree) {
         ParseTree parent = up(tree);
 
-        if (children== null) {
-            children = new ParseTree[SIZE];
-        }
-
-        int lastChildIndex = -1;
-        ParseTree child = null;
         int i;
         for (i = 0; i < parent.getChildCount(); i++) {
-            if (!treeIsSeparator(child)) {
-                lastChildIndex++;
-                children[lastChildIndex] = child;
+            if (parent.getChild(i) == tree) {
+                break; // Found it
             }
-            child = parent.getChild(i);
-            if (child == tree) {
-                if (lastChildIndex < steps) {
-                    break; // There is no previous
+        }
+        if (i == parent.getChildCount()) {
+            return null; // Not found
+        }
+
+        // Walk back over the previous siblings (no shared state so this is thread safe).
+        int remainingSteps = steps;
+        for (i = i - 1; i >= 0; i--) {
+            ParseTree child = parent.getChild(i);
+            if (!treeIsSeparator(child)) {
+                remainingSteps--;
+                if (remainingSteps == 0) {
+                    return child;
                 }
-                return children[lastChildIndex - steps + 1];
             }
         }
         return null; // There is no previous
     }
 
     @Override
-    public WalkResult walk(ParseTree tree, String value) {
-        ParseTree prevTree = prev(tree);
-        if (prevTree == null) {
-            return null;
+    public ParseTree moveFrom(ParseTree tree) {
+        if (tree instanceof IndexedRuleContext) {
+            IndexedRuleContext node = (IndexedRuleContext) tree;
+            if (node.hasWalkSiblings()) {
+                return node.getWalkSibling(-steps);
+            }
         }
-
-        return walkNextStep(prevTree, null);
+        return prev(tree);
     }
 
     @Override
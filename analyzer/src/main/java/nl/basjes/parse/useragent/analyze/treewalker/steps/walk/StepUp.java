@@ -17,20 +17,14 @@
 
 package nl.basjes.parse.useragent.analyze.treewalker.steps.walk;
 
-import nl.basjes.parse.useragent.analyze.treewalker.steps.Step;
-import nl.basjes.parse.useragent.analyze.treewalker.steps.WalkList.WalkResult;
+import nl.basjes.parse.useragent.analyze.treewalker.steps.MoveStep;
 import org.antlr.v4.runtime.tree.ParseTree;
 
-public class StepUp extends Step {
+public class StepUp extends MoveStep {
 
     @Override
-    public WalkResult walk(ParseTree tree, String value) {
-        ParseTree parent = up(tree);
-        if (parent == null) {
-            return null;
-        }
-
-        return walkNextStep(parent, null);
+    public ParseTree moveFrom(ParseTree tree) {
+        return up(tree);
     }
 
     @Override
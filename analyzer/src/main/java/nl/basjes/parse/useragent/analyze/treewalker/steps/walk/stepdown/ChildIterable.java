@@ -34,6 +34,9 @@ public class ChildIterable {
 
     private final Predicate<ParseTree> isWantedClassPredicate;
 
+    // The wanted types of node (indexed by the rule index) if these were specified.
+    private final boolean[] wantedRules;
+
     public ChildIterable(boolean privateNumberRange,
                          int start, int end,
                          Predicate<ParseTree> isWantedClassPredicate) {
@@ -41,6 +44,39 @@ public class ChildIterable {
         this.start = start;
         this.end = end;
         this.isWantedClassPredicate = isWantedClassPredicate;
+        this.wantedRules = null;
+    }
+
+    /**
+     * @param privateNumberRange Do only the wanted children count (true) or all children that are not a separator (false).
+     * @param start The first wanted child.
+     * @param end The last wanted child.
+     * @param wantedRuleIndexes The rule indexes (i.e. the types of node) of the wanted children.
+     */
+    public ChildIterable(boolean privateNumberRange,
+                         int start, int end,
+                         int... wantedRuleIndexes) {
+        this.privateNumberRange = privateNumberRange;
+        this.start = start;
+        this.end = end;
+        int size = 0;
+        for (int ruleIndex : wantedRuleIndexes) {
+            size = Math.max(size, ruleIndex + 1);
+        }
+        this.wantedRules = new boolean[size];
+        for (int ruleIndex : wantedRuleIndexes) {
+            this.wantedRules[ruleIndex] = true;
+        }
+        this.isWantedClassPredicate = tree ->
+            tree instanceof ParserRuleContext && isWantedRule(((ParserRuleContext) tree).getRuleIndex());
+    }
+
+    public boolean isWantedRule(int ruleIndex) {
+        return ruleIndex >= 0 && ruleIndex < wantedRules.length && wantedRules[ruleIndex];
+    }
+
+    public boolean isPrivateNumberRange() {
+        return privateNumberRange;
     }
 
     public Iterator<ParseTree> iterator(ParserRuleContext treeContext) {
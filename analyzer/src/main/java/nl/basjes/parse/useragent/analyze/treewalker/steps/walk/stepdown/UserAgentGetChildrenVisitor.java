@@ -17,36 +17,22 @@
 
 package nl.basjes.parse.useragent.analyze.treewalker.steps.walk.stepdown;
 
+import nl.basjes.parse.useragent.parse.IndexedRuleContext;
 import nl.basjes.parse.useragent.parser.UserAgentBaseVisitor;
-import nl.basjes.parse.useragent.parser.UserAgentParser.Base64Context;
+import nl.basjes.parse.useragent.parser.UserAgentParser;
 import nl.basjes.parse.useragent.parser.UserAgentParser.CommentBlockContext;
 import nl.basjes.parse.useragent.parser.UserAgentParser.CommentEntryContext;
 import nl.basjes.parse.useragent.parser.UserAgentParser.CommentProductContext;
-import nl.basjes.parse.useragent.parser.UserAgentParser.EmailAddressContext;
-import nl.basjes.parse.useragent.parser.UserAgentParser.EmptyWordContext;
-import nl.basjes.parse.useragent.parser.UserAgentParser.KeyNameContext;
 import nl.basjes.parse.useragent.parser.UserAgentParser.KeyValueContext;
-import nl.basjes.parse.useragent.parser.UserAgentParser.KeyValueProductVersionNameContext;
-import nl.basjes.parse.useragent.parser.UserAgentParser.KeyValueVersionNameContext;
 import nl.basjes.parse.useragent.parser.UserAgentParser.KeyWithoutValueContext;
-import nl.basjes.parse.useragent.parser.UserAgentParser.MultipleWordsContext;
 import nl.basjes.parse.useragent.parser.UserAgentParser.ProductContext;
 import nl.basjes.parse.useragent.parser.UserAgentParser.ProductNameContext;
-import nl.basjes.parse.useragent.parser.UserAgentParser.ProductNameEmailContext;
 import nl.basjes.parse.useragent.parser.UserAgentParser.ProductNameKeyValueContext;
 import nl.basjes.parse.useragent.parser.UserAgentParser.ProductNameNoVersionContext;
-import nl.basjes.parse.useragent.parser.UserAgentParser.ProductNameUrlContext;
-import nl.basjes.parse.useragent.parser.UserAgentParser.ProductNameUuidContext;
 import nl.basjes.parse.useragent.parser.UserAgentParser.ProductVersionContext;
-import nl.basjes.parse.useragent.parser.UserAgentParser.ProductVersionSingleWordContext;
 import nl.basjes.parse.useragent.parser.UserAgentParser.ProductVersionWithCommasContext;
-import nl.basjes.parse.useragent.parser.UserAgentParser.ProductVersionWordsContext;
 import nl.basjes.parse.useragent.parser.UserAgentParser.RootElementsContext;
-import nl.basjes.parse.useragent.parser.UserAgentParser.RootTextContext;
-import nl.basjes.parse.useragent.parser.UserAgentParser.SiteUrlContext;
 import nl.basjes.parse.useragent.parser.UserAgentParser.UserAgentContext;
-import nl.basjes.parse.useragent.parser.UserAgentParser.UuIdContext;
-import nl.basjes.parse.useragent.parser.UserAgentParser.VersionWordsContext;
 import org.antlr.v4.runtime.ParserRuleContext;
 import org.antlr.v4.runtime.tree.ParseTree;
 
@@ -54,6 +40,35 @@ import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 
+import static nl.basjes.parse.useragent.parser.UserAgentParser.RULE_base64;
+import static nl.basjes.parse.useragent.parser.UserAgentParser.RULE_commentBlock;
+import static nl.basjes.parse.useragent.parser.UserAgentParser.RULE_commentEntry;
+import static nl.basjes.parse.useragent.parser.UserAgentParser.RULE_commentProduct;
+import static nl.basjes.parse.useragent.parser.UserAgentParser.RULE_emailAddress;
+import static nl.basjes.parse.useragent.parser.UserAgentParser.RULE_emptyWord;
+import static nl.basjes.parse.useragent.parser.UserAgentParser.RULE_keyName;
+import static nl.basjes.parse.useragent.parser.UserAgentParser.RULE_keyValue;
+import static nl.basjes.parse.useragent.parser.UserAgentParser.RULE_keyValueProductVersionName;
+import static nl.basjes.parse.useragent.parser.UserAgentParser.RULE_keyValueVersionName;
+import static nl.basjes.parse.useragent.parser.UserAgentParser.RULE_keyWithoutValue;
+import static nl.basjes.parse.useragent.parser.UserAgentParser.RULE_multipleWords;
+import static nl.basjes.parse.useragent.parser.UserAgentParser.RULE_product;
+import static nl.basjes.parse.useragent.parser.UserAgentParser.RULE_productName;
+import static nl.basjes.parse.useragent.parser.UserAgentParser.RULE_productNameEmail;
+import static nl.basjes.parse.useragent.parser.UserAgentParser.RULE_productNameKeyValue;
+import static nl.basjes.parse.useragent.parser.UserAgentParser.RULE_productNameNoVersion;
+import static nl.basjes.parse.useragent.parser.UserAgentParser.RULE_productNameUrl;
+import static nl.basjes.parse.useragent.parser.UserAgentParser.RULE_productNameUuid;
+import static nl.basjes.parse.useragent.parser.UserAgentParser.RULE_productVersion;
+import static nl.basjes.parse.useragent.parser.UserAgentParser.RULE_productVersionSingleWord;
+import static nl.basjes.parse.useragent.parser.UserAgentParser.RULE_productVersionWithCommas;
+import static nl.basjes.parse.useragent.parser.UserAgentParser.RULE_productVersionWords;
+import static nl.basjes.parse.useragent.parser.UserAgentParser.RULE_rootElements;
+import static nl.basjes.parse.useragent.parser.UserAgentParser.RULE_rootText;
+import static nl.basjes.parse.useragent.parser.UserAgentParser.RULE_siteUrl;
+import static nl.basjes.parse.useragent.parser.UserAgentParser.RULE_uuId;
+import static nl.basjes.parse.useragent.parser.UserAgentParser.RULE_versionWords;
+
 
 /**
  * This visitor will return the list of requested child nodes
@@ -63,96 +78,128 @@ public class UserAgentGetChildrenVisitor extends UserAgentBaseVisitor<Iterator<?
     private final String name;
     private final ChildIterable childIterable;
 
+    // The types of node (i.e. the rule index) for which visiting the node only uses the childIterable.
+    private final boolean[] childrenByName = new boolean[UserAgentParser.ruleNames.length];
+
     public UserAgentGetChildrenVisitor(String name, int start, int end) {
         this.name = name;
         switch (name) {
             case "keyvalue":
-                childIterable = new ChildIterable(false, start, end, clazz -> (
-                    clazz instanceof KeyValueContext ||
-                    clazz instanceof KeyWithoutValueContext ||
-                    clazz instanceof ProductNameKeyValueContext));
+                childIterable = new ChildIterable(false, start, end,
+                    RULE_keyValue,
+                    RULE_keyWithoutValue,
+                    RULE_productNameKeyValue);
                 break;
 
             case "product":
-                childIterable = new ChildIterable(false, start, end, clazz -> (
-                    clazz instanceof ProductContext ||
-                    clazz instanceof CommentProductContext ||
-                    clazz instanceof ProductNameNoVersionContext));
+                childIterable = new ChildIterable(false, start, end,
+                    RULE_product,
+                    RULE_commentProduct,
+                    RULE_productNameNoVersion);
                 break;
 
             case "uuid":
-                childIterable = new ChildIterable(false, start, end, clazz -> (
-                    clazz instanceof UuIdContext ||
-                    clazz instanceof ProductNameUuidContext));
+                childIterable = new ChildIterable(false, start, end,
+                    RULE_uuId,
+                    RULE_productNameUuid);
                 break;
 
             case "base64":
-                childIterable = new ChildIterable(false, start, end, clazz -> (
-                    clazz instanceof Base64Context));
+                childIterable = new ChildIterable(false, start, end,
+                    RULE_base64);
                 break;
 
             case "url":
-                childIterable = new ChildIterable(false, start, end, clazz -> (
-                    clazz instanceof SiteUrlContext ||
-                    clazz instanceof ProductNameUrlContext));
+                childIterable = new ChildIterable(false, start, end,
+                    RULE_siteUrl,
+                    RULE_productNameUrl);
                 break;
 
             case "email":
-                childIterable = new ChildIterable(false, start, end, clazz -> (
-                    clazz instanceof EmailAddressContext ||
-                    clazz instanceof ProductNameEmailContext));
+                childIterable = new ChildIterable(false, start, end,
+                    RULE_emailAddress,
+                    RULE_productNameEmail);
                 break;
 
             case "text":
-                childIterable = new ChildIterable(false, start, end, clazz -> (
-                    clazz instanceof MultipleWordsContext ||
-                    clazz instanceof VersionWordsContext ||
-                    clazz instanceof EmptyWordContext ||
-                    clazz instanceof RootTextContext ||
-                    clazz instanceof KeyValueVersionNameContext));
+                childIterable = new ChildIterable(false, start, end,
+                    RULE_multipleWords,
+                    RULE_versionWords,
+                    RULE_emptyWord,
+                    RULE_rootText,
+                    RULE_keyValueVersionName);
                 break;
 
             case "name":
-                childIterable = new ChildIterable(false, start, end, clazz -> (
-                    clazz instanceof ProductNameContext));
+                childIterable = new ChildIterable(false, start, end,
+                    RULE_productName);
                 break;
 
             case "version":
-                childIterable = new ChildIterable(true, start, end, clazz -> (
-                    clazz instanceof ProductVersionContext ||
-                    clazz instanceof ProductVersionWithCommasContext ||
-                    clazz instanceof ProductVersionWordsContext ||
-                    clazz instanceof ProductVersionSingleWordContext));
+                childIterable = new ChildIterable(true, start, end,
+                    RULE_productVersion,
+                    RULE_productVersionWithCommas,
+                    RULE_productVersionWords,
+                    RULE_productVersionSingleWord);
                 break;
 
             case "comments":
-                childIterable = new ChildIterable(true, start, end, clazz -> (
-                    clazz instanceof CommentBlockContext));
+                childIterable = new ChildIterable(true, start, end,
+                    RULE_commentBlock);
                 break;
 
             case "key":
-                childIterable = new ChildIterable(false, start, end, clazz -> (
-                    clazz instanceof KeyNameContext));
+                childIterable = new ChildIterable(false, start, end,
+                    RULE_keyName);
                 break;
 
             case "value":
-                childIterable = new ChildIterable(false, start, end, clazz -> (
-                    clazz instanceof UuIdContext ||
-                    clazz instanceof MultipleWordsContext ||
-                    clazz instanceof SiteUrlContext ||
-                    clazz instanceof EmailAddressContext ||
-                    clazz instanceof KeyValueVersionNameContext ||
-                    clazz instanceof KeyValueProductVersionNameContext));
+                childIterable = new ChildIterable(false, start, end,
+                    RULE_uuId,
+                    RULE_multipleWords,
+                    RULE_siteUrl,
+                    RULE_emailAddress,
+                    RULE_keyValueVersionName,
+                    RULE_keyValueProductVersionName);
                 break;
 
             case "entry":
-                childIterable = new ChildIterable(false, start, end, clazz -> (
-                    clazz instanceof CommentEntryContext));
+                childIterable = new ChildIterable(false, start, end,
+                    RULE_commentEntry);
                 break;
 
             default:
-                childIterable = new ChildIterable(false, start, end,  clazz -> (false));
+                childIterable = new ChildIterable(false, start, end);
+        }
+
+        for (int ruleIndex : new int[]{
+            RULE_rootElements,
+            RULE_product,
+            RULE_productNameNoVersion,
+            RULE_commentProduct,
+            RULE_productName,
+            RULE_productVersion,
+            RULE_productVersionWithCommas,
+            RULE_keyValue,
+            RULE_keyWithoutValue,
+            RULE_commentBlock,
+            RULE_commentEntry}) {
+            childrenByName[ruleIndex] = true;
         }
+        childrenByName[RULE_productNameKeyValue] = !"key".equals(name) && !"value".equals(name);
+    }
+
+    /**
+     * @param node The node to get the children from.
+     * @return True if visiting this node only returns the wanted children (i.e. {@link #getChildIterable()} can be
+     *         applied directly to the children of this node).
+     */
+    public boolean findsChildrenByName(IndexedRuleContext node) {
+        return childrenByName[node.getRuleIndex()];
+    }
+
+    public ChildIterable getChildIterable() {
+        return childIterable;
     }
 
 
@@ -17,8 +17,10 @@
 
 package nl.basjes.parse.useragent.annotate;
 
-import nl.basjes.parse.useragent.UserAgent;
+import nl.basjes.parse.useragent.ParsedUserAgent;
+import nl.basjes.parse.useragent.SharedUserAgentAnalyzer;
 import nl.basjes.parse.useragent.UserAgentAnalyzer;
+import nl.basjes.parse.useragent.UserAgentAnalyzerRegistry;
 import nl.basjes.parse.useragent.analyze.InvalidParserConfigurationException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -37,6 +39,7 @@ import static nl.basjes.parse.useragent.UserAgentAnalyzer.DEFAULT_PARSE_CACHE_SI
 public class UserAgentAnnotationAnalyzer<T> {
     private UserAgentAnnotationMapper<T> mapper = null;
     private UserAgentAnalyzer userAgentAnalyzer = null;
+    private SharedUserAgentAnalyzer sharedUserAgentAnalyzer = null;
     private int cacheSize = DEFAULT_PARSE_CACHE_SIZE;
     private static final Logger LOG = LoggerFactory.getLogger(UserAgentAnnotationAnalyzer.class);
 
@@ -54,6 +57,11 @@ public class UserAgentAnnotationAnalyzer<T> {
      */
     public void setCacheSize(int newCacheSize) {
         cacheSize = Math.max(newCacheSize, 0);
+        if (sharedUserAgentAnalyzer != null) {
+            // A shared analyzer may not be changed so we switch to the one with the new cache size.
+            acquireSharedAnalyzer();
+            return;
+        }
         if (userAgentAnalyzer != null) {
             userAgentAnalyzer.setCacheSize(cacheSize);
         }
@@ -64,6 +72,20 @@ public class UserAgentAnnotationAnalyzer<T> {
     }
 
     public void initialize(UserAgentAnnotationMapper<T> theMapper) {
+        initialize(theMapper, false);
+    }
+
+    /**
+     * Like {@link #initialize(UserAgentAnnotationMapper)} but instead of building a private analyzer
+     * this uses the analyzer that is shared (within the JVM) via the {@link UserAgentAnalyzerRegistry}.
+     * When done you MUST call {@link #close()}.
+     * @param theMapper The mapper instance with the annotated setters.
+     */
+    public void initializeShared(UserAgentAnnotationMapper<T> theMapper) {
+        initialize(theMapper, true);
+    }
+
+    private void initialize(UserAgentAnnotationMapper<T> theMapper, boolean shared) {
         mapper = theMapper;
 
         if (mapper == null) {
@@ -125,6 +147,11 @@ public class UserAgentAnnotationAnalyzer<T> {
             throw new InvalidParserConfigurationException("You MUST specify at least 1 field to extract.");
         }
 
+        if (shared) {
+            acquireSharedAnalyzer();
+            return;
+        }
+
         userAgentAnalyzer = UserAgentAnalyzer
             .newBuilder()
             .hideMatcherLoadStats()
@@ -135,6 +162,30 @@ public class UserAgentAnnotationAnalyzer<T> {
             .build();
     }
 
+    private void acquireSharedAnalyzer() {
+        SharedUserAgentAnalyzer previous = sharedUserAgentAnalyzer;
+        sharedUserAgentAnalyzer = UserAgentAnalyzerRegistry.acquire(
+            UserAgentAnalyzerRegistry
+                .newKey()
+                .withFields(fieldSetters.keySet())
+                .withCache(cacheSize));
+        userAgentAnalyzer = sharedUserAgentAnalyzer.getAnalyzer();
+        if (previous != null) {
+            previous.close();
+        }
+    }
+
+    /**
+     * Release the analyzer. If it was shared it is only really dropped when the last user has closed it.
+     */
+    public void close() {
+        if (sharedUserAgentAnalyzer != null) {
+            sharedUserAgentAnalyzer.close();
+            sharedUserAgentAnalyzer = null;
+        }
+        userAgentAnalyzer = null;
+    }
+
     public T map(T record) {
         if (record == null) {
             return null;
@@ -143,10 +194,38 @@ public class UserAgentAnnotationAnalyzer<T> {
             throw new InvalidParserConfigurationException("[Map] The mapper instance is null.");
         }
 
-        UserAgent userAgent = userAgentAnalyzer.parse(mapper.getUserAgentString(record));
+        return map(record, analyze(mapper.getUserAgentString(record)));
+    }
+
+    /**
+     * Analyze the useragent without touching any record.
+     * The result is immutable so it can be reused for all records with the same useragent.
+     * @param userAgentString The useragent to analyze
+     * @return The immutable result which may be shared with other callers.
+     */
+    public ParsedUserAgent analyze(String userAgentString) {
+        if (userAgentAnalyzer == null) {
+            throw new InvalidParserConfigurationException("[Analyze] The analyzer has not been initialized.");
+        }
+        return userAgentAnalyzer.parseImmutable(userAgentString);
+    }
+
+    /**
+     * Put the values of an earlier analysis into the record via the annotated setters.
+     * @param record The record that will be modified
+     * @param parsedUserAgent The result of {@link #analyze(String)} for the useragent of this record
+     * @return The same record instance
+     */
+    public T map(T record, ParsedUserAgent parsedUserAgent) {
+        if (record == null) {
+            return null;
+        }
+        if (mapper == null) {
+            throw new InvalidParserConfigurationException("[Map] The mapper instance is null.");
+        }
 
         for (Map.Entry<String, List<Method>> fieldSetter : fieldSetters.entrySet()) {
-            String value = userAgent.getValue(fieldSetter.getKey());
+            String value = parsedUserAgent.getValue(fieldSetter.getKey());
             for (Method method : fieldSetter.getValue()) {
                 try {
                     method.invoke(mapper, record, value);
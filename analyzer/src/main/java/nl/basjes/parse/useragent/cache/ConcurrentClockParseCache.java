@@ -0,0 +1,246 @@
+/*
+ * Yet Another UserAgent Analyzer
+ * Copyright (C) 2013-2019 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.basjes.parse.useragent.cache;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The default parse cache.
+ * <p>
+ * A lookup is a single read in a ConcurrentHashMap (no locking) and on a hit
+ * the 'referenced' flag of the entry is set (only if it was not yet set).
+ * The eviction uses the CLOCK (second chance) algorithm which is a very close approximation of LRU.
+ * To allow many threads to insert at the same time the entries are distributed over
+ * a number of segments that each have their own clock and their own share of the limits.
+ *
+ * @param <V> The type of the cached parse result.
+ */
+public final class ConcurrentClockParseCache<V> implements ParseCache<V> {
+
+    // Below this number of entries per segment we use fewer segments.
+    private static final int MIN_ENTRIES_PER_SEGMENT = 32;
+
+    private final int maxEntries;
+    private final long maxBytes;
+
+    private final ConcurrentHashMap<String, Entry<V>> entries;
+    private final Segment<V>[] segments;
+    private final int segmentMask;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * Creates a ConcurrentClockParseCache (a named class so it can be serialized by all serialization systems).
+     * @param <V> The type of the cached parse result.
+     */
+    public static final class Instantiator<V> implements ParseCacheInstantiator<V> {
+        @Override
+        public ParseCache<V> instantiateCache(int maxEntries, long maxBytes) {
+            return new ConcurrentClockParseCache<>(maxEntries, maxBytes);
+        }
+    }
+
+    private static final class Entry<V> {
+        final String key;
+        final V value;
+        final long bytes;
+        volatile boolean referenced = false;
+
+        Entry(String key, V value, long bytes) {
+            this.key = key;
+            this.value = value;
+            this.bytes = bytes;
+        }
+    }
+
+    private static final class Segment<V> {
+        private final Entry<V>[] clock;
+        private final long maxBytes;
+        private int hand = 0;
+        private int size = 0;
+        private long bytes = 0;
+
+        @SuppressWarnings("unchecked")
+        Segment(int maxEntries, long maxBytes) {
+            this.clock = (Entry<V>[]) new Entry<?>[maxEntries];
+            this.maxBytes = maxBytes;
+        }
+    }
+
+    public ConcurrentClockParseCache(int maxEntries) {
+        this(maxEntries, 0);
+    }
+
+    @SuppressWarnings("unchecked")
+    public ConcurrentClockParseCache(int maxEntries, long maxBytes) {
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException("A cache must be able to hold at least 1 entry (got " + maxEntries + ").");
+        }
+        this.maxEntries = maxEntries;
+        this.maxBytes = Math.max(maxBytes, 0);
+
+        int wantedSegments = Runtime.getRuntime().availableProcessors() * 4;
+        int numberOfSegments = 1;
+        while (numberOfSegments * 2 <= wantedSegments &&
+               numberOfSegments * 2 * MIN_ENTRIES_PER_SEGMENT <= maxEntries) {
+            numberOfSegments *= 2;
+        }
+
+        segmentMask = numberOfSegments - 1;
+        segments = (Segment<V>[]) new Segment<?>[numberOfSegments];
+        int extraEntries = maxEntries % numberOfSegments;
+        for (int i = 0; i < numberOfSegments; i++) {
+            int segmentEntries = maxEntries / numberOfSegments + (i < extraEntries ? 1 : 0);
+            long segmentBytes = this.maxBytes == 0 ? 0 : Math.max(1, this.maxBytes / numberOfSegments);
+            segments[i] = new Segment<>(segmentEntries, segmentBytes);
+        }
+        entries = new ConcurrentHashMap<>(Math.min(maxEntries, 1 << 16), 0.75f, numberOfSegments);
+    }
+
+    private Segment<V> segmentFor(String key) {
+        int hash = key.hashCode();
+        hash ^= hash >>> 16;
+        return segments[hash & segmentMask];
+    }
+
+    @Override
+    public V get(String userAgentString) {
+        Entry<V> entry = entries.get(userAgentString);
+        if (entry == null) {
+            misses.increment();
+            return null;
+        }
+        if (!entry.referenced) {
+            entry.referenced = true; // Avoid writing to a shared cache line if not needed.
+        }
+        hits.increment();
+        return entry.value;
+    }
+
+    @Override
+    public void put(String userAgentString, V value, long estimatedBytes) {
+        Segment<V> segment = segmentFor(userAgentString);
+        long bytes = Math.max(estimatedBytes, 0);
+        if (segment.maxBytes > 0 && bytes > segment.maxBytes) {
+            return; // This will never fit.
+        }
+
+        Entry<V> entry = new Entry<>(userAgentString, value, bytes);
+        synchronized (segment) {
+            if (entries.putIfAbsent(userAgentString, entry) != null) {
+                return; // Some other thread was faster.
+            }
+            while (segment.size == segment.clock.length ||
+                   (segment.maxBytes > 0 && segment.bytes + bytes > segment.maxBytes)) {
+                evictOne(segment);
+            }
+            while (segment.clock[segment.hand] != null) {
+                segment.hand = (segment.hand + 1) % segment.clock.length;
+            }
+            segment.clock[segment.hand] = entry;
+            // The new entry is the last one the hand will reach again.
+            segment.hand = (segment.hand + 1) % segment.clock.length;
+            segment.size++;
+            segment.bytes += bytes;
+        }
+    }
+
+    // Must be called while holding the lock on the segment and only if the segment is not empty.
+    private void evictOne(Segment<V> segment) {
+        while (true) {
+            Entry<V> candidate = segment.clock[segment.hand];
+            if (candidate != null) {
+                if (candidate.referenced) {
+                    candidate.referenced = false; // Second chance
+                } else {
+                    segment.clock[segment.hand] = null;
+                    segment.size--;
+                    segment.bytes -= candidate.bytes;
+                    entries.remove(candidate.key, candidate);
+                    evictions.increment();
+                    return;
+                }
+            }
+            segment.hand = (segment.hand + 1) % segment.clock.length;
+        }
+    }
+
+    @Override
+    public void clear() {
+        for (Segment<V> segment : segments) {
+            synchronized (segment) {
+                for (int i = 0; i < segment.clock.length; i++) {
+                    Entry<V> entry = segment.clock[i];
+                    if (entry != null) {
+                        entries.remove(entry.key, entry);
+                        segment.clock[i] = null;
+                    }
+                }
+                segment.size = 0;
+                segment.bytes = 0;
+                segment.hand = 0;
+            }
+        }
+    }
+
+    @Override
+    public int size() {
+        return entries.size();
+    }
+
+    @Override
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    @Override
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    @Override
+    public long getHits() {
+        return hits.sum();
+    }
+
+    @Override
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    @Override
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "ConcurrentClockParseCache{" +
+            "maxEntries=" + maxEntries +
+            ", maxBytes=" + maxBytes +
+            ", segments=" + segments.length +
+            ", size=" + size() +
+            ", hits=" + getHits() +
+            ", misses=" + getMisses() +
+            ", evictions=" + getEvictions() +
+            '}';
+    }
+}
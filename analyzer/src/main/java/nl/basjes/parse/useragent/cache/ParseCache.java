@@ -0,0 +1,77 @@
+/*
+ * Yet Another UserAgent Analyzer
+ * Copyright (C) 2013-2019 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.basjes.parse.useragent.cache;
+
+/**
+ * A cache of parse results, keyed by the useragent string.
+ * Implementations MUST be safe to use from many threads at the same time.
+ * The values put into the cache are never modified afterwards so they can be shared between threads.
+ *
+ * @param <V> The type of the cached parse result.
+ */
+public interface ParseCache<V> {
+
+    /**
+     * @param userAgentString The key
+     * @return The cached value or null if not present.
+     */
+    V get(String userAgentString);
+
+    /**
+     * Store a value in the cache. The cache may decide not to retain it.
+     * @param userAgentString The key
+     * @param value           The (immutable) value
+     * @param estimatedBytes  The estimated memory usage of the key and value (0 if not calculated).
+     */
+    void put(String userAgentString, V value, long estimatedBytes);
+
+    /**
+     * Remove all entries (the statistics are retained).
+     */
+    void clear();
+
+    /**
+     * @return The number of entries currently in the cache.
+     */
+    int size();
+
+    /**
+     * @return The maximum number of entries this cache retains.
+     */
+    int getMaxEntries();
+
+    /**
+     * @return The maximum number of (estimated) bytes this cache retains (0 = not limited).
+     */
+    long getMaxBytes();
+
+    /**
+     * @return The number of get calls that returned a value.
+     */
+    long getHits();
+
+    /**
+     * @return The number of get calls that did not return a value.
+     */
+    long getMisses();
+
+    /**
+     * @return The number of entries that were removed to make room for new entries.
+     */
+    long getEvictions();
+}
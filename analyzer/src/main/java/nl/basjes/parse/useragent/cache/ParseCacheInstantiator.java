@@ -0,0 +1,36 @@
+/*
+ * Yet Another UserAgent Analyzer
+ * Copyright (C) 2013-2019 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.basjes.parse.useragent.cache;
+
+import java.io.Serializable;
+
+/**
+ * Creates the cache that is used by an analyzer.
+ * This is part of the (serializable) configuration of the analyzer, the cache itself is never serialized.
+ *
+ * @param <V> The type of the cached parse result.
+ */
+@FunctionalInterface
+public interface ParseCacheInstantiator<V> extends Serializable {
+    /**
+     * @param maxEntries The maximum number of entries (always at least 1).
+     * @param maxBytes   The maximum estimated number of bytes (0 = not limited).
+     * @return A new cache instance.
+     */
+    ParseCache<V> instantiateCache(int maxEntries, long maxBytes);
+}
@@ -22,6 +22,7 @@ import com.esotericsoftware.kryo.Kryo;
 import nl.basjes.parse.useragent.AbstractUserAgentAnalyzer;
 import nl.basjes.parse.useragent.UserAgent;
 import nl.basjes.parse.useragent.UserAgentAnalyzerDirect;
+import nl.basjes.parse.useragent.analyze.AnalyzeContext;
 import nl.basjes.parse.useragent.analyze.Matcher;
 import nl.basjes.parse.useragent.analyze.MatchesList.Match;
 import org.slf4j.Logger;
@@ -56,6 +57,28 @@ public class AbstractUserAgentAnalyzerTester extends AbstractUserAgentAnalyzer {
         }
     }
 
+    // For analyzing the results of the last parse all parses are done using the same context.
+    private transient AnalyzeContext debugContext = null;
+
+    @Override
+    protected synchronized AnalyzeContext acquireContext() {
+        if (debugContext == null) {
+            debugContext = createContext();
+        }
+        return debugContext;
+    }
+
+    @Override
+    protected void releaseContext(AnalyzeContext context) {
+        // The debugContext is retained so the matches can be retrieved afterwards.
+    }
+
+    @Override
+    public synchronized void reset() {
+        super.reset();
+        debugContext = null;
+    }
+
     static class TestResult {
         String field;
         String expected;
@@ -502,25 +525,27 @@ public class AbstractUserAgentAnalyzerTester extends AbstractUserAgentAnalyzer {
      * @return The list of Matches that were possibly relevant.
      */
     public List<Match> getMatches() {
+        AnalyzeContext context = acquireContext();
         List<Match> allMatches = new ArrayList<>(128);
         for (Matcher matcher: getAllMatchers()) {
-            allMatches.addAll(matcher.getMatches());
+            allMatches.addAll(matcher.getMatches(context));
         }
         return allMatches;
     }
 
     public List<Match> getUsedMatches(UserAgent userAgent) {
+        initializeMatchers();
+        AnalyzeContext context = acquireContext();
+
         // Reset all Matchers
-        for (Matcher matcher : getAllMatchers()) {
-            matcher.reset();
-            matcher.setVerboseTemporarily(false);
-        }
+        context.reset();
+        context.setVerboseTemporarily(false);
 
-        flattener.parse(userAgent);
+        context.getFlattener().parse(userAgent);
 
         List<Match> allMatches = new ArrayList<>(128);
         for (Matcher matcher: getAllMatchers()) {
-            allMatches.addAll(matcher.getUsedMatches());
+            allMatches.addAll(matcher.getUsedMatches(context));
         }
         return allMatches;
     }
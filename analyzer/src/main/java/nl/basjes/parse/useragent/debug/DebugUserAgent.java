@@ -41,9 +41,21 @@ public class DebugUserAgent extends UserAgent { // NOSONAR: No need to override
     }
 
     @Override
-    public void set(UserAgent newValuesUserAgent, Matcher appliedMatcher) {
-        appliedMatcherResults.add(new ImmutablePair<>(new UserAgent(newValuesUserAgent), appliedMatcher));
-        super.set(newValuesUserAgent, appliedMatcher);
+    public void set(String attribute, String value, long confidence, Matcher appliedMatcher) {
+        // All values of a single matcher are received directly after each other.
+        UserAgent matcherResult = null;
+        if (!appliedMatcherResults.isEmpty()) {
+            Pair<UserAgent, Matcher> lastResult = appliedMatcherResults.get(appliedMatcherResults.size() - 1);
+            if (lastResult.getValue() == appliedMatcher) {
+                matcherResult = lastResult.getKey();
+            }
+        }
+        if (matcherResult == null) {
+            matcherResult = new UserAgent();
+            appliedMatcherResults.add(new ImmutablePair<>(matcherResult, appliedMatcher));
+        }
+        matcherResult.setForced(attribute, value, confidence);
+        super.set(attribute, value, confidence, appliedMatcher);
     }
 
     @Override
@@ -17,17 +17,12 @@
 
 package nl.basjes.parse.useragent.debug;
 
-import nl.basjes.parse.useragent.analyze.Analyzer;
-import nl.basjes.parse.useragent.analyze.MatcherAction;
-import nl.basjes.parse.useragent.analyze.WordRangeVisitor;
+import nl.basjes.parse.useragent.analyze.InformSink;
 import org.antlr.v4.runtime.tree.ParseTree;
 
 import java.io.PrintStream;
-import java.util.Collections;
-import java.util.Map;
-import java.util.Set;
 
-public class FlattenPrinter implements Analyzer {
+public class FlattenPrinter implements InformSink {
 
     final transient PrintStream outputStream;
 
@@ -40,39 +35,4 @@ public class FlattenPrinter implements Analyzer {
         outputStream.println(path);
     }
 
-    @Override
-    public void informMeAbout(MatcherAction matcherAction, String keyPattern) {
-        // Not needed
-    }
-
-    public void lookingForRange(String treeName, WordRangeVisitor.Range range) {
-        // Never called
-    }
-
-    public Set<WordRangeVisitor.Range> getRequiredInformRanges(String treeName){
-        // Never called
-        return Collections.emptySet();
-    }
-
-    public void informMeAboutPrefix(MatcherAction matcherAction, String treeName, String prefix) {
-        // Never called
-    }
-
-    public Set<Integer> getRequiredPrefixLengths(String treeName){
-        // Never called
-        return Collections.emptySet();
-    }
-
-    @Override
-    public Map<String, Map<String, String>> getLookups() {
-        // Never called
-        return Collections.emptyMap();
-    }
-
-    @Override
-    public Map<String, Set<String>> getLookupSets() {
-        // Never called
-        return Collections.emptyMap();
-    }
-
 }
@@ -49,6 +49,9 @@ public final class EvilManualUseragentStringHacks {
         if (useragent == null || useragent.isEmpty()) {
             return useragent;
         }
+        if (!needsFixing(useragent)) {
+            return useragent; // 99.99% of the cases nothing needs to be changed.
+        }
         String result = useragent;
 
         result = MULTIPLE_SPACES .matcher(result).replaceAll(" ");
@@ -127,7 +130,162 @@ public final class EvilManualUseragentStringHacks {
             }
         }
 
-        return result; // 99.99% of the cases nothing will have changed.
+        // Even if one of the fixes seemed needed the result can still be the same.
+        return result.equals(useragent) ? useragent : result;
+    }
+
+    /**
+     * A single pass over the useragent that checks if ANY of the fixes in {@link #fixIt(String)} could apply.
+     * If none of them applies to the original useragent then none of them changes anything at all.
+     * So this may report a false positive but it must never miss a case.
+     * @param useragent The (non empty) useragent
+     * @return false if the useragent does not need any fixing.
+     */
+    static boolean needsFixing(String useragent) {
+        char first = useragent.charAt(0);
+        if (first == ' ' || first == '(' || first == '/') {
+            return true;
+        }
+
+        int length = useragent.length();
+        for (int i = 0; i < length; i++) {
+            switch (useragent.charAt(i)) {
+                case ' ':
+                    if (i + 1 < length && useragent.charAt(i + 1) == ' ') {
+                        return true; // Multiple spaces
+                    }
+                    break;
+                case '\u2002':
+                    return true;
+                case '_':
+                    if (useragent.startsWith("__", i)) {
+                        return true;
+                    }
+                    break;
+                case '%':
+                    if (useragent.startsWith("%20", i) || useragent.startsWith("%3B", i)) {
+                        return true;
+                    }
+                    break;
+                case '(':
+                    if (useragent.startsWith("(/", i) || useragent.startsWith("(Macintosh); ", i)) {
+                        return true;
+                    }
+                    break;
+                case ';':
+                    if (useragent.startsWith("; /", i)) {
+                        return true;
+                    }
+                    break;
+                case ',':
+                    if (useragent.startsWith(",gzip(gfe)", i)) {
+                        return true;
+                    }
+                    break;
+                case 'S':
+                    if (useragent.startsWith("SSL/TLS", i)) {
+                        return true;
+                    }
+                    break;
+                case 'M':
+                    if (isMsieFollowedByVersion(useragent, i) ||
+                        useragent.startsWith("Microsoft Windows NT 6.2.9200.0);", i)) {
+                        return true;
+                    }
+                    break;
+                case 'A':
+                    if (useragent.startsWith("Ant.com Toolbar", i)) {
+                        return true;
+                    }
+                    if (isAndroidFollowedByDashOrSlash(useragent, i)) {
+                        return true;
+                    }
+                    break;
+                case 'a':
+                    if (isAndroidFollowedByDashOrSlash(useragent, i)) {
+                        return true;
+                    }
+                    break;
+                case 'J':
+                    if (useragent.startsWith("Java", i)) {
+                        return true;
+                    }
+                    break;
+                case 'W':
+                    if (useragent.startsWith("Wazzup", i)) {
+                        return true;
+                    }
+                    break;
+                case 'Y':
+                    if (useragent.startsWith("You Build/VM", i)) {
+                        return true;
+                    }
+                    break;
+                case '/':
+                    if (isVersionFollowedByWord(useragent, i)) {
+                        return true;
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+        return false;
+    }
+
+    // Same as the MSIE7, MSIE8 and MSIE9 replacements (a normal "MSIE 9.0" does not need any fixing).
+    private static boolean isMsieFollowedByVersion(String useragent, int start) {
+        int next = start + 4;
+        if (next >= useragent.length() || !useragent.startsWith("MSIE", start)) {
+            return false;
+        }
+        char version = useragent.charAt(next);
+        return version >= '7' && version <= '9';
+    }
+
+    // Superset of ANDROID_DASH_VERSION and AVOID_BASE64_MATCH
+    private static boolean isAndroidFollowedByDashOrSlash(String useragent, int start) {
+        int next = start + 7;
+        if (next + 1 >= useragent.length() || !useragent.regionMatches(true, start, "android", 0, 7)) {
+            return false;
+        }
+        char separator = useragent.charAt(next);
+        return (separator == '-' || separator == '/') && isDigit(useragent.charAt(next + 1));
+    }
+
+    // Same as MISSING_SPACE: /[0-9]+\.[0-9]+[A-Z][a-z][a-z][a-z]+
+    private static boolean isVersionFollowedByWord(String useragent, int start) {
+        int length = useragent.length();
+        int pos = start + 1;
+        int digits = pos;
+        while (pos < length && isDigit(useragent.charAt(pos))) {
+            pos++;
+        }
+        if (pos == digits || pos >= length || useragent.charAt(pos) != '.') {
+            return false;
+        }
+        pos++;
+        digits = pos;
+        while (pos < length && isDigit(useragent.charAt(pos))) {
+            pos++;
+        }
+        if (pos == digits || pos >= length) {
+            return false;
+        }
+        char upper = useragent.charAt(pos);
+        if (upper < 'A' || upper > 'Z') {
+            return false;
+        }
+        pos++;
+        int lower = pos;
+        while (pos < length && useragent.charAt(pos) >= 'a' && useragent.charAt(pos) <= 'z') {
+            pos++;
+        }
+        return pos - lower >= 3 && pos < length && useragent.charAt(pos) == ' ';
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
     }
 
 }
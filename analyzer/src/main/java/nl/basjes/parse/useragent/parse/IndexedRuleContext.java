@@ -0,0 +1,193 @@
+/*
+ * Yet Another UserAgent Analyzer
+ * Copyright (C) 2013-2019 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.basjes.parse.useragent.parse;
+
+import nl.basjes.parse.useragent.utils.AntlrUtils;
+import nl.basjes.parse.useragent.utils.Splitter;
+import org.antlr.v4.runtime.ParserRuleContext;
+import org.antlr.v4.runtime.tree.ParseTree;
+import org.antlr.v4.runtime.tree.TerminalNode;
+
+import static nl.basjes.parse.useragent.parser.UserAgentParser.RULE_commentSeparator;
+import static nl.basjes.parse.useragent.parser.UserAgentParser.RULE_productName;
+import static nl.basjes.parse.useragent.parser.UserAgentParser.RULE_productVersion;
+import static nl.basjes.parse.useragent.parser.UserAgentParser.RULE_productVersionWithCommas;
+
+/**
+ * The base class of all nodes in the parse tree of a useragent (the contextSuperClass of the grammar).
+ * <p>
+ * During a single parse the walk steps of the matchers move around in the same tree many times.
+ * So each node records what these steps need the first time it is needed: the parent an Up step moves to,
+ * the children that are not separators (and the position of each of those children in that array),
+ * the source text (also in lowercase) and how the source text is split into words or versions.
+ * The type of a node is its rule index (the grammar has no labeled alternatives so every rule has exactly one context class).
+ * A parse tree is only used by a single thread so nothing here is synchronized.
+ */
+public class IndexedRuleContext extends ParserRuleContext {
+
+    private static final IndexedRuleContext[] NO_CHILDREN = new IndexedRuleContext[0];
+
+    private String               sourceText      = null;
+    private String               lowerCaseText   = null;
+    private String               lastValue       = null;
+    private String               lastLowerCase   = null;
+    private Splitter             splitter        = null;
+    private int[]                splitIndex      = null;
+    private boolean              walkParentKnown = false;
+    private IndexedRuleContext   walkParent      = null;
+    private IndexedRuleContext[] walkChildren    = null;
+    private int                  walkIndex       = -1;
+
+    public IndexedRuleContext() {
+    }
+
+    public IndexedRuleContext(ParserRuleContext parent, int invokingStateNumber) {
+        super(parent, invokingStateNumber);
+    }
+
+    public static boolean isSeparator(ParseTree tree) {
+        return tree instanceof TerminalNode ||
+            (tree instanceof ParserRuleContext && ((ParserRuleContext) tree).getRuleIndex() == RULE_commentSeparator);
+    }
+
+    /**
+     * @return The text of the input that was parsed into this node.
+     */
+    public String getSourceText() {
+        if (sourceText == null) {
+            sourceText = AntlrUtils.extractSourceText(this);
+        }
+        return sourceText;
+    }
+
+    /**
+     * The same value (usually the source text of this node) is compared and looked up by many matchers during
+     * a single parse. The lowercase version is retained for the source text and for the last other value.
+     * @param value The value (null means the source text of this node).
+     * @return The value in lowercase.
+     */
+    public String toLowerCase(String value) {
+        if (value == null || value == getSourceText()) {
+            if (lowerCaseText == null) {
+                lowerCaseText = getSourceText().toLowerCase();
+            }
+            return lowerCaseText;
+        }
+        if (value != lastValue) {
+            lastLowerCase = value.toLowerCase();
+            lastValue = value;
+        }
+        return lastLowerCase;
+    }
+
+    /**
+     * The same ranges of words (or versions) of this node are informed and extracted many times during a single parse.
+     * The split index of the source text is only created once (for the last splitter that asked for it).
+     * @param wantedSplitter The splitter that needs the split index.
+     * @param value The value that will be split.
+     * @return The split index of the source text or null if the value is not the source text of this node.
+     */
+    public int[] getSplitIndex(Splitter wantedSplitter, String value) {
+        if (value != getSourceText()) {
+            return null;
+        }
+        if (splitter != wantedSplitter) {
+            splitIndex = wantedSplitter.createSplitIndex(value);
+            splitter = wantedSplitter;
+        }
+        return splitIndex;
+    }
+
+    /**
+     * @return The node an Up step moves to (the ProductName and ProductVersion levels are skipped) or null for the root.
+     */
+    public IndexedRuleContext getWalkParent() {
+        if (!walkParentKnown) {
+            ParserRuleContext parent = getParent();
+            // Needed because of the way the ANTLR rules have been defined.
+            while (parent != null) {
+                int ruleIndex = parent.getRuleIndex();
+                if (ruleIndex != RULE_productName &&
+                    ruleIndex != RULE_productVersion &&
+                    ruleIndex != RULE_productVersionWithCommas) {
+                    break;
+                }
+                parent = parent.getParent();
+            }
+            walkParent = (IndexedRuleContext) parent;
+            walkParentKnown = true;
+        }
+        return walkParent;
+    }
+
+    /**
+     * @return The children of this node that are not separators.
+     */
+    public IndexedRuleContext[] getWalkChildren() {
+        if (walkChildren == null) {
+            if (children == null) {
+                walkChildren = NO_CHILDREN;
+                return walkChildren;
+            }
+            int count = 0;
+            for (ParseTree child : children) {
+                if (!isSeparator(child)) {
+                    count++;
+                }
+            }
+            IndexedRuleContext[] nodes = new IndexedRuleContext[count];
+            int index = 0;
+            for (ParseTree child : children) {
+                if (!isSeparator(child)) {
+                    IndexedRuleContext node = (IndexedRuleContext) child;
+                    node.walkIndex = index;
+                    nodes[index++] = node;
+                }
+            }
+            walkChildren = nodes;
+        }
+        return walkChildren;
+    }
+
+    /**
+     * A Next or Prev step only finds siblings if this node is a direct child of the node an Up step moves to.
+     * @return If {@link #getWalkSibling(int)} can be used.
+     */
+    public boolean hasWalkSiblings() {
+        IndexedRuleContext parent = getWalkParent();
+        if (parent == null || parent != getParent()) {
+            return false;
+        }
+        parent.getWalkChildren();
+        return walkIndex >= 0;
+    }
+
+    /**
+     * Only valid if {@link #hasWalkSiblings()} is true.
+     * @param offset The number of siblings to move (a negative offset moves backwards). Separators are skipped.
+     * @return The sibling or null if there is none.
+     */
+    public IndexedRuleContext getWalkSibling(int offset) {
+        IndexedRuleContext[] siblings = getWalkParent().getWalkChildren();
+        int index = walkIndex + offset;
+        if (index < 0 || index >= siblings.length) {
+            return null;
+        }
+        return siblings[index];
+    }
+}
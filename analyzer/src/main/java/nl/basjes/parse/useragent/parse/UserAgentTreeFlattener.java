@@ -18,7 +18,7 @@
 package nl.basjes.parse.useragent.parse;
 
 import nl.basjes.parse.useragent.UserAgent;
-import nl.basjes.parse.useragent.analyze.Analyzer;
+import nl.basjes.parse.useragent.analyze.InformSink;
 import nl.basjes.parse.useragent.analyze.WordRangeVisitor.Range;
 import nl.basjes.parse.useragent.parser.UserAgentBaseListener;
 import nl.basjes.parse.useragent.parser.UserAgentLexer;
@@ -54,25 +54,30 @@ import nl.basjes.parse.useragent.parser.UserAgentParser.VersionWordsContext;
 import nl.basjes.parse.useragent.utils.Splitter;
 import nl.basjes.parse.useragent.utils.VersionSplitter;
 import nl.basjes.parse.useragent.utils.WordSplitter;
+import org.antlr.v4.runtime.BailErrorStrategy;
 import org.antlr.v4.runtime.CharStreams;
 import org.antlr.v4.runtime.CodePointCharStream;
 import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.DefaultErrorStrategy;
 import org.antlr.v4.runtime.ParserRuleContext;
+import org.antlr.v4.runtime.atn.PredictionMode;
+import org.antlr.v4.runtime.dfa.DFA;
+import org.antlr.v4.runtime.misc.ParseCancellationException;
 import org.antlr.v4.runtime.tree.ParseTree;
-import org.antlr.v4.runtime.tree.ParseTreeProperty;
-import org.antlr.v4.runtime.tree.ParseTreeWalker;
-import org.apache.commons.lang3.tuple.Pair;
 
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import static nl.basjes.parse.useragent.UserAgent.SYNTAX_ERROR;
 import static nl.basjes.parse.useragent.utils.AntlrUtils.getSourceText;
 
 public class UserAgentTreeFlattener extends UserAgentBaseListener implements Serializable {
-    private static final ParseTreeWalker WALKER = new ParseTreeWalker();
-    private final Analyzer               analyzer;
+    private final InformSink             analyzer;
 
     private static final String AGENT    = "agent";
     private static final String PRODUCT  = "product";
@@ -93,12 +98,90 @@ public class UserAgentTreeFlattener extends UserAgentBaseListener implements Ser
         VERSION
     }
 
+    // The same paths occur in almost every useragent so these Strings are created once and reused.
+    // This cache belongs to this flattener which is only used by a single thread at a time.
+    private static final int MAX_CACHED_PATHS   = 10000;
+    private static final int MAX_CACHED_COUNTER = 64;
+
+    static final class PathNode {
+        final String path;
+        private Map<String, PathNode[]> children = null;
+        private Map<Range, String> rangePaths = null;
+        // Is the analyzer interested in this node or anything below it (null = not yet asked).
+        private Boolean relevant = null;
+
+        PathNode(String path) {
+            this.path = path;
+        }
+    }
+
+    private transient Map<String, PathNode> rootPaths;
+    private transient int cachedPaths;
+
+    private PathNode rootPath(String name) {
+        if (rootPaths == null) {
+            rootPaths = new HashMap<>();
+        }
+        return rootPaths.computeIfAbsent(name, PathNode::new);
+    }
+
+    private PathNode childPath(PathNode parent, long counter, String name) {
+        boolean cacheable = counter < MAX_CACHED_COUNTER && cachedPaths < MAX_CACHED_PATHS;
+        if (parent.children != null) {
+            PathNode[] byCounter = parent.children.get(name);
+            if (byCounter != null && counter < byCounter.length && byCounter[(int) counter] != null) {
+                return byCounter[(int) counter];
+            }
+        }
+
+        PathNode child = new PathNode(parent.path + ".(" + counter + ')' + name);
+        if (cacheable) {
+            if (parent.children == null) {
+                parent.children = new HashMap<>();
+            }
+            PathNode[] byCounter = parent.children.get(name);
+            if (byCounter == null || counter >= byCounter.length) {
+                PathNode[] larger = new PathNode[(int) Math.max(counter + 1, 4)];
+                if (byCounter != null) {
+                    System.arraycopy(byCounter, 0, larger, 0, byCounter.length);
+                }
+                byCounter = larger;
+                parent.children.put(name, byCounter);
+            }
+            byCounter[(int) counter] = child;
+            cachedPaths++;
+        }
+        return child;
+    }
+
+    private boolean isRelevant(PathNode node) {
+        if (node.relevant == null) {
+            node.relevant = analyzer.isRelevantPath(node.path);
+        }
+        return node.relevant;
+    }
+
+    private String rangePath(PathNode node, Range range) {
+        String path = node.rangePaths == null ? null : node.rangePaths.get(range);
+        if (path == null) {
+            path = node.path + range;
+            if (cachedPaths < MAX_CACHED_PATHS) {
+                if (node.rangePaths == null) {
+                    node.rangePaths = new HashMap<>();
+                }
+                node.rangePaths.put(range, path);
+                cachedPaths++;
+            }
+        }
+        return path;
+    }
+
     public class State {
         long child = 0;
         long version = 0;
         long comment = 0;
-        final String name;
-        String path;
+        String name;
+        PathNode path;
         ParseTree ctx = null;
 
         @SuppressWarnings("unused") // Private constructor for serialization systems ONLY (like Kryo)
@@ -106,30 +189,41 @@ public class UserAgentTreeFlattener extends UserAgentBaseListener implements Ser
             name = null;
         }
 
-        public State(String name) {
-            this.name = name;
+        State(ParseTree ctx, String name) {
+            init(ctx, name);
         }
 
-        public State(ParseTree ctx, String name) {
-            this.ctx = ctx;
-            this.name = name;
+        void init(ParseTree newCtx, String newName) {
+            child = 0;
+            version = 0;
+            comment = 0;
+            ctx = newCtx;
+            name = newName;
+            path = null;
         }
 
-        public String calculatePath(PathType type, boolean fakeChild) {
+        State findParentState() {
             ParseTree node = ctx;
-            path = name;
             if (node == null) {
-                return path;
+                return null;
             }
             State parentState = null;
-
             while (parentState == null) {
                 node = node.getParent();
                 if (node == null) {
-                    return path;
+                    return null;
                 }
                 parentState = state.get(node);
             }
+            return parentState;
+        }
+
+        public String calculatePath(PathType type, boolean fakeChild) {
+            State parentState = findParentState();
+            if (parentState == null) {
+                path = rootPath(name);
+                return path.path;
+            }
 
             long counter = 0;
             switch (type) {
@@ -154,20 +248,34 @@ public class UserAgentTreeFlattener extends UserAgentBaseListener implements Ser
                 default:
             }
 
-            this.path = parentState.path + ".(" + counter + ')' + name;
-
-            return this.path;
+            path = childPath(parentState.path, counter, name);
+            return path.path;
         }
     }
 
-    private transient ParseTreeProperty<State> state;
+    // The State instances are reused for all parses done by this flattener.
+    private transient Map<ParseTree, State> state;
+    private transient List<State> statePool;
+    private transient int usedStates;
+
+    private State newState(ParseTree ctx, String name) {
+        if (usedStates < statePool.size()) {
+            State reused = statePool.get(usedStates++);
+            reused.init(ctx, name);
+            return reused;
+        }
+        State created = new State(ctx, name);
+        statePool.add(created);
+        usedStates++;
+        return created;
+    }
 
     @SuppressWarnings("unused") // Private constructor for serialization systems ONLY (like Kryo)
     private UserAgentTreeFlattener() {
         analyzer = null;
     }
 
-    public UserAgentTreeFlattener(Analyzer analyzer) {
+    public UserAgentTreeFlattener(InformSink analyzer) {
         this.analyzer = analyzer;
     }
 
@@ -175,6 +283,21 @@ public class UserAgentTreeFlattener extends UserAgentBaseListener implements Ser
 
     public void setVerbose(boolean newVerbose) {
         this.verbose = newVerbose;
+        // The error listeners of the lexer and parser depend on this.
+        lexer = null;
+        parser = null;
+    }
+
+    private boolean sllFirstParsing = false;
+
+    /**
+     * First try the much faster SLL prediction and only fall back to the full LL prediction if that fails.
+     * NOTE: ANTLR only reports ambiguities during the full LL prediction so with this enabled
+     * hasAmbiguity() and getAmbiguityCount() of the results are no longer reliable.
+     * @param newSllFirstParsing True to enable, false (the default) to always use the full LL prediction.
+     */
+    public void setSllFirstParsing(boolean newSllFirstParsing) {
+        this.sllFirstParsing = newSllFirstParsing;
     }
 
     public UserAgent parse(String userAgentString) {
@@ -203,9 +326,14 @@ public class UserAgentTreeFlattener extends UserAgentBaseListener implements Ser
         UserAgentContext userAgentContext = parseUserAgent(userAgent);
 
         // Walk the tree an inform the calling analyzer about all the nodes found
-        state = new ParseTreeProperty<>();
+        if (state == null) {
+            state = new IdentityHashMap<>();
+            statePool = new ArrayList<>();
+        }
+        state.clear();
+        usedStates = 0;
 
-        State rootState = new State(AGENT);
+        State rootState = newState(null, AGENT);
         rootState.calculatePath(PathType.CHILD, false);
         state.put(userAgentContext, rootState);
 
@@ -215,30 +343,52 @@ public class UserAgentTreeFlattener extends UserAgentBaseListener implements Ser
             inform(null, SYNTAX_ERROR, "false");
         }
 
-        WALKER.walk(this, userAgentContext);
+        walk(userAgentContext);
+        state.clear(); // Do not retain the parse tree
         return userAgent;
     }
 
+    // Set when the node that is being entered is not relevant for the analyzer.
+    private transient boolean skipChildren;
+
+    // Same as the ParseTreeWalker but the children of a node that is not relevant are skipped.
+    // The counters of the siblings are retained in the state of the parent so those are not affected.
+    private void walk(ParseTree tree) {
+        if (!(tree instanceof ParserRuleContext)) {
+            return; // Terminals and error nodes are never informed
+        }
+        ParserRuleContext ctx = (ParserRuleContext) tree;
+        skipChildren = false;
+        ctx.enterRule(this);
+        if (!skipChildren) {
+            for (int i = 0; i < ctx.getChildCount(); i++) {
+                walk(ctx.getChild(i));
+            }
+        }
+        ctx.exitRule(this);
+    }
+
     // =================================================================================
 
-    private String inform(ParseTree ctx, String path) {
+    private State inform(ParseTree ctx, String path) {
         return inform(ctx, path, getSourceText((ParserRuleContext)ctx));
     }
 
-    private String inform(ParseTree ctx, String name, String value) {
+    private State inform(ParseTree ctx, String name, String value) {
         return inform(ctx, ctx, name, value, false);
     }
 
-    private String inform(ParseTree ctx, String name, String value, boolean fakeChild) {
+    private State inform(ParseTree ctx, String name, String value, boolean fakeChild) {
         return inform(ctx, ctx, name, value, fakeChild);
     }
 
-    private String inform(ParseTree stateCtx, ParseTree ctx, String name, String value, boolean fakeChild) {
+    private State inform(ParseTree stateCtx, ParseTree ctx, String name, String value, boolean fakeChild) {
         String path = name;
+        State myState = null;
         if (stateCtx == null) {
             analyzer.inform(path, value, ctx);
         } else {
-            State myState = new State(stateCtx, name);
+            myState = newState(stateCtx, name);
 
             if (!fakeChild) {
                 state.put(stateCtx, myState);
@@ -257,31 +407,122 @@ public class UserAgentTreeFlattener extends UserAgentBaseListener implements Ser
             }
 
             path = myState.calculatePath(childType, fakeChild);
+            if (!isRelevant(myState.path)) {
+                if (!fakeChild) {
+                    skipChildren = true;
+                }
+                return myState;
+            }
             analyzer.inform(path, value, ctx);
         }
-        return path;
+        return myState;
     }
 
 //  =================================================================================
 
+    // The lexer and parser are reused for all parses done by this flattener (which is used by one thread at a time).
+    private transient UserAgentLexer    lexer;
+    private transient CommonTokenStream tokens;
+    private transient UserAgentParser   parser;
+    private transient BailErrorStrategy    bailErrorStrategy;
+    private transient DefaultErrorStrategy defaultErrorStrategy;
+
     private UserAgentContext parseUserAgent(UserAgent userAgent) {
         String userAgentString = EvilManualUseragentStringHacks.fixIt(userAgent.getUserAgentString());
 
         CodePointCharStream input = CharStreams.fromString(userAgentString);
-        UserAgentLexer lexer = new UserAgentLexer(input);
+        if (lexer == null || parser == null) {
+            lexer = new UserAgentLexer(input);
+            tokens = new CommonTokenStream(lexer);
+            parser = new UserAgentParser(tokens);
+            bailErrorStrategy = new BailErrorStrategy();
+            defaultErrorStrategy = new DefaultErrorStrategy();
+            if (!verbose) {
+                lexer.removeErrorListeners();
+                parser.removeErrorListeners();
+            }
+        } else {
+            lexer.setInputStream(input);
+            tokens.setTokenSource(lexer);
+            parser.setTokenStream(tokens);
+        }
 
-        CommonTokenStream tokens = new CommonTokenStream(lexer);
+        lexer.addErrorListener(userAgent);
+        try {
+            // The ambiguities are only reported by the full LL prediction so when debugging we always use that.
+            if (sllFirstParsing && !verbose && !userAgent.isDebug()) {
+                // First try the much faster SLL prediction which bails out at the first problem.
+                // If it succeeds the result is the same as with the full LL prediction.
+                parser.getInterpreter().setPredictionMode(PredictionMode.SLL);
+                parser.setErrorHandler(bailErrorStrategy);
+                try {
+                    return parser.userAgent();
+                } catch (ParseCancellationException pce) {
+                    // Retry with the full LL prediction (the lexer errors have already been reported).
+                    // The SLL attempt ran without the parser error listener because the BailErrorStrategy
+                    // reports the error before it bails out; an agent the LL pass parses cleanly is valid.
+                    parser.reset();
+                }
+            }
+            parser.addErrorListener(userAgent);
+            parser.getInterpreter().setPredictionMode(PredictionMode.LL);
+            parser.setErrorHandler(defaultErrorStrategy);
+            return parser.userAgent();
+        } finally {
+            // Do not retain the userAgent
+            lexer.removeErrorListener(userAgent);
+            parser.removeErrorListener(userAgent);
+        }
+    }
 
-        UserAgentParser parser = new UserAgentParser(tokens);
+    // ANTLR keeps the DFA caches for the lexer and parser in static fields, so they are shared by all instances.
+    private static final UserAgentLexer  CACHE_LEXER  = new UserAgentLexer(null);
+    private static final UserAgentParser CACHE_PARSER = new UserAgentParser(null);
 
-        if (!verbose) {
-            lexer.removeErrorListeners();
-            parser.removeErrorListeners();
+    /**
+     * The ANTLR lexer and parser DFA caches (shared by all parsers in this JVM) grow
+     * with every new form of useragent that is seen. They are prewarmed by parsing
+     * (i.e. {@code preHeat()} on the analyzer) and can be bounded via {@link #limitDfaCacheSize(long)}.
+     * @return The total number of DFA states in the lexer and parser caches.
+     */
+    public static long getDfaCacheSize() {
+        long states = 0;
+        for (DFA dfa : CACHE_LEXER.getInterpreter().decisionToDFA) {
+            states += dfa.states.size();
         }
-        lexer.addErrorListener(userAgent);
-        parser.addErrorListener(userAgent);
+        for (DFA dfa : CACHE_PARSER.getInterpreter().decisionToDFA) {
+            states += dfa.states.size();
+        }
+        return states;
+    }
 
-        return parser.userAgent();
+    /**
+     * @return The number of entries in the shared PredictionContextCache of the parser.
+     */
+    public static long getPredictionContextCacheSize() {
+        return CACHE_PARSER.getInterpreter().getSharedContextCache().size();
+    }
+
+    /**
+     * Drop the shared lexer and parser DFA caches.
+     * Parsing remains correct, it is only slower until the caches have been rebuilt.
+     */
+    public static void clearDfaCache() {
+        CACHE_LEXER.getInterpreter().clearDFA();
+        CACHE_PARSER.getInterpreter().clearDFA();
+    }
+
+    /**
+     * Drop the shared lexer and parser DFA caches if they have more than the specified number of states.
+     * @param maxStates The maximum number of DFA states that may be retained.
+     * @return true if the caches were dropped.
+     */
+    public static boolean limitDfaCacheSize(long maxStates) {
+        if (getDfaCacheSize() > maxStates) {
+            clearDfaCache();
+            return true;
+        }
+        return false;
     }
 
     //  =================================================================================
@@ -419,37 +660,42 @@ public class UserAgentTreeFlattener extends UserAgentBaseListener implements Ser
 
     private void informSubstrings(ParserRuleContext ctx, String name, boolean fakeChild, Splitter splitter) {
         String text = getSourceText(ctx);
-        String path = inform(ctx, name, text, fakeChild);
-        Set<Range> ranges = analyzer.getRequiredInformRanges(path);
-
-        if (ranges.size() > 4) { // Benchmarks showed this to be the breakeven point. (see below)
-            List<Pair<Integer, Integer>> splitList = splitter.createSplitList(text);
-            for (Range range : ranges) {
-                String value = splitter.getSplitRange(text, splitList, range);
-                if (value != null) {
-                    inform(ctx, ctx, name + range, value, true);
-                }
-            }
-        } else {
-            for (Range range : ranges) {
-                String value = splitter.getSplitRange(text, range);
-                if (value != null) {
-                    inform(ctx, ctx, name + range, value, true);
-                }
+        State myState = inform(ctx, name, text, fakeChild);
+        Set<Range> ranges = analyzer.getRequiredInformRanges(myState.path.path);
+        if (ranges.isEmpty()) {
+            return;
+        }
+
+        // The ranges are always informed as a (fake) CHILD of the parent of this node.
+        // For a VERSION or COMMENT this path can differ from the path of this node (i.e. for the second version),
+        // so the relevance is determined on the path that is actually informed.
+        State parentState = myState.findParentState();
+        PathNode rangeBase = parentState == null ?
+            rootPath(name) :
+            childPath(parentState.path, parentState.child, name);
+        if (!isRelevant(rangeBase)) {
+            return;
+        }
+
+        // All ranges (and the WordRange steps of the matchers later on) share the same split index of this node.
+        int[] splitIndex = getSplitIndex(ctx, splitter, text);
+        for (Range range : ranges) {
+            String value = splitter.getSplitRange(text, splitIndex, range);
+            if (value != null) {
+                analyzer.inform(rangePath(rangeBase, range), value, ctx);
             }
         }
     }
 
-    // # Ranges | Direct                   |  SplitList
-    // 1        |    1.664 ± 0.010  ns/op  |    99.378 ± 1.548  ns/op
-    // 2        |   38.103 ± 0.479  ns/op  |   115.808 ± 1.055  ns/op
-    // 3        |  109.023 ± 0.849  ns/op  |   141.473 ± 6.702  ns/op
-    // 4        |  162.917 ± 1.842  ns/op  |   166.120 ± 7.166  ns/op  <-- Break even
-    // 5        |  264.877 ± 6.264  ns/op  |   176.334 ± 3.999  ns/op
-    // 6        |  356.914 ± 2.573  ns/op  |   196.640 ± 1.306  ns/op
-    // 7        |  446.930 ± 3.329  ns/op  |   215.499 ± 3.410  ns/op
-    // 8        |  533.153 ± 2.250  ns/op  |   233.241 ± 5.311  ns/op
-    // 9        |  519.130 ± 3.495  ns/op  |   250.921 ± 6.107  ns/op
+    private static int[] getSplitIndex(ParserRuleContext ctx, Splitter splitter, String text) {
+        if (ctx instanceof IndexedRuleContext) {
+            int[] splitIndex = ((IndexedRuleContext) ctx).getSplitIndex(splitter, text);
+            if (splitIndex != null) {
+                return splitIndex;
+            }
+        }
+        return splitter.createSplitIndex(text);
+    }
 
     @Override
     public void enterMultipleWords(MultipleWordsContext ctx) {
@@ -510,6 +756,7 @@ public class UserAgentTreeFlattener extends UserAgentBaseListener implements Ser
     public String toString() {
         return "UserAgentTreeFlattener{" +
             " verbose=" + verbose +
+            " sllFirstParsing=" + sllFirstParsing +
             "} ";
     }
 }
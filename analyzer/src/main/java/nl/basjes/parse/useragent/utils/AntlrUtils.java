@@ -17,6 +17,7 @@
 
 package nl.basjes.parse.useragent.utils;
 
+import nl.basjes.parse.useragent.parse.IndexedRuleContext;
 import org.antlr.v4.runtime.CharStream;
 import org.antlr.v4.runtime.ParserRuleContext;
 import org.antlr.v4.runtime.misc.Interval;
@@ -25,6 +26,13 @@ public final class AntlrUtils {
     private AntlrUtils() {}
 
     public static String getSourceText(ParserRuleContext ctx){
+        if (ctx instanceof IndexedRuleContext) {
+            return ((IndexedRuleContext) ctx).getSourceText(); // Extracted only once per node
+        }
+        return extractSourceText(ctx);
+    }
+
+    public static String extractSourceText(ParserRuleContext ctx){
         if (ctx.start == null || ctx.stop == null) {
             return ctx.getText();
         }
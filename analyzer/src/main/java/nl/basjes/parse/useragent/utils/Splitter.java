@@ -22,6 +22,7 @@ import org.apache.commons.lang3.tuple.ImmutablePair;
 import org.apache.commons.lang3.tuple.Pair;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 public abstract class Splitter {
@@ -116,23 +117,77 @@ public abstract class Splitter {
         return chars.length; // == The end of the string
     }
 
+    /**
+     * Find the start offset of split
+     *
+     * @param value The input in which we are seeking
+     * @param split  The split number for which we are looking for the start
+     * @return The offset or -1 if it does not exist
+     */
+    public int findSplitStart(String value, int split) {
+        if (split <= 0) {
+            return -1;
+        }
+        // We expect the value to start with a split.
+        boolean inSplit = false;
+        int currentSplit = 0;
+        int length = value.length();
+        for (int charNr = 0; charNr < length; charNr++) {
+            char theChar = value.charAt(charNr);
+            if (isEndOfStringSeparator(theChar)) {
+                return -1;
+            }
+
+            if (isSeparator(theChar)) {
+                inSplit = false;
+            } else {
+                if (!inSplit) {
+                    inSplit = true;
+                    currentSplit++;
+                    if (currentSplit == split) {
+                        return charNr;
+                    }
+                }
+            }
+        }
+        return -1;
+    }
+
+    public int findSplitEnd(String value, int startOffset) {
+        int length = value.length();
+        for (int charNr = startOffset; charNr < length; charNr++) {
+            if (isSeparator(value.charAt(charNr))) {
+                return charNr;
+            }
+        }
+        return length; // == The end of the string
+    }
+
+    public int findEndOfString(String value, int offset) {
+        int length = value.length();
+        for (int charNr = offset; charNr < length; charNr++) {
+            if (isEndOfStringSeparator(value.charAt(charNr))) {
+                return charNr;
+            }
+        }
+        return length;
+    }
+
     public String getSingleSplit(String value, int split) {
-        char[] characters = value.toCharArray();
-        int start = findSplitStart(characters, split);
+        int start = findSplitStart(value, split);
         if (start == -1) {
             return null;
         }
-        int end = findSplitEnd(characters, start);
+        int end = findSplitEnd(value, start);
         return value.substring(start, end);
     }
 
     public String getFirstSplits(String value, int split) {
-        char[] characters = value.toCharArray();
-        int start = findSplitStart(characters, split);
+        int start = findSplitStart(value, split);
         if (start == -1) {
             return null;
         }
-        int end = findSplitEnd(characters, start);
+        int end = findSplitEnd(value, start);
         return value.substring(0, end);
     }
 
@@ -140,24 +195,23 @@ public abstract class Splitter {
         if (value == null || (lastSplit > 0 && lastSplit < firstSplit)) {
             return null;
         }
-        char[] characters = value.toCharArray();
-        int firstCharOfFirstSplit = findSplitStart(characters, firstSplit);
+        int firstCharOfFirstSplit = findSplitStart(value, firstSplit);
         if (firstCharOfFirstSplit == -1) {
             return null;
         }
 
         if (lastSplit == -1) {
-            return value.substring(firstCharOfFirstSplit, findEndOfString(characters, firstCharOfFirstSplit));
+            return value.substring(firstCharOfFirstSplit, findEndOfString(value, firstCharOfFirstSplit));
         }
         int firstCharOfLastSplit = firstCharOfFirstSplit;
         if (lastSplit != firstSplit) {
-            firstCharOfLastSplit = findSplitStart(characters, lastSplit);
+            firstCharOfLastSplit = findSplitStart(value, lastSplit);
             if (firstCharOfLastSplit == -1) {
                 return null;
             }
         }
 
-        int lastCharOfLastSplit = findSplitEnd(characters, firstCharOfLastSplit);
+        int lastCharOfLastSplit = findSplitEnd(value, firstCharOfLastSplit);
 
         return value.substring(firstCharOfFirstSplit, lastCharOfLastSplit);
     }
@@ -210,4 +264,92 @@ public abstract class Splitter {
         return result;
     }
 
+    // The layout of a split index:
+    //   [0]            The offset of the end of the string (the first end-of-string separator or the length).
+    //   [2n+1, 2n+2]   The start and end offsets of split n+1.
+
+    /**
+     * Creates the index of all splits of a value in a single pass.
+     * If several ranges of the same value are needed this index can be shared between them.
+     * @param value The value to split.
+     * @return The split index of the value (only to be used with the methods of this splitter).
+     */
+    public int[] createSplitIndex(String value) {
+        int length = value.length();
+        int[] index = new int[9];
+        int used = 1;
+        int splitStart = -1;
+        int charNr = 0;
+        for (; charNr < length; charNr++) {
+            char theChar = value.charAt(charNr);
+            if (isEndOfStringSeparator(theChar)) {
+                break;
+            }
+            if (isSeparator(theChar)) {
+                if (splitStart != -1) {
+                    if (used + 2 > index.length) {
+                        index = Arrays.copyOf(index, index.length * 2 + 1);
+                    }
+                    index[used++] = splitStart;
+                    index[used++] = charNr;
+                    splitStart = -1;
+                }
+            } else {
+                if (splitStart == -1) {
+                    splitStart = charNr;
+                }
+            }
+        }
+        if (splitStart != -1) {
+            if (used + 2 > index.length) {
+                index = Arrays.copyOf(index, index.length + 2);
+            }
+            index[used++] = splitStart;
+            index[used++] = charNr;
+        }
+        index[0] = charNr;
+        if (used == index.length) {
+            return index;
+        }
+        return Arrays.copyOf(index, used);
+    }
+
+    /**
+     * @param splitIndex A split index created by {@link #createSplitIndex(String)}.
+     * @return The number of splits in the index.
+     */
+    public static int getNumberOfSplits(int[] splitIndex) {
+        return (splitIndex.length - 1) / 2;
+    }
+
+    public String getSplitRange(String value, int[] splitIndex, Range range) {
+        return getSplitRange(value, splitIndex, range.getFirst(), range.getLast());
+    }
+
+    /**
+     * Does the same as {@link #getSplitRange(String, int, int)} using a previously created split index of the same value.
+     * @param value The value that was used to create the split index.
+     * @param splitIndex The split index of the value.
+     * @param firstSplit The first split (starting at 1).
+     * @param lastSplit The last split (-1 means up to the end).
+     * @return The requested range or null if it does not exist.
+     */
+    public String getSplitRange(String value, int[] splitIndex, int firstSplit, int lastSplit) {
+        if (firstSplit <= 0 || (lastSplit != -1 && lastSplit < firstSplit)) {
+            return null;
+        }
+        int splits = getNumberOfSplits(splitIndex);
+        if (firstSplit > splits) {
+            return null;
+        }
+        int start = splitIndex[2 * firstSplit - 1];
+        if (lastSplit == -1) {
+            return value.substring(start, splitIndex[0]);
+        }
+        if (lastSplit > splits) {
+            return null;
+        }
+        return value.substring(start, splitIndex[2 * lastSplit]);
+    }
+
 }
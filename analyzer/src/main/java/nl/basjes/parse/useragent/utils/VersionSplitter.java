@@ -56,12 +56,11 @@ public final class VersionSplitter extends Splitter {
             return (split == 1) ? value : null;
         }
 
-        char[] characters = value.toCharArray();
-        int start = findSplitStart(characters, split);
+        int start = findSplitStart(value, split);
         if (start == -1) {
             return null;
         }
-        int end = findSplitEnd(characters, start);
+        int end = findSplitEnd(value, start);
         return value.substring(start, end);
     }
 
@@ -71,12 +70,11 @@ public final class VersionSplitter extends Splitter {
             return (split == 1) ? value : null;
         }
 
-        char[] characters = value.toCharArray();
-        int start = findSplitStart(characters, split);
+        int start = findSplitStart(value, split);
         if (start == -1) {
             return null;
         }
-        int end = findSplitEnd(characters, start);
+        int end = findSplitEnd(value, start);
         return value.substring(0, end);
     }
 
@@ -0,0 +1,149 @@
+/*
+ * Yet Another UserAgent Analyzer
+ * Copyright (C) 2013-2019 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.basjes.parse.useragent;
+
+import nl.basjes.parse.useragent.utils.YauaaVersion;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TestAnalyzerSnapshot {
+
+    private static final String[] USERAGENTS = {
+        "Mozilla/5.0 (Linux; Android 7.0; Nexus 6 Build/NBD90Z) AppleWebKit/537.36 (KHTML, like Gecko) " +
+            "Chrome/53.0.2785.124 Mobile Safari/537.36",
+        "Mozilla/5.0 (Windows NT 10.0; Win64; x64; rv:63.0) Gecko/20100101 Firefox/63.0",
+        "Mozilla/5.0 (compatible; Googlebot/2.1; +http://www.google.com/bot.html)",
+    };
+
+    @Test
+    public void testSaveAndLoad(@TempDir Path directory) throws IOException {
+        UserAgentAnalyzer before = UserAgentAnalyzer
+            .newBuilder()
+            .withField("DeviceClass")
+            .withField("AgentNameVersionMajor")
+            .withCache(123)
+            .hideMatcherLoadStats()
+            .build();
+
+        Path snapshot = directory.resolve("yauaa.snapshot");
+        before.saveSnapshot(snapshot);
+
+        UserAgentAnalyzer after = UserAgentAnalyzer.fromSnapshot(snapshot);
+        assertEquals(123, after.getCacheSize());
+        for (String useragent : USERAGENTS) {
+            assertEquals(before.parse(useragent).toYamlTestCase(), after.parse(useragent).toYamlTestCase(), useragent);
+        }
+    }
+
+    @Test
+    public void testBadSnapshots(@TempDir Path directory) throws IOException {
+        UserAgentAnalyzer uaa = UserAgentAnalyzer
+            .newBuilder()
+            .dropDefaultResources()
+            .addResources("classpath*:AllSteps.yaml")
+            .hideMatcherLoadStats()
+            .build();
+
+        Path snapshot = directory.resolve("yauaa.snapshot");
+        uaa.saveSnapshot(snapshot);
+        byte[] bytes = Files.readAllBytes(snapshot);
+
+        // Not a snapshot at all
+        Path notASnapshot = directory.resolve("bad.snapshot");
+        Files.write(notASnapshot, "Something else entirely".getBytes());
+        assertThrows(IOException.class, () -> UserAgentAnalyzer.fromSnapshot(notASnapshot));
+
+        // Truncated
+        Path truncated = directory.resolve("truncated.snapshot");
+        Files.write(truncated, Arrays.copyOf(bytes, bytes.length - 10));
+        assertThrows(IOException.class, () -> UserAgentAnalyzer.fromSnapshot(truncated));
+
+        // Corrupted body
+        Path corrupt = directory.resolve("corrupt.snapshot");
+        bytes[bytes.length - 10] ^= 0x55;
+        Files.write(corrupt, bytes);
+        assertThrows(IOException.class, () -> UserAgentAnalyzer.fromSnapshot(corrupt));
+    }
+
+    // A snapshot with a valid header (and checksum) around an arbitrary serialized object.
+    private static Path writeSnapshotOf(Path snapshot, Serializable object) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(body)) {
+            out.writeObject(object);
+        }
+        byte[] bodyBytes = body.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(bodyBytes);
+
+        try (OutputStream file = Files.newOutputStream(snapshot);
+             DataOutputStream out = new DataOutputStream(file)) {
+            out.write("YAUAASNP".getBytes(StandardCharsets.US_ASCII));
+            out.writeInt(AnalyzerSnapshot.FORMAT_VERSION);
+            out.writeUTF(YauaaVersion.getVersion());
+            out.writeUTF(UserAgentAnalyzer.class.getName());
+            out.writeLong(crc.getValue());
+            out.writeLong(bodyBytes.length);
+            out.write(bodyBytes);
+        }
+        return snapshot;
+    }
+
+    @Test
+    public void testOnlyAnalyzerClassesAreDeserialized(@TempDir Path directory) throws IOException {
+        Path otherClass = writeSnapshotOf(directory.resolve("date.snapshot"), new Date());
+        assertThrows(IOException.class, () -> UserAgentAnalyzer.fromSnapshot(otherClass));
+
+        List<Object> nested = new ArrayList<>();
+        List<Object> current = nested;
+        for (int i = 0; i < AnalyzerSnapshot.MAX_DEPTH; i++) {
+            List<Object> child = new ArrayList<>();
+            current.add(child);
+            current = child;
+        }
+        Path tooDeep = writeSnapshotOf(directory.resolve("deep.snapshot"), (Serializable) nested);
+        assertThrows(IOException.class, () -> UserAgentAnalyzer.fromSnapshot(tooDeep));
+
+        assertTrue(AnalyzerSnapshot.isAllowedClass(UserAgentAnalyzer.class.getName()));
+        assertTrue(AnalyzerSnapshot.isAllowedClass("[[Lnl.basjes.parse.useragent.analyze.MatcherAction;"));
+        assertTrue(AnalyzerSnapshot.isAllowedClass("[J"));
+        assertTrue(AnalyzerSnapshot.isAllowedClass("java.util.HashMap"));
+        assertFalse(AnalyzerSnapshot.isAllowedClass("[Ljava.util.Date;"));
+        assertFalse(AnalyzerSnapshot.isAllowedClass("J"));
+        assertFalse(AnalyzerSnapshot.isAllowedClass("java.util.PriorityQueue"));
+    }
+}
@@ -17,7 +17,7 @@
 
 package nl.basjes.parse.useragent;
 
-import org.apache.commons.collections4.map.LRUMap;
+import nl.basjes.parse.useragent.cache.ParseCache;
 import org.apache.commons.lang3.reflect.FieldUtils;
 import org.junit.jupiter.api.Test;
 
@@ -87,11 +87,11 @@ public class TestCaching {
 
         agent = uaa.parse(uuid);
         assertEquals(uuid, agent.get(fieldName).getValue());
-        assertEquals(agent, getCache(uaa).get(uuid));
+        assertEquals(agent, new UserAgent((ParsedUserAgent) getCache(uaa).get(uuid)));
 
         agent = uaa.parse(uuid);
         assertEquals(uuid, agent.get(fieldName).getValue());
-        assertEquals(agent, getCache(uaa).get(uuid));
+        assertEquals(agent, new UserAgent((ParsedUserAgent) getCache(uaa).get(uuid)));
 
         uaa.disableCaching();
         assertEquals(0, uaa.getCacheSize());
@@ -102,21 +102,58 @@ public class TestCaching {
         assertEquals(null, getCache(uaa));
     }
 
-    private LRUMap<?, ?> getCache(UserAgentAnalyzer uaa) throws IllegalAccessException {
-        LRUMap<?, ?> actualCache = null;
+    @Test
+    public void testCacheStatistics() {
+        UserAgentAnalyzer uaa = UserAgentAnalyzer
+            .newBuilder()
+            .withCache(1)
+            .hideMatcherLoadStats()
+            .withField("AgentUuid")
+            .build();
+
+        uaa.parse("One");
+        uaa.parse("One");
+        uaa.parse("Two");
+        uaa.parse("One");
+
+        assertEquals(1, uaa.getCacheHits());
+        assertEquals(3, uaa.getCacheMisses());
+        assertEquals(2, uaa.getCacheEvictions());
+    }
+
+    @Test
+    public void testCacheMaxBytes() throws IllegalAccessException {
+        UserAgentAnalyzer uaa = UserAgentAnalyzer
+            .newBuilder()
+            .withCache(1000)
+            .withCacheMaxBytes(100)
+            .hideMatcherLoadStats()
+            .withField("AgentUuid")
+            .build();
+
+        assertEquals(100, uaa.getCacheMaxBytes());
+        assertEquals(100, getCache(uaa).getMaxBytes());
+
+        // Each result is estimated to be larger than 100 bytes so nothing is retained.
+        uaa.parse("11111111-2222-3333-4444-555555555555");
+        assertEquals(0, getCache(uaa).size());
+    }
+
+    private ParseCache<?> getCache(UserAgentAnalyzer uaa) throws IllegalAccessException {
+        ParseCache<?> actualCache = null;
         Object rawParseCache = FieldUtils.readField(uaa, "parseCache", true);
-        if (rawParseCache instanceof LRUMap<?, ?>) {
-            actualCache = (LRUMap) rawParseCache;
+        if (rawParseCache instanceof ParseCache<?>) {
+            actualCache = (ParseCache<?>) rawParseCache;
         }
         return actualCache;
     }
 
     private int getAllocatedCacheSize(UserAgentAnalyzer uaa) throws IllegalAccessException {
-        LRUMap<?, ?> cache = getCache(uaa);
+        ParseCache<?> cache = getCache(uaa);
         if (cache == null) {
             return 0;
         }
-        return cache.maxSize();
+        return cache.getMaxEntries();
     }
 
 
@@ -0,0 +1,107 @@
+/*
+ * Yet Another UserAgent Analyzer
+ * Copyright (C) 2013-2019 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.basjes.parse.useragent;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class TestConcurrentParsing {
+
+    private static final String[] USERAGENTS = {
+        "Mozilla/5.0 (X11; Linux x86_64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/48.0.2564.82 Safari/537.36",
+        "Mozilla/5.0 (Linux; Android 7.0; Nexus 6 Build/NBD90Z) AppleWebKit/537.36 (KHTML, like Gecko) " +
+            "Chrome/53.0.2785.124 Mobile Safari/537.36",
+        "Mozilla/5.0 (iPhone; CPU iPhone OS 10_3_2 like Mac OS X) AppleWebKit/603.2.4 (KHTML, like Gecko) " +
+            "Version/10.0 Mobile/14F89 Safari/602.1",
+        "Mozilla/5.0 (Windows NT 10.0; Win64; x64; rv:63.0) Gecko/20100101 Firefox/63.0",
+        "Mozilla/5.0 (compatible; Googlebot/2.1; +http://www.google.com/bot.html)",
+    };
+
+    private static final String[] FIELDS = {
+        "DeviceClass", "DeviceBrand", "OperatingSystemNameVersion", "AgentNameVersionMajor",
+    };
+
+    private void verifyConcurrentParsing(UserAgentAnalyzer uaa) throws Exception {
+        // The expected values are determined single threaded.
+        Map<String, List<String>> expected = new LinkedHashMap<>();
+        for (String useragent : USERAGENTS) {
+            expected.put(useragent, getValues(uaa.parse(useragent)));
+        }
+
+        int threads = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Integer>> futures = new ArrayList<>();
+            for (int thread = 0; thread < threads; thread++) {
+                final int offset = thread;
+                futures.add(executor.submit(() -> {
+                    int checked = 0;
+                    for (int i = 0; i < 200; i++) {
+                        String useragent = USERAGENTS[(i + offset) % USERAGENTS.length];
+                        assertEquals(expected.get(useragent), getValues(uaa.parse(useragent)), useragent);
+                        checked++;
+                    }
+                    return checked;
+                }));
+            }
+            for (Future<Integer> future : futures) {
+                assertEquals(200, future.get().intValue());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private List<String> getValues(UserAgent userAgent) {
+        List<String> values = new ArrayList<>();
+        for (String field : FIELDS) {
+            values.add(userAgent.getValue(field));
+        }
+        return values;
+    }
+
+    @Test
+    public void testConcurrentParsingWithoutCache() throws Exception {
+        verifyConcurrentParsing(
+            UserAgentAnalyzer
+                .newBuilder()
+                .withoutCache()
+                .hideMatcherLoadStats()
+                .build());
+    }
+
+    @Test
+    public void testConcurrentParsingWithCache() throws Exception {
+        verifyConcurrentParsing(
+            UserAgentAnalyzer
+                .newBuilder()
+                .withCache(2)
+                .hideMatcherLoadStats()
+                .build());
+    }
+
+}
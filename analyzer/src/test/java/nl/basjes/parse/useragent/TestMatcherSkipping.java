@@ -0,0 +1,64 @@
+/*
+ * Yet Another UserAgent Analyzer
+ * Copyright (C) 2013-2019 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.basjes.parse.useragent;
+
+import nl.basjes.parse.useragent.debug.UserAgentAnalyzerTester;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TestMatcherSkipping {
+
+    private static final List<String> FIELDS = Arrays.asList("DeviceClass", "AgentName", "AgentVersionMajor");
+
+    @Test
+    public void testNarrowFieldsSameAsAllFields() {
+        UserAgentAnalyzerTester all = UserAgentAnalyzerTester
+            .newBuilder()
+            .withoutCache()
+            .keepTests()
+            .hideMatcherLoadStats()
+            .build();
+
+        UserAgentAnalyzerTester narrow = UserAgentAnalyzerTester
+            .newBuilder()
+            .withoutCache()
+            .withFields(FIELDS)
+            .keepTests()
+            .hideMatcherLoadStats()
+            .build();
+
+        assertTrue(narrow.runTests(false, true, FIELDS, false, false));
+
+        for (Map<String, Map<String, String>> test : all.getTestCases()) {
+            String userAgentString = test.get("input").get("user_agent_string");
+            UserAgent expected = all.parse(userAgentString);
+            UserAgent actual = narrow.parse(userAgentString);
+
+            for (String field : FIELDS) {
+                assertEquals(expected.getValue(field), actual.getValue(field), field + " of " + userAgentString);
+                assertEquals(expected.getConfidence(field), actual.getConfidence(field), field + " of " + userAgentString);
+            }
+        }
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Yet Another UserAgent Analyzer
+ * Copyright (C) 2013-2019 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.basjes.parse.useragent;
+
+import nl.basjes.parse.useragent.analyze.InvalidParserConfigurationException;
+import nl.basjes.parse.useragent.debug.UserAgentAnalyzerTester;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TestParallelInitialization {
+
+    @Test
+    public void testSameAsSerial() {
+        UserAgentAnalyzerTester serial = UserAgentAnalyzerTester
+            .newBuilder()
+            .keepTests()
+            .immediateInitialization()
+            .hideMatcherLoadStats()
+            .build();
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            UserAgentAnalyzerTester parallel = UserAgentAnalyzerTester
+                .newBuilder()
+                .withParallelInitialization(pool)
+                .keepTests()
+                .immediateInitialization()
+                .hideMatcherLoadStats()
+                .build();
+
+            assertEquals(serial.toString(), parallel.toString());
+            assertTrue(parallel.runTests(false, false, null, false, false));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testFirstErrorIsReported() {
+        // Both files are broken, the error of the first one (in the serial order) must be reported.
+        InvalidParserConfigurationException exception = assertThrows(InvalidParserConfigurationException.class, () ->
+            UserAgentAnalyzerTester
+                .newBuilder()
+                .withParallelInitialization()
+                .dropDefaultResources()
+                .addResources("classpath*:BadDefinitions/InvalidExtract.yaml")
+                .addResources("classpath*:BadDefinitions/Variable-BadDefinition.yaml")
+                .immediateInitialization()
+                .hideMatcherLoadStats()
+                .build());
+
+        InvalidParserConfigurationException serialException = assertThrows(InvalidParserConfigurationException.class, () ->
+            UserAgentAnalyzerTester
+                .newBuilder()
+                .dropDefaultResources()
+                .addResources("classpath*:BadDefinitions/InvalidExtract.yaml")
+                .addResources("classpath*:BadDefinitions/Variable-BadDefinition.yaml")
+                .immediateInitialization()
+                .hideMatcherLoadStats()
+                .build());
+
+        assertEquals(serialException.getMessage(), exception.getMessage());
+    }
+
+}
@@ -0,0 +1,103 @@
+/*
+ * Yet Another UserAgent Analyzer
+ * Copyright (C) 2013-2019 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.basjes.parse.useragent;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+public class TestParseAll {
+
+    private static final String DESKTOP =
+        "Mozilla/5.0 (X11; Linux x86_64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/48.0.2564.82 Safari/537.36";
+    private static final String PHONE =
+        "Mozilla/5.0 (Linux; Android 7.0; Nexus 6 Build/NBD90Z) AppleWebKit/537.36 (KHTML, like Gecko) " +
+        "Chrome/53.0.2785.124 Mobile Safari/537.36";
+    private static final String ROBOT =
+        "Mozilla/5.0 (compatible; Googlebot/2.1; +http://www.google.com/bot.html)";
+
+    private static final String[] BATCH = {
+        PHONE, DESKTOP, PHONE, ROBOT, PHONE, null, DESKTOP, PHONE, null,
+    };
+
+    private void verifyBatch(UserAgentAnalyzer uaa, ParsedUserAgent[] results) {
+        assertEquals(BATCH.length, results.length);
+        FieldKey deviceClass = uaa.fieldKey("DeviceClass");
+        for (int i = 0; i < BATCH.length; i++) {
+            assertEquals(BATCH[i], results[i].getUserAgentString());
+            assertEquals(uaa.parse(BATCH[i]).getValue("DeviceClass"), results[i].getValue(deviceClass));
+        }
+        // Duplicates in a batch share the same result
+        assertSame(results[0], results[2]);
+        assertSame(results[0], results[7]);
+        assertSame(results[1], results[6]);
+        assertSame(results[5], results[8]);
+    }
+
+    @Test
+    public void testParseAllWithCache() {
+        UserAgentAnalyzer uaa = UserAgentAnalyzer
+            .newBuilder()
+            .hideMatcherLoadStats()
+            .withCache(100)
+            .withField("DeviceClass")
+            .build();
+
+        ParsedUserAgent[] results = uaa.parseAll(BATCH);
+        // Only the 3 distinct non null useragents are looked up in the cache.
+        assertEquals(3, uaa.getCacheMisses());
+        assertEquals(0, uaa.getCacheHits());
+        verifyBatch(uaa, results);
+
+        // A second batch is served from the cache.
+        ParsedUserAgent[] again = uaa.parseAll(BATCH);
+        assertSame(results[0], again[0]);
+        assertSame(results[3], again[3]);
+    }
+
+    @Test
+    public void testParseAllWithoutCache() {
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            UserAgentAnalyzer uaa = UserAgentAnalyzer
+                .newBuilder()
+                .hideMatcherLoadStats()
+                .withoutCache()
+                .withBatchExecutor(executor)
+                .withField("DeviceClass")
+                .build();
+
+            verifyBatch(uaa, uaa.parseAll(BATCH));
+
+            List<ParsedUserAgent> results = uaa.parseAll(Arrays.asList(BATCH));
+            verifyBatch(uaa, results.toArray(new ParsedUserAgent[0]));
+
+            // Single threaded
+            verifyBatch(uaa, uaa.parseAll(BATCH, null));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+}
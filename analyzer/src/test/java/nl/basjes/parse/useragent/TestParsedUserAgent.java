@@ -0,0 +1,157 @@
+/*
+ * Yet Another UserAgent Analyzer
+ * Copyright (C) 2013-2019 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.basjes.parse.useragent;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+
+import static nl.basjes.parse.useragent.UserAgent.UNKNOWN_VALUE;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TestParsedUserAgent {
+
+    private static final String USERAGENT =
+        "Mozilla/5.0 (Linux; Android 7.0; Nexus 6 Build/NBD90Z) AppleWebKit/537.36 " +
+        "(KHTML, like Gecko) Chrome/53.0.2785.124 Mobile Safari/537.36";
+
+    @Test
+    public void testFieldKeyLookups() {
+        UserAgentAnalyzer uaa = UserAgentAnalyzer
+            .newBuilder()
+            .hideMatcherLoadStats()
+            .withoutCache()
+            .build();
+
+        FieldKey deviceClass = uaa.fieldKey("DeviceClass");
+        FieldKey agentName   = uaa.fieldKey("AgentName");
+        FieldKey nonExisting = uaa.fieldKey("NonExistingField");
+        assertTrue(deviceClass.getOrdinal() >= 0);
+        assertEquals(-1, nonExisting.getOrdinal());
+
+        ParsedUserAgent parsed = uaa.parseImmutable(USERAGENT);
+        UserAgent userAgent = uaa.parse(USERAGENT);
+
+        assertEquals("Phone",  parsed.getValue(deviceClass));
+        assertEquals("Chrome", parsed.getValue(agentName));
+        assertEquals(userAgent.getConfidence("DeviceClass").longValue(), parsed.getConfidence(deviceClass));
+        assertEquals(UNKNOWN_VALUE, parsed.getValue(nonExisting));
+        assertEquals(-1, parsed.getConfidence(nonExisting));
+        assertEquals(USERAGENT, parsed.getValue("Useragent"));
+
+        // Every field must be the same as in the mutable result.
+        for (String fieldName : uaa.getAllPossibleFieldNamesSorted()) {
+            FieldKey fieldKey = uaa.fieldKey(fieldName);
+            assertEquals(userAgent.getValue(fieldName), parsed.getValue(fieldKey), fieldName);
+            assertEquals(userAgent.getConfidence(fieldName).longValue(), parsed.getConfidence(fieldKey), fieldName);
+        }
+        assertEquals(new HashSet<>(userAgent.getAvailableFieldNames()), new HashSet<>(parsed.getAvailableFieldNames()));
+        assertEquals(userAgent, parsed.toUserAgent());
+    }
+
+    @Test
+    public void testSharedCachedResult() {
+        UserAgentAnalyzer uaa = UserAgentAnalyzer
+            .newBuilder()
+            .hideMatcherLoadStats()
+            .withCache(10)
+            .withField("DeviceClass")
+            .build();
+
+        ParsedUserAgent first = uaa.parseImmutable(USERAGENT);
+        ParsedUserAgent second = uaa.parseImmutable(USERAGENT);
+        assertSame(first, second);
+        assertEquals("Phone", second.getValue(uaa.fieldKey("DeviceClass")));
+
+        // The mutable API gets a copy of the same cached result.
+        UserAgent userAgent = uaa.parse(USERAGENT);
+        assertEquals(first.toUserAgent(), userAgent);
+        assertNotSame(userAgent, uaa.parse(USERAGENT));
+        assertEquals(1, uaa.getCacheMisses());
+        assertEquals(3, uaa.getCacheHits());
+    }
+
+    @Test
+    public void testViewOverCachedResult() {
+        UserAgentAnalyzer uaa = UserAgentAnalyzer
+            .newBuilder()
+            .hideMatcherLoadStats()
+            .withCache(10)
+            .withField("DeviceClass")
+            .withField("AgentName")
+            .build();
+
+        ParsedUserAgent cached = uaa.parseImmutable(USERAGENT);
+
+        // A cache hit is a view over the cached result.
+        UserAgent view = uaa.parse(USERAGENT);
+        assertEquals("Phone", view.getValue("DeviceClass"));
+        assertEquals(cached.getConfidence("DeviceClass"), view.getConfidence("DeviceClass").longValue());
+        assertEquals(cached.getAvailableFieldNames(), view.getAvailableFieldNames());
+
+        // Changing the view copies the result first so the cached result is never changed.
+        view.set("DeviceClass", "Changed", 1000000);
+        assertEquals("Changed", view.getValue("DeviceClass"));
+        assertEquals("Chrome", view.getValue("AgentName"));
+        assertEquals("Phone", cached.getValue("DeviceClass"));
+        assertEquals("Phone", uaa.parse(USERAGENT).getValue("DeviceClass"));
+
+        // Reusing an instance that is a view
+        String firefox = "Mozilla/5.0 (Windows NT 10.0; Win64; x64) Gecko/20100101 Firefox/60.0";
+        UserAgent reused = uaa.parse(new UserAgent(USERAGENT));
+        reused.setUserAgentString(firefox);
+        assertEquals("Unknown", reused.getValue("DeviceClass"));
+        assertEquals("Desktop", uaa.parse(reused).getValue("DeviceClass"));
+        assertEquals("Firefox", reused.getValue("AgentName"));
+        assertEquals(uaa.parse(firefox), reused);
+    }
+
+    @Test
+    public void testEqualsWithoutCache() {
+        UserAgentAnalyzer uaa = UserAgentAnalyzer
+            .newBuilder()
+            .hideMatcherLoadStats()
+            .withoutCache()
+            .build();
+
+        ParsedUserAgent first = uaa.parseImmutable(USERAGENT);
+        ParsedUserAgent second = uaa.parseImmutable(USERAGENT);
+        assertNotSame(first, second);
+        assertEquals(first, second);
+        assertEquals(first.hashCode(), second.hashCode());
+        assertEquals(first.toUserAgent().toString(), first.toString());
+        assertNotEquals(first, uaa.parseImmutable("Mozilla/5.0 (Windows NT 10.0; Win64; x64) Gecko/20100101 Firefox/60.0"));
+    }
+
+    @Test
+    public void testFieldKeyBelongsToSchema() {
+        FieldSchema schema      = new FieldSchema(Arrays.asList("One", "Two"));
+        FieldSchema sameSchema  = new FieldSchema(Arrays.asList("One", "Two"));
+        FieldSchema otherSchema = new FieldSchema(Arrays.asList("Three", "Two"));
+
+        assertEquals(schema.fieldKey("Two"), sameSchema.fieldKey("Two"));
+        assertEquals(schema.fieldKey("Two").hashCode(), sameSchema.fieldKey("Two").hashCode());
+        // Same name and same ordinal but a different schema
+        assertNotEquals(schema.fieldKey("Two"), otherSchema.fieldKey("Two"));
+    }
+}
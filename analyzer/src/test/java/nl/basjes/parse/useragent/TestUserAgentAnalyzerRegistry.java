@@ -0,0 +1,150 @@
+/*
+ * Yet Another UserAgent Analyzer
+ * Copyright (C) 2013-2019 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.basjes.parse.useragent;
+
+import nl.basjes.parse.useragent.UserAgentAnalyzerRegistry.Key;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TestUserAgentAnalyzerRegistry {
+
+    private static final String USERAGENT =
+        "Mozilla/5.0 (X11; Linux x86_64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/48.0.2564.82 Safari/537.36";
+
+    @Test
+    public void testKeyNormalization() {
+        Key key1 = UserAgentAnalyzerRegistry.newKey()
+            .withField("DeviceClass")
+            .withField("AgentName")
+            .withCache(-10)
+            .withUserAgentMaxLength(0);
+
+        Key key2 = UserAgentAnalyzerRegistry.newKey()
+            .withFields(Arrays.asList("AgentName", "DeviceClass", "AgentName"))
+            .withoutCache();
+
+        assertEquals(key1, key2);
+        assertEquals(key1.hashCode(), key2.hashCode());
+        assertEquals(0, key1.getCacheSize());
+        assertEquals(UserAgentAnalyzer.DEFAULT_USER_AGENT_MAX_LENGTH, key1.getUserAgentMaxLength());
+
+        assertNotEquals(key1, key2.withCache(100));
+        assertNotEquals(key1, key2.addResources("classpath*:Something.yaml"));
+        assertNotEquals(key1, key2.withField("DeviceBrand"));
+    }
+
+    @Test
+    public void testFieldNamesWithoutAnAnalyzer() {
+        int startAnalyzers = UserAgentAnalyzerRegistry.getNumberOfAnalyzers();
+        Key key = UserAgentAnalyzerRegistry.newKey().withField("DeviceClass");
+
+        List<String> fieldNames = UserAgentAnalyzerRegistry.getAllPossibleFieldNamesSorted(key);
+        assertEquals(startAnalyzers, UserAgentAnalyzerRegistry.getNumberOfAnalyzers());
+        assertEquals(0, UserAgentAnalyzerRegistry.getReferences(key));
+
+        // Only the resources matter
+        assertSame(fieldNames, UserAgentAnalyzerRegistry.getAllPossibleFieldNamesSorted(UserAgentAnalyzerRegistry.newKey()));
+
+        UserAgentAnalyzer uaa = UserAgentAnalyzer.newBuilder().hideMatcherLoadStats().dropTests().delayInitialization().build();
+        assertEquals(uaa.getAllPossibleFieldNamesSorted(), fieldNames);
+    }
+
+    @Test
+    public void testSharingAndRelease() {
+        Key key = UserAgentAnalyzerRegistry.newKey().withField("DeviceClass").withCache(123);
+        Key otherKey = key.withCache(456);
+
+        int startAnalyzers = UserAgentAnalyzerRegistry.getNumberOfAnalyzers();
+
+        SharedUserAgentAnalyzer shared1 = UserAgentAnalyzerRegistry.acquire(key);
+        SharedUserAgentAnalyzer shared2 = UserAgentAnalyzerRegistry.acquire(key);
+        SharedUserAgentAnalyzer other   = UserAgentAnalyzerRegistry.acquire(otherKey);
+
+        assertSame(shared1.getAnalyzer(), shared2.getAnalyzer());
+        assertNotSame(shared1.getAnalyzer(), other.getAnalyzer());
+        assertEquals(2, UserAgentAnalyzerRegistry.getReferences(key));
+        assertEquals(1, UserAgentAnalyzerRegistry.getReferences(otherKey));
+        assertEquals(startAnalyzers + 2, UserAgentAnalyzerRegistry.getNumberOfAnalyzers());
+
+        assertEquals(123, shared1.getAnalyzer().getCacheSize());
+        assertEquals(456, other.getAnalyzer().getCacheSize());
+        assertEquals("Desktop", shared1.getAnalyzer().parse(USERAGENT).getValue("DeviceClass"));
+
+        shared1.close();
+        shared1.close(); // Closing twice only counts once
+        assertTrue(shared1.isClosed());
+        assertThrows(IllegalStateException.class, shared1::getAnalyzer);
+        assertEquals(1, UserAgentAnalyzerRegistry.getReferences(key));
+
+        shared2.close();
+        other.close();
+        assertEquals(0, UserAgentAnalyzerRegistry.getReferences(key));
+        assertEquals(0, UserAgentAnalyzerRegistry.getReferences(otherKey));
+        assertEquals(startAnalyzers, UserAgentAnalyzerRegistry.getNumberOfAnalyzers());
+    }
+
+    @Test
+    public void testConcurrentFirstRequests() throws Exception {
+        Key key = UserAgentAnalyzerRegistry.newKey().withField("AgentNameVersionMajor").withCache(789);
+
+        int threads = 8;
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<SharedUserAgentAnalyzer> shared = new ArrayList<>();
+        try {
+            List<Future<SharedUserAgentAnalyzer>> futures = new ArrayList<>();
+            for (int thread = 0; thread < threads; thread++) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    return UserAgentAnalyzerRegistry.acquire(key);
+                }));
+            }
+            start.countDown();
+            for (Future<SharedUserAgentAnalyzer> future : futures) {
+                shared.add(future.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        // Only a single instance was built
+        UserAgentAnalyzer analyzer = shared.get(0).getAnalyzer();
+        for (SharedUserAgentAnalyzer sharedUserAgentAnalyzer : shared) {
+            assertSame(analyzer, sharedUserAgentAnalyzer.getAnalyzer());
+        }
+        assertEquals(threads, UserAgentAnalyzerRegistry.getReferences(key));
+
+        shared.forEach(SharedUserAgentAnalyzer::close);
+        assertEquals(0, UserAgentAnalyzerRegistry.getReferences(key));
+    }
+
+}
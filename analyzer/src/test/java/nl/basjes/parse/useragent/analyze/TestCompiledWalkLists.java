@@ -0,0 +1,99 @@
+/*
+ * Yet Another UserAgent Analyzer
+ * Copyright (C) 2013-2019 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.basjes.parse.useragent.analyze;
+
+import nl.basjes.parse.useragent.analyze.TestTreewalkerRequire.TestMatcher;
+import nl.basjes.parse.useragent.analyze.treewalker.steps.Step;
+import nl.basjes.parse.useragent.analyze.treewalker.steps.StepChain;
+import nl.basjes.parse.useragent.analyze.treewalker.steps.WalkList;
+import nl.basjes.parse.useragent.debug.UserAgentAnalyzerTester;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TestCompiledWalkLists {
+
+    @Test
+    public void testCompileWalkList() {
+        String path = "agent.(2-4)product.(1)comments.(5-6)entry.(1)text[2]=\"seven\"^^^<.name=\"foo faa\"^.comments.entry.text[-2]=\"three\"@[1-2]";
+
+        TestMatcher matcher = new TestMatcher(new HashMap<>(), new HashMap<>());
+        MatcherExtractAction action = new MatcherExtractAction("Dummy", 42, path, matcher);
+        action.initialize();
+
+        WalkList walkList = action.getEvaluatorForUnitTesting().getWalkListForUnitTesting();
+        String before = walkList.toString();
+
+        assertEquals(10, action.compileWalkList());
+        assertEquals(before, walkList.toString());
+
+        String[] expectedWalkList = {
+            "Up() --> Up() --> Up() --> Prev(1)",
+            "Down([1:1]name)",
+            "Equals(foo faa) --> Up()",
+            "Down([1:2]comments)",
+            "Down([1:20]entry)",
+            "Down([1:8]text)",
+            "WordRange([1:2]) --> Equals(three) --> BackToFull() --> WordRange([1:2])",
+        };
+
+        Step step = walkList.getFirstStep();
+        for (String walkStep : expectedWalkList) {
+            assertNotNull(step, "Missing step:" + walkStep);
+            assertEquals(walkStep, step.toString());
+            assertEquals(walkStep.contains(" --> "), step instanceof StepChain);
+            step = step.getNextStep();
+        }
+        assertNull(step);
+
+        // Compiling again does nothing.
+        assertEquals(0, action.compileWalkList());
+    }
+
+    @Test
+    public void testSameResults() {
+        UserAgentAnalyzerTester plain = UserAgentAnalyzerTester
+            .newBuilder()
+            .withoutCompiledWalkLists()
+            .keepTests()
+            .immediateInitialization()
+            .hideMatcherLoadStats()
+            .build();
+
+        UserAgentAnalyzerTester compiled = UserAgentAnalyzerTester
+            .newBuilder()
+            .withCompiledWalkLists()
+            .keepTests()
+            .immediateInitialization()
+            .hideMatcherLoadStats()
+            .build();
+
+        // The compiled walk lists print the same as the plain ones.
+        assertEquals(
+            plain.toString().replace("compileWalkLists=false", "compileWalkLists=true"),
+            compiled.toString());
+
+        assertTrue(plain.runTests(false, false, null, false, false));
+        assertTrue(compiled.runTests(false, false, null, false, false));
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Yet Another UserAgent Analyzer
+ * Copyright (C) 2013-2019 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.basjes.parse.useragent.analyze;
+
+import nl.basjes.parse.useragent.analyze.treewalker.steps.WalkList.WalkResult;
+import nl.basjes.parse.useragent.parser.UserAgentTreeWalkerParser;
+import org.antlr.v4.runtime.ParserRuleContext;
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TestMatcherActionIndex {
+
+    private static class DummyAction extends MatcherAction {
+        @Override
+        protected ParserRuleContext parseWalkerExpression(UserAgentTreeWalkerParser parser) {
+            return null;
+        }
+
+        @Override
+        protected void setFixedValue(String newFixedValue) {
+        }
+
+        @Override
+        protected void inform(AnalyzeContext context, String key, WalkResult foundValue) {
+        }
+
+        @Override
+        public boolean obtainResult(AnalyzeContext context) {
+            return false;
+        }
+    }
+
+    @Test
+    public void testLookups() {
+        MatcherAction path   = new DummyAction();
+        MatcherAction value1 = new DummyAction();
+        MatcherAction value2 = new DummyAction();
+        MatcherAction prefix = new DummyAction();
+
+        Map<String, Set<MatcherAction>> source = new LinkedHashMap<>();
+        source.put("agent.product.name", Collections.singleton(path));
+        Set<MatcherAction> values = new LinkedHashSet<>();
+        values.add(value1);
+        values.add(value2);
+        source.put("agent.product.name=\"chrome\"", values);
+        source.put("agent.product.name{\"chr\"", Collections.singleton(prefix));
+
+        MatcherActionIndex index = new MatcherActionIndex(source);
+
+        String key = "agent.product.Name";
+        int keyHash = MatcherActionIndex.hashPath(key);
+        assertArrayEquals(new MatcherAction[]{path}, index.getPath(key, keyHash));
+        assertArrayEquals(new MatcherAction[]{value1, value2}, index.getPathValue(key, keyHash, "Chrome"));
+        assertArrayEquals(new MatcherAction[]{prefix}, index.getPathPrefix(key, keyHash, "ChRoMe", 3));
+        assertArrayEquals(new MatcherAction[]{value1, value2}, index.get("agent.product.name=\"chrome\""));
+
+        assertNull(index.getPathValue(key, keyHash, "Chromium"));
+        assertNull(index.getPathPrefix(key, keyHash, "Chrome", 2));
+        String other = "agent.product.version";
+        assertNull(index.getPath(other, MatcherActionIndex.hashPath(other)));
+
+        assertTrue(MatcherActionIndex.isAscii("Chrome"));
+        assertFalse(MatcherActionIndex.isAscii("Chr\u00f6me"));
+    }
+
+    @Test
+    public void testEmpty() {
+        MatcherActionIndex index = new MatcherActionIndex(Collections.emptyMap());
+        assertNull(index.get("agent"));
+        assertNull(index.getPath("agent", MatcherActionIndex.hashPath("agent")));
+    }
+
+}
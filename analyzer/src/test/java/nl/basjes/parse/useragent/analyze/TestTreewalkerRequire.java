@@ -349,7 +349,7 @@ public class TestTreewalkerRequire {
 
 
         @Override
-        public void inform(String path, String value, ParseTree ctx) {
+        public void inform(AnalyzeContext context, String path, String value, ParseTree ctx) {
             // Not used during tests
         }
 
@@ -398,7 +398,7 @@ public class TestTreewalkerRequire {
         }
 
         @Override
-        public void analyze(UserAgent userAgent) {
+        public void analyze(UserAgent userAgent, AnalyzeContext context) {
             // Do nothing
         }
 
@@ -23,6 +23,7 @@ import nl.basjes.parse.useragent.utils.WordSplitter;
 import org.apache.commons.lang3.tuple.Pair;
 import org.junit.jupiter.api.Test;
 
+import java.util.Arrays;
 import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
@@ -405,6 +406,61 @@ public class TestWordSplitter {
         assertEquals(null,                     splitter.getSplitRange(value, splitList, -1, -1));
     }
 
+    @Test
+    public void testSplitIndex(){
+        String value = "one two/3 four-4 five(some more)";
+        Splitter splitter = WordSplitter.getInstance();
+
+        int[] splitIndex = splitter.createSplitIndex(value);
+        assertEquals(6, Splitter.getNumberOfSplits(splitIndex));
+
+        // Illegal values
+        assertEquals(null,                     splitter.getSplitRange(value, splitIndex, -5,  0));
+        assertEquals(null,                     splitter.getSplitRange(value, splitIndex,  0, -5));
+        assertEquals(null,                     splitter.getSplitRange(value, splitIndex, -5, -5));
+        assertEquals(null,                     splitter.getSplitRange(value, splitIndex,  3,  2));
+
+        // Single word
+        assertEquals(null,                     splitter.getSplitRange(value, splitIndex, 0, 0));
+        assertEquals("one",                    splitter.getSplitRange(value, splitIndex, 1, 1));
+        assertEquals("two",                    splitter.getSplitRange(value, splitIndex, 2, 2));
+        assertEquals("3",                      splitter.getSplitRange(value, splitIndex, 3, 3));
+        assertEquals("four",                   splitter.getSplitRange(value, splitIndex, 4, 4));
+        assertEquals("4",                      splitter.getSplitRange(value, splitIndex, 5, 5));
+        assertEquals("five",                   splitter.getSplitRange(value, splitIndex, 6, 6));
+        assertEquals(null,                     splitter.getSplitRange(value, splitIndex, 7, 7));
+
+        // Last words
+        assertEquals("one two/3 four-4 five",  splitter.getSplitRange(value, splitIndex, 1, -1));
+        assertEquals("4 five",                 splitter.getSplitRange(value, splitIndex, 5, -1));
+        assertEquals(null,                     splitter.getSplitRange(value, splitIndex, 7, -1));
+
+        // Slices
+        assertEquals("two/3 four",             splitter.getSplitRange(value, splitIndex, 2, 4));
+        assertEquals(null,                     splitter.getSplitRange(value, splitIndex, 5, 7));
+    }
+
+    @Test
+    public void testSplitIndexSameAsDirect(){
+        String[] values = {
+            "", " ", "(", "one", " one ", "one two/3 four-4 five(some more)", "one two ", "-one--two-",
+            "1.2_3-4", "1..2.", "_1", "A very long value with many more words than fit in the initial split index at all",
+        };
+        for (Splitter splitter : Arrays.asList(WordSplitter.getInstance(), VersionSplitter.getInstance())) {
+            for (String value : values) {
+                int[] splitIndex = splitter.createSplitIndex(value);
+                for (int first = -1; first < 20; first++) {
+                    for (int last = -2; last < 20; last++) {
+                        assertEquals(
+                            splitter.getSplitRange(value, first, last),
+                            splitter.getSplitRange(value, splitIndex, first, last),
+                            "Range [" + first + ":" + last + "] of \"" + value + "\"");
+                    }
+                }
+            }
+        }
+    }
+
     @Test
     public void badCalls() {
         String value = "one two/3 four-4 five(some more)";
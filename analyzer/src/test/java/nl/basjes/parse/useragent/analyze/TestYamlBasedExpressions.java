@@ -50,6 +50,12 @@ public class TestYamlBasedExpressions {
         assertTrue(uaa.runTests(false, false));
     }
 
+    @Test
+    public void runMatcherConstantTests() {
+        UserAgentAnalyzerTester uaa = createTester("Matcher-Constant-tests.yaml");
+        assertTrue(uaa.runTests(false, false));
+    }
+
     @Test
     public void runSubstringTests() {
         UserAgentAnalyzerTester uaa = createTester("SubString-tests.yaml");
@@ -68,12 +74,24 @@ public class TestYamlBasedExpressions {
         assertTrue(uaa.runTests(false, false));
     }
 
+    @Test
+    public void runKnownValuesTests() {
+        UserAgentAnalyzerTester uaa = createTester("KnownValues-tests.yaml");
+        assertTrue(uaa.runTests(false, false));
+    }
+
     @Test
     public void runLookupPrefixTests() {
         UserAgentAnalyzerTester uaa = createTester("LookupPrefix-tests.yaml");
         assertTrue(uaa.runTests(false, true));
     }
 
+    @Test
+    public void runLookupContainsTests() {
+        UserAgentAnalyzerTester uaa = createTester("LookupContains-tests.yaml");
+        assertTrue(uaa.runTests(false, true));
+    }
+
     @Test
     public void runVariableTests() {
         UserAgentAnalyzerTester uaa = createTester("Variable-tests.yaml");
@@ -0,0 +1,81 @@
+/*
+ * Yet Another UserAgent Analyzer
+ * Copyright (C) 2013-2019 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.basjes.parse.useragent.analyze.treewalker.steps.lookup;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class TestContainsAutomaton {
+
+    // The reference implementation: the first key that is contained.
+    private int bruteForce(List<String> keys, String input) {
+        for (int i = 0; i < keys.size(); i++) {
+            if (input.contains(keys.get(i))) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Test
+    public void testOverlappingKeys() {
+        List<String> keys = Arrays.asList("she", "he", "hers", "his", "s");
+        ContainsAutomaton automaton = new ContainsAutomaton(keys);
+        for (String input : Arrays.asList("", "x", "ushers", "hishe", "ahe", "hers", "sh", "hi")) {
+            assertEquals(bruteForce(keys, input), automaton.firstMatchingKey(input), input);
+        }
+    }
+
+    @Test
+    public void testEmptyKeys() {
+        assertEquals(-1, new ContainsAutomaton(Collections.emptyList()).firstMatchingKey("abc"));
+        assertEquals(1, new ContainsAutomaton(Arrays.asList("x", "")).firstMatchingKey("abc"));
+    }
+
+    @Test
+    public void testRandom() {
+        Random random = new Random(42);
+        for (int round = 0; round < 100; round++) {
+            String[] keys = new String[1 + random.nextInt(10)];
+            for (int i = 0; i < keys.length; i++) {
+                keys[i] = randomString(random, 1 + random.nextInt(4));
+            }
+            List<String> keyList = Arrays.asList(keys);
+            ContainsAutomaton automaton = new ContainsAutomaton(keyList);
+            for (int i = 0; i < 50; i++) {
+                String input = randomString(random, random.nextInt(12));
+                assertEquals(bruteForce(keyList, input), automaton.firstMatchingKey(input), keyList + " in " + input);
+            }
+        }
+    }
+
+    private String randomString(Random random, int length) {
+        StringBuilder sb = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            sb.append((char) ('a' + random.nextInt(3)));
+        }
+        return sb.toString();
+    }
+
+}
@@ -26,7 +26,9 @@ import java.lang.reflect.Field;
 import static nl.basjes.parse.useragent.UserAgentAnalyzer.DEFAULT_PARSE_CACHE_SIZE;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 
 public class TestAnnotationCachesetting {
 
@@ -141,5 +143,36 @@ public class TestAnnotationCachesetting {
 
     }
 
+    @Test
+    public void testAnnotationCacheSettingShared() throws IllegalAccessException, NoSuchFieldException {
+        UserAgentAnnotationAnalyzer<TestRecord> userAgentAnnotationAnalyzer1 = new UserAgentAnnotationAnalyzer<>();
+        UserAgentAnnotationAnalyzer<TestRecord> userAgentAnnotationAnalyzer2 = new UserAgentAnnotationAnalyzer<>();
+
+        // To make sure the internals behave as expected
+        Field userAgentAnalyzerField = UserAgentAnnotationAnalyzer.class.getDeclaredField("userAgentAnalyzer");
+        userAgentAnalyzerField.setAccessible(true);
+
+        userAgentAnnotationAnalyzer1.setCacheSize(2345);
+        userAgentAnnotationAnalyzer2.setCacheSize(2345);
+        userAgentAnnotationAnalyzer1.initializeShared(new MyMapper());
+        userAgentAnnotationAnalyzer2.initializeShared(new MyMapper());
+
+        UserAgentAnalyzer userAgentAnalyzer1 = (UserAgentAnalyzer)userAgentAnalyzerField.get(userAgentAnnotationAnalyzer1);
+        UserAgentAnalyzer userAgentAnalyzer2 = (UserAgentAnalyzer)userAgentAnalyzerField.get(userAgentAnnotationAnalyzer2);
+        assertSame(userAgentAnalyzer1, userAgentAnalyzer2);
+        assertEquals(2345, userAgentAnalyzer1.getCacheSize());
+
+        // Changing the cache size switches to a different shared analyzer and leaves the other one alone.
+        userAgentAnnotationAnalyzer1.setCacheSize(3456);
+        UserAgentAnalyzer userAgentAnalyzer3 = (UserAgentAnalyzer)userAgentAnalyzerField.get(userAgentAnnotationAnalyzer1);
+        assertNotSame(userAgentAnalyzer1, userAgentAnalyzer3);
+        assertEquals(3456, userAgentAnalyzer3.getCacheSize());
+        assertEquals(2345, userAgentAnalyzer2.getCacheSize());
+
+        userAgentAnnotationAnalyzer1.close();
+        userAgentAnnotationAnalyzer2.close();
+        assertNull(userAgentAnalyzerField.get(userAgentAnnotationAnalyzer1));
+        assertNull(userAgentAnalyzerField.get(userAgentAnnotationAnalyzer2));
+    }
 
 }
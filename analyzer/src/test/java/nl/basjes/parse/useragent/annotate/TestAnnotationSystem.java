@@ -17,6 +17,7 @@
 
 package nl.basjes.parse.useragent.annotate;
 
+import nl.basjes.parse.useragent.ParsedUserAgent;
 import nl.basjes.parse.useragent.analyze.InvalidParserConfigurationException;
 import org.junit.jupiter.api.Test;
 
@@ -53,6 +54,10 @@ public class TestAnnotationSystem {
             return userAgentAnalyzer.map(record);
         }
 
+        public UserAgentAnnotationAnalyzer<TestRecord> getUserAgentAnalyzer() {
+            return userAgentAnalyzer;
+        }
+
         @Override
         public String getUserAgentString(TestRecord record) {
             return record.useragent;
@@ -87,6 +92,27 @@ public class TestAnnotationSystem {
         assertEquals("Chrome 48.0.2564.82", record.agentNameVersion);
     }
 
+    @Test
+    public void testAnalyzeOnceMapMany() {
+        MyMapper mapper = new MyMapper();
+        UserAgentAnnotationAnalyzer<TestRecord> analyzer = mapper.getUserAgentAnalyzer();
+
+        String useragent = "Mozilla/5.0 (X11; Linux x86_64) AppleWebKit/537.36 (KHTML, like Gecko) " +
+            "Chrome/48.0.2564.82 Safari/537.36";
+
+        ParsedUserAgent parsedUserAgent = analyzer.analyze(useragent);
+
+        TestRecord record1 = analyzer.map(new TestRecord(useragent), parsedUserAgent);
+        TestRecord record2 = analyzer.map(new TestRecord(useragent), parsedUserAgent);
+
+        assertEquals("Desktop", record1.deviceClass);
+        assertEquals("Chrome 48.0.2564.82", record1.agentNameVersion);
+        assertEquals("Desktop", record2.deviceClass);
+        assertEquals("Chrome 48.0.2564.82", record2.agentNameVersion);
+
+        assertNull(analyzer.map(null, parsedUserAgent));
+    }
+
     // ----------------------------------------------------------------
 
     public static class ImpossibleFieldMapper extends MyBaseMapper {
@@ -0,0 +1,120 @@
+/*
+ * Yet Another UserAgent Analyzer
+ * Copyright (C) 2013-2019 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.basjes.parse.useragent.cache;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TestConcurrentClockParseCache {
+
+    @Test
+    public void testBasics() {
+        ParseCache<String> cache = new ConcurrentClockParseCache<>(10);
+        assertNull(cache.get("One"));
+        cache.put("One", "1", 0);
+        assertEquals("1", cache.get("One"));
+        assertEquals(1, cache.size());
+
+        // The first value is retained
+        cache.put("One", "Other", 0);
+        assertEquals("1", cache.get("One"));
+
+        assertEquals(2, cache.getHits());
+        assertEquals(1, cache.getMisses());
+        assertEquals(0, cache.getEvictions());
+
+        cache.clear();
+        assertEquals(0, cache.size());
+        assertNull(cache.get("One"));
+    }
+
+    @Test
+    public void testSecondChance() {
+        ParseCache<String> cache = new ConcurrentClockParseCache<>(2);
+        cache.put("One", "1", 0);
+        cache.put("Two", "2", 0);
+        assertEquals("1", cache.get("One")); // One is now referenced
+
+        cache.put("Three", "3", 0);          // So Two must go
+        assertEquals("1", cache.get("One"));
+        assertNull(cache.get("Two"));
+        assertEquals("3", cache.get("Three"));
+        assertEquals(1, cache.getEvictions());
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void testMaxBytes() {
+        ParseCache<String> cache = new ConcurrentClockParseCache<>(10, 100);
+        cache.put("TooBig", "X", 101);
+        assertNull(cache.get("TooBig"));
+
+        cache.put("One", "1", 40);
+        cache.put("Two", "2", 40);
+        cache.put("Three", "3", 40);
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.getEvictions());
+        assertNull(cache.get("One"));
+    }
+
+    @Test
+    public void testBadSize() {
+        assertThrows(IllegalArgumentException.class, () -> new ConcurrentClockParseCache<>(0));
+    }
+
+    @Test
+    public void testConcurrentUse() throws Exception {
+        ParseCache<String> cache = new ConcurrentClockParseCache<>(1000);
+        int threads = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int thread = 0; thread < threads; thread++) {
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < 20000; i++) {
+                        String key = "Key" + (i % 2000);
+                        String value = cache.get(key);
+                        if (value == null) {
+                            cache.put(key, key, 0);
+                        } else {
+                            assertEquals(key, value);
+                        }
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertTrue(cache.size() <= 1000, "Too many entries: " + cache.size());
+        assertEquals(threads * 20000L, cache.getHits() + cache.getMisses());
+    }
+
+}
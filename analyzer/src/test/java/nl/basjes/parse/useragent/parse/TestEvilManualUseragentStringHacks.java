@@ -0,0 +1,82 @@
+/*
+ * Yet Another UserAgent Analyzer
+ * Copyright (C) 2013-2019 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.basjes.parse.useragent.parse;
+
+import org.junit.jupiter.api.Test;
+
+import static nl.basjes.parse.useragent.parse.EvilManualUseragentStringHacks.fixIt;
+import static nl.basjes.parse.useragent.parse.EvilManualUseragentStringHacks.needsFixing;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TestEvilManualUseragentStringHacks {
+
+    @Test
+    public void testNothingToFix() {
+        String[] useragents = {
+            "Mozilla/5.0 (X11; Linux x86_64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/48.0.2564.82 Safari/537.36",
+            "Mozilla/5.0 (Linux; Android 7.0; Nexus 6 Build/NBD90Z) AppleWebKit/537.36 (KHTML, like Gecko) " +
+                "Chrome/53.0.2785.124 Mobile Safari/537.36",
+            "Mozilla/5.0 (compatible; MSIE 9.0; Windows NT 6.1; Trident/5.0)",
+            "Mozilla/4.0 (compatible; MSIE 8.0; Windows NT 6.1; Trident/4.0; SLCC2; .NET CLR 2.0.50727)",
+            "Mozilla/5.0 (Linux; U; Android-Phone) Version/4.0 Mobile",
+            "Mozilla/5.0 Foo/1.2Bar Baz/1.2 Abcd",
+            "x",
+        };
+        for (String useragent : useragents) {
+            // Must be the exact same instance
+            assertSame(useragent, fixIt(useragent), useragent);
+        }
+
+        // A normal Internet Explorer must not even need the full set of fixes.
+        assertFalse(needsFixing("Mozilla/5.0 (compatible; MSIE 9.0; Windows NT 6.1; Trident/5.0)"));
+        assertFalse(needsFixing("Mozilla/4.0 (compatible; MSIE 8.0; Windows NT 6.1; Trident/4.0; SLCC2; .NET CLR 2.0.50727)"));
+        assertTrue(needsFixing("Foo (MSIE8; Windows)"));
+    }
+
+    @Test
+    public void testFixes() {
+        assertEquals("Foo Bar",                         fixIt("Foo    Bar"));
+        assertEquals("Foo Bar",                         fixIt("Foo Bar"));
+        assertEquals("Foo Bar",                         fixIt("  Foo Bar"));
+        assertEquals("Foo (SSL TLS)",                   fixIt("Foo (SSL/TLS)"));
+        assertEquals("Foo (MSIE 8; Windows)",           fixIt("Foo (MSIE8; Windows)"));
+        assertEquals("Foo Ant.com_Toolbar",             fixIt("Foo Ant.com Toolbar"));
+        assertEquals("Foo (Android 4.1)",               fixIt("Foo (Android-4.1)"));
+        assertEquals("Foo/1.2 Abcd Bar",                fixIt("Foo/1.2Abcd Bar"));
+        assertEquals("Foo android/19 /foo",             fixIt("Foo android/19/foo"));
+        assertEquals("Java /1.8.0",                     fixIt("Java/1.8.0"));
+        assertEquals("Foo (Macintosh; Intel)",          fixIt("Foo (Macintosh); Intel)"));
+        assertEquals("Foo (Unknown/1.0; Unknown/2.0)",  fixIt("Foo (/1.0; /2.0)"));
+        assertEquals("Mozilla/5.0 (compatible; Foo)",   fixIt("(compatible; Foo)"));
+        assertEquals("Mozilla/5.0 (Foo)",               fixIt("/5.0 (Foo)"));
+        assertEquals("Foo/1.0",                         fixIt("Foo/1.0,gzip(gfe)"));
+        assertEquals("Foo Bar",                         fixIt("Foo__Bar"));
+        assertEquals("Foo Bar;",                        fixIt("Foo%20Bar%3B"));
+    }
+
+    @Test
+    public void testTriggeredButUnchanged() {
+        // Starts with a '(' so it is checked yet nothing is changed.
+        String useragent = "(Foo) Bar/1.0";
+        assertSame(useragent, fixIt(useragent));
+    }
+
+}
@@ -0,0 +1,100 @@
+/*
+ * Yet Another UserAgent Analyzer
+ * Copyright (C) 2013-2019 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.basjes.parse.useragent.parse;
+
+import nl.basjes.parse.useragent.parser.UserAgentLexer;
+import nl.basjes.parse.useragent.parser.UserAgentParser;
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.junit.jupiter.api.Test;
+
+import static nl.basjes.parse.useragent.parser.UserAgentParser.RULE_commentBlock;
+import static nl.basjes.parse.useragent.parser.UserAgentParser.RULE_commentEntry;
+import static nl.basjes.parse.useragent.parser.UserAgentParser.RULE_product;
+import static nl.basjes.parse.useragent.parser.UserAgentParser.RULE_productName;
+import static nl.basjes.parse.useragent.parser.UserAgentParser.RULE_productVersionWithCommas;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TestIndexedRuleContext {
+
+    private IndexedRuleContext parse(String userAgent) {
+        UserAgentLexer lexer = new UserAgentLexer(CharStreams.fromString(userAgent));
+        return new UserAgentParser(new CommonTokenStream(lexer)).userAgent();
+    }
+
+    @Test
+    public void testNavigation() {
+        IndexedRuleContext root = parse("One/1 (a; b) Two/2");
+        assertNull(root.getWalkParent());
+        assertEquals("One/1 (a; b) Two/2", root.getSourceText());
+
+        IndexedRuleContext[] products = root.getWalkChildren();
+        assertEquals(2, products.length);
+        IndexedRuleContext one = products[0];
+        assertEquals(RULE_product, one.getRuleIndex());
+        assertSame(root, one.getWalkParent());
+        assertTrue(one.hasWalkSiblings());
+        assertSame(products[1], one.getWalkSibling(1));
+        assertNull(one.getWalkSibling(-1));
+        assertNull(one.getWalkSibling(2));
+
+        IndexedRuleContext[] parts = one.getWalkChildren();
+        assertEquals(3, parts.length);
+        assertEquals(RULE_productName, parts[0].getRuleIndex());
+        assertEquals(RULE_productVersionWithCommas, parts[1].getRuleIndex());
+        assertEquals(RULE_commentBlock, parts[2].getRuleIndex());
+
+        // The separator between the comment entries is not a child.
+        IndexedRuleContext[] entries = parts[2].getWalkChildren();
+        assertEquals(2, entries.length);
+        assertEquals(RULE_commentEntry, entries[0].getRuleIndex());
+        assertEquals("a", entries[0].getSourceText());
+        assertSame(entries[1], entries[0].getWalkSibling(1));
+        assertSame(entries[0], entries[1].getWalkSibling(-1));
+
+        // An Up step skips the ProductName level so the actual name has no siblings in a walk.
+        IndexedRuleContext name = parts[0].getWalkChildren()[0];
+        assertSame(one, name.getWalkParent());
+        assertFalse(name.hasWalkSiblings());
+
+        // The text is only extracted once.
+        assertSame(name.getSourceText(), name.getSourceText());
+    }
+
+    @Test
+    public void testLowerCaseCache() {
+        IndexedRuleContext root = parse("One/1 (Linux; Android 9) Two/2");
+        IndexedRuleContext one = root.getWalkChildren()[0];
+
+        String lower = one.toLowerCase(null);
+        assertEquals("one/1 (linux; android 9)", lower);
+        assertSame(lower, one.toLowerCase(null));
+        assertSame(lower, one.toLowerCase(one.getSourceText()));
+
+        String value = "Linux";
+        String lowerValue = one.toLowerCase(value);
+        assertEquals("linux", lowerValue);
+        assertSame(lowerValue, one.toLowerCase(value));
+        assertEquals("android 9", one.toLowerCase("Android 9"));
+    }
+
+}
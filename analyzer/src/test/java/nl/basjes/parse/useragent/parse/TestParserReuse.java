@@ -0,0 +1,145 @@
+/*
+ * Yet Another UserAgent Analyzer
+ * Copyright (C) 2013-2019 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.basjes.parse.useragent.parse;
+
+import nl.basjes.parse.useragent.UserAgent;
+import nl.basjes.parse.useragent.UserAgentAnalyzer;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TestParserReuse {
+
+    private static final String VALID =
+        "Mozilla/5.0 (Linux; Android 7.0; Nexus 6 Build/NBD90Z) AppleWebKit/537.36 (KHTML, like Gecko) " +
+        "Chrome/53.0.2785.124 Mobile Safari/537.36";
+
+    // This needs the fallback to the full LL parse with error recovery.
+    private static final String BROKEN = "NielsBasjesBot/42 (+http://www.xx.xx/bot/)";
+
+    // The SLL prediction bails out on this one yet the full LL prediction parses it without any error.
+    private static final String NEEDS_LL =
+        "ADmantX Platform Semantic Analyzer - ADmantX Inc. - www.admantx.com - support@admantx.com";
+
+    // The full LL prediction reports an ambiguity for this one.
+    private static final String AMBIGUOUS =
+        "Mozilla/5.0 (Linux; Android 6.0; 8063 Build/MRA58K) AppleWebKit/537.36 (KHTML, like Gecko) " +
+        "Chrome/55.0.2883.91 Safari/537.36";
+
+    @Test
+    public void testReuseAndFallback() {
+        UserAgentAnalyzer uaa = UserAgentAnalyzer
+            .newBuilder()
+            .hideMatcherLoadStats()
+            .withoutCache()
+            .withField("DeviceClass")
+            .withField("DeviceName")
+            .withSllFirstParsing()
+            .build();
+
+        // Everything is parsed with the same (reused) lexer and parser.
+        UserAgent valid = uaa.parse(VALID);
+        UserAgent broken = uaa.parse(BROKEN);
+        assertFalse(valid.hasSyntaxError());
+        assertTrue(broken.hasSyntaxError());
+
+        assertEquals(valid, uaa.parse(VALID));
+        assertEquals(broken, uaa.parse(BROKEN));
+        assertEquals("Google Nexus 6", uaa.parse(VALID).getValue("DeviceName"));
+
+        // The debug mode always uses the full LL parse.
+        UserAgent debug = new UserAgent(VALID);
+        debug.setDebug(true);
+        assertEquals("Google Nexus 6", uaa.parse(debug).getValue("DeviceName"));
+    }
+
+    @Test
+    public void testFallbackIsNotASyntaxError() {
+        UserAgentAnalyzer uaa = UserAgentAnalyzer
+            .newBuilder()
+            .hideMatcherLoadStats()
+            .withoutCache()
+            .withField("DeviceClass")
+            .build();
+
+        UserAgentAnalyzer sllFirst = UserAgentAnalyzer
+            .newBuilder()
+            .hideMatcherLoadStats()
+            .withoutCache()
+            .withField("DeviceClass")
+            .withSllFirstParsing()
+            .build();
+
+        UserAgent expected = uaa.parse(NEEDS_LL);
+        UserAgent actual = sllFirst.parse(NEEDS_LL);
+        assertFalse(expected.hasSyntaxError());
+        assertFalse(actual.hasSyntaxError());
+        assertEquals(expected, actual);
+    }
+
+    @Test
+    public void testAmbiguityReporting() {
+        UserAgentAnalyzer uaa = UserAgentAnalyzer
+            .newBuilder()
+            .hideMatcherLoadStats()
+            .withoutCache()
+            .withField("DeviceClass")
+            .build();
+
+        // By default everything is parsed with the full LL prediction which reports the ambiguities.
+        UserAgent ambiguous = uaa.parse(AMBIGUOUS);
+        assertTrue(ambiguous.hasAmbiguity());
+        assertTrue(ambiguous.getAmbiguityCount() > 0);
+
+        UserAgentAnalyzer sllUaa = UserAgentAnalyzer
+            .newBuilder()
+            .hideMatcherLoadStats()
+            .withoutCache()
+            .withField("DeviceClass")
+            .withSllFirstParsing()
+            .build();
+
+        // The SLL first parsing produces the same fields.
+        assertEquals(ambiguous.getValue("DeviceClass"), sllUaa.parse(AMBIGUOUS).getValue("DeviceClass"));
+    }
+
+    @Test
+    public void testDfaCache() {
+        UserAgentAnalyzer uaa = UserAgentAnalyzer
+            .newBuilder()
+            .hideMatcherLoadStats()
+            .withoutCache()
+            .withField("DeviceClass")
+            .build();
+
+        UserAgent expected = uaa.parse(VALID);
+        assertTrue(UserAgentTreeFlattener.getDfaCacheSize() > 0);
+        assertTrue(UserAgentTreeFlattener.getPredictionContextCacheSize() >= 0);
+
+        assertFalse(UserAgentTreeFlattener.limitDfaCacheSize(Long.MAX_VALUE));
+        assertTrue(UserAgentTreeFlattener.limitDfaCacheSize(0));
+        assertEquals(0, UserAgentTreeFlattener.getDfaCacheSize());
+
+        // Parsing still works (and rebuilds the cache).
+        assertEquals(expected, uaa.parse(VALID));
+        assertTrue(UserAgentTreeFlattener.getDfaCacheSize() > 0);
+    }
+
+}
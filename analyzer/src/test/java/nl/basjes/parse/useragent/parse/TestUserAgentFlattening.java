@@ -20,12 +20,21 @@ package nl.basjes.parse.useragent.parse;
 import nl.basjes.parse.useragent.UserAgent;
 import nl.basjes.parse.useragent.UserAgentAnalyzer;
 import nl.basjes.parse.useragent.AbstractUserAgentAnalyzerDirect.GetAllPathsAnalyzer;
+import nl.basjes.parse.useragent.analyze.InformSink;
+import nl.basjes.parse.useragent.analyze.WordRangeVisitor.Range;
+import org.antlr.v4.runtime.tree.ParseTree;
 import org.junit.jupiter.api.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.fail;
 
 // CHECKSTYLE.OFF: LineLength
@@ -1344,6 +1353,78 @@ public class TestUserAgentFlattening {
 
     }
 
+    private static class PruningAnalyzer implements InformSink {
+        private final Set<String> relevantPaths;
+        private final List<String> informed = new ArrayList<>();
+        private Set<Range> ranges = Collections.emptySet();
+
+        PruningAnalyzer(String... relevantPaths) {
+            this.relevantPaths = new HashSet<>(Arrays.asList(relevantPaths));
+        }
+
+        @Override
+        public void inform(String path, String value, ParseTree ctx) {
+            informed.add(path + "=\"" + value + "\"");
+        }
+
+        @Override
+        public boolean isRelevantPath(String path) {
+            return relevantPaths.contains(path);
+        }
+
+        @Override
+        public Set<Range> getRequiredInformRanges(String treeName) {
+            return ranges;
+        }
+    }
+
+    @Test
+    public void testFlatteningOnlyRelevantPaths() {
+        PruningAnalyzer analyzer = new PruningAnalyzer(
+            "agent",
+            "agent.(2)product",
+            "agent.(2)product.(1)comments",
+            "agent.(2)product.(1)comments.(1)entry",
+            "agent.(2)product.(1)comments.(1)entry.(2)product",
+            "agent.(2)product.(1)comments.(1)entry.(2)product.(1)version");
+
+        new UserAgentTreeFlattener(analyzer).parse("one/two 3 four five/6 (one/two 3 four five/6)");
+
+        // The skipped subtrees must not change the numbering of the nodes that follow them.
+        assertEquals(Arrays.asList(
+            "__SyntaxError__=\"false\"",
+            "agent=\"one/two 3 four five/6 (one/two 3 four five/6)\"",
+            "agent.(2)product=\"four five/6 (one/two 3 four five/6)\"",
+            "agent.(2)product.(1)comments=\"(one/two 3 four five/6)\"",
+            "agent.(2)product.(1)comments.(1)entry=\"one/two 3 four five/6\"",
+            "agent.(2)product.(1)comments.(1)entry.(2)product=\"four five/6\"",
+            "agent.(2)product.(1)comments.(1)entry.(2)product.(1)version=\"6\""),
+            analyzer.informed);
+    }
+
+    @Test
+    public void testFlatteningRangesOfSecondVersion() {
+        PruningAnalyzer analyzer = new PruningAnalyzer(
+            "agent",
+            "agent.(1)product",
+            "agent.(1)product.(1)version");
+        analyzer.ranges = Collections.singleton(new Range(2, 2));
+
+        new UserAgentTreeFlattener(analyzer).parse("one/1.2.3/4.5.6");
+
+        // The ranges of the second version are informed with the child counter of the product.
+        // So these must be informed even though agent.(1)product.(2)version itself is not relevant.
+        assertEquals(Arrays.asList(
+            "__SyntaxError__=\"false\"",
+            "agent=\"one/1.2.3/4.5.6\"",
+            "agent.(1)product=\"one/1.2.3/4.5.6\"",
+            "agent.(1)product[2-2]=\"1\"",
+            "agent.(1)product.(1)version=\"1.2.3\"",
+            "agent.(1)product.(1)version[2-2]=\"2\"",
+            "agent.(1)product.(1)version[2-2]=\"5\""),
+            analyzer.informed);
+    }
+
     private void validateUserAgent(String useragent, String... requiredValues) {
 
         boolean developmentMode = requiredValues.length == 0;
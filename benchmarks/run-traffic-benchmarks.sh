@@ -0,0 +1,31 @@
+#!/usr/bin/env bash
+#
+# Yet Another UserAgent Analyzer
+# Copyright (C) 2013-2019 Niels Basjes
+#
+# Licensed under the Apache License, Version 2.0 (the "License");
+# you may not use this file except in compliance with the License.
+# You may obtain a copy of the License at
+#
+# https://www.apache.org/licenses/LICENSE-2.0
+#
+# Unless required by applicable law or agreed to in writing, software
+# distributed under the License is distributed on an AS IS BASIS,
+# WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+# See the License for the specific language governing permissions and
+# limitations under the License.
+#
+
+# Usage: ./run-traffic-benchmarks.sh [ /path/to/sampled/useragents.txt ]
+#   The file has one useragent per line (optionally prefixed with a count and a TAB).
+#   Without a file the test cases of the analyzer are replayed with a Zipf like popularity.
+
+CORPUS="testcases"
+if [ $# -gt 0 ]; then
+  CORPUS="$1"
+fi
+
+( cd .. && mvn clean package -DskipTests=true -Drat.skip=true ) || exit
+version=$(grep -F '<version>' pom.xml | head -1 | sed 's@.*>\(.*\)<.*$@\1@g')
+echo "Testing version ${version} with corpus ${CORPUS}" && \
+java -jar target/benchmarks.jar TrafficBenchmarks -prof gc -p corpus="${CORPUS}" > "results/traffic-${version}-$(date +%Y%m%d-%H%M%S).txt"
@@ -0,0 +1,169 @@
+/*
+ * Yet Another UserAgent Analyzer
+ * Copyright (C) 2013-2019 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.basjes.parse.useragent.benchmarks;
+
+import nl.basjes.parse.useragent.UserAgent;
+import nl.basjes.parse.useragent.UserAgentAnalyzer;
+import nl.basjes.parse.useragent.UserAgentAnalyzer.UserAgentAnalyzerBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Replays a realistic mix of traffic (see {@link TrafficCorpus}) through the analyzer.
+ * <p>
+ * Throughput and latency (percentiles via SampleTime) are measured both single threaded
+ * and with all available cores, with and without a cache and with all or only a few fields.
+ * <p>
+ * Run it with <pre>java -jar target/benchmarks.jar TrafficBenchmarks -prof gc</pre>
+ * to also get the allocation rate and to replay your own sampled traffic add
+ * <pre>-p corpus=/path/to/useragents.txt</pre>
+ */
+@Warmup(iterations = 5, time = 10)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+public class TrafficBenchmarks {
+
+    @State(Scope.Benchmark)
+    public static class AnalyzerState {
+        // CHECKSTYLE.OFF: VisibilityModifier
+        /** Either "testcases" or the name of a file with sampled traffic. */
+        @Param({TrafficCorpus.TEST_CASES})
+        public String corpus;
+
+        /** The size of the cache (0 = no cache). */
+        @Param({"0", "10000"})
+        public int cacheSize;
+
+        /** The set of requested fields: "all" or "narrow". */
+        @Param({"all", "narrow"})
+        public String fields;
+        // CHECKSTYLE.ON: VisibilityModifier
+
+        UserAgentAnalyzer uaa;
+        TrafficCorpus traffic;
+
+        @Setup(Level.Trial)
+        public void setup() {
+            traffic = TrafficCorpus.load(corpus, TrafficCorpus.DEFAULT_SAMPLE_SIZE);
+
+            UserAgentAnalyzerBuilder builder = UserAgentAnalyzer
+                .newBuilder()
+                .hideMatcherLoadStats();
+            if (cacheSize > 0) {
+                builder.withCache(cacheSize);
+            } else {
+                builder.withoutCache();
+            }
+            switch (fields) {
+                case "all":
+                    builder.withAllFields();
+                    break;
+                case "narrow":
+                    builder
+                        .withField("DeviceClass")
+                        .withField("OperatingSystemNameVersion")
+                        .withField("AgentNameVersionMajor");
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown field set: " + fields);
+            }
+            uaa = builder.build();
+            uaa.parse((String)null); // Make sure everything has been initialized.
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class ReplayState {
+        private static final AtomicInteger THREAD_COUNTER = new AtomicInteger();
+        private int position;
+
+        @Setup(Level.Trial)
+        public void setup(AnalyzerState analyzerState) {
+            // Each thread starts at a different point in the traffic.
+            position = (int) ((THREAD_COUNTER.getAndIncrement() * 7919L) % analyzerState.traffic.size());
+        }
+
+        String next(TrafficCorpus traffic) {
+            String userAgent = traffic.get(position);
+            if (++position == traffic.size()) {
+                position = 0;
+            }
+            return userAgent;
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public UserAgent throughputSingleThread(AnalyzerState state, ReplayState replay) {
+        return state.uaa.parse(replay.next(state.traffic));
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public UserAgent throughputAllThreads(AnalyzerState state, ReplayState replay) {
+        return state.uaa.parse(replay.next(state.traffic));
+    }
+
+    @Benchmark
+    @Threads(1)
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public UserAgent latencySingleThread(AnalyzerState state, ReplayState replay) {
+        return state.uaa.parse(replay.next(state.traffic));
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public UserAgent latencyAllThreads(AnalyzerState state, ReplayState replay) {
+        return state.uaa.parse(replay.next(state.traffic));
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options opt = new OptionsBuilder()
+            .include(TrafficBenchmarks.class.getSimpleName())
+            .addProfiler(GCProfiler.class)
+            .build();
+
+        new Runner(opt).run();
+    }
+}
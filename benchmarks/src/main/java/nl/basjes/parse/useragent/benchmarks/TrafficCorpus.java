@@ -0,0 +1,206 @@
+/*
+ * Yet Another UserAgent Analyzer
+ * Copyright (C) 2013-2019 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.basjes.parse.useragent.benchmarks;
+
+import nl.basjes.parse.useragent.UserAgentAnalyzer;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * A replayable stream of useragents that resembles real traffic:
+ * a few useragents are very common and there is a long tail of rare ones.
+ * <p>
+ * The corpus is either built from all test cases of the analyzer (with a Zipf like popularity)
+ * or loaded from a file with sampled traffic.
+ * The sample is generated using a fixed seed so all runs replay exactly the same traffic.
+ */
+public final class TrafficCorpus {
+
+    /** The name of the corpus that is built from the test cases of the analyzer. */
+    public static final String TEST_CASES = "testcases";
+
+    public static final int    DEFAULT_SAMPLE_SIZE   = 100_000;
+    public static final double DEFAULT_ZIPF_EXPONENT = 1.0;
+    private static final long  SEED                  = 42;
+
+    private final String[] uniqueUserAgents;
+    private final String[] sample;
+
+    private TrafficCorpus(String[] uniqueUserAgents, double[] weights, int sampleSize) {
+        this.uniqueUserAgents = uniqueUserAgents;
+        this.sample = drawSample(uniqueUserAgents, weights, sampleSize);
+    }
+
+    /**
+     * @param corpus Either {@link #TEST_CASES} or the name of a file (see {@link #fromFile(Path, int)}).
+     * @param sampleSize The number of useragents in the replayed sample.
+     * @return The requested corpus.
+     */
+    public static TrafficCorpus load(String corpus, int sampleSize) {
+        if (TEST_CASES.equals(corpus)) {
+            return fromTestCases(DEFAULT_ZIPF_EXPONENT, sampleSize);
+        }
+        return fromFile(Paths.get(corpus), sampleSize);
+    }
+
+    /**
+     * All distinct useragents from the test cases get a Zipf like popularity.
+     * Because similar useragents are grouped in the test files the popularity rank
+     * is assigned after shuffling them (with a fixed seed).
+     * @param zipfExponent The exponent of the Zipf distribution (1.0 is the classic Zipf).
+     * @param sampleSize The number of useragents in the replayed sample.
+     * @return The corpus.
+     */
+    public static TrafficCorpus fromTestCases(double zipfExponent, int sampleSize) {
+        UserAgentAnalyzer uaa = UserAgentAnalyzer
+            .newBuilder()
+            .withField("DeviceClass")
+            .keepTests()
+            .hideMatcherLoadStats()
+            .build();
+
+        Set<String> distinct = new LinkedHashSet<>();
+        for (Map<String, Map<String, String>> testCase : uaa.getTestCases()) {
+            distinct.add(testCase.get("input").get("user_agent_string"));
+        }
+        distinct.remove(null);
+
+        List<String> ranked = new ArrayList<>(distinct);
+        Collections.shuffle(ranked, new Random(SEED));
+        return fromRanked(ranked, zipfExponent, sampleSize);
+    }
+
+    /**
+     * @param ranked The useragents with the most popular one first.
+     * @param zipfExponent The exponent of the Zipf distribution (1.0 is the classic Zipf).
+     * @param sampleSize The number of useragents in the replayed sample.
+     * @return The corpus.
+     */
+    public static TrafficCorpus fromRanked(List<String> ranked, double zipfExponent, int sampleSize) {
+        double[] weights = new double[ranked.size()];
+        for (int rank = 0; rank < weights.length; rank++) {
+            weights[rank] = 1.0 / Math.pow(rank + 1, zipfExponent);
+        }
+        return new TrafficCorpus(ranked.toArray(new String[0]), weights, sampleSize);
+    }
+
+    /**
+     * Loads sampled traffic from a file (UTF-8).
+     * Each line is either a useragent or a count, a TAB and a useragent.
+     * Empty lines and lines starting with a '#' are ignored.
+     * The popularity of a useragent is the sum of its counts (a line without a count counts as 1).
+     * @param file The file to read.
+     * @param sampleSize The number of useragents in the replayed sample.
+     * @return The corpus.
+     */
+    public static TrafficCorpus fromFile(Path file, int sampleSize) {
+        Map<String, Double> counts = new LinkedHashMap<>();
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                double count = 1;
+                String userAgent = line;
+                int tab = line.indexOf('\t');
+                if (tab > 0) {
+                    try {
+                        count = Double.parseDouble(line.substring(0, tab));
+                        userAgent = line.substring(tab + 1);
+                    } catch (NumberFormatException e) {
+                        // Not a count so the TAB is part of the useragent
+                    }
+                }
+                counts.merge(userAgent, count, Double::sum);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to read the traffic corpus " + file, e);
+        }
+        if (counts.isEmpty()) {
+            throw new IllegalArgumentException("The traffic corpus " + file + " does not contain any useragents.");
+        }
+
+        String[] userAgents = counts.keySet().toArray(new String[0]);
+        double[] weights = new double[userAgents.length];
+        for (int i = 0; i < userAgents.length; i++) {
+            weights[i] = counts.get(userAgents[i]);
+        }
+        return new TrafficCorpus(userAgents, weights, sampleSize);
+    }
+
+    private static String[] drawSample(String[] userAgents, double[] weights, int sampleSize) {
+        if (userAgents.length == 0) {
+            throw new IllegalArgumentException("Cannot create a sample without any useragents.");
+        }
+        double[] cumulative = new double[weights.length];
+        double total = 0;
+        for (int i = 0; i < weights.length; i++) {
+            total += weights[i];
+            cumulative[i] = total;
+        }
+
+        Random random = new Random(SEED);
+        String[] result = new String[sampleSize];
+        for (int i = 0; i < sampleSize; i++) {
+            int index = Arrays.binarySearch(cumulative, random.nextDouble() * total);
+            if (index < 0) {
+                index = -index - 1;
+            }
+            result[i] = userAgents[Math.min(index, userAgents.length - 1)];
+        }
+        return result;
+    }
+
+    /**
+     * @return The distinct useragents (for the test cases the most popular one is first).
+     */
+    public String[] getUniqueUserAgents() {
+        return uniqueUserAgents;
+    }
+
+    /**
+     * @return The replayed traffic.
+     */
+    public String[] getSample() {
+        return sample;
+    }
+
+    public int size() {
+        return sample.length;
+    }
+
+    public String get(int index) {
+        return sample[index];
+    }
+}
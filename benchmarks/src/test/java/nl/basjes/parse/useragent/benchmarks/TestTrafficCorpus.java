@@ -0,0 +1,92 @@
+/*
+ * Yet Another UserAgent Analyzer
+ * Copyright (C) 2013-2019 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.basjes.parse.useragent.benchmarks;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TestTrafficCorpus {
+
+    private Map<String, Integer> countAll(TrafficCorpus corpus) {
+        Map<String, Integer> counts = new HashMap<>();
+        for (String userAgent : corpus.getSample()) {
+            counts.merge(userAgent, 1, Integer::sum);
+        }
+        return counts;
+    }
+
+    @Test
+    public void testZipf() {
+        TrafficCorpus corpus = TrafficCorpus.fromRanked(Arrays.asList("A", "B", "C", "D"), 1.0, 10000);
+        assertEquals(10000, corpus.size());
+        Map<String, Integer> counts = countAll(corpus);
+        // Weights 1, 1/2, 1/3, 1/4 --> A is about twice as common as B.
+        assertTrue(counts.get("A") > counts.get("B"));
+        assertTrue(counts.get("B") > counts.get("C"));
+        assertTrue(counts.get("C") > counts.get("D"));
+        assertEquals(2.0, counts.get("A") / (double) counts.get("B"), 0.2);
+
+        // Same seed so the same traffic.
+        assertArrayEquals(corpus.getSample(),
+            TrafficCorpus.fromRanked(Arrays.asList("A", "B", "C", "D"), 1.0, 10000).getSample());
+    }
+
+    @Test
+    public void testFile() throws IOException {
+        Path file = Files.createTempFile("traffic", ".txt");
+        try {
+            Files.write(file, Arrays.asList(
+                "# Comment",
+                "",
+                "9\tCommon",
+                "Rare",
+                "Common"
+            ), StandardCharsets.UTF_8);
+            TrafficCorpus corpus = TrafficCorpus.load(file.toString(), 1000);
+            assertArrayEquals(new String[]{"Common", "Rare"}, corpus.getUniqueUserAgents());
+            Map<String, Integer> counts = countAll(corpus);
+            assertEquals(1000, counts.get("Common") + counts.get("Rare"));
+            assertTrue(counts.get("Common") > 5 * counts.get("Rare"));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void testEmptyFile() throws IOException {
+        Path file = Files.createTempFile("traffic", ".txt");
+        try {
+            assertThrows(IllegalArgumentException.class, () -> TrafficCorpus.fromFile(file, 10));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+}
@@ -17,12 +17,18 @@
 
 package nl.basjes.parse.useragent.beam;
 
+import nl.basjes.parse.useragent.ParsedUserAgent;
 import nl.basjes.parse.useragent.annotate.UserAgentAnnotationAnalyzer;
 import nl.basjes.parse.useragent.annotate.UserAgentAnnotationMapper;
+import org.apache.beam.sdk.coders.Coder;
+import org.apache.beam.sdk.coders.CoderException;
 import org.apache.beam.sdk.transforms.DoFn;
+import org.apache.beam.sdk.util.CoderUtils;
 import org.apache.commons.lang3.SerializationUtils;
 
 import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Map;
 
 import static nl.basjes.parse.useragent.UserAgentAnalyzer.DEFAULT_PARSE_CACHE_SIZE;
 
@@ -30,7 +36,14 @@ public abstract class UserAgentAnalysisDoFn<T extends Serializable> extends DoFn
     implements UserAgentAnnotationMapper<T>, Serializable {
     private transient UserAgentAnnotationAnalyzer<T> userAgentAnalyzer = null;
 
+    // Beyond this number of different useragents within a single bundle we start over.
+    private static final int MAX_BUNDLE_USERAGENTS = 10000;
+
+    // The results of all distinct useragents in the current bundle.
+    private transient Map<String, ParsedUserAgent> bundleResults = null;
+
     private int cacheSize;
+    private Coder<T> coder = null;
 
     public UserAgentAnalysisDoFn() {
         this.cacheSize = DEFAULT_PARSE_CACHE_SIZE;
@@ -40,30 +53,96 @@ public abstract class UserAgentAnalysisDoFn<T extends Serializable> extends DoFn
         this.cacheSize = cacheSize;
     }
 
+    /**
+     * @param coder The coder of T which is used to copy the input records (instead of Java serialization).
+     */
+    public UserAgentAnalysisDoFn(Coder<T> coder) {
+        this(DEFAULT_PARSE_CACHE_SIZE, coder);
+    }
+
+    /**
+     * @param cacheSize The size of the parse cache.
+     * @param coder The coder of T which is used to copy the input records (instead of Java serialization).
+     */
+    public UserAgentAnalysisDoFn(int cacheSize, Coder<T> coder) {
+        this.cacheSize = cacheSize;
+        this.coder = coder;
+    }
+
     @Setup
     public void initialize() {
         userAgentAnalyzer = new UserAgentAnnotationAnalyzer<>();
         userAgentAnalyzer.setCacheSize(cacheSize);
-        userAgentAnalyzer.initialize(this);
+        userAgentAnalyzer.initializeShared(this);
+    }
+
+    @Teardown
+    public void teardown() {
+        if (userAgentAnalyzer != null) {
+            userAgentAnalyzer.close();
+            userAgentAnalyzer = null;
+        }
+    }
+
+    @StartBundle
+    public void startBundle() {
+        bundleResults = new HashMap<>();
+    }
+
+    @FinishBundle
+    public void finishBundle() {
+        bundleResults = null;
     }
 
     @ProcessElement
     public void processElement(ProcessContext c) {
+        T element = c.element();
+        if (element == null) {
+            c.output(null);
+            return;
+        }
+
+        // Within a bundle each distinct useragent is only analyzed once.
+        ParsedUserAgent parsedUserAgent = analyze(getUserAgentString(element));
+
         // Currently Beam does not allow changing the input instance.
         // So unfortunately we must clone the entire thing :(
         // See also: https://issues.apache.org/jira/browse/BEAM-1164
-        c.output(userAgentAnalyzer.map(clone(c.element())));
+        c.output(userAgentAnalyzer.map(clone(element), parsedUserAgent));
+    }
+
+    private ParsedUserAgent analyze(String userAgentString) {
+        if (bundleResults == null || userAgentString == null) {
+            return userAgentAnalyzer.analyze(userAgentString);
+        }
+        ParsedUserAgent parsedUserAgent = bundleResults.get(userAgentString);
+        if (parsedUserAgent == null) {
+            if (bundleResults.size() >= MAX_BUNDLE_USERAGENTS) {
+                bundleResults.clear();
+            }
+            parsedUserAgent = userAgentAnalyzer.analyze(userAgentString);
+            bundleResults.put(userAgentString, parsedUserAgent);
+        }
+        return parsedUserAgent;
     }
 
     /**
      * Clone the provided instance of T.
-     * This default implementation uses a mindless brute force cloning via serialization.
+     * If a Coder was provided the copy is made by encoding and decoding with that coder.
+     * Else this default implementation uses a mindless brute force cloning via serialization.
      * If for your class you can do better; please override this method.
      * For AVRO you can do something like MyRecord.newBuilder(instance).build();
      * @param t The original input value
      * @return A deep copied copy of t
      */
     public T clone(T t) {
+        if (coder != null) {
+            try {
+                return CoderUtils.clone(coder, t);
+            } catch (CoderException e) {
+                throw new IllegalArgumentException("Unable to copy the record using " + coder, e);
+            }
+        }
         return SerializationUtils.clone(t);
     }
 
@@ -18,6 +18,8 @@
 package nl.basjes.parse.useragent.beam;
 
 import nl.basjes.parse.useragent.annotate.YauaaField;
+import org.apache.beam.sdk.coders.Coder;
+import org.apache.beam.sdk.coders.SerializableCoder;
 import org.apache.beam.sdk.coders.StringUtf8Coder;
 import org.apache.beam.sdk.testing.PAssert;
 import org.apache.beam.sdk.testing.TestPipeline;
@@ -38,6 +40,14 @@ import java.util.List;
 public class TestUserAgentAnalysisDoFnClass implements Serializable {
 
     public static class MyUserAgentAnalysisDoFn extends UserAgentAnalysisDoFn<TestRecord> {
+        public MyUserAgentAnalysisDoFn() {
+            super();
+        }
+
+        public MyUserAgentAnalysisDoFn(Coder<TestRecord> coder) {
+            super(coder);
+        }
+
         @Override
         public String getUserAgentString(TestRecord record) {
             return record.useragent;
@@ -98,4 +108,45 @@ public class TestUserAgentAnalysisDoFnClass implements Serializable {
         pipeline.run().waitUntilFinish();
     }
 
+    @Test
+    public void testCoderCopyAndDuplicates() {
+        String desktop =
+            "Mozilla/5.0 (X11; Linux x86_64) " +
+            "AppleWebKit/537.36 (KHTML, like Gecko) " +
+            "Chrome/48.0.2564.82 Safari/537.36";
+        String phone =
+            "Mozilla/5.0 (Linux; Android 7.0; Nexus 6 Build/NBD90Z) " +
+            "AppleWebKit/537.36 (KHTML, like Gecko) " +
+            "Chrome/53.0.2785.124 Mobile Safari/537.36";
+
+        List<String> useragents = Arrays.asList(desktop, phone, desktop, desktop);
+
+        PCollection<String> input = pipeline.apply(Create.of(useragents)).setCoder(StringUtf8Coder.of());
+
+        PCollection<TestRecord> testRecords = input
+            .apply("Create testrecords from input",
+                ParDo.of(new DoFn<String, TestRecord>() {
+                    @ProcessElement
+                    public void processElement(ProcessContext c) {
+                        c.output(new TestRecord(c.element()));
+                    }
+                }));
+
+        PCollection<TestRecord> filledTestRecords = testRecords
+            .apply("Extract Elements from Useragent",
+                ParDo.of(new MyUserAgentAnalysisDoFn(SerializableCoder.of(TestRecord.class))));
+
+        TestRecord expectedDesktop = new TestRecord(desktop);
+        expectedDesktop.deviceClass = "Desktop";
+        expectedDesktop.agentNameVersion = "Chrome 48.0.2564.82";
+
+        TestRecord expectedPhone = new TestRecord(phone);
+        expectedPhone.deviceClass = "Phone";
+        expectedPhone.agentNameVersion = "Chrome 53.0.2785.124";
+
+        PAssert.that(filledTestRecords).containsInAnyOrder(expectedDesktop, expectedPhone, expectedDesktop, expectedDesktop);
+
+        pipeline.run().waitUntilFinish();
+    }
+
 }
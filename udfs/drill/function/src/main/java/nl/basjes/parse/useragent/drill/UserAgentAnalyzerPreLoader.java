@@ -17,21 +17,23 @@
 
 package nl.basjes.parse.useragent.drill;
 
+import nl.basjes.parse.useragent.SharedUserAgentAnalyzer;
 import nl.basjes.parse.useragent.UserAgentAnalyzer;
+import nl.basjes.parse.useragent.UserAgentAnalyzerRegistry;
 
 public final class UserAgentAnalyzerPreLoader {
 
     private UserAgentAnalyzerPreLoader(){}
 
-    private static UserAgentAnalyzer instance = null;
+    // Drill functions have no close so this is kept for the lifetime of the Drillbit.
+    private static SharedUserAgentAnalyzer instance = null;
 
     public static synchronized UserAgentAnalyzer getInstance() {
         if (instance == null) {
-            instance = UserAgentAnalyzer.newBuilder().dropTests().hideMatcherLoadStats().build();
             // Bootstrap the engine only once.
-            instance.getAllPossibleFieldNamesSorted();
+            instance = UserAgentAnalyzerRegistry.acquire(UserAgentAnalyzerRegistry.newKey());
         }
-        return instance;
+        return instance.getAnalyzer();
     }
 
 
@@ -17,7 +17,9 @@
 
 package nl.basjes.parse.useragent.flink.table;
 
+import nl.basjes.parse.useragent.SharedUserAgentAnalyzer;
 import nl.basjes.parse.useragent.UserAgentAnalyzer;
+import nl.basjes.parse.useragent.UserAgentAnalyzerRegistry;
 import org.apache.flink.api.common.typeinfo.TypeInformation;
 import org.apache.flink.api.common.typeinfo.Types;
 import org.apache.flink.table.functions.FunctionContext;
@@ -29,6 +31,7 @@ import java.util.List;
 import static nl.basjes.parse.useragent.UserAgentAnalyzer.DEFAULT_PARSE_CACHE_SIZE;
 
 public class AnalyzeUseragentFunction extends ScalarFunction {
+    private transient SharedUserAgentAnalyzer sharedUserAgentAnalyzer;
     private transient UserAgentAnalyzer userAgentAnalyzer;
 
     private final int cacheSize;
@@ -71,12 +74,22 @@ public class AnalyzeUseragentFunction extends ScalarFunction {
 
     @Override
     public void open(FunctionContext context) {
-        userAgentAnalyzer = UserAgentAnalyzer
-            .newBuilder()
-            .withFields(extractedFields)
-            .withCache(cacheSize)
-            .immediateInitialization()
-            .build();
+        // All operators in this TaskManager with the same settings share the same analyzer.
+        sharedUserAgentAnalyzer = UserAgentAnalyzerRegistry.acquire(
+            UserAgentAnalyzerRegistry
+                .newKey()
+                .withFields(extractedFields)
+                .withCache(cacheSize));
+        userAgentAnalyzer = sharedUserAgentAnalyzer.getAnalyzer();
+    }
+
+    @Override
+    public void close() {
+        if (sharedUserAgentAnalyzer != null) {
+            sharedUserAgentAnalyzer.close();
+            sharedUserAgentAnalyzer = null;
+            userAgentAnalyzer = null;
+        }
     }
 
     // An eval function can only return a SINGLE value (i.e. String)
@@ -44,7 +44,15 @@ public abstract class UserAgentAnalysisMapper<T> extends RichMapFunction<T, T>
     public void open(Configuration parameters) {
         userAgentAnalyzer = new UserAgentAnnotationAnalyzer<>();
         userAgentAnalyzer.setCacheSize(cacheSize);
-        userAgentAnalyzer.initialize(this);
+        userAgentAnalyzer.initializeShared(this);
+    }
+
+    @Override
+    public void close() {
+        if (userAgentAnalyzer != null) {
+            userAgentAnalyzer.close();
+            userAgentAnalyzer = null;
+        }
     }
 
     @Override
@@ -17,14 +17,18 @@
 
 package nl.basjes.parse.useragent.hive;
 
+import nl.basjes.parse.useragent.SharedUserAgentAnalyzer;
 import nl.basjes.parse.useragent.UserAgent;
 import nl.basjes.parse.useragent.UserAgentAnalyzer;
+import nl.basjes.parse.useragent.UserAgentAnalyzerRegistry;
 import org.apache.hadoop.hive.ql.exec.Description;
 import org.apache.hadoop.hive.ql.exec.UDFArgumentException;
 import org.apache.hadoop.hive.ql.metadata.HiveException;
 import org.apache.hadoop.hive.ql.udf.generic.GenericUDF;
+import org.apache.hadoop.hive.serde2.objectinspector.ConstantObjectInspector;
 import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
 import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspectorFactory;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspectorUtils;
 import org.apache.hadoop.hive.serde2.objectinspector.primitive.PrimitiveObjectInspectorFactory;
 import org.apache.hadoop.hive.serde2.objectinspector.primitive.StringObjectInspector;
 import org.apache.hadoop.io.Text;
@@ -53,7 +57,7 @@ import java.util.List;
 
 @Description(
     name = "ParseUserAgent",
-    value = "_FUNC_(str) - Parses the UserAgent into all possible pieces.",
+    value = "_FUNC_(str [, fieldname, ...]) - Parses the UserAgent into all possible pieces (or only the requested fields).",
     extended = "Example:\n" +
         "> SELECT ParseUserAgent(useragent).DeviceClass, \n" +
         "         ParseUserAgent(useragent).OperatingsystemNameVersion, \n" +
@@ -66,31 +70,37 @@ import java.util.List;
         "| Tablet        | Android 5.1                 | Chrome 40              |\n" +
         "| Desktop       | Linux Intel x86_64          | Chrome 59              |\n" +
         "| Game Console  | Windows 10.0                | Edge 13                |\n" +
-        "+---------------+-----------------------------+------------------------+\n")
+        "+---------------+-----------------------------+------------------------+\n" +
+        "\n" +
+        "If only a few fields are needed then ask for only those fields (as constant strings);\n" +
+        "this is much faster because only the rules needed for these fields are used.\n" +
+        "> SELECT ParseUserAgent(useragent, 'DeviceClass', 'AgentNameVersionMajor').DeviceClass \n" +
+        "  FROM   clickLogs;\n")
 public class ParseUserAgent extends GenericUDF {
 
     private StringObjectInspector useragentOI = null;
-    private static UserAgentAnalyzer userAgentAnalyzer = null;
-    private static List<String> fieldNames = null;
 
-    private static synchronized void constructAnalyzer(){
-        if (userAgentAnalyzer == null) {
-            userAgentAnalyzer = UserAgentAnalyzer
-                .newBuilder()
-                .hideMatcherLoadStats()
-                .delayInitialization()
-                .build();
-            fieldNames = userAgentAnalyzer.getAllPossibleFieldNamesSorted();
-        }
-    }
+    // The analyzer for the requested fields is shared by all instances in this JVM.
+    // Hive serializes the UDF into the query plan after initialize(), so none of this may be serialized.
+    // The initialize() also runs at query compile time (in HiveServer2) where no analyzer is needed at all
+    // so the analyzer is only acquired when the first useragent is evaluated.
+    private transient UserAgentAnalyzerRegistry.Key analyzerKey = null;
+    private transient SharedUserAgentAnalyzer sharedUserAgentAnalyzer = null;
+    private transient UserAgentAnalyzer userAgentAnalyzer = null;
+    private transient List<String> fieldNames = null;
+
+    // The output is reused for every row.
+    private transient Text[]   values = null;
+    private transient Object[] result = null;
+    private transient String   lastUserAgentString = null;
 
     @Override
     public ObjectInspector initialize(ObjectInspector[] args) throws UDFArgumentException {
         // ================================
         // Check the input
-        // This UDF accepts one argument
-        if (args.length != 1) {
-            throw new UDFArgumentException("The argument list must be exactly 1 element");
+        // This UDF accepts the useragent and optionally the names of the wanted fields
+        if (args.length < 1) {
+            throw new UDFArgumentException("The argument list must be at least 1 element");
         }
 
         // The first argument must be a String
@@ -100,9 +110,43 @@ public class ParseUserAgent extends GenericUDF {
         }
         useragentOI = (StringObjectInspector) inputOI;
 
+        // All other arguments must be constant Strings (the names of the wanted fields)
+        List<String> requestedFields = new ArrayList<>(args.length - 1);
+        for (int i = 1; i < args.length; i++) {
+            ObjectInspector fieldNameOI = args[i];
+            if (!(fieldNameOI instanceof StringObjectInspector) ||
+                !ObjectInspectorUtils.isConstantObjectInspector(fieldNameOI)) {
+                throw new UDFArgumentException("The field names must be constant strings");
+            }
+            Object fieldName = ((ConstantObjectInspector) fieldNameOI).getWritableConstantValue();
+            if (fieldName == null) {
+                throw new UDFArgumentException("The field names must be constant strings");
+            }
+            requestedFields.add(fieldName.toString());
+        }
+
         // ================================
-        // Initialize the parser
-        constructAnalyzer();
+        // Determine the output fields (this does not need an analyzer)
+        releaseAnalyzer();
+        analyzerKey = UserAgentAnalyzerRegistry.newKey().withFields(requestedFields);
+        List<String> possibleFieldNames = UserAgentAnalyzerRegistry.getAllPossibleFieldNamesSorted(analyzerKey);
+        if (requestedFields.isEmpty()) {
+            fieldNames = possibleFieldNames;
+        } else {
+            for (String requestedField : requestedFields) {
+                if (!possibleFieldNames.contains(requestedField)) {
+                    throw new UDFArgumentException("The requested field \"" + requestedField + "\" does not exist");
+                }
+            }
+            fieldNames = requestedFields;
+        }
+
+        values = new Text[fieldNames.size()];
+        result = new Object[fieldNames.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = new Text();
+        }
+        lastUserAgentString = null;
 
         // ================================
         // Define the output
@@ -125,17 +169,42 @@ public class ParseUserAgent extends GenericUDF {
             return null;
         }
 
+        // The rows of a batch often contain the same useragent several times in a row.
+        if (userAgentString.equals(lastUserAgentString)) {
+            return result;
+        }
+
+        if (userAgentAnalyzer == null) {
+            // Only the matchers needed for the requested fields are created.
+            sharedUserAgentAnalyzer = UserAgentAnalyzerRegistry.acquire(analyzerKey);
+            userAgentAnalyzer = sharedUserAgentAnalyzer.getAnalyzer();
+        }
+
         UserAgent userAgent = userAgentAnalyzer.parse(userAgentString);
-        List<Object> result = new ArrayList<>(fieldNames.size());
-        for (String fieldName : fieldNames) {
-            String value = userAgent.getValue(fieldName);
+        for (int i = 0; i < values.length; i++) {
+            String value = userAgent.getValue(fieldNames.get(i));
             if (value == null) {
-                result.add(null);
+                result[i] = null;
             } else {
-                result.add(new Text(value));
+                values[i].set(value);
+                result[i] = values[i];
             }
         }
-        return result.toArray();
+        lastUserAgentString = userAgentString;
+        return result;
+    }
+
+    @Override
+    public void close() {
+        releaseAnalyzer();
+    }
+
+    private void releaseAnalyzer() {
+        if (sharedUserAgentAnalyzer != null) {
+            sharedUserAgentAnalyzer.close();
+            sharedUserAgentAnalyzer = null;
+            userAgentAnalyzer = null;
+        }
     }
 
     @Override
@@ -17,12 +17,15 @@
 
 package nl.basjes.parse.useragent.hive;
 
+import nl.basjes.parse.useragent.UserAgentAnalyzerRegistry;
 import org.apache.hadoop.hive.ql.metadata.HiveException;
 import org.apache.hadoop.hive.ql.udf.generic.GenericUDF.DeferredJavaObject;
 import org.apache.hadoop.hive.ql.udf.generic.GenericUDF.DeferredObject;
 import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
 import org.apache.hadoop.hive.serde2.objectinspector.StandardStructObjectInspector;
 import org.apache.hadoop.hive.serde2.objectinspector.primitive.PrimitiveObjectInspectorFactory;
+import org.apache.hadoop.hive.serde2.typeinfo.TypeInfoFactory;
+import org.apache.hadoop.io.Text;
 import org.junit.jupiter.api.Test;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
@@ -49,6 +52,53 @@ public class TestParseUserAgent {
         }
     }
 
+    @Test
+    public void testRequestedFields() throws HiveException {
+        String userAgent = "Mozilla/5.0 (X11; Linux x86_64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/58.0.3029.110 Safari/537.36";
+
+        ParseUserAgent parseUserAgent = new ParseUserAgent();
+
+        StandardStructObjectInspector resultInspector = (StandardStructObjectInspector) parseUserAgent
+            .initialize(new ObjectInspector[]{
+                PrimitiveObjectInspectorFactory.javaStringObjectInspector,
+                fieldName("DeviceClass"),
+                fieldName("AgentNameVersionMajor")
+            });
+
+        assertEquals(2, resultInspector.getAllStructFieldRefs().size());
+
+        for (int i = 0; i < 1000; i++) {
+            Object row = parseUserAgent.evaluate(new DeferredObject[]{new DeferredJavaObject(userAgent)});
+
+            checkField(resultInspector, row, "DeviceClass", "Desktop");
+            checkField(resultInspector, row, "AgentNameVersionMajor", "Chrome 58");
+        }
+    }
+
+    @Test
+    public void testNoAnalyzerAtCompileTime() throws HiveException {
+        UserAgentAnalyzerRegistry.Key key = UserAgentAnalyzerRegistry.newKey().withField("DeviceBrand");
+        ParseUserAgent parseUserAgent = new ParseUserAgent();
+
+        // At query compile time only initialize is called: that must not pin an analyzer.
+        parseUserAgent.initialize(new ObjectInspector[]{
+            PrimitiveObjectInspectorFactory.javaStringObjectInspector,
+            fieldName("DeviceBrand")
+        });
+        assertEquals(0, UserAgentAnalyzerRegistry.getReferences(key));
+
+        parseUserAgent.evaluate(new DeferredObject[]{new DeferredJavaObject("Mozilla/5.0 (X11; Linux x86_64)")});
+        assertEquals(1, UserAgentAnalyzerRegistry.getReferences(key));
+
+        parseUserAgent.close();
+        assertEquals(0, UserAgentAnalyzerRegistry.getReferences(key));
+    }
+
+    private ObjectInspector fieldName(String fieldName) {
+        return PrimitiveObjectInspectorFactory
+            .getPrimitiveWritableConstantObjectInspector(TypeInfoFactory.stringTypeInfo, new Text(fieldName));
+    }
+
     private void checkField(StandardStructObjectInspector resultInspector, Object row, String fieldName, String expectedValue) {
         assertEquals(expectedValue, resultInspector.getStructFieldData(row, resultInspector.getStructFieldRef(fieldName)).toString());
     }
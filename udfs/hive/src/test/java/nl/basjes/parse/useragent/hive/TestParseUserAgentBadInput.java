@@ -23,6 +23,8 @@ import org.apache.hadoop.hive.ql.udf.generic.GenericUDF.DeferredJavaObject;
 import org.apache.hadoop.hive.ql.udf.generic.GenericUDF.DeferredObject;
 import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
 import org.apache.hadoop.hive.serde2.objectinspector.primitive.PrimitiveObjectInspectorFactory;
+import org.apache.hadoop.hive.serde2.typeinfo.TypeInfoFactory;
+import org.apache.hadoop.io.Text;
 import org.junit.jupiter.api.Test;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
@@ -44,6 +46,31 @@ public class TestParseUserAgentBadInput {
 
     }
 
+    @Test
+    public void testBadFieldName() throws HiveException {
+        Exception exception = assertThrows(UDFArgumentException.class, () ->
+            parseUserAgent
+            .initialize(new ObjectInspector[]{
+                PrimitiveObjectInspectorFactory.javaStringObjectInspector,
+                PrimitiveObjectInspectorFactory.javaStringObjectInspector
+            }));
+        assertEquals("The field names must be constant strings", exception.getMessage());
+    }
+
+    @Test
+    public void testUnknownFieldName() throws HiveException {
+        Exception exception = assertThrows(UDFArgumentException.class, () ->
+            parseUserAgent
+            .initialize(new ObjectInspector[]{
+                PrimitiveObjectInspectorFactory.javaStringObjectInspector,
+                PrimitiveObjectInspectorFactory
+                    .getPrimitiveWritableConstantObjectInspector(TypeInfoFactory.stringTypeInfo, new Text("DeviceClass")),
+                PrimitiveObjectInspectorFactory
+                    .getPrimitiveWritableConstantObjectInspector(TypeInfoFactory.stringTypeInfo, new Text("NoSuchField"))
+            }));
+        assertEquals("The requested field \"NoSuchField\" does not exist", exception.getMessage());
+    }
+
     @Test
     public void testBadInputNull() throws HiveException {
         parseUserAgent
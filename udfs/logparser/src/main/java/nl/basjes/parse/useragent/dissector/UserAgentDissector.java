@@ -23,9 +23,11 @@ import nl.basjes.parse.core.Parsable;
 import nl.basjes.parse.core.ParsedField;
 import nl.basjes.parse.core.exceptions.DissectionFailure;
 import nl.basjes.parse.core.exceptions.InvalidDissectorException;
+import nl.basjes.parse.useragent.SharedUserAgentAnalyzer;
 import nl.basjes.parse.useragent.UserAgent;
 import nl.basjes.parse.useragent.UserAgentAnalyzer;
 import nl.basjes.parse.useragent.UserAgentAnalyzer.UserAgentAnalyzerBuilder;
+import nl.basjes.parse.useragent.UserAgentAnalyzerRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -43,8 +45,10 @@ public class UserAgentDissector extends Dissector {
 
     private static final Logger LOG = LoggerFactory.getLogger(UserAgentDissector.class);
 
-    private transient UserAgentAnalyzerBuilder userAgentAnalyzerBuilder;
-    private static UserAgentAnalyzer userAgentAnalyzer = null;
+    // The analyzer is shared (within the JVM) with all other dissectors that need the same fields and resources.
+    // A dissector has no end of life so it is never released.
+    private transient SharedUserAgentAnalyzer sharedUserAgentAnalyzer = null;
+    private transient UserAgentAnalyzer userAgentAnalyzer = null;
     private static final String INPUT_TYPE = "HTTP.USERAGENT";
 
     private List<String> extraResources = new ArrayList<>();
@@ -57,17 +61,6 @@ public class UserAgentDissector extends Dissector {
         return INPUT_TYPE;
     }
 
-    private UserAgentAnalyzerBuilder getUserAgentAnalyzerBuilder() {
-        if (userAgentAnalyzerBuilder == null) {
-            userAgentAnalyzerBuilder = UserAgentAnalyzer
-                .newBuilder()
-                .delayInitialization()
-                .dropTests()
-                .hideMatcherLoadStats();
-        }
-        return userAgentAnalyzerBuilder;
-    }
-
     /**
      * @param rawParameter For this dissector it is a '|' separated list of resource paths.
      */
@@ -98,6 +91,10 @@ public class UserAgentDissector extends Dissector {
             return;  // Weird, but it happens
         }
 
+        if (userAgentAnalyzer == null) {
+            setupUserAgentAnalyzer(); // i.e. after deserialization
+        }
+
         UserAgent agent = userAgentAnalyzer.parse(userAgentString);
 
         for (String fieldName : requestedFieldNames) {
@@ -148,17 +145,24 @@ public class UserAgentDissector extends Dissector {
     public void prepareForRun() {
         // Build the internal datastructures
         LOG.info("Preparing UserAgentAnalyzer to extract {}", requestedFieldNames.isEmpty()? "all fields" : requestedFieldNames);
-        final UserAgentAnalyzerBuilder builder = getUserAgentAnalyzerBuilder();
-
         extraResources.forEach(r -> LOG.warn("Loading extra resource: {}", r));
-        extraResources.forEach(builder::addResources);
-        requestedFieldNames.forEach(builder::withField);
         setupUserAgentAnalyzer();
     }
 
     private synchronized void setupUserAgentAnalyzer() {
-        userAgentAnalyzer = getUserAgentAnalyzerBuilder().build();
-        userAgentAnalyzer.initializeMatchers();
+        UserAgentAnalyzerRegistry.Key key = UserAgentAnalyzerRegistry
+            .newKey()
+            .withFields(requestedFieldNames);
+        for (String extraResource : extraResources) {
+            key = key.addResources(extraResource);
+        }
+
+        SharedUserAgentAnalyzer previous = sharedUserAgentAnalyzer;
+        sharedUserAgentAnalyzer = UserAgentAnalyzerRegistry.acquire(key);
+        userAgentAnalyzer = sharedUserAgentAnalyzer.getAnalyzer();
+        if (previous != null) {
+            previous.close();
+        }
     }
 
     @Override
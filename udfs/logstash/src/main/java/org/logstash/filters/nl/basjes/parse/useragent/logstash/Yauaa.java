@@ -22,20 +22,26 @@ import co.elastic.logstash.api.Context;
 import co.elastic.logstash.api.LogstashPlugin;
 import co.elastic.logstash.api.PluginConfigSpec;
 import co.elastic.logstash.api.v0.Filter;
+import nl.basjes.parse.useragent.FieldKey;
+import nl.basjes.parse.useragent.ParsedUserAgent;
 import nl.basjes.parse.useragent.UserAgent;
 import nl.basjes.parse.useragent.UserAgentAnalyzer;
-import nl.basjes.parse.useragent.UserAgentAnalyzer.UserAgentAnalyzerBuilder;
+import nl.basjes.parse.useragent.UserAgentAnalyzerRegistry;
 import org.logstash.Event;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-//import org.slf4j.Logger;
-//import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.IntStream;
 
 @LogstashPlugin(name = "yauaa")
 public class Yauaa implements Filter {
@@ -45,6 +51,8 @@ public class Yauaa implements Filter {
     private UserAgentAnalyzer userAgentAnalyzer;
 
     private List<String> requestedFieldNames = new ArrayList<>();
+    private FieldKey[] requestedFieldKeys;
+    private String[] outputFieldNames;
 
     public static final PluginConfigSpec<String> SOURCE_CONFIG =
         Configuration.requiredStringSetting("source");
@@ -52,52 +60,168 @@ public class Yauaa implements Filter {
     public static final PluginConfigSpec<Map<String, String>> FIELDS_CONFIG =
         Configuration.hashSetting("fields");
 
+    public static final PluginConfigSpec<Long> PARALLELISM_CONFIG =
+        Configuration.numSetting("parallelism", 1);
+
     private String sourceField;
     private Map<String, String> outputFields;
+    private long parallelism;
+
+    // Only used if the distinct useragents of a batch must be analyzed in parallel.
+    // The filter api has no end of life (and every pipeline reload creates new filters) so the pools are
+    // never shut down; instead all filters in this JVM with the same parallelism share the same pool.
+    private static final Map<Integer, ForkJoinPool> ANALYZE_POOLS = new ConcurrentHashMap<>();
+    private ForkJoinPool analyzePool = null;
+
+    // The metrics of this filter.
+    private final AtomicLong batches               = new AtomicLong();
+    private final AtomicLong batchNanos            = new AtomicLong();
+    private final AtomicLong userAgents            = new AtomicLong();
+    private final AtomicLong analyzedUserAgents    = new AtomicLong();
 
     public Yauaa(Configuration config, Context context) {
         // constructors should validate configuration options
         sourceField = config.get(SOURCE_CONFIG);
         outputFields = config.get(FIELDS_CONFIG);
+        parallelism = 1;
+        Long parallelismSetting = config.get(PARALLELISM_CONFIG);
+        if (parallelismSetting != null) {
+            parallelism = parallelismSetting;
+        }
 
         checkConfiguration();
 
-        UserAgentAnalyzerBuilder userAgentAnalyzerBuilder =
-            UserAgentAnalyzer
-                .newBuilder()
-                .delayInitialization()
-                .dropTests()
-                .hideMatcherLoadStats();
+        requestedFieldNames.addAll(outputFields.keySet());
 
-        outputFields.forEach((yauaaFieldName, outputFieldName) -> {
-            requestedFieldNames.add(yauaaFieldName);
-            userAgentAnalyzerBuilder.withField(yauaaFieldName);
-        });
+        // All filters in this Logstash instance that need the same fields share the same analyzer.
+        // The filter api has no end of life so it is never released.
+        userAgentAnalyzer = UserAgentAnalyzerRegistry
+            .acquire(UserAgentAnalyzerRegistry.newKey().withFields(requestedFieldNames))
+            .getAnalyzer();
 
-        userAgentAnalyzer = userAgentAnalyzerBuilder.build();
-        userAgentAnalyzer.initializeMatchers();
+        requestedFieldKeys = new FieldKey[requestedFieldNames.size()];
+        outputFieldNames = new String[requestedFieldNames.size()];
+        for (int i = 0; i < requestedFieldKeys.length; i++) {
+            requestedFieldKeys[i] = userAgentAnalyzer.fieldKey(requestedFieldNames.get(i));
+            outputFieldNames[i] = outputFields.get(requestedFieldNames.get(i));
+        }
+
+        if (parallelism > 1) {
+            analyzePool = ANALYZE_POOLS.computeIfAbsent((int) parallelism, ForkJoinPool::new);
+        }
     }
 
     @Override
     public Collection<Event> filter(Collection<Event> events) {
+        long start = System.nanoTime();
+
+        // First we find all distinct useragents of this batch.
+        Map<String, ParsedUserAgent> results = new HashMap<>();
+        long batchUserAgents = 0;
         for (Event event : events) {
             Object rawField = event.getField(sourceField);
             if (rawField instanceof String) {
-                String userAgentString = (String)rawField;
+                results.put((String) rawField, null);
+                batchUserAgents++;
+            }
+        }
 
-                UserAgent agent = userAgentAnalyzer.parse(userAgentString);
+        // Then we analyze each of them only once.
+        analyze(results);
 
-                for (String fieldName : requestedFieldNames) {
-                    event.setField(outputFields.get(fieldName), agent.getValue(fieldName));
+        // And finally we write the fields back into the events.
+        for (Event event : events) {
+            Object rawField = event.getField(sourceField);
+            if (rawField instanceof String) {
+                ParsedUserAgent agent = results.get(rawField);
+                for (int i = 0; i < requestedFieldKeys.length; i++) {
+                    event.setField(outputFieldNames[i], agent.getValue(requestedFieldKeys[i]));
                 }
             }
         }
+
+        long nanos = System.nanoTime() - start;
+        batches.incrementAndGet();
+        batchNanos.addAndGet(nanos);
+        userAgents.addAndGet(batchUserAgents);
+        analyzedUserAgents.addAndGet(results.size());
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Batch: {} events, {} useragents, {} distinct, {} us",
+                events.size(), batchUserAgents, results.size(), nanos / 1000);
+        }
         return events;
     }
 
+    private void analyze(Map<String, ParsedUserAgent> results) {
+        String[] userAgentStrings = results.keySet().toArray(new String[0]);
+        ParsedUserAgent[] parsed = new ParsedUserAgent[userAgentStrings.length];
+
+        if (analyzePool != null && userAgentStrings.length > 1) {
+            // The analyzer can be used by multiple threads at the same time.
+            try {
+                analyzePool.submit(() ->
+                    IntStream.range(0, userAgentStrings.length)
+                        .parallel()
+                        .forEach(i -> parsed[i] = userAgentAnalyzer.parseImmutable(userAgentStrings[i])))
+                    .get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                LOG.warn("Interrupted while analyzing in parallel, continuing on the current thread.");
+            } catch (ExecutionException e) {
+                LOG.warn("Analyzing in parallel failed, continuing on the current thread: {}", e.getMessage());
+            }
+        }
+
+        for (int i = 0; i < userAgentStrings.length; i++) {
+            if (parsed[i] == null) {
+                parsed[i] = userAgentAnalyzer.parseImmutable(userAgentStrings[i]);
+            }
+            results.put(userAgentStrings[i], parsed[i]);
+        }
+    }
+
+    /**
+     * @return The number of batches that have been filtered.
+     */
+    public long getBatches() {
+        return batches.get();
+    }
+
+    /**
+     * @return The total time (in nanoseconds) spent in filtering all batches.
+     */
+    public long getBatchNanos() {
+        return batchNanos.get();
+    }
+
+    /**
+     * @return The number of events that had a useragent.
+     */
+    public long getUserAgents() {
+        return userAgents.get();
+    }
+
+    /**
+     * @return The number of useragents that actually needed to be analyzed (i.e. distinct within a batch).
+     */
+    public long getAnalyzedUserAgents() {
+        return analyzedUserAgents.get();
+    }
+
+    /**
+     * @return The fraction of the useragents that did not need to be analyzed because it occurred earlier in the same batch.
+     */
+    public double getHitRate() {
+        long total = userAgents.get();
+        if (total == 0) {
+            return 0;
+        }
+        return (double) (total - analyzedUserAgents.get()) / total;
+    }
+
     @Override
     public Collection<PluginConfigSpec<?>> configSchema() {
-        return Arrays.asList(SOURCE_CONFIG, FIELDS_CONFIG);
+        return Arrays.asList(SOURCE_CONFIG, FIELDS_CONFIG, PARALLELISM_CONFIG);
     }
 
     private void checkConfiguration() {
@@ -120,6 +244,10 @@ public class Yauaa implements Filter {
             }
         }
 
+        if (parallelism < 1) {
+            configProblems.add("The \"parallelism\" must be at least 1.\n");
+        }
+
         if (outputFields == null) {
             configProblems.add("The list of needed \"fields\" has not been specified.\n");
         } else {
@@ -23,9 +23,11 @@ import co.elastic.logstash.api.v0.Filter;
 import org.junit.jupiter.api.Test;
 import org.logstash.Event;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import static org.hamcrest.core.AllOf.allOf;
@@ -66,6 +68,65 @@ public class TestYauaa {
         assertEquals("Chrome 48.0.2564.82", e.getField("ANV"));
     }
 
+    @Test
+    public void testParallelBatch() {
+        String sourceField = "foo";
+
+        Map<String, String> fieldMappings = new HashMap<>();
+        fieldMappings.put("DeviceClass", "DC");
+        fieldMappings.put("AgentNameVersion", "ANV");
+
+        Map<String, Object> configMap = new HashMap<>();
+        configMap.put("source", sourceField);
+        configMap.put("fields", fieldMappings);
+        configMap.put("parallelism", 4L);
+
+        Configuration config = new Configuration(configMap);
+
+        Context context = new Context();
+        Yauaa   filter  = new Yauaa(config, context);
+
+        String desktop = "Mozilla/5.0 (X11; Linux x86_64) " +
+            "AppleWebKit/537.36 (KHTML, like Gecko) " +
+            "Chrome/48.0.2564.82 Safari/537.36";
+        String phone = "Mozilla/5.0 (Linux; Android 7.0; Nexus 6 Build/NBD90Z) " +
+            "AppleWebKit/537.36 (KHTML, like Gecko) " +
+            "Chrome/53.0.2785.124 Mobile Safari/537.36";
+
+        List<Event> events = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            Event e = new Event();
+            if (i % 2 == 0) {
+                e.setField(sourceField, desktop);
+            } else {
+                e.setField(sourceField, phone);
+            }
+            events.add(e);
+        }
+        // An event without a useragent is left alone.
+        events.add(new Event());
+
+        Collection<Event> results = filter.filter(events);
+
+        assertEquals(11, results.size());
+        for (int i = 0; i < 10; i++) {
+            Event e = events.get(i);
+            if (i % 2 == 0) {
+                assertEquals("Desktop", e.getField("DC"));
+                assertEquals("Chrome 48.0.2564.82", e.getField("ANV"));
+            } else {
+                assertEquals("Phone", e.getField("DC"));
+                assertEquals("Chrome 53.0.2785.124", e.getField("ANV"));
+            }
+        }
+        assertEquals(null, events.get(10).getField("DC"));
+
+        assertEquals(1,   filter.getBatches());
+        assertEquals(10,  filter.getUserAgents());
+        assertEquals(2,   filter.getAnalyzedUserAgents());
+        assertEquals(0.8, filter.getHitRate(), 0.0001);
+    }
+
     @Test
     public void testBadConfigNothing() {
         Exception exception = assertThrows(IllegalArgumentException.class, () -> {
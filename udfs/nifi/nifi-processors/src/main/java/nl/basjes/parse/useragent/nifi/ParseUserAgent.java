@@ -17,15 +17,17 @@
 
 package nl.basjes.parse.useragent.nifi;
 
+import nl.basjes.parse.useragent.SharedUserAgentAnalyzer;
 import nl.basjes.parse.useragent.UserAgent;
 import nl.basjes.parse.useragent.UserAgentAnalyzer;
-import nl.basjes.parse.useragent.UserAgentAnalyzer.UserAgentAnalyzerBuilder;
+import nl.basjes.parse.useragent.UserAgentAnalyzerRegistry;
 import org.apache.nifi.annotation.behavior.EventDriven;
 import org.apache.nifi.annotation.behavior.ReadsAttribute;
 import org.apache.nifi.annotation.behavior.ReadsAttributes;
 import org.apache.nifi.annotation.behavior.SideEffectFree;
 import org.apache.nifi.annotation.documentation.CapabilityDescription;
 import org.apache.nifi.annotation.documentation.Tags;
+import org.apache.nifi.annotation.lifecycle.OnRemoved;
 import org.apache.nifi.annotation.lifecycle.OnScheduled;
 import org.apache.nifi.components.PropertyDescriptor;
 import org.apache.nifi.flowfile.FlowFile;
@@ -68,16 +70,15 @@ public class ParseUserAgent extends AbstractProcessor {
 
     private Set<Relationship> relationships;
 
+    // The analyzer is shared with all other processors in this JVM that need the same fields.
+    private SharedUserAgentAnalyzer sharedUaa = null;
     private UserAgentAnalyzer uaa = null;
 
     private static final List<String> ALL_FIELD_NAMES = new ArrayList<>();
     private List<PropertyDescriptor> supportedPropertyDescriptors = new ArrayList<>();
     private List<String> extractFieldNames = new ArrayList<>();
 
-    @Override
-    protected void init(ProcessorInitializationContext context) {
-        super.init(context);
-
+    static List<String> getAllFieldNames() {
         synchronized (ALL_FIELD_NAMES) {
             if (ALL_FIELD_NAMES.isEmpty()) {
                 ALL_FIELD_NAMES.addAll(UserAgentAnalyzer
@@ -88,13 +89,20 @@ public class ParseUserAgent extends AbstractProcessor {
                     .build()
                     .getAllPossibleFieldNamesSorted());
             }
+            return ALL_FIELD_NAMES;
         }
+    }
+
+    @Override
+    protected void init(ProcessorInitializationContext context) {
+        super.init(context);
+
         final Set<Relationship> relationshipsSet = new HashSet<>();
         relationshipsSet.add(SUCCESS);
         relationshipsSet.add(MISSING);
         this.relationships = Collections.unmodifiableSet(relationshipsSet);
 
-        for (String fieldName: ALL_FIELD_NAMES) {
+        for (String fieldName: getAllFieldNames()) {
             PropertyDescriptor propertyDescriptor = new PropertyDescriptor.Builder()
                 .name(PROPERTY_PREFIX + fieldName)
                 .description("If enabled will extract the " + fieldName + " field")
@@ -121,12 +129,6 @@ public class ParseUserAgent extends AbstractProcessor {
     @OnScheduled
     public void onSchedule(ProcessContext context) {
         if (uaa == null) {
-            UserAgentAnalyzerBuilder builder =
-                UserAgentAnalyzer
-                .newBuilder()
-                .hideMatcherLoadStats()
-                .dropTests();
-
             extractFieldNames.clear();
 
             for (PropertyDescriptor propertyDescriptor: supportedPropertyDescriptors) {
@@ -135,17 +137,27 @@ public class ParseUserAgent extends AbstractProcessor {
                     if (name.startsWith(PROPERTY_PREFIX)) { // Should always pass
                         String fieldName = name.substring(PROPERTY_PREFIX.length());
 
-                        builder.withField(fieldName);
                         extractFieldNames.add(fieldName);
                     }
                 }
             }
-            uaa = builder.build();
+            sharedUaa = UserAgentAnalyzerRegistry.acquire(
+                UserAgentAnalyzerRegistry.newKey().withFields(extractFieldNames));
+            uaa = sharedUaa.getAnalyzer();
         }
     }
 
     @Override
     public void onPropertyModified(PropertyDescriptor descriptor, String oldValue, String newValue) {
+        releaseAnalyzer();
+    }
+
+    @OnRemoved
+    public void releaseAnalyzer() {
+        if (sharedUaa != null) {
+            sharedUaa.close();
+            sharedUaa = null;
+        }
         uaa = null;
     }
 
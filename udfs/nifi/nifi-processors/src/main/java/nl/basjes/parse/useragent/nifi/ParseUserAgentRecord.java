@@ -0,0 +1,342 @@
+/*
+ * Yet Another UserAgent Analyzer
+ * Copyright (C) 2013-2019 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.basjes.parse.useragent.nifi;
+
+import nl.basjes.parse.useragent.SharedUserAgentAnalyzer;
+import nl.basjes.parse.useragent.UserAgent;
+import nl.basjes.parse.useragent.UserAgentAnalyzer;
+import nl.basjes.parse.useragent.UserAgentAnalyzerRegistry;
+import org.apache.nifi.annotation.behavior.EventDriven;
+import org.apache.nifi.annotation.behavior.InputRequirement;
+import org.apache.nifi.annotation.behavior.SideEffectFree;
+import org.apache.nifi.annotation.behavior.SupportsBatching;
+import org.apache.nifi.annotation.behavior.WritesAttribute;
+import org.apache.nifi.annotation.behavior.WritesAttributes;
+import org.apache.nifi.annotation.documentation.CapabilityDescription;
+import org.apache.nifi.annotation.documentation.Tags;
+import org.apache.nifi.annotation.lifecycle.OnRemoved;
+import org.apache.nifi.annotation.lifecycle.OnScheduled;
+import org.apache.nifi.components.PropertyDescriptor;
+import org.apache.nifi.components.ValidationContext;
+import org.apache.nifi.components.ValidationResult;
+import org.apache.nifi.flowfile.FlowFile;
+import org.apache.nifi.flowfile.attributes.CoreAttributes;
+import org.apache.nifi.processor.AbstractProcessor;
+import org.apache.nifi.processor.ProcessContext;
+import org.apache.nifi.processor.ProcessSession;
+import org.apache.nifi.processor.ProcessorInitializationContext;
+import org.apache.nifi.processor.Relationship;
+import org.apache.nifi.processor.exception.ProcessException;
+import org.apache.nifi.processor.util.StandardValidators;
+import org.apache.nifi.record.path.FieldValue;
+import org.apache.nifi.record.path.RecordPath;
+import org.apache.nifi.record.path.validation.RecordPathValidator;
+import org.apache.nifi.schema.access.SchemaNotFoundException;
+import org.apache.nifi.serialization.MalformedRecordException;
+import org.apache.nifi.serialization.RecordReader;
+import org.apache.nifi.serialization.RecordReaderFactory;
+import org.apache.nifi.serialization.RecordSetWriter;
+import org.apache.nifi.serialization.RecordSetWriterFactory;
+import org.apache.nifi.serialization.SimpleRecordSchema;
+import org.apache.nifi.serialization.WriteResult;
+import org.apache.nifi.serialization.record.MapRecord;
+import org.apache.nifi.serialization.record.Record;
+import org.apache.nifi.serialization.record.RecordField;
+import org.apache.nifi.serialization.record.RecordFieldType;
+import org.apache.nifi.serialization.record.RecordSchema;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+@EventDriven
+@SideEffectFree
+@SupportsBatching
+@InputRequirement(InputRequirement.Requirement.INPUT_REQUIRED)
+@Tags({"logs", "useragent", "webanalytics", "record"})
+@CapabilityDescription("Extract fields from the useragent string in every record of the FlowFile.")
+@WritesAttributes({
+    @WritesAttribute(attribute = "record.count", description = "The number of records in the FlowFile."),
+    @WritesAttribute(attribute = "mime.type",    description = "The MIME Type of the configured Record Writer.")
+})
+public class ParseUserAgentRecord extends AbstractProcessor {
+
+    static final String FIELD_PROPERTY_PREFIX = "Field.";
+
+    // Beyond this number of different useragents within a single batch we start over.
+    private static final int MAX_DEDUPLICATED_USERAGENTS = 10000;
+
+    public static final PropertyDescriptor RECORD_READER = new PropertyDescriptor.Builder()
+        .name("record-reader")
+        .displayName("Record Reader")
+        .description("The Record Reader to use for the incoming FlowFiles.")
+        .identifiesControllerService(RecordReaderFactory.class)
+        .required(true)
+        .build();
+
+    public static final PropertyDescriptor RECORD_WRITER = new PropertyDescriptor.Builder()
+        .name("record-writer")
+        .displayName("Record Writer")
+        .description("The Record Writer to use for the outgoing FlowFiles.")
+        .identifiesControllerService(RecordSetWriterFactory.class)
+        .required(true)
+        .build();
+
+    public static final PropertyDescriptor USERAGENT_RECORD_PATH = new PropertyDescriptor.Builder()
+        .name("useragent-record-path")
+        .displayName("Useragent Record Path")
+        .description("The RecordPath to the field in each record that contains the useragent string.")
+        .required(true)
+        .defaultValue("/useragent")
+        .addValidator(new RecordPathValidator())
+        .build();
+
+    public static final PropertyDescriptor BATCH_SIZE = new PropertyDescriptor.Builder()
+        .name("batch-size")
+        .displayName("Batch Size")
+        .description("The maximum number of FlowFiles that are handled (and committed) together. " +
+            "Within a batch each distinct useragent is only analyzed once.")
+        .required(true)
+        .defaultValue("100")
+        .addValidator(StandardValidators.POSITIVE_INTEGER_VALIDATOR)
+        .build();
+
+    public static final Relationship SUCCESS = new Relationship.Builder()
+        .name("success")
+        .description("Here we route all FlowFiles that have been analyzed.")
+        .build();
+
+    public static final Relationship FAILURE = new Relationship.Builder()
+        .name("failure")
+        .description("Here we route the FlowFiles of which the records could not be read or written.")
+        .build();
+
+    private Set<Relationship> relationships;
+    private List<PropertyDescriptor> supportedPropertyDescriptors = new ArrayList<>();
+
+    // The analyzer is shared with all other processors in this JVM that need the same fields.
+    private SharedUserAgentAnalyzer sharedUaa = null;
+    private UserAgentAnalyzer uaa = null;
+    private RecordPath userAgentRecordPath = null;
+
+    // The requested fields of the analyzer and the names of the record fields they are written to.
+    private final List<String> extractFieldNames = new ArrayList<>();
+    private final List<String> outputFieldNames = new ArrayList<>();
+
+    @Override
+    protected void init(ProcessorInitializationContext context) {
+        super.init(context);
+
+        final Set<Relationship> relationshipsSet = new HashSet<>();
+        relationshipsSet.add(SUCCESS);
+        relationshipsSet.add(FAILURE);
+        this.relationships = Collections.unmodifiableSet(relationshipsSet);
+
+        supportedPropertyDescriptors.add(RECORD_READER);
+        supportedPropertyDescriptors.add(RECORD_WRITER);
+        supportedPropertyDescriptors.add(USERAGENT_RECORD_PATH);
+        supportedPropertyDescriptors.add(BATCH_SIZE);
+
+        for (String fieldName: ParseUserAgent.getAllFieldNames()) {
+            PropertyDescriptor propertyDescriptor = new PropertyDescriptor.Builder()
+                .name(FIELD_PROPERTY_PREFIX + fieldName)
+                .description("The name of the record field in which the " + fieldName + " field is written " +
+                    "(if empty the " + fieldName + " field is not extracted)")
+                .required(false)
+                .addValidator(StandardValidators.NON_EMPTY_VALIDATOR)
+                .build();
+            supportedPropertyDescriptors.add(propertyDescriptor);
+        }
+    }
+
+    @Override
+    public Set<Relationship> getRelationships() {
+        return this.relationships;
+    }
+
+    @Override
+    protected List<PropertyDescriptor> getSupportedPropertyDescriptors() {
+        return supportedPropertyDescriptors;
+    }
+
+    @Override
+    protected Collection<ValidationResult> customValidate(ValidationContext validationContext) {
+        // Without any requested field the analyzer would be built (for all fields) to write nothing.
+        for (PropertyDescriptor propertyDescriptor: supportedPropertyDescriptors) {
+            if (!propertyDescriptor.getName().startsWith(FIELD_PROPERTY_PREFIX)) {
+                continue;
+            }
+            String outputFieldName = validationContext.getProperty(propertyDescriptor).getValue();
+            if (outputFieldName != null && !outputFieldName.trim().isEmpty()) {
+                return Collections.emptyList();
+            }
+        }
+        return Collections.singletonList(new ValidationResult.Builder()
+            .subject("Fields")
+            .valid(false)
+            .explanation("at least one of the " + FIELD_PROPERTY_PREFIX + "* properties must be set")
+            .build());
+    }
+
+    @OnScheduled
+    public void onSchedule(ProcessContext context) {
+        userAgentRecordPath = RecordPath.compile(context.getProperty(USERAGENT_RECORD_PATH).getValue());
+
+        if (uaa == null) {
+            extractFieldNames.clear();
+            outputFieldNames.clear();
+
+            for (PropertyDescriptor propertyDescriptor: supportedPropertyDescriptors) {
+                String name = propertyDescriptor.getName();
+                if (!name.startsWith(FIELD_PROPERTY_PREFIX)) {
+                    continue;
+                }
+                String outputFieldName = context.getProperty(propertyDescriptor).getValue();
+                if (outputFieldName == null || outputFieldName.trim().isEmpty()) {
+                    continue;
+                }
+                String fieldName = name.substring(FIELD_PROPERTY_PREFIX.length());
+                extractFieldNames.add(fieldName);
+                outputFieldNames.add(outputFieldName.trim());
+            }
+            sharedUaa = UserAgentAnalyzerRegistry.acquire(
+                UserAgentAnalyzerRegistry.newKey().withFields(extractFieldNames));
+            uaa = sharedUaa.getAnalyzer();
+        }
+    }
+
+    @Override
+    public void onPropertyModified(PropertyDescriptor descriptor, String oldValue, String newValue) {
+        releaseAnalyzer();
+    }
+
+    @OnRemoved
+    public void releaseAnalyzer() {
+        if (sharedUaa != null) {
+            sharedUaa.close();
+            sharedUaa = null;
+        }
+        uaa = null;
+    }
+
+    @Override
+    public void onTrigger(ProcessContext context, ProcessSession session) throws ProcessException { // NOSONAR: Explicitly name the exception
+        List<FlowFile> flowFiles = session.get(context.getProperty(BATCH_SIZE).asInteger());
+        if (flowFiles.isEmpty()) {
+            return;
+        }
+
+        RecordReaderFactory readerFactory = context.getProperty(RECORD_READER).asControllerService(RecordReaderFactory.class);
+        RecordSetWriterFactory writerFactory = context.getProperty(RECORD_WRITER).asControllerService(RecordSetWriterFactory.class);
+
+        // The results of all distinct useragents in this batch.
+        Map<String, String[]> analyzed = new HashMap<>();
+
+        for (FlowFile flowFile : flowFiles) {
+            Map<String, String> originalAttributes = flowFile.getAttributes();
+            Map<String, String> writtenAttributes = new HashMap<>();
+            try {
+                FlowFile output = session.write(flowFile, (in, out) -> {
+                    try (RecordReader reader = readerFactory.createRecordReader(originalAttributes, in, getLogger())) {
+                        RecordSchema schema = addOutputFields(reader.getSchema());
+                        RecordSchema writeSchema = writerFactory.getSchema(originalAttributes, schema);
+                        try (RecordSetWriter writer = writerFactory.createWriter(getLogger(), writeSchema, out, originalAttributes)) {
+                            writer.beginRecordSet();
+                            Record record;
+                            while ((record = reader.nextRecord()) != null) {
+                                writer.write(analyze(record, schema, analyzed));
+                            }
+                            WriteResult writeResult = writer.finishRecordSet();
+                            writtenAttributes.putAll(writeResult.getAttributes());
+                            writtenAttributes.put("record.count", String.valueOf(writeResult.getRecordCount()));
+                            writtenAttributes.put(CoreAttributes.MIME_TYPE.key(), writer.getMimeType());
+                        }
+                    } catch (SchemaNotFoundException | MalformedRecordException e) {
+                        throw new ProcessException("Unable to read the records", e);
+                    }
+                });
+                output = session.putAllAttributes(output, writtenAttributes);
+                session.transfer(output, SUCCESS);
+            } catch (ProcessException e) {
+                getLogger().error("Unable to analyze the useragents in {}", new Object[]{flowFile}, e);
+                session.transfer(flowFile, FAILURE);
+            }
+        }
+        // The session is committed once for the entire batch by the AbstractProcessor.
+    }
+
+    private RecordSchema addOutputFields(RecordSchema readSchema) {
+        List<RecordField> fields = new ArrayList<>(readSchema.getFields());
+        for (String outputFieldName : outputFieldNames) {
+            if (!readSchema.getField(outputFieldName).isPresent()) {
+                fields.add(new RecordField(outputFieldName, RecordFieldType.STRING.getDataType(), true));
+            }
+        }
+        return new SimpleRecordSchema(fields);
+    }
+
+    private Record analyze(Record record, RecordSchema schema, Map<String, String[]> analyzed) {
+        Map<String, Object> values = new HashMap<>(record.toMap());
+
+        String[] fieldValues = null;
+        String userAgentString = getUserAgentString(record);
+        if (userAgentString != null) {
+            fieldValues = analyzed.get(userAgentString);
+            if (fieldValues == null) {
+                if (analyzed.size() >= MAX_DEDUPLICATED_USERAGENTS) {
+                    analyzed.clear();
+                }
+                fieldValues = analyze(userAgentString);
+                analyzed.put(userAgentString, fieldValues);
+            }
+        }
+
+        for (int i = 0; i < outputFieldNames.size(); i++) {
+            values.put(outputFieldNames.get(i), fieldValues == null ? null : fieldValues[i]);
+        }
+        return new MapRecord(schema, values);
+    }
+
+    private String getUserAgentString(Record record) {
+        Optional<FieldValue> fieldValue = userAgentRecordPath.evaluate(record).getSelectedFields().findFirst();
+        if (!fieldValue.isPresent()) {
+            return null;
+        }
+        Object value = fieldValue.get().getValue();
+        if (value == null) {
+            return null;
+        }
+        return value.toString();
+    }
+
+    private String[] analyze(String userAgentString) {
+        UserAgent userAgent = uaa.parse(userAgentString);
+        String[] fieldValues = new String[extractFieldNames.size()];
+        for (int i = 0; i < fieldValues.length; i++) {
+            fieldValues[i] = userAgent.getValue(extractFieldNames.get(i));
+        }
+        return fieldValues;
+    }
+
+}
@@ -0,0 +1,116 @@
+/*
+ * Yet Another UserAgent Analyzer
+ * Copyright (C) 2013-2019 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.basjes.parse.useragent.nifi;
+
+import org.apache.nifi.reporting.InitializationException;
+import org.apache.nifi.serialization.record.MockRecordParser;
+import org.apache.nifi.serialization.record.MockRecordWriter;
+import org.apache.nifi.serialization.record.RecordFieldType;
+import org.apache.nifi.util.MockFlowFile;
+import org.apache.nifi.util.TestRunner;
+import org.apache.nifi.util.TestRunners;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static nl.basjes.parse.useragent.nifi.ParseUserAgentRecord.FIELD_PROPERTY_PREFIX;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class TestParseUserAgentRecord {
+
+    private static final String TEST_USER_AGENT_1 = "Mozilla/5.0 (X11; Linux x86_64) " +
+        "AppleWebKit/537.36 (KHTML, like Gecko) Chrome/48.0.2564.82 Safari/537.36";
+
+    private static final String TEST_USER_AGENT_2 = "Mozilla/5.0 (Linux; Android 7.0; Nexus 6 Build/NBD90Z) " +
+        "AppleWebKit/537.36 (KHTML, like Gecko) Chrome/53.0.2785.124 Mobile Safari/537.36";
+
+    private TestRunner runner;
+    private MockRecordParser readerService;
+
+    @BeforeEach
+    public void before() throws InitializationException {
+        // Generate a test runner to mock a processor in a flow
+        runner = TestRunners.newTestRunner(new ParseUserAgentRecord());
+
+        readerService = new MockRecordParser();
+        readerService.addSchemaField("id", RecordFieldType.INT);
+        readerService.addSchemaField("useragent", RecordFieldType.STRING);
+        runner.addControllerService("reader", readerService);
+        runner.enableControllerService(readerService);
+
+        MockRecordWriter writerService = new MockRecordWriter("header", false);
+        runner.addControllerService("writer", writerService);
+        runner.enableControllerService(writerService);
+
+        runner.setProperty(ParseUserAgentRecord.RECORD_READER, "reader");
+        runner.setProperty(ParseUserAgentRecord.RECORD_WRITER, "writer");
+    }
+
+    @Test
+    public void testParseRecords() {
+        runner.setProperty(FIELD_PROPERTY_PREFIX + "DeviceClass",           "deviceClass");
+        runner.setProperty(FIELD_PROPERTY_PREFIX + "AgentNameVersionMajor", "agent");
+
+        readerService.addRecord(1, TEST_USER_AGENT_1);
+        readerService.addRecord(2, TEST_USER_AGENT_2);
+        readerService.addRecord(3, TEST_USER_AGENT_1);
+        readerService.addRecord(4, null);
+
+        runner.enqueue("");
+        runner.run(1);
+
+        // All results were processed with out failure
+        runner.assertQueueEmpty();
+        runner.assertAllFlowFilesTransferred(ParseUserAgentRecord.SUCCESS, 1);
+
+        List<MockFlowFile> results = runner.getFlowFilesForRelationship(ParseUserAgentRecord.SUCCESS);
+        assertEquals(1, results.size(), "Must be 1 match");
+        MockFlowFile result = results.get(0);
+        result.assertAttributeEquals("record.count", "4");
+        result.assertContentEquals(
+            "header\n" +
+            "1," + TEST_USER_AGENT_1 + ",Desktop,Chrome 48\n" +
+            "2," + TEST_USER_AGENT_2 + ",Phone,Chrome 53\n" +
+            "3," + TEST_USER_AGENT_1 + ",Desktop,Chrome 48\n" +
+            "4,,,\n");
+    }
+
+    @Test
+    public void testNoFieldsIsInvalid() {
+        runner.assertNotValid();
+
+        runner.setProperty(FIELD_PROPERTY_PREFIX + "DeviceClass", "deviceClass");
+        runner.assertValid();
+    }
+
+    @Test
+    public void testUnreadableRecords() {
+        runner.setProperty(FIELD_PROPERTY_PREFIX + "DeviceClass", "deviceClass");
+
+        readerService.failAfter(0);
+        readerService.addRecord(1, TEST_USER_AGENT_1);
+
+        runner.enqueue("");
+        runner.run(1);
+
+        runner.assertQueueEmpty();
+        runner.assertAllFlowFilesTransferred(ParseUserAgentRecord.FAILURE, 1);
+    }
+
+}
@@ -17,9 +17,10 @@
 
 package nl.basjes.parse.useragent.pig;
 
+import nl.basjes.parse.useragent.SharedUserAgentAnalyzer;
 import nl.basjes.parse.useragent.UserAgent;
 import nl.basjes.parse.useragent.UserAgentAnalyzer;
-import nl.basjes.parse.useragent.UserAgentAnalyzer.UserAgentAnalyzerBuilder;
+import nl.basjes.parse.useragent.UserAgentAnalyzerRegistry;
 import org.apache.pig.FuncSpec;
 import org.apache.pig.data.DataType;
 import org.apache.pig.data.Tuple;
@@ -34,37 +35,47 @@ import java.util.List;
 public class ParseUserAgent extends org.apache.pig.EvalFunc<Tuple>  {
 
     private static final TupleFactory TUPLE_FACTORY = TupleFactory.getInstance();
+    private SharedUserAgentAnalyzer sharedAnalyzer = null;
     private UserAgentAnalyzer analyzer = null;
 
     private int cacheSize = -1;
+    // The fields as requested by the user (empty means all fields) which is also part of the key of the shared analyzer.
     private final List<String> requestedFields = new ArrayList<>(32);
+    // The fields that are actually output.
+    private List<String> outputFields = null;
 
     private boolean initialized = false;
     private void initialize() {
         if (!initialized) {
-            UserAgentAnalyzerBuilder analyzerBuilder = UserAgentAnalyzer
-                    .newBuilder()
-                    .hideMatcherLoadStats()
-                    .delayInitialization();
-
-            if (cacheSize >= 0) {
-                analyzerBuilder.withCache(cacheSize);
-            }
+            // All instances with the same settings in this JVM share the same analyzer.
+            sharedAnalyzer = UserAgentAnalyzerRegistry.acquire(getKey());
+            analyzer = sharedAnalyzer.getAnalyzer();
+            initialized = true;
+        }
+    }
 
-            if (!requestedFields.isEmpty()) {
-                for (String requestedField : requestedFields) {
-                    analyzerBuilder.withField(requestedField);
-                }
-            }
+    private UserAgentAnalyzerRegistry.Key getKey() {
+        UserAgentAnalyzerRegistry.Key key = UserAgentAnalyzerRegistry
+            .newKey()
+            .withFields(requestedFields);
 
-            analyzer = analyzerBuilder.build();
+        if (cacheSize >= 0) {
+            key = key.withCache(cacheSize);
+        }
+        return key;
+    }
 
+    // The output schema is also needed on the front end (which has no end of life callback)
+    // so this must not acquire an analyzer.
+    private List<String> getOutputFields() {
+        if (outputFields == null) {
             if (requestedFields.isEmpty()) {
-                requestedFields.addAll(analyzer.getAllPossibleFieldNamesSorted());
+                outputFields = UserAgentAnalyzerRegistry.getAllPossibleFieldNamesSorted(getKey());
+            } else {
+                outputFields = requestedFields;
             }
-
-            initialized = true;
         }
+        return outputFields;
     }
 
     public ParseUserAgent() {
@@ -90,18 +101,27 @@ public class ParseUserAgent extends org.apache.pig.EvalFunc<Tuple>  {
 
         UserAgent agent = analyzer.parse(userAgentString);
         Tuple result = TUPLE_FACTORY.newTuple();
-        for (String fieldName: requestedFields) {
+        for (String fieldName: getOutputFields()) {
             result.append(agent.getValue(fieldName));
         }
         return result;
     }
 
+    @Override
+    public void finish() {
+        if (sharedAnalyzer != null) {
+            sharedAnalyzer.close();
+            sharedAnalyzer = null;
+            analyzer = null;
+            initialized = false;
+        }
+    }
+
     @Override
     public Schema outputSchema(Schema input) {
-        initialize();
         try {
             Schema tupleSchema = new Schema();
-            for (String fieldName: requestedFields) {
+            for (String fieldName: getOutputFields()) {
                 tupleSchema.add(new Schema.FieldSchema(fieldName, DataType.CHARARRAY));
             }
             return new Schema(new Schema.FieldSchema("UserAgent", tupleSchema, DataType.TUPLE));
@@ -17,6 +17,7 @@
 
 package nl.basjes.parse.useragent.pig;
 
+import nl.basjes.parse.useragent.UserAgentAnalyzerRegistry;
 import org.apache.pig.ExecType;
 import org.apache.pig.PigServer;
 import org.apache.pig.backend.executionengine.ExecException;
@@ -192,6 +193,25 @@ public class TestParseUserAgent {
             "Field named " + fieldName + " is present in the schema");
     }
 
+    @Test
+    public void testNoAnalyzerOnTheFrontend() throws Exception {
+        UserAgentAnalyzerRegistry.Key key = UserAgentAnalyzerRegistry.newKey().withField("DeviceClass").withCache(5);
+        ParseUserAgent parseUserAgent = new ParseUserAgent("5", "DeviceClass");
+
+        // On the front end only the schema is requested: that must not pin an analyzer.
+        Schema schema = parseUserAgent.outputSchema(null).getField(0).schema;
+        assertEquals(1, schema.size());
+        assertEquals(0, UserAgentAnalyzerRegistry.getReferences(key));
+
+        Tuple input = TupleFactory.getInstance().newTuple();
+        input.append(testUserAgent);
+        assertEquals("Desktop", parseUserAgent.exec(input).get(0));
+        assertEquals(1, UserAgentAnalyzerRegistry.getReferences(key));
+
+        parseUserAgent.finish();
+        assertEquals(0, UserAgentAnalyzerRegistry.getReferences(key));
+    }
+
     @Test
     public void testParseUserAgentPigUDF_NULL() throws Exception {
         TupleFactory tupleFactory = TupleFactory.getInstance();